@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.jprotobuf.pbrpc.compress.Compress;
+import com.baidu.jprotobuf.pbrpc.compress.CompressRegistry;
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+
+/**
+ * Benchmark of each {@link Compress} implementation.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressBenchmark {
+
+    /** The Constant TEXT. */
+    private static final String TEXT = "{\"serviceName\":\"echoService\",\"methodName\":\"echo\",\"message\":\"hello world\"}";
+
+    /** compress type, see {@link RpcMeta}. 1 snappy, 2 gzip, 4 lz4, 5 zstd. */
+    @Param({ "1", "2", "4" })
+    private int compressType;
+
+    /** The data size. */
+    @Param({ "256", "4096", "65536" })
+    private int size;
+
+    /** true for repetitive text, false for random bytes. */
+    @Param({ "true", "false" })
+    private boolean compressible;
+
+    /** The compress. */
+    private Compress compress;
+
+    /** The data. */
+    private byte[] data;
+
+    /** The compressed. */
+    private byte[] compressed;
+
+    /**
+     * Sets the up.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        compress = CompressRegistry.getCompress(compressType);
+        if (compress == null) {
+            throw new IllegalArgumentException("compress type " + compressType + " not supported");
+        }
+
+        data = new byte[size];
+        if (compressible) {
+            byte[] text = TEXT.getBytes("UTF-8");
+            for (int i = 0; i < size; i++) {
+                data[i] = text[i % text.length];
+            }
+        } else {
+            new Random(size).nextBytes(data);
+        }
+        compressed = compress.compress(data);
+    }
+
+    /**
+     * Compress.
+     *
+     * @return the byte[]
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return compress.compress(data);
+    }
+
+    /**
+     * Un compress.
+     *
+     * @return the byte[]
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public byte[] unCompress() throws IOException {
+        return compress.unCompress(compressed);
+    }
+}
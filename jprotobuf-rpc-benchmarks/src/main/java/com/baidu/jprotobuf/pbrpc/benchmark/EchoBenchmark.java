@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.jprotobuf.pbrpc.EchoInfo;
+import com.baidu.jprotobuf.pbrpc.EchoService;
+import com.baidu.jprotobuf.pbrpc.EchoServiceImpl;
+import com.baidu.jprotobuf.pbrpc.client.ProtobufRpcProxy;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClient;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClientOptions;
+import com.baidu.jprotobuf.pbrpc.transport.RpcServer;
+import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+
+/**
+ * End-to-end echo benchmark by {@link RpcServer} and {@link ProtobufRpcProxy} on loopback. Concurrency can also be
+ * changed by JMH option '-t'.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoBenchmark {
+
+    /** The message size. */
+    @Param({ "16", "1024", "65536" })
+    private int size;
+
+    /** The rpc server. */
+    private RpcServer rpcServer;
+
+    /** The rpc client. */
+    private RpcClient rpcClient;
+
+    /** The proxy. */
+    private ProtobufRpcProxy<EchoService> proxy;
+
+    /** The echo service. */
+    private EchoService echoService;
+
+    /** The echo info. */
+    private EchoInfo echoInfo;
+
+    /**
+     * Sets the up.
+     *
+     * @throws IOException Signals that no free port is found.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        int port = getFreePort();
+        RpcServerOptions rpcServerOptions = new RpcServerOptions();
+        rpcServer = new RpcServer(rpcServerOptions);
+        rpcServer.registerService(new EchoServiceImpl());
+        rpcServer.startSync(port);
+
+        RpcClientOptions rpcClientOptions = new RpcClientOptions();
+        rpcClientOptions.setMaxIdleSize(64);
+        rpcClientOptions.setThreadPoolSize(64);
+        rpcClient = new RpcClient(rpcClientOptions);
+        proxy = new ProtobufRpcProxy<EchoService>(rpcClient, EchoService.class);
+        proxy.setPort(port);
+        echoService = proxy.proxy();
+
+        StringBuilder message = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            message.append((char) ('a' + i % 26));
+        }
+        echoInfo = new EchoInfo();
+        echoInfo.setMessage(message.toString());
+    }
+
+    /**
+     * Gets a free port on loopback, so benchmark forks do not conflict with other processes.
+     *
+     * @return the free port
+     * @throws IOException Signals that no free port is found.
+     */
+    private static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown
+    public void tearDown() {
+        if (proxy != null) {
+            proxy.close();
+        }
+        if (rpcClient != null) {
+            rpcClient.shutdown();
+        }
+        if (rpcServer != null) {
+            rpcServer.shutdown();
+        }
+    }
+
+    /**
+     * Echo by single thread.
+     *
+     * @return the echo info
+     */
+    @Benchmark
+    @Threads(1)
+    public EchoInfo echo() {
+        return echoService.echo(echoInfo);
+    }
+
+    /**
+     * Echo by concurrent threads.
+     *
+     * @return the echo info
+     */
+    @Benchmark
+    @Threads(16)
+    public EchoInfo echoConcurrent() {
+        return echoService.echo(echoInfo);
+    }
+}
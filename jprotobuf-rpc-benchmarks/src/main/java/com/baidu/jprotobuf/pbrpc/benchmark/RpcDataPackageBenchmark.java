@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Benchmark of {@link RpcDataPackage} and {@link RpcMeta} codec.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcDataPackageBenchmark {
+
+    /** The Constant CHUNK_SIZE. */
+    private static final long CHUNK_SIZE = 4096;
+
+    /** The data size. */
+    @Param({ "64", "1024", "65536" })
+    private int size;
+
+    /** The alloc. */
+    private ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    /** The data package. */
+    private RpcDataPackage dataPackage;
+
+    /** The data package bytes. */
+    private byte[] dataPackageBytes;
+
+    /** The data package buffer. */
+    private ByteBuf dataPackageBuf;
+
+    /** The meta bytes. */
+    private byte[] metaBytes;
+
+    /** The data. */
+    private byte[] data;
+
+    /**
+     * Sets the up.
+     */
+    @Setup
+    public void setUp() {
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        dataPackage = new RpcDataPackage();
+        dataPackage.magicCode(ProtocolConstant.MAGIC_CODE);
+        dataPackage.serviceName("echoService").methodName("echo").logId(1L).correlationId(1L);
+        dataPackage.data(data);
+        dataPackage.attachment(new byte[] { 1, 2, 3, 4 });
+
+        dataPackageBytes = dataPackage.write();
+        dataPackageBuf = Unpooled.directBuffer(dataPackageBytes.length).writeBytes(dataPackageBytes);
+        metaBytes = dataPackage.getRpcMeta().write();
+    }
+
+    /**
+     * Write to byte array.
+     *
+     * @return the byte[]
+     */
+    @Benchmark
+    public byte[] write() {
+        return dataPackage.write();
+    }
+
+    /**
+     * Write to pooled buffer.
+     *
+     * @return the int
+     */
+    @Benchmark
+    public int writeToByteBuf() {
+        ByteBuf buf = dataPackage.write(alloc);
+        int ret = buf.readableBytes();
+        buf.release();
+        return ret;
+    }
+
+    /**
+     * Read from byte array.
+     *
+     * @return the rpc data package
+     */
+    @Benchmark
+    public RpcDataPackage read() {
+        RpcDataPackage ret = new RpcDataPackage();
+        ret.read(dataPackageBytes);
+        return ret;
+    }
+
+    /**
+     * Read from buffer without copy of data and attachment.
+     *
+     * @return the rpc meta
+     */
+    @Benchmark
+    public RpcMeta readFromByteBuf() {
+        RpcDataPackage ret = new RpcDataPackage();
+        ret.read(dataPackageBuf.duplicate());
+        ret.release();
+        return ret.getRpcMeta();
+    }
+
+    /**
+     * Write meta.
+     *
+     * @return the byte[]
+     */
+    @Benchmark
+    public byte[] writeMeta() {
+        return dataPackage.getRpcMeta().write();
+    }
+
+    /**
+     * Read meta.
+     *
+     * @return the rpc meta
+     */
+    @Benchmark
+    public RpcMeta readMeta() {
+        RpcMeta ret = new RpcMeta();
+        ret.read(metaBytes);
+        return ret;
+    }
+
+    /**
+     * Split to chunk packages.
+     *
+     * @return the list
+     */
+    @Benchmark
+    public List<RpcDataPackage> chunk() {
+        return dataPackage.chunk(CHUNK_SIZE);
+    }
+
+    /**
+     * Split to chunk frames of buffer slices.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    public void chunkToByteBuf(Blackhole blackhole) {
+        List<ByteBuf> frames = dataPackage.chunk(alloc, CHUNK_SIZE, 1L);
+        for (ByteBuf frame : frames) {
+            blackhole.consume(frame.readableBytes());
+            frame.release();
+        }
+    }
+
+    /**
+     * Merge chunk data.
+     *
+     * @return the byte[]
+     */
+    @Benchmark
+    public byte[] mergeData() {
+        RpcDataPackage merged = new RpcDataPackage();
+        int offset = 0;
+        while (offset < data.length) {
+            int len = (int) Math.min(CHUNK_SIZE, data.length - offset);
+            byte[] chunk = new byte[len];
+            System.arraycopy(data, offset, chunk, 0, len);
+            merged.mergeData(chunk);
+            offset += len;
+        }
+        return merged.getData();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageDecoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * Benchmark of fused {@link RpcDataPackageDecoder} against the former two stage pipeline with a
+ * {@link LengthFieldBasedFrameDecoder} before it. Score is time per frame.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcDataPackageDecoderBenchmark {
+
+    /** frames per read, to simulate multiple frames received in one read. */
+    private static final int FRAMES_PER_READ = 16;
+
+    /** The frames of one read. */
+    private ByteBuf frames;
+
+    /** The fused channel. */
+    private EmbeddedChannel fusedChannel;
+
+    /** The two stage channel. */
+    private EmbeddedChannel twoStageChannel;
+
+    /**
+     * Sets the up.
+     */
+    @Setup
+    public void setUp() {
+        RpcDataPackage dataPackage = new RpcDataPackage();
+        dataPackage.magicCode(ProtocolConstant.MAGIC_CODE);
+        dataPackage.serviceName("echoService").methodName("echo").logId(1L).correlationId(1L);
+        dataPackage.data(new byte[256]);
+        byte[] frame = dataPackage.write();
+
+        frames = PooledByteBufAllocator.DEFAULT.buffer(frame.length * FRAMES_PER_READ);
+        for (int i = 0; i < FRAMES_PER_READ; i++) {
+            frames.writeBytes(frame);
+        }
+
+        fusedChannel = new EmbeddedChannel(new RpcDataPackageDecoder(-1));
+        twoStageChannel = new EmbeddedChannel(new ChannelHandler[] {
+                new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 4, 4, 4, 0), new RpcDataPackageDecoder(-1) });
+    }
+
+    /**
+     * Tear down.
+     */
+    @TearDown
+    public void tearDown() {
+        fusedChannel.finish();
+        twoStageChannel.finish();
+        frames.release();
+    }
+
+    /**
+     * Decode by fused decoder.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_READ)
+    public void fused(Blackhole blackhole) {
+        decode(fusedChannel, blackhole);
+    }
+
+    /**
+     * Decode by frame decoder and then package decoder.
+     *
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_READ)
+    public void twoStage(Blackhole blackhole) {
+        decode(twoStageChannel, blackhole);
+    }
+
+    /**
+     * Decode frames of one read.
+     *
+     * @param channel the channel
+     * @param blackhole the blackhole
+     */
+    private void decode(EmbeddedChannel channel, Blackhole blackhole) {
+        channel.writeInbound(frames.retainedDuplicate());
+        RpcDataPackage dataPackage;
+        while ((dataPackage = channel.readInbound()) != null) {
+            blackhole.consume(dataPackage);
+            dataPackage.release();
+        }
+    }
+}
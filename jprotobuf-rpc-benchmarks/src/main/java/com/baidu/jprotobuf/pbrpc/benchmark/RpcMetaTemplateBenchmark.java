@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.baidu.jprotobuf.pbrpc.data.RpcMetaTemplate;
+import com.baidu.jprotobuf.pbrpc.data.RpcRequestMeta;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Benchmark of request meta serialization with and without {@link RpcMetaTemplate}, run with {@code -prof gc} (added
+ * by {@link BenchmarkMain} by default) to compare allocation per operation.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcMetaTemplateBenchmark {
+
+    /** serialize by template if true, by codec otherwise. */
+    @Param({ "false", "true" })
+    private boolean template;
+
+    /** The alloc. */
+    private ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    /** The meta. */
+    private RpcMeta meta;
+
+    /**
+     * Sets the up.
+     */
+    @Setup
+    public void setUp() {
+        RpcRequestMeta request = new RpcRequestMeta();
+        request.setServiceName("echoService");
+        request.setMethodName("echo");
+        request.setLogId(1L);
+        request.setTimeout(1000L);
+        meta = new RpcMeta();
+        meta.setRequest(request);
+        meta.setCorrelationId(1L);
+        meta.setCompressType(RpcMeta.COMPRESS_NO);
+        meta.setAttachmentSize(0);
+        if (template) {
+            meta.setTemplate(new RpcMetaTemplate("echoService", "echo"));
+        }
+    }
+
+    /**
+     * Write meta to byte array.
+     *
+     * @return the byte[]
+     */
+    @Benchmark
+    public byte[] write() {
+        return meta.write();
+    }
+
+    /**
+     * Write meta to pooled buffer as {@code RpcDataPackage#write(ByteBufAllocator)}.
+     *
+     * @return the int
+     */
+    @Benchmark
+    public int writeToByteBuf() {
+        int size = meta.size();
+        ByteBuf buf = alloc.buffer(size);
+        meta.write(buf, size);
+        int ret = buf.readableBytes();
+        buf.release();
+        return ret;
+    }
+}
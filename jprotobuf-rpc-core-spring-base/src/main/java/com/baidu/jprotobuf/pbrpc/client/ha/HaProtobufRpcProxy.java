@@ -24,6 +24,8 @@ import com.baidu.jprotobuf.pbrpc.ProtobufRPC;
 import com.baidu.jprotobuf.pbrpc.client.ProtobufRpcProxy;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.LoadBalanceProxyFactoryBean;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.failover.SocketFailOverInterceptor;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.HedgePolicy;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.Hedged;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.NamingServiceLoadBalanceStrategyFactory;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.RRNamingServiceLoadBalanceStrategyFactory;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.StrategyInterceptor;
@@ -91,6 +93,20 @@ public class HaProtobufRpcProxy<T> extends NamingServiceChangeListener implement
     
     /** The heart beat interval. */
     private long heartBeatInterval = 1000L;
+
+    /** The hedge policy. */
+    private HedgePolicy hedgePolicy;
+
+    /**
+     * Sets the hedge policy. Methods marked {@link Hedged} are hedged to another server if no response in the
+     * delay, hedging is disabled if not set.
+     *
+     * @param hedgePolicy the new hedge policy
+     * @since 4.2.3
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
     
     /**
      * Sets the heart beat interval.
@@ -253,6 +269,7 @@ public class HaProtobufRpcProxy<T> extends NamingServiceChangeListener implement
         lbProxyBean.setStrategyInterceptor(strategyInterceptor);
         lbProxyBean.setServiceInterface(interfaceClass);
         lbProxyBean.setRecoverInterval(heartBeatInterval);
+        lbProxyBean.setHedgePolicy(hedgePolicy);
         List<ProtobufRpcProxy<T>> protobufRpcProxyList = new ArrayList<ProtobufRpcProxy<T>>();
         Map<String, String> serverUrls = new HashMap<String, String>(servers.size());
         Map<String, Object> targetBeans = new HashMap<String, Object>();
@@ -27,6 +27,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,12 +44,16 @@ import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.ClassUtils;
 
+import com.baidu.jprotobuf.pbrpc.client.RpcCancelHandle;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.failover.FailOverEvent;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.failover.FailOverInterceptor;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.failover.RecoverHeartbeat;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.HedgePolicy;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.Hedged;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.LoadBalanceStrategy;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.RoundRobinLoadBalanceStrategy;
 import com.baidu.jprotobuf.pbrpc.client.ha.lb.strategy.StrategyInterceptor;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
 
 import io.netty.util.concurrent.DefaultThreadFactory;
 
@@ -148,6 +156,56 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
     /** The exe. */
     private ExecutorService exe = Executors.newFixedThreadPool(1, new DefaultThreadFactory("loadbalance-heartbeat"));
 
+    /** The hedge policy, hedging is disabled if null. */
+    private HedgePolicy hedgePolicy;
+
+    /** The max threads to send hedged calls. */
+    private int hedgeThreads = 4;
+
+    /** The executor of hedged calls. */
+    private ScheduledThreadPoolExecutor hedgeExe;
+
+    /**
+     * Sets the hedge policy. Methods marked {@link Hedged} are hedged only if hedge policy is set.
+     *
+     * @param hedgePolicy the new hedge policy
+     * @since 4.2.3
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Gets the hedge policy.
+     *
+     * @return the hedge policy
+     * @since 4.2.3
+     */
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * Gets the max threads to send hedged calls.
+     *
+     * @return the hedge threads
+     * @since 4.2.3
+     */
+    public int getHedgeThreads() {
+        return hedgeThreads;
+    }
+
+    /**
+     * Sets the max threads to send hedged calls. Primary call runs on caller thread, only hedged calls take these
+     * threads, hedge waits in queue if all threads are busy and is skipped if primary call is done by then.
+     *
+     * @param hedgeThreads the new hedge threads
+     * @since 4.2.3
+     */
+    public void setHedgeThreads(int hedgeThreads) {
+        this.hedgeThreads = hedgeThreads;
+    }
+
     /**
      * Sets the fail over event.
      *
@@ -298,6 +356,13 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
         // for synchronized lock
         targetBeans = Collections.synchronizedMap(targetBeans);
 
+        if (hedgePolicy != null) {
+            hedgeExe = new ScheduledThreadPoolExecutor(Math.max(1, hedgeThreads),
+                    new DefaultThreadFactory("loadbalance-hedge", true));
+            // hedge not sent is removed from queue once primary call is done
+            hedgeExe.setRemoveOnCancelPolicy(true);
+        }
+
         if (!isFailOver()) {
             LOGGER.log(Level.WARNING,
                     "LoadBalanceProxy is shut down failover action due to not set FailOverInterceptor");
@@ -411,9 +476,92 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
     // /---- MethodInterceptor implement
     public Object invoke(MethodInvocation invocation) throws Throwable {
         int maxTry = loadBalanceStrategy.getTargets().size();
+        ScheduledThreadPoolExecutor hedgeExecutor = hedgeExe;
+        if (hedgePolicy != null && hedgeExecutor != null && maxTry > 1) {
+            Hedged hedged = invocation.getMethod().getAnnotation(Hedged.class);
+            if (hedged != null) {
+                return invokeWithHedge(invocation, maxTry, hedged, hedgeExecutor);
+            }
+        }
         return invokeWithMaxTry(invocation, maxTry);
 
     }
+
+    /**
+     * Invoke with hedge. Call is sent to elected target on caller thread, if no response in the hedge delay and hedge
+     * budget is available, a duplicate call is sent to another target by hedge executor. The first success response
+     * wins and the other call is cancelled by {@link RpcCancelHandle}.
+     *
+     * @param invocation the invocation
+     * @param maxTry the max try
+     * @param hedged the hedged
+     * @param hedgeExecutor the hedge executor
+     * @return the object
+     * @throws Throwable the throwable
+     */
+    private Object invokeWithHedge(final MethodInvocation invocation, int maxTry, Hedged hedged,
+            ScheduledThreadPoolExecutor hedgeExecutor) throws Throwable {
+        final Method method = invocation.getMethod();
+        final Long deadline = RpcServiceHandleContext.getDeadline();
+        hedgePolicy.onCall();
+
+        final String beanKey = elect(invocation);
+        final HedgeRace race = new HedgeRace();
+        ScheduledFuture<?> hedgeFuture = null;
+        try {
+            hedgeFuture = hedgeExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    race.runHedge(invocation, beanKey, deadline);
+                }
+            }, hedgePolicy.getDelay(method, hedged), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, no hedge
+            LOGGER.log(Level.FINE, "hedged call rejected: " + e.getMessage());
+        }
+
+        RpcCancelHandle previous = RpcCancelHandle.getCurrent();
+        RpcCancelHandle.setCurrent(race.primaryHandle);
+        try {
+            Object result = invokeWithMaxTry(invocation, maxTry, beanKey);
+            if (race.primarySucceeded()) {
+                hedgePolicy.record(method, System.currentTimeMillis() - race.primaryStart);
+                return result;
+            }
+            // hedge won before primary call was cancelled
+            return race.awaitHedge(null);
+        } catch (Throwable e) {
+            return race.awaitHedge(getRealException(e));
+        } finally {
+            RpcCancelHandle.setCurrent(previous);
+            if (hedgeFuture != null) {
+                hedgeFuture.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Elect a target for hedge which is different from the primary target.
+     *
+     * @param invocation the invocation
+     * @param primaryKey the key of primary target
+     * @return the key of hedge target, null if not found
+     */
+    private String electHedgeTarget(MethodInvocation invocation, String primaryKey) {
+        int count = loadBalanceStrategy.getTargets().size();
+        for (int i = 0; i < count; i++) {
+            String key;
+            try {
+                key = elect(invocation);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (key != null && !key.equals(primaryKey) && !failedFactoryBeans.containsKey(key)) {
+                return key;
+            }
+        }
+        return null;
+    }
     
     /**
      * Invoke with max try.
@@ -424,7 +572,19 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
      * @throws Throwable the throwable
      */
     public Object invokeWithMaxTry(MethodInvocation invocation, int maxTry) throws Throwable {
-        String beanKey = elect(invocation);
+        return invokeWithMaxTry(invocation, maxTry, elect(invocation));
+    }
+
+    /**
+     * Invoke with max try on the elected target.
+     *
+     * @param invocation the invocation
+     * @param maxTry the max try
+     * @param beanKey the key of elected target
+     * @return the object
+     * @throws Throwable the throwable
+     */
+    private Object invokeWithMaxTry(MethodInvocation invocation, int maxTry, String beanKey) throws Throwable {
         Object bean = targetBeans.get(beanKey);
         if (isFailOver()) { // support fail over
             boolean isAvailable;
@@ -445,6 +605,11 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
                 return doInvoke(bean, invocation);
             } catch (Throwable e) {
                 Throwable t = getRealException(e);
+                RpcCancelHandle cancelHandle = RpcCancelHandle.getCurrent();
+                if (cancelHandle != null && cancelHandle.isCancelled()) {
+                    // cancelled as loser of hedged call, target is not failed
+                    throw t;
+                }
                 lastestException = t;
                 if (isFailOver() && failOverInterceptor.isDoFailover(t, beanKey)) {
                     LOGGER.log(Level.SEVERE,
@@ -573,6 +738,142 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
         }
     }
 
+    /**
+     * Race of primary call and hedged call of one invocation. Primary call runs on caller thread, hedged call runs on
+     * hedge executor, the first success wins and cancels the other.
+     */
+    private class HedgeRace {
+
+        /** The cancel handle of primary call. */
+        private final RpcCancelHandle primaryHandle = new RpcCancelHandle();
+
+        /** The cancel handle of hedged call. */
+        private final RpcCancelHandle hedgeHandle = new RpcCancelHandle();
+
+        /** The start time of primary call, hedge delay is counted from it. */
+        private final long primaryStart = System.currentTimeMillis();
+
+        /** The winner is decided, or primary call is done before hedge starts. */
+        private boolean done;
+
+        /** The hedged call is started. */
+        private boolean hedgeStarted;
+
+        /** The hedged call is finished. */
+        private boolean hedgeFinished;
+
+        /** The hedged call won. */
+        private boolean hedgeWon;
+
+        /** The result of hedged call. */
+        private Object hedgeResult;
+
+        /** The error of hedged call. */
+        private Throwable hedgeError;
+
+        /**
+         * Run hedged call if primary call is not done and hedge budget is available.
+         *
+         * @param invocation the invocation
+         * @param primaryKey the key of primary target
+         * @param deadline the deadline of caller thread
+         */
+        void runHedge(MethodInvocation invocation, String primaryKey, Long deadline) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (!hedgePolicy.tryAcquire()) {
+                    return;
+                }
+                hedgeStarted = true;
+            }
+            Object result = null;
+            Throwable error = null;
+            String hedgeKey = electHedgeTarget(invocation, primaryKey);
+            Object hedgeBean = hedgeKey == null ? null : targetBeans.get(hedgeKey);
+            if (hedgeBean == null) {
+                error = new IllegalStateException("no target to hedge");
+            } else {
+                if (deadline != null) {
+                    RpcServiceHandleContext.setDeadline(deadline);
+                }
+                RpcCancelHandle.setCurrent(hedgeHandle);
+                long start = System.currentTimeMillis();
+                try {
+                    result = doInvoke(hedgeBean, invocation);
+                    hedgePolicy.record(invocation.getMethod(), System.currentTimeMillis() - start);
+                } catch (Throwable e) {
+                    error = getRealException(e);
+                    LOGGER.log(Level.FINE, "hedged call failed: " + error.getMessage());
+                } finally {
+                    RpcCancelHandle.setCurrent(null);
+                    RpcServiceHandleContext.clearDeadline();
+                }
+            }
+            boolean won;
+            synchronized (this) {
+                hedgeFinished = true;
+                won = error == null && !done;
+                if (won) {
+                    done = true;
+                    hedgeWon = true;
+                    hedgeResult = result;
+                } else {
+                    hedgeError = error;
+                }
+                notifyAll();
+            }
+            if (won) {
+                // primary call takes at least the elapsed time, record it as censored latency so delay is not
+                // shrunk by fast hedges while primary target is slow
+                hedgePolicy.record(invocation.getMethod(), System.currentTimeMillis() - primaryStart);
+                // release caller thread blocked by primary call
+                primaryHandle.cancel();
+            }
+        }
+
+        /**
+         * Called when primary call succeeded, cancels hedged call.
+         *
+         * @return true, if primary call wins
+         */
+        boolean primarySucceeded() {
+            synchronized (this) {
+                if (done) {
+                    return !hedgeWon;
+                }
+                done = true;
+                if (!hedgeStarted) {
+                    return true;
+                }
+            }
+            hedgeHandle.cancel();
+            return true;
+        }
+
+        /**
+         * Wait for result of hedged call if primary call lost or failed.
+         *
+         * @param primaryError the error of primary call, null if primary call lost
+         * @return the result of hedged call
+         * @throws Throwable error of primary call if hedged call is not started or failed
+         */
+        synchronized Object awaitHedge(Throwable primaryError) throws Throwable {
+            if (!hedgeStarted && !done) {
+                // no hedge will be sent
+                done = true;
+            }
+            while (hedgeStarted && !hedgeFinished) {
+                wait();
+            }
+            if (hedgeWon) {
+                return hedgeResult;
+            }
+            throw primaryError != null ? primaryError : hedgeError;
+        }
+    }
+
     /**
      * The Class FactoryBeanInvokeInfo.
      */
@@ -646,6 +947,11 @@ public class LoadBalanceProxyFactoryBean extends ServiceMultiInterfaceAccessor i
             exe.shutdown();
             exe = null;
         }
+
+        if (hedgeExe != null) {
+            hedgeExe.shutdown();
+            hedgeExe = null;
+        }
         
         targetBeans.clear();
         failedFactoryBeans.clear();
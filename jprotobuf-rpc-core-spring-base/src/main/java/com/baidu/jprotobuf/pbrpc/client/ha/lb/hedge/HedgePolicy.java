@@ -0,0 +1,281 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hedge policy of load balance proxy. Hedge delay of each method is the percentile of its recent latencies, and extra
+ * load is limited by a token budget: each call adds {@link #getMaxHedgeRatio()} token and each hedge takes one, so
+ * hedges are never more than the ratio of calls.<br>
+ * Policy keeps latencies of methods, it could be shared by load balance proxies of the same service.
+ *
+ * @author xiemalin
+ * @see Hedged
+ * @since 4.2.3
+ */
+public class HedgePolicy {
+
+    /** The Constant TOKEN, budget is counted in 1/1000 token. */
+    private static final long TOKEN = 1000L;
+
+    /** The max hedge ratio of calls. */
+    private double maxHedgeRatio = 0.1D;
+
+    /** The max hedge tokens could be saved. */
+    private int maxHedgeBurst = 10;
+
+    /** The count of latencies kept for each method. */
+    private int windowSize = 128;
+
+    /** The min count of latencies to calculate percentile. */
+    private int minSamples = 16;
+
+    /** The budget. */
+    private final AtomicLong budget = new AtomicLong();
+
+    /** The hedge count. */
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    /** The latency windows of methods. */
+    private final ConcurrentMap<Method, LatencyWindow> windows = new ConcurrentHashMap<Method, LatencyWindow>();
+
+    /**
+     * Gets the max hedge ratio.
+     *
+     * @return the max hedge ratio
+     */
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * Sets the max hedge ratio of calls, for example 0.1 means hedges are not more than 10% of calls.
+     *
+     * @param maxHedgeRatio the new max hedge ratio
+     */
+    public void setMaxHedgeRatio(double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * Gets the max hedge burst.
+     *
+     * @return the max hedge burst
+     */
+    public int getMaxHedgeBurst() {
+        return maxHedgeBurst;
+    }
+
+    /**
+     * Sets the max hedge tokens could be saved.
+     *
+     * @param maxHedgeBurst the new max hedge burst
+     */
+    public void setMaxHedgeBurst(int maxHedgeBurst) {
+        this.maxHedgeBurst = maxHedgeBurst;
+    }
+
+    /**
+     * Gets the window size.
+     *
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the count of latencies kept for each method.
+     *
+     * @param windowSize the new window size
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Gets the min samples.
+     *
+     * @return the min samples
+     */
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Sets the min count of latencies to calculate percentile.
+     *
+     * @param minSamples the new min samples
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Gets the count of hedges sent.
+     *
+     * @return the hedge count
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Add budget of one call.
+     */
+    public void onCall() {
+        long max = maxHedgeBurst * TOKEN;
+        long add = (long) (maxHedgeRatio * TOKEN);
+        long current;
+        do {
+            current = budget.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(max, current + add)));
+    }
+
+    /**
+     * Try to take budget of one hedge.
+     *
+     * @return true, if hedge is allowed
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - TOKEN));
+        hedgeCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record latency of a successful call, or elapsed time of a call cancelled by a winning hedge as its lower bound.
+     *
+     * @param method the method
+     * @param latency the latency in milliseconds
+     */
+    public void record(Method method, long latency) {
+        LatencyWindow window = windows.get(method);
+        if (window == null) {
+            window = new LatencyWindow(Math.max(1, windowSize));
+            LatencyWindow old = windows.putIfAbsent(method, window);
+            if (old != null) {
+                window = old;
+            }
+        }
+        window.add(latency);
+    }
+
+    /**
+     * Gets the hedge delay of method.
+     *
+     * @param method the method
+     * @param hedged the hedged
+     * @return the delay in milliseconds
+     */
+    public long getDelay(Method method, Hedged hedged) {
+        LatencyWindow window = windows.get(method);
+        if (window == null) {
+            return hedged.maxDelay();
+        }
+        long delay = window.percentile(hedged.percentile(), minSamples);
+        if (delay < 0) {
+            return hedged.maxDelay();
+        }
+        return Math.min(hedged.maxDelay(), Math.max(hedged.minDelay(), delay));
+    }
+
+    /**
+     * Ring buffer of recent latencies, percentile is recalculated every 1/8 of window.
+     */
+    private static class LatencyWindow {
+
+        /** The latencies. */
+        private final AtomicLongArray latencies;
+
+        /** The count of latencies added. */
+        private final AtomicLong count = new AtomicLong();
+
+        /** The count of latencies when percentile is calculated. */
+        private volatile long calculatedCount = -1;
+
+        /** The calculated percentile. */
+        private volatile int calculatedPercentile;
+
+        /** The calculated value. */
+        private volatile long calculated = -1;
+
+        /**
+         * Instantiates a new latency window.
+         *
+         * @param size the size
+         */
+        LatencyWindow(int size) {
+            latencies = new AtomicLongArray(size);
+        }
+
+        /**
+         * Adds the latency.
+         *
+         * @param latency the latency
+         */
+        void add(long latency) {
+            long index = count.getAndIncrement();
+            latencies.set((int) (index % latencies.length()), latency);
+        }
+
+        /**
+         * Gets the percentile of latencies.
+         *
+         * @param percentile the percentile
+         * @param minSamples the min samples
+         * @return the percentile, -1 if latencies are not enough
+         */
+        long percentile(int percentile, int minSamples) {
+            long n = count.get();
+            if (n < Math.max(1, minSamples)) {
+                return -1;
+            }
+            int size = latencies.length();
+            if (calculatedPercentile == percentile && calculatedCount >= 0
+                    && n - calculatedCount < Math.max(1, size >> 3)) {
+                return calculated;
+            }
+            int samples = (int) Math.min(n, size);
+            long[] sorted = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(samples * Math.min(100, Math.max(1, percentile)) / 100.0D) - 1;
+            long value = sorted[Math.max(0, index)];
+            calculated = value;
+            calculatedPercentile = percentile;
+            calculatedCount = n;
+            return value;
+        }
+    }
+}
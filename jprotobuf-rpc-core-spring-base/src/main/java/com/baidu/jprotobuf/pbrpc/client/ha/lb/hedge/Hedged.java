@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a RPC method could be hedged. If the call does not answer in the delay, a duplicate call is sent to another
+ * target and the first response wins. Only mark on idempotent method.<br>
+ * Hedging is enabled only if a {@link HedgePolicy} is set to load balance proxy.
+ *
+ * @author xiemalin
+ * @see HedgePolicy
+ * @since 4.2.3
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Hedged {
+
+    /**
+     * Percentile of recent latencies of the method used as hedge delay.
+     *
+     * @return the percentile, from 1 to 100
+     */
+    int percentile() default 95;
+
+    /**
+     * Min hedge delay in milliseconds.
+     *
+     * @return the min delay
+     */
+    long minDelay() default 1L;
+
+    /**
+     * Max hedge delay in milliseconds, also used before enough latencies are collected.
+     *
+     * @return the max delay
+     */
+    long maxDelay() default 1000L;
+}
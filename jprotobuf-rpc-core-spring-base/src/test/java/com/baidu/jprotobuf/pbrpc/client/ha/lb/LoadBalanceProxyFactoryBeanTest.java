@@ -3,12 +3,17 @@
  */
 package com.baidu.jprotobuf.pbrpc.client.ha.lb;
 
+import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.baidu.jprotobuf.pbrpc.client.RpcCancelHandle;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.HedgePolicy;
+import com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge.Hedged;
 import com.baidu.jprotobuf.pbrpc.client.test.Greet;
 import com.baidu.jprotobuf.pbrpc.client.test.SimpleGreet;
 
@@ -83,4 +88,122 @@ public class LoadBalanceProxyFactoryBeanTest {
             Assert.fail(e.getMessage());
         }
     }
+
+    /**
+     * Service with hedged method.
+     */
+    public interface HedgedGreet {
+
+        /**
+         * Hedged call.
+         *
+         * @param name the arg
+         * @return the string
+         */
+        @Hedged(maxDelay = 50)
+        String greet(String name);
+    }
+
+    /**
+     * Hedged greet responses after the delay, returns early if cancelled like RPC call.
+     */
+    public static class DelayedGreet implements HedgedGreet {
+
+        /** The delay. */
+        private final long delay;
+
+        /** The count of cancelled calls. */
+        private final AtomicInteger cancelled = new AtomicInteger();
+
+        /** The thread of last call. */
+        private volatile Thread lastThread;
+
+        /**
+         * Instantiates a new delayed greet.
+         *
+         * @param delay the delay
+         */
+        public DelayedGreet(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public String greet(String name) {
+            lastThread = Thread.currentThread();
+            RpcCancelHandle handle = RpcCancelHandle.getCurrent();
+            long end = System.currentTimeMillis() + delay;
+            while (System.currentTimeMillis() < end) {
+                if (handle != null && handle.isCancelled()) {
+                    cancelled.incrementAndGet();
+                    throw new IllegalStateException("cancelled");
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return "delay " + delay + " " + name;
+        }
+    }
+
+    @Test
+    public void testHedgedInvoke() throws Exception {
+        Map<String, Object> targetBeans = new HashMap<String, Object>();
+        DelayedGreet slow = new DelayedGreet(2000L);
+        DelayedGreet fast = new DelayedGreet(0L);
+        targetBeans.put("slow", slow);
+        targetBeans.put("fast", fast);
+
+        HedgePolicy hedgePolicy = new HedgePolicy();
+        hedgePolicy.setMaxHedgeRatio(1D);
+        LoadBalanceProxyFactoryBean loadBalanceProxyFactoryBean =
+                newLoadBalanceProxyFactoryBean(HedgedGreet.class, targetBeans);
+        loadBalanceProxyFactoryBean.setHedgePolicy(hedgePolicy);
+        loadBalanceProxyFactoryBean.afterPropertiesSet();
+        try {
+            HedgedGreet greet = (HedgedGreet) loadBalanceProxyFactoryBean.getObject();
+            for (int i = 0; i < 4; i++) {
+                long time = System.currentTimeMillis();
+                Assert.assertEquals("delay 0 jprotobuf", greet.greet("jprotobuf"));
+                Assert.assertTrue(System.currentTimeMillis() - time < 1000L);
+            }
+            Assert.assertTrue(hedgePolicy.getHedgeCount() > 0);
+            // slow primary call runs on caller thread and is cancelled as loser
+            Assert.assertSame(Thread.currentThread(), slow.lastThread);
+            Assert.assertTrue(slow.cancelled.get() > 0);
+            Assert.assertEquals(0, fast.cancelled.get());
+        } finally {
+            loadBalanceProxyFactoryBean.destroy();
+        }
+    }
+
+    @Test
+    public void testHedgeDelayWithSlowTarget() throws Exception {
+        Map<String, Object> targetBeans = new HashMap<String, Object>();
+        targetBeans.put("slow", new DelayedGreet(2000L));
+        targetBeans.put("fast", new DelayedGreet(0L));
+
+        HedgePolicy hedgePolicy = new HedgePolicy();
+        hedgePolicy.setMaxHedgeRatio(1D);
+        hedgePolicy.setMinSamples(4);
+        LoadBalanceProxyFactoryBean loadBalanceProxyFactoryBean =
+                newLoadBalanceProxyFactoryBean(HedgedGreet.class, targetBeans);
+        loadBalanceProxyFactoryBean.setHedgePolicy(hedgePolicy);
+        loadBalanceProxyFactoryBean.afterPropertiesSet();
+        try {
+            HedgedGreet greet = (HedgedGreet) loadBalanceProxyFactoryBean.getObject();
+            for (int i = 0; i < 16; i++) {
+                Assert.assertEquals("delay 0 jprotobuf", greet.greet("jprotobuf"));
+            }
+            Assert.assertTrue(hedgePolicy.getHedgeCount() > 0);
+
+            // cancelled slow calls are recorded, fast hedges do not shrink the delay
+            Method method = HedgedGreet.class.getMethod("greet", String.class);
+            Hedged hedged = method.getAnnotation(Hedged.class);
+            Assert.assertEquals(hedged.maxDelay(), hedgePolicy.getDelay(method, hedged));
+        } finally {
+            loadBalanceProxyFactoryBean.destroy();
+        }
+    }
 }
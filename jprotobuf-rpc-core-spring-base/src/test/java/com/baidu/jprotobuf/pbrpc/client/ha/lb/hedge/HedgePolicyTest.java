@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2017 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.jprotobuf.pbrpc.client.ha.lb.hedge;
+
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link HedgePolicy}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class HedgePolicyTest {
+
+    /**
+     * Hedged method for test.
+     */
+    @Hedged(percentile = 90, minDelay = 5, maxDelay = 500)
+    public void hedgedMethod() {
+    }
+
+    @Test
+    public void testDelay() throws Exception {
+        Method method = HedgePolicyTest.class.getMethod("hedgedMethod");
+        Hedged hedged = method.getAnnotation(Hedged.class);
+        HedgePolicy policy = new HedgePolicy();
+        policy.setMinSamples(10);
+
+        // not enough latencies
+        Assert.assertEquals(500L, policy.getDelay(method, hedged));
+        for (int i = 1; i <= 10; i++) {
+            policy.record(method, i * 10);
+        }
+        Assert.assertEquals(90L, policy.getDelay(method, hedged));
+
+        HedgePolicy fastPolicy = new HedgePolicy();
+        fastPolicy.setMinSamples(1);
+        fastPolicy.record(method, 1);
+        Assert.assertEquals(5L, fastPolicy.getDelay(method, hedged));
+    }
+
+    @Test
+    public void testBudget() {
+        HedgePolicy policy = new HedgePolicy();
+        policy.setMaxHedgeRatio(0.5D);
+        policy.setMaxHedgeBurst(2);
+        Assert.assertFalse(policy.tryAcquire());
+
+        policy.onCall();
+        Assert.assertFalse(policy.tryAcquire());
+        policy.onCall();
+        Assert.assertTrue(policy.tryAcquire());
+        Assert.assertFalse(policy.tryAcquire());
+
+        // no more than burst tokens saved
+        for (int i = 0; i < 100; i++) {
+            policy.onCall();
+        }
+        Assert.assertTrue(policy.tryAcquire());
+        Assert.assertTrue(policy.tryAcquire());
+        Assert.assertFalse(policy.tryAcquire());
+        Assert.assertEquals(3L, policy.getHedgeCount());
+    }
+}
@@ -10,11 +10,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +32,7 @@ import com.baidu.jprotobuf.pbrpc.LogIDGenerator;
 import com.baidu.jprotobuf.pbrpc.ProtobufRPC;
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
 import com.baidu.jprotobuf.pbrpc.data.RpcResponseMeta;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
 import com.baidu.jprotobuf.pbrpc.transport.BlockingRpcCallback;
 import com.baidu.jprotobuf.pbrpc.transport.Connection;
 import com.baidu.jprotobuf.pbrpc.transport.ExceptionHandler;
@@ -310,52 +314,95 @@ public class DynamicProtobufRpcProxy {
 
         final String serviceName = rpcMethodInfo.getServiceName();
         final String m = rpcMethodInfo.getMethodName();
-        final Connection connection = rpcChannel.getConnection();
-        BlockingRpcCallback.CallbackDone done = null;
-        CompletableFuture<Object> completableFuture = null;
+
+        // inherit remaining time of current RPC service handle and pass it to server
+        onceTalkTimeout = RpcServiceHandleContext.getRemainingTimeout(onceTalkTimeout);
+        if (onceTalkTimeout <= 0) {
+            throw new TimeoutException("Deadline of current RPC service handle exceeded before invoke service '"
+                    + serviceName + "' method '" + m + "'");
+        }
+        rpcDataPackage.getRpcMeta().getRequest().setTimeout(onceTalkTimeout);
+
         if (method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
-            CompletableFuture<Object> f = new CompletableFuture<>();
-            done = new BlockingRpcCallback.CallbackDone() {
+            // connection acquire, connect and send are all non-blocking
+            final CompletableFuture<Object> f = new CompletableFuture<>();
+            final RpcDataPackage request = rpcDataPackage;
+            final long talkTimeout = onceTalkTimeout;
+            final long correlationId = request.getRpcMeta().getCorrelationId();
+            f.whenComplete(new BiConsumer<Object, Throwable>() {
                 @Override
-                public void done(RpcDataPackage message) {
-                    rpcChannel.releaseConnection(connection);
+                public void accept(Object o, Throwable t) {
+                    if (f.isCancelled()) {
+                        rpcClient.cancelPendingRequest(correlationId);
+                    }
+                }
+            });
+            rpcChannel.getConnectionAsync().whenComplete(new BiConsumer<Connection, Throwable>() {
+                @Override
+                public void accept(final Connection connection, Throwable t) {
+                    if (t != null) {
+                        if (t instanceof CompletionException && t.getCause() != null) {
+                            t = t.getCause();
+                        }
+                        f.completeExceptionally(t);
+                        return;
+                    }
+                    if (f.isDone()) {
+                        // cancelled before connection acquired
+                        rpcChannel.releaseConnection(connection);
+                        return;
+                    }
+                    BlockingRpcCallback callback = new BlockingRpcCallback(new BlockingRpcCallback.CallbackDone() {
+                        @Override
+                        public void done(RpcDataPackage message) {
+                            rpcChannel.releaseConnection(connection);
+                            try {
+                                Object o = decodeRpcResult(message, args, serviceName, m, rpcMethodInfo);
+                                f.complete(o);
+                            } catch (Throwable e) {
+                                f.completeExceptionally(e);
+                            }
+                        }
+                    });
                     try {
-                        Object o = decodeRpcResult(message, args, serviceName, m, rpcMethodInfo);
-                        f.complete(o);
+                        rpcChannel.doTransport(connection, request, callback, talkTimeout);
                     } catch (Throwable e) {
+                        rpcChannel.releaseConnection(connection);
                         f.completeExceptionally(e);
                     }
+                    if (f.isCancelled()) {
+                        // cancelled during transport
+                        rpcClient.cancelPendingRequest(correlationId);
+                    }
                 }
-            };
-            completableFuture = f;
-        } else {
-            done = new BlockingRpcCallback.CallbackDone() {
-                @Override
-                public void done(RpcDataPackage message) {
-                    rpcChannel.releaseConnection(connection);
-                }
-            };
+            });
+            return f;
         }
+
+        final Connection connection = rpcChannel.getConnection();
+        BlockingRpcCallback.CallbackDone done = new BlockingRpcCallback.CallbackDone() {
+            @Override
+            public void done(RpcDataPackage message) {
+                rpcChannel.releaseConnection(connection);
+            }
+        };
         final BlockingRpcCallback callback = new BlockingRpcCallback(done);
 
         rpcChannel.doTransport(connection, rpcDataPackage, callback, onceTalkTimeout);
 
-        if (method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
-            return completableFuture;
-        }
-
         if (method.getReturnType().isAssignableFrom(Future.class)) {
+            final long correlationId = rpcDataPackage.getRpcMeta().getCorrelationId();
             // if use non-blocking call
             Future<Object> f = new Future<Object>() {
                 @Override
                 public boolean cancel(boolean mayInterruptIfRunning) {
-                    // can not cancel
-                    return false;
+                    // pending state, timeout and connection are released by cancel
+                    return rpcClient.cancelPendingRequest(correlationId);
                 }
 
                 @Override
                 public boolean isCancelled() {
-                    return false;
+                    return callback.isCancelled();
                 }
 
                 @Override
@@ -369,6 +416,8 @@ public class DynamicProtobufRpcProxy {
                         Object o = doWaitCallback(method, args, rpcMethodInfo.getServiceName(), m, rpcMethodInfo,
                                 callback, -1, null);
                         return o;
+                    } catch (CancellationException e) {
+                        throw e;
                     } catch (Exception e) {
                         throw new ExecutionException(e.getMessage(), e);
                     }
@@ -381,6 +430,8 @@ public class DynamicProtobufRpcProxy {
                         Object o = doWaitCallback(method, args, rpcMethodInfo.getServiceName(), m, rpcMethodInfo,
                                 callback, timeout, unit);
                         return o;
+                    } catch (CancellationException e) {
+                        throw e;
                     } catch (Exception e) {
                         throw new ExecutionException(e.getMessage(), e);
                     }
@@ -422,23 +473,11 @@ public class DynamicProtobufRpcProxy {
      */
     private Object doWaitCallback(Method method, Object[] args, String serviceName, String methodName,
             RpcMethodInfo rpcMethodInfo, BlockingRpcCallback callback, long timeout, TimeUnit unit) throws Exception {
-        if (!callback.isDone()) {
-            long timeExpire = 0;
-            if (timeout > 0 && unit != null) {
-                timeExpire = System.currentTimeMillis() + unit.toMillis(timeout);
-            }
-            while (!callback.isDone()) {
-                synchronized (callback) {
-                    try {
-                        if (timeExpire > 0 && System.currentTimeMillis() > timeExpire) {
-                            throw new TimeoutException("Ocurrs time out with specfied time " + timeout + " " + unit);
-                        }
-                        callback.wait(10L);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
+        if (!callback.await(timeout, unit)) {
+            throw new TimeoutException("Ocurrs time out with specfied time " + timeout + " " + unit);
+        }
+        if (callback.isCancelled()) {
+            throw new CancellationException(ErrorCodes.MSG_CANCELLED);
         }
 
         return decodeRpcResult(callback.getMessage(), args, serviceName, methodName, rpcMethodInfo);
@@ -506,41 +545,46 @@ public class DynamicProtobufRpcProxy {
 
     private Object decodeRpcResult(RpcDataPackage message, Object[] args, String serviceName, String methodName,
                                    RpcMethodInfo rpcMethodInfo) throws Exception {
-        RpcResponseMeta response = message.getRpcMeta().getResponse();
-        if (response != null) {
-            Integer errorCode = response.getErrorCode();
-            if (!ErrorCodes.isSuccess(errorCode)) {
-
-                if (exceptionHandler != null) {
+        try {
+            RpcResponseMeta response = message.getRpcMeta().getResponse();
+            if (response != null) {
+                Integer errorCode = response.getErrorCode();
+                if (!ErrorCodes.isSuccess(errorCode)) {
+
+                    if (exceptionHandler != null) {
+
+                        RpcErrorMessage rpcErrorMessage = new RpcErrorMessage(errorCode, response.getErrorText());
+                        Exception exception = exceptionHandler.handleException(rpcErrorMessage);
+                        if (exception != null) {
+                            throw exception;
+                        }
 
-                    RpcErrorMessage rpcErrorMessage = new RpcErrorMessage(errorCode, response.getErrorText());
-                    Exception exception = exceptionHandler.handleException(rpcErrorMessage);
-                    if (exception != null) {
-                        throw exception;
+                    } else {
+                        String error = message.getRpcMeta().getResponse().getErrorText();
+                        throw new ErrorDataException("A error occurred: errorCode=" + errorCode + " errorMessage:" + error,
+                                errorCode);
                     }
+                }
+            }
 
-                } else {
-                    String error = message.getRpcMeta().getResponse().getErrorText();
-                    throw new ErrorDataException("A error occurred: errorCode=" + errorCode + " errorMessage:" + error,
-                            errorCode);
+            byte[] attachment = message.getAttachment();
+            if (attachment != null) {
+                ClientAttachmentHandler attachmentHandler = rpcMethodInfo.getClientAttachmentHandler();
+                if (attachmentHandler != null) {
+                    attachmentHandler.handleResponse(attachment, serviceName, methodName, args);
                 }
             }
-        }
 
-        byte[] attachment = message.getAttachment();
-        if (attachment != null) {
-            ClientAttachmentHandler attachmentHandler = rpcMethodInfo.getClientAttachmentHandler();
-            if (attachmentHandler != null) {
-                attachmentHandler.handleResponse(attachment, serviceName, methodName, args);
+            // handle response data
+            byte[] data = message.getData();
+            if (data == null) {
+                return null;
             }
-        }
 
-        // handle response data
-        byte[] data = message.getData();
-        if (data == null) {
-            return null;
+            return rpcMethodInfo.outputDecode(data);
+        } finally {
+            // release retained buffers if not consumed
+            message.release();
         }
-
-        return rpcMethodInfo.outputDecode(data);
     }
 }
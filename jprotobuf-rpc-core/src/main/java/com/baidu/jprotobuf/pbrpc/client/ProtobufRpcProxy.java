@@ -13,11 +13,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +33,7 @@ import com.baidu.jprotobuf.pbrpc.data.Trace;
 import com.baidu.jprotobuf.pbrpc.data.TraceContext;
 import com.baidu.jprotobuf.pbrpc.intercept.InvokerInterceptor;
 import com.baidu.jprotobuf.pbrpc.intercept.MethodInvocationInfo;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
 import com.baidu.jprotobuf.pbrpc.transport.BlockingRpcCallback;
 import com.baidu.jprotobuf.pbrpc.transport.ChannelPoolSharableFactory;
 import com.baidu.jprotobuf.pbrpc.transport.Connection;
@@ -299,6 +303,12 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
                 methodInfo.setOnceTalkTimeout(protobufPRC.onceTalkTimeout());
                 methodInfo.setServiceName(serviceName);
                 methodInfo.setMethodName(methodName);
+                Integer compressType = rpcClient.getRpcClientOptions().getCompressTypes().get(methodSignature);
+                if (compressType != null) {
+                    methodInfo.setCompressType(compressType);
+                }
+                methodInfo.setPriority(rpcClient.getRpcClientOptions().getPriorities().get(methodSignature));
+                methodInfo.setTenant(rpcClient.getRpcClientOptions().getTenant());
 
                 cachedRpcMethods.put(methodSignature, methodInfo);
 
@@ -497,35 +507,62 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
                 throw new RuntimeException("No rpcChannel bind with serviceSignature '" + channelKey + "'");
             }
 
+            // to check time out setting if need
+            long talkTimeout = TalkTimeoutController.getTalkTimeout();
+            if (talkTimeout > 0) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE,
+                            "talk time out is changed by TalkTimeoutController new value is '" + talkTimeout + "'");
+                }
+                onceTalkTimeout = talkTimeout;
+            }
+
+            if (TalkTimeoutController.isEnableOnce()) {
+                TalkTimeoutController.clearTalkTimeout();
+            }
+
+            // inherit remaining time of current RPC service handle and pass it to server
+            if (RpcServiceHandleContext.getDeadline() != null) {
+                onceTalkTimeout = RpcServiceHandleContext.getRemainingTimeout(onceTalkTimeout);
+                if (onceTalkTimeout <= 0) {
+                    ErrorDataException e = new ErrorDataException(
+                            "Deadline of current RPC service handle exceeded before invoke service '" + serviceName
+                                    + "' method '" + methodName + "'",
+                            ErrorCodes.ST_READ_TIMEOUT);
+                    if (Future.class.isAssignableFrom(method.getReturnType())) {
+                        CompletableFuture<Object> f = new CompletableFuture<Object>();
+                        f.completeExceptionally(e);
+                        return f;
+                    }
+                    throw e;
+                }
+            }
+            if (onceTalkTimeout > 0) {
+                rpcDataPackage.getRpcMeta().getRequest().setTimeout(onceTalkTimeout);
+            }
+
+            final boolean innerReusePool = rpcClient.getRpcClientOptions().isInnerResuePool();
+            if (method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
+                // connection acquire, connect and send are all non-blocking
+                CompletableFuture<Connection> connectionFuture;
+                if (!innerReusePool) {
+                    connectionFuture = rpcChannel.getReusedConnectionAsync();
+                } else {
+                    connectionFuture = rpcChannel.getConnectionAsync();
+                }
+                return doTransportAsync(rpcChannel, connectionFuture, rpcDataPackage, onceTalkTimeout, args,
+                        serviceName, methodName, rpcMethodInfo);
+            }
+
             final Connection connection;
-            if (!rpcClient.getRpcClientOptions().isInnerResuePool()) {
+            if (!innerReusePool) {
                 connection = rpcChannel.getReusedConnection();
             } else {
                 connection = rpcChannel.getConnection();
             }
-            
-            boolean innerReusePool = rpcClient.getRpcClientOptions().isInnerResuePool();
+
             BlockingRpcCallback.CallbackDone callbackDone = null;
-            CompletableFuture<Object> completableFuture = null;
-            if (method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
-                CompletableFuture<Object> f = new CompletableFuture<>();
-                String m = methodName;
-                callbackDone = new BlockingRpcCallback.CallbackDone() {
-                    @Override
-                    public void done(RpcDataPackage message) {
-                        if (!innerReusePool) {
-                            rpcChannel.releaseConnection(connection);
-                        }
-                        try {
-                            Object o = decodeRpcResult(message, args, serviceName, m, rpcMethodInfo);
-                            f.complete(o);
-                        } catch (Throwable e) {
-                            f.completeExceptionally(e);
-                        }
-                    }
-                };
-                completableFuture = f;
-            }  else if (!innerReusePool) {
+            if (!innerReusePool) {
                 callbackDone = new BlockingRpcCallback.CallbackDone() {
                     @Override
                     public void done(RpcDataPackage message) {
@@ -536,43 +573,35 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
 
             final BlockingRpcCallback callback = new BlockingRpcCallback(callbackDone);
 
-            // to check time out setting if need
-            long talkTimeout = TalkTimeoutController.getTalkTimeout();
-            if (talkTimeout > 0) {
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.log(Level.FINE,
-                            "talk time out is changed by TalkTimeoutController new value is '" + talkTimeout + "'");
-                }
-                onceTalkTimeout = talkTimeout;
-            }
-
-            if (TalkTimeoutController.isEnableOnce()) {
-                TalkTimeoutController.clearTalkTimeout();
-            }
-
             try {
                 rpcChannel.doTransport(connection, rpcDataPackage, callback, onceTalkTimeout);
             } finally {
-                if (rpcClient.getRpcClientOptions().isInnerResuePool() && rpcChannel != null) {
+                if (innerReusePool) {
                     rpcChannel.releaseConnection(connection);
                 }
             }
 
-            if (method.getReturnType().isAssignableFrom(CompletableFuture.class)) {
-                return completableFuture;
-            } else if (method.getReturnType().isAssignableFrom(Future.class)) {
+            RpcCancelHandle cancelHandle = RpcCancelHandle.getCurrent();
+            if (cancelHandle != null) {
+                // blocking call could be cancelled by other thread
+                cancelHandle.register(rpcClient, rpcDataPackage.getRpcMeta().getCorrelationId());
+            }
+
+            if (method.getReturnType().isAssignableFrom(Future.class)) {
                 final String m = methodName;
+                final long correlationId = rpcDataPackage.getRpcMeta().getCorrelationId();
                 // if use non-blocking call
                 Future<Object> f = new Future<Object>() {
 
                     @Override
                     public boolean cancel(boolean mayInterruptIfRunning) {
-                        return false;
+                        // pending state, timeout and connection are released by cancel
+                        return rpcClient.cancelPendingRequest(correlationId);
                     }
 
                     @Override
                     public boolean isCancelled() {
-                        return false;
+                        return callback.isCancelled();
                     }
 
                     @Override
@@ -588,6 +617,8 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
                             PERFORMANCE_LOGGER.fine("RPC client invoke method '" + method.getName() + "' time took:"
                                     + (System.currentTimeMillis() - time) + " ms");
                             return o;
+                        } catch (CancellationException e) {
+                            throw e;
                         } catch (Exception e) {
                             throw new ExecutionException(e.getMessage(), e);
                         }
@@ -599,6 +630,8 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
 
                         try {
                             return doWaitCallback(method, args, serviceName, m, rpcMethodInfo, callback, timeout, unit);
+                        } catch (CancellationException e) {
+                            throw e;
                         } catch (Exception e) {
                             throw new ExecutionException(e.getMessage(), e);
                         }
@@ -621,6 +654,81 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
         }
     }
 
+    /**
+     * Do transport after connection acquired, no caller thread or event loop thread is blocked.
+     *
+     * @param rpcChannel the rpc channel
+     * @param connectionFuture the connection future
+     * @param rpcDataPackage the rpc data package
+     * @param onceTalkTimeout the once talk timeout
+     * @param args method arguments
+     * @param serviceName service name
+     * @param methodName method name
+     * @param rpcMethodInfo RPC method info
+     * @return the future of RPC result
+     */
+    private CompletableFuture<Object> doTransportAsync(final RpcChannel rpcChannel,
+            CompletableFuture<Connection> connectionFuture, final RpcDataPackage rpcDataPackage,
+            final long onceTalkTimeout, final Object[] args, final String serviceName, final String methodName,
+            final RpcMethodInfo rpcMethodInfo) {
+        final boolean innerReusePool = rpcClient.getRpcClientOptions().isInnerResuePool();
+        final long correlationId = rpcDataPackage.getRpcMeta().getCorrelationId();
+        final CompletableFuture<Object> f = new CompletableFuture<>();
+        f.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object o, Throwable t) {
+                if (f.isCancelled()) {
+                    rpcClient.cancelPendingRequest(correlationId);
+                }
+            }
+        });
+        connectionFuture.whenComplete(new BiConsumer<Connection, Throwable>() {
+            @Override
+            public void accept(final Connection connection, Throwable t) {
+                if (t != null) {
+                    if (t instanceof CompletionException && t.getCause() != null) {
+                        t = t.getCause();
+                    }
+                    f.completeExceptionally(t);
+                    return;
+                }
+                if (f.isDone()) {
+                    // cancelled before connection acquired
+                    rpcChannel.releaseConnection(connection);
+                    return;
+                }
+                BlockingRpcCallback callback = new BlockingRpcCallback(new BlockingRpcCallback.CallbackDone() {
+                    @Override
+                    public void done(RpcDataPackage message) {
+                        if (!innerReusePool) {
+                            rpcChannel.releaseConnection(connection);
+                        }
+                        try {
+                            Object o = decodeRpcResult(message, args, serviceName, methodName, rpcMethodInfo);
+                            f.complete(o);
+                        } catch (Throwable e) {
+                            f.completeExceptionally(e);
+                        }
+                    }
+                });
+                try {
+                    rpcChannel.doTransport(connection, rpcDataPackage, callback, onceTalkTimeout);
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                } finally {
+                    if (innerReusePool) {
+                        rpcChannel.releaseConnection(connection);
+                    }
+                }
+                if (f.isCancelled()) {
+                    // cancelled during transport
+                    rpcClient.cancelPendingRequest(correlationId);
+                }
+            }
+        });
+        return f;
+    }
+
     /**
      * do wait {@link BlockingRpcCallback} return.
      *
@@ -638,23 +746,11 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
 
         BlockingRpcCallback c = callback;
 
-        if (!c.isDone()) {
-            long timeExpire = 0;
-            if (timeout > 0 && unit != null) {
-                timeExpire = System.currentTimeMillis() + unit.toMillis(timeout);
-            }
-            while (!c.isDone()) {
-                synchronized (c) {
-                    try {
-                        if (timeExpire > 0 && System.currentTimeMillis() > timeExpire) {
-                            throw new TimeoutException("Ocurrs time out with specfied time " + timeout + " " + unit);
-                        }
-                        c.wait(10L);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
+        if (!c.await(timeout, unit)) {
+            throw new TimeoutException("Ocurrs time out with specfied time " + timeout + " " + unit);
+        }
+        if (c.isCancelled()) {
+            throw new CancellationException(ErrorCodes.MSG_CANCELLED);
         }
 
         return decodeRpcResult(c.getMessage(), args, serviceName, methodName, rpcMethodInfo);
@@ -672,39 +768,49 @@ public class ProtobufRpcProxy<T> implements InvocationHandler {
      */
     private Object decodeRpcResult(RpcDataPackage message, Object[] args, String serviceName, String methodName,
                                    RpcMethodInfo rpcMethodInfo) throws Exception {
-        RpcResponseMeta response = message.getRpcMeta().getResponse();
-        if (response != null) {
-            Integer errorCode = response.getErrorCode();
-            if (!ErrorCodes.isSuccess(errorCode)) {
-                if (exceptionHandler != null) {
-
-                    RpcErrorMessage rpcErrorMessage = new RpcErrorMessage(errorCode, response.getErrorText());
-                    Exception exception = exceptionHandler.handleException(rpcErrorMessage);
-                    if (exception != null) {
-                        throw exception;
+        try {
+            RpcResponseMeta response = message.getRpcMeta().getResponse();
+            if (response != null) {
+                Integer errorCode = response.getErrorCode();
+                if (errorCode != null && errorCode == ErrorCodes.ST_ERROR_COMPRESS
+                        && rpcMethodInfo.fallbackCompressType()) {
+                    LOGGER.warning("Compress type of service name '" + serviceName + "' and method name '" + methodName
+                            + "' failed on peer, fall back to no compress.");
+                }
+                if (!ErrorCodes.isSuccess(errorCode)) {
+                    if (exceptionHandler != null) {
+
+                        RpcErrorMessage rpcErrorMessage = new RpcErrorMessage(errorCode, response.getErrorText());
+                        Exception exception = exceptionHandler.handleException(rpcErrorMessage);
+                        if (exception != null) {
+                            throw exception;
+                        }
+
+                    } else {
+                        String error = message.getRpcMeta().getResponse().getErrorText();
+                        throw new ErrorDataException("A error occurred: errorCode=" + errorCode + " errorMessage:" + error,
+                                errorCode);
                     }
 
-                } else {
-                    String error = message.getRpcMeta().getResponse().getErrorText();
-                    throw new ErrorDataException("A error occurred: errorCode=" + errorCode + " errorMessage:" + error,
-                            errorCode);
                 }
+            }
 
+            byte[] attachment = message.getAttachment();
+            ClientAttachmentHandler attachmentHandler = rpcMethodInfo.getClientAttachmentHandler();
+            if (attachment != null && attachmentHandler != null) {
+                attachmentHandler.handleResponse(attachment, serviceName, methodName, args);
             }
-        }
 
-        byte[] attachment = message.getAttachment();
-        ClientAttachmentHandler attachmentHandler = rpcMethodInfo.getClientAttachmentHandler();
-        if (attachment != null && attachmentHandler != null) {
-            attachmentHandler.handleResponse(attachment, serviceName, methodName, args);
-        }
+            // handle response data
+            byte[] data = message.getData();
+            if (data == null) {
+                return null;
+            }
 
-        // handle response data
-        byte[] data = message.getData();
-        if (data == null) {
-            return null;
+            return rpcMethodInfo.outputDecode(data);
+        } finally {
+            // release retained buffers if not consumed
+            message.release();
         }
-
-        return rpcMethodInfo.outputDecode(data);
     }
 }
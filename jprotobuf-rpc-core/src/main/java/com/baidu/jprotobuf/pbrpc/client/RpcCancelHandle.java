@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.client;
+
+import com.baidu.jprotobuf.pbrpc.transport.RpcClient;
+
+/**
+ * Handle to cancel blocking RPC calls of a thread from another thread. Set it as current handle of the calling thread,
+ * blocking calls of {@link ProtobufRpcProxy} register their requests to it, then {@link #cancel()} completes the
+ * request by {@link RpcClient#cancelPendingRequest(long)} so the calling thread returns at once. Request registered
+ * after cancel is cancelled at once.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcCancelHandle {
+
+    /** The Constant CURRENT. */
+    private static final ThreadLocal<RpcCancelHandle> CURRENT = new ThreadLocal<RpcCancelHandle>();
+
+    /** The rpc client of last registered request. */
+    private RpcClient rpcClient;
+
+    /** The correlation id of last registered request. */
+    private long correlationId;
+
+    /** The cancelled. */
+    private boolean cancelled;
+
+    /**
+     * Gets the handle of current thread.
+     *
+     * @return the handle, null if not set
+     */
+    public static RpcCancelHandle getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the handle of current thread.
+     *
+     * @param handle the handle, null to clear
+     */
+    public static void setCurrent(RpcCancelHandle handle) {
+        if (handle == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(handle);
+        }
+    }
+
+    /**
+     * Register a sent request.
+     *
+     * @param rpcClient the rpc client
+     * @param correlationId the correlation id
+     */
+    public void register(RpcClient rpcClient, long correlationId) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.rpcClient = rpcClient;
+                this.correlationId = correlationId;
+                return;
+            }
+        }
+        rpcClient.cancelPendingRequest(correlationId);
+    }
+
+    /**
+     * Cancel the registered request and requests registered later.
+     *
+     * @return true, if a pending request is cancelled
+     */
+    public boolean cancel() {
+        RpcClient client;
+        long id;
+        synchronized (this) {
+            cancelled = true;
+            client = rpcClient;
+            id = correlationId;
+            rpcClient = null;
+        }
+        return client != null && client.cancelPendingRequest(id);
+    }
+
+    /**
+     * Checks if is cancelled.
+     *
+     * @return true, if is cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -26,6 +26,8 @@ import com.baidu.jprotobuf.pbrpc.DummyClientAttachmentHandler;
 import com.baidu.jprotobuf.pbrpc.DummyLogIDGenerator;
 import com.baidu.jprotobuf.pbrpc.LogIDGenerator;
 import com.baidu.jprotobuf.pbrpc.ProtobufRPC;
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.baidu.jprotobuf.pbrpc.data.RpcMetaTemplate;
 import com.baidu.jprotobuf.pbrpc.utils.ReflectionUtils;
 import com.google.protobuf.AbstractMessage;
 
@@ -68,6 +70,18 @@ public abstract class RpcMethodInfo {
     /** The authentication data handler. */
     private AuthenticationDataHandler authenticationDataHandler;
 
+    /** pre-serialized request meta template. */
+    private volatile RpcMetaTemplate rpcMetaTemplate;
+
+    /** compress type to override compress type of {@link ProtobufRPC}. */
+    private volatile Integer compressType;
+
+    /** priority of request, {@code null} if not set. */
+    private Integer priority;
+
+    /** tenant of request, {@code null} if not set. */
+    private String tenant;
+
     /**
      * Input encode.
      *
@@ -237,6 +251,7 @@ public abstract class RpcMethodInfo {
      */
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
+        this.rpcMetaTemplate = null;
     }
 
     /**
@@ -255,6 +270,7 @@ public abstract class RpcMethodInfo {
      */
     public void setMethodName(String methodName) {
         this.methodName = methodName;
+        this.rpcMetaTemplate = null;
     }
 
     /**
@@ -293,6 +309,96 @@ public abstract class RpcMethodInfo {
         return protobufPRC;
     }
 
+    /**
+     * Gets the compress type. returns compress type of {@link ProtobufRPC} if not override.
+     *
+     * @return the compress type
+     */
+    public int getCompressType() {
+        if (compressType != null) {
+            return compressType;
+        }
+        return protobufPRC.compressType().value();
+    }
+
+    /**
+     * Sets the compress type to override compress type of {@link ProtobufRPC}.
+     *
+     * @param compressType the new compress type
+     */
+    public void setCompressType(Integer compressType) {
+        this.compressType = compressType;
+    }
+
+    /**
+     * Falls back the overridden compress type to {@link RpcMeta#COMPRESS_NO}, called if peer failed to handle it.
+     *
+     * @return true, if compress type is changed
+     * @since 4.2.3
+     */
+    public boolean fallbackCompressType() {
+        Integer current = compressType;
+        if (current == null || current == RpcMeta.COMPRESS_NO) {
+            return false;
+        }
+        compressType = RpcMeta.COMPRESS_NO;
+        return true;
+    }
+
+    /**
+     * Gets the priority of request.
+     *
+     * @return the priority, {@code null} if not set
+     * @since 4.2.3
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of request.
+     *
+     * @param priority the new priority
+     * @since 4.2.3
+     */
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the tenant of request.
+     *
+     * @return the tenant, {@code null} if not set
+     * @since 4.2.3
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Sets the tenant of request.
+     *
+     * @param tenant the new tenant
+     * @since 4.2.3
+     */
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * Gets the pre-serialized request meta template of this method.
+     *
+     * @return the rpc meta template, or {@code null} if service name or method name not set
+     */
+    public RpcMetaTemplate getRpcMetaTemplate() {
+        RpcMetaTemplate template = rpcMetaTemplate;
+        if (template == null && serviceName != null && methodName != null) {
+            template = new RpcMetaTemplate(serviceName, methodName);
+            rpcMetaTemplate = template;
+        }
+        return template;
+    }
+
     /**
      * get the authenticationDataHandler
      * @return the authenticationDataHandler
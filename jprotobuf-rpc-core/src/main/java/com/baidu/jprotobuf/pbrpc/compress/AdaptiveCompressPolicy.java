@@ -0,0 +1,417 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decide whether to compress by observed compress ratio and compress speed of each method and payload size bucket.<br>
+ * Compress result is sampled in windows of {@link #getWindowSize()} samples, decision of the bucket is updated at the
+ * end of each window. If compress is turned off, one of every {@link #getProbeInterval()} payloads is still compressed
+ * as probe, so the decision can be turned on again once payloads become compressible.<br>
+ * Service signatures come from peer, at most {@link #getMaxSignatures()} of them are tracked, payloads of other
+ * signatures are always compressed.<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class AdaptiveCompressPolicy {
+
+    /** upper bounds of payload size buckets, the last bucket has no bound. */
+    private static final int[] BUCKET_BOUNDS = new int[] { 1024, 4096, 16384, 65536, 262144 };
+
+    /** The Constant BUCKET_COUNT. */
+    public static final int BUCKET_COUNT = BUCKET_BOUNDS.length + 1;
+
+    /** The Constant NANOS_PER_SECOND. */
+    private static final double NANOS_PER_SECOND = 1000000000d;
+
+    /** The Constant BYTES_PER_MB. */
+    private static final double BYTES_PER_MB = 1024 * 1024d;
+
+    /** samples to collect before update decision. */
+    private int windowSize = 64;
+
+    /** compress is turned off if compressed size / original size exceeds this value. */
+    private double maxCompressRatio = 0.9d;
+
+    /** compress is turned off if compress speed in MB/s is lower than this value. */
+    private double minCompressSpeed = 10d;
+
+    /** one of every probe interval payloads is compressed when compress is turned off. */
+    private int probeInterval = 32;
+
+    /** max count of tracked service signatures. */
+    private int maxSignatures = 1024;
+
+    /** The stats by service signature. */
+    private final ConcurrentMap<String, Bucket[]> stats = new ConcurrentHashMap<String, Bucket[]>();
+
+    /**
+     * Gets the bucket index of payload size.
+     *
+     * @param size the size
+     * @return the bucket index
+     */
+    public static int getBucketIndex(int size) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (size < BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    /**
+     * Gets the display name of bucket.
+     *
+     * @param index the bucket index
+     * @return the bucket name
+     */
+    public static String getBucketName(int index) {
+        if (index >= BUCKET_BOUNDS.length) {
+            return ">=" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] / 1024 + "K";
+        }
+        return "<" + BUCKET_BOUNDS[index] / 1024 + "K";
+    }
+
+    /**
+     * Checks if payload should be compressed.
+     *
+     * @param serviceSignature the service signature
+     * @param size the payload size
+     * @return true, if should compress
+     */
+    public boolean shouldCompress(String serviceSignature, int size) {
+        Bucket bucket = getBucket(serviceSignature, size);
+        if (bucket == null || bucket.enabled) {
+            return true;
+        }
+        return bucket.skipped.incrementAndGet() % probeInterval == 0;
+    }
+
+    /**
+     * Record a compress result.
+     *
+     * @param serviceSignature the service signature
+     * @param size the original size
+     * @param compressedSize the compressed size
+     * @param nanos the compress time in nanoseconds
+     */
+    public void record(String serviceSignature, int size, int compressedSize, long nanos) {
+        Bucket bucket = getBucket(serviceSignature, size);
+        if (bucket == null) {
+            return;
+        }
+        synchronized (bucket) {
+            bucket.windowSamples++;
+            bucket.windowOriginalBytes += size;
+            bucket.windowCompressedBytes += compressedSize;
+            bucket.windowNanos += nanos;
+            bucket.totalSamples++;
+            if (bucket.windowSamples < windowSize) {
+                return;
+            }
+
+            double ratio = bucket.windowOriginalBytes == 0 ? 1d
+                    : (double) bucket.windowCompressedBytes / bucket.windowOriginalBytes;
+            double speed = bucket.windowNanos <= 0 ? Double.MAX_VALUE
+                    : bucket.windowOriginalBytes / BYTES_PER_MB / (bucket.windowNanos / NANOS_PER_SECOND);
+            bucket.ratio = ratio;
+            bucket.speed = speed;
+            bucket.enabled = ratio <= maxCompressRatio && speed >= minCompressSpeed;
+
+            bucket.windowSamples = 0;
+            bucket.windowOriginalBytes = 0;
+            bucket.windowCompressedBytes = 0;
+            bucket.windowNanos = 0;
+        }
+    }
+
+    /**
+     * Gets the bucket.
+     *
+     * @param serviceSignature the service signature
+     * @param size the size
+     * @return the bucket, null if signature is not tracked
+     */
+    private Bucket getBucket(String serviceSignature, int size) {
+        Bucket[] buckets = stats.get(serviceSignature);
+        if (buckets == null) {
+            if (stats.size() >= maxSignatures) {
+                return null;
+            }
+            buckets = new Bucket[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new Bucket();
+            }
+            Bucket[] old = stats.putIfAbsent(serviceSignature, buckets);
+            if (old != null) {
+                buckets = old;
+            }
+        }
+        return buckets[getBucketIndex(size)];
+    }
+
+    /**
+     * Gets current decisions by service signature, only buckets with samples are returned.
+     *
+     * @return the status sorted by service signature
+     */
+    public Map<String, BucketStatus[]> getStatus() {
+        Map<String, BucketStatus[]> ret = new TreeMap<String, BucketStatus[]>();
+        for (Map.Entry<String, Bucket[]> entry : stats.entrySet()) {
+            BucketStatus[] status = new BucketStatus[BUCKET_COUNT];
+            Bucket[] buckets = entry.getValue();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                Bucket bucket = buckets[i];
+                synchronized (bucket) {
+                    if (bucket.totalSamples > 0 || bucket.skipped.get() > 0) {
+                        status[i] = new BucketStatus(getBucketName(i), bucket.enabled, bucket.ratio, bucket.speed,
+                                bucket.totalSamples, bucket.skipped.get());
+                    }
+                }
+            }
+            ret.put(entry.getKey(), status);
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the window size.
+     *
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the window size.
+     *
+     * @param windowSize the new window size
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * Gets the max count of tracked service signatures.
+     *
+     * @return the max signatures
+     */
+    public int getMaxSignatures() {
+        return maxSignatures;
+    }
+
+    /**
+     * Sets the max count of tracked service signatures.
+     *
+     * @param maxSignatures the new max signatures
+     */
+    public void setMaxSignatures(int maxSignatures) {
+        this.maxSignatures = Math.max(1, maxSignatures);
+    }
+
+    /**
+     * Gets the max compress ratio.
+     *
+     * @return the max compress ratio
+     */
+    public double getMaxCompressRatio() {
+        return maxCompressRatio;
+    }
+
+    /**
+     * Sets the max compress ratio.
+     *
+     * @param maxCompressRatio the new max compress ratio
+     */
+    public void setMaxCompressRatio(double maxCompressRatio) {
+        this.maxCompressRatio = maxCompressRatio;
+    }
+
+    /**
+     * Gets the min compress speed in MB/s.
+     *
+     * @return the min compress speed
+     */
+    public double getMinCompressSpeed() {
+        return minCompressSpeed;
+    }
+
+    /**
+     * Sets the min compress speed in MB/s.
+     *
+     * @param minCompressSpeed the new min compress speed
+     */
+    public void setMinCompressSpeed(double minCompressSpeed) {
+        this.minCompressSpeed = minCompressSpeed;
+    }
+
+    /**
+     * Gets the probe interval.
+     *
+     * @return the probe interval
+     */
+    public int getProbeInterval() {
+        return probeInterval;
+    }
+
+    /**
+     * Sets the probe interval.
+     *
+     * @param probeInterval the new probe interval
+     */
+    public void setProbeInterval(int probeInterval) {
+        this.probeInterval = Math.max(1, probeInterval);
+    }
+
+    /**
+     * Statistics of one size bucket.
+     */
+    private static class Bucket {
+
+        /** The enabled. */
+        private volatile boolean enabled = true;
+
+        /** compress ratio of last window. */
+        private double ratio = -1;
+
+        /** compress speed in MB/s of last window. */
+        private double speed = -1;
+
+        /** The total samples. */
+        private long totalSamples;
+
+        /** payloads checked while compress is turned off, probes included. */
+        private final AtomicLong skipped = new AtomicLong();
+
+        /** The window samples. */
+        private int windowSamples;
+
+        /** The window original bytes. */
+        private long windowOriginalBytes;
+
+        /** The window compressed bytes. */
+        private long windowCompressedBytes;
+
+        /** The window nanos. */
+        private long windowNanos;
+    }
+
+    /**
+     * Decision and statistics of one size bucket.
+     */
+    public static class BucketStatus {
+
+        /** The bucket name. */
+        private final String bucketName;
+
+        /** The enabled. */
+        private final boolean enabled;
+
+        /** The ratio. */
+        private final double ratio;
+
+        /** The speed. */
+        private final double speed;
+
+        /** The samples. */
+        private final long samples;
+
+        /** The skipped. */
+        private final long skipped;
+
+        /**
+         * Instantiates a new bucket status.
+         *
+         * @param bucketName the bucket name
+         * @param enabled the enabled
+         * @param ratio the ratio
+         * @param speed the speed
+         * @param samples the samples
+         * @param skipped the skipped
+         */
+        BucketStatus(String bucketName, boolean enabled, double ratio, double speed, long samples, long skipped) {
+            this.bucketName = bucketName;
+            this.enabled = enabled;
+            this.ratio = ratio;
+            this.speed = speed;
+            this.samples = samples;
+            this.skipped = skipped;
+        }
+
+        /**
+         * Gets the bucket name.
+         *
+         * @return the bucket name
+         */
+        public String getBucketName() {
+            return bucketName;
+        }
+
+        /**
+         * Checks if compress is enabled.
+         *
+         * @return true, if is enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Gets the compress ratio of last window, -1 if no window finished.
+         *
+         * @return the ratio
+         */
+        public double getRatio() {
+            return ratio;
+        }
+
+        /**
+         * Gets the compress speed in MB/s of last window, -1 if no window finished.
+         *
+         * @return the speed
+         */
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * Gets the compressed samples.
+         *
+         * @return the samples
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * Gets the count of payloads checked while compress is turned off, probes included.
+         *
+         * @return the skipped
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+}
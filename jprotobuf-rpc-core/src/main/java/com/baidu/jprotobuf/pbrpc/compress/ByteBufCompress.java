@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.IOException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Compress which supports uncompress from {@link ByteBuf} directly, so data held by a direct buffer need not to be
+ * copied to heap before uncompress.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public interface ByteBufCompress extends Compress {
+
+    /**
+     * Un compress. the input buffer will not be released.
+     *
+     * @param buf the compressed buffer
+     * @param alloc the allocator to allocate result buffer
+     * @return the uncompressed buffer
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    ByteBuf unCompress(ByteBuf buf, ByteBufAllocator alloc) throws IOException;
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+/**
+ * SPI to register {@link Compress} by compress type. Implementations are loaded by {@link java.util.ServiceLoader}
+ * from META-INF/services/com.baidu.jprotobuf.pbrpc.compress.CompressProvider and registered to
+ * {@link CompressRegistry}, provided one will replace the built-in compress of same compress type.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public interface CompressProvider {
+
+    /**
+     * Gets the compress type code written to {@link com.baidu.jprotobuf.pbrpc.data.RpcMeta}.
+     *
+     * @return the compress type
+     */
+    int getCompressType();
+
+    /**
+     * Gets the compress. returned compress should be thread safe.
+     *
+     * @return the compress
+     */
+    Compress getCompress();
+}
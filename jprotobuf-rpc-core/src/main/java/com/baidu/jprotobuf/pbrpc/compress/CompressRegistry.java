@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+
+/**
+ * Registry of shared {@link Compress} instances by compress type. All registered compress should be thread safe.<br>
+ * Custom compress can be registered by {@link #register(int, Compress)} or by {@link CompressProvider} SPI.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class CompressRegistry {
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(CompressRegistry.class.getName());
+
+    /** The compresses. */
+    private static final Map<Integer, Compress> COMPRESSES = new ConcurrentHashMap<Integer, Compress>();
+
+    static {
+        register(RpcMeta.COMPRESS_SNAPPY, new SnappyCompress());
+        register(RpcMeta.COMPERESS_GZIP, new GZipCompress());
+        if (Lz4Compress.isAvailable()) {
+            register(RpcMeta.COMPRESS_LZ4, new Lz4Compress());
+        }
+        if (ZstdCompress.isAvailable()) {
+            register(RpcMeta.COMPRESS_ZSTD, new ZstdCompress());
+        }
+        loadProviders();
+    }
+
+    /**
+     * Load compress from {@link CompressProvider} SPI.
+     */
+    private static void loadProviders() {
+        Iterator<CompressProvider> iter = ServiceLoader
+                .load(CompressProvider.class, CompressRegistry.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!iter.hasNext()) {
+                    break;
+                }
+                CompressProvider provider = iter.next();
+                register(provider.getCompressType(), provider.getCompress());
+            } catch (ServiceConfigurationError e) {
+                LOG.log(Level.SEVERE, "Load compress provider failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Register a compress by compress type. exist one will be replaced.
+     *
+     * @param compressType the compress type
+     * @param compress the compress
+     */
+    public static void register(int compressType, Compress compress) {
+        if (compress == null) {
+            throw new IllegalArgumentException("param 'compress' is null.");
+        }
+        COMPRESSES.put(compressType, compress);
+    }
+
+    /**
+     * Unregister the compress of compress type.
+     *
+     * @param compressType the compress type
+     * @return the removed compress, or {@code null} if not registered
+     */
+    public static Compress unregister(int compressType) {
+        return COMPRESSES.remove(compressType);
+    }
+
+    /**
+     * Checks if compress type is supported. {@link RpcMeta#COMPRESS_NO} is always supported.
+     *
+     * @param compressType the compress type
+     * @return true, if supported
+     */
+    public static boolean isSupported(Integer compressType) {
+        return compressType == null || compressType == RpcMeta.COMPRESS_NO || COMPRESSES.containsKey(compressType);
+    }
+
+    /**
+     * Gets the compress by compress type.
+     *
+     * @param compressType the compress type
+     * @return the compress, or {@code null} if no compress or compress type not registered
+     */
+    public static Compress getCompress(Integer compressType) {
+        if (compressType == null) {
+            return null;
+        }
+        return COMPRESSES.get(compressType);
+    }
+}
@@ -19,11 +19,16 @@ package com.baidu.jprotobuf.pbrpc.compress;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
- * Compress supports by GZIP.
+ * Compress supports by GZIP. This class is thread safe, {@link Deflater} and {@link Inflater} are cached per thread
+ * to avoid native memory allocation on each call.
  *
  * @author xiemalin
  * @since 1.4
@@ -31,67 +36,293 @@ import java.util.zip.GZIPOutputStream;
 public class GZipCompress implements Compress {
 
     /** default buffer size. */
-    private static final int BUFFER_SIZE = 256;
+    private static final int BUFFER_SIZE = 4096;
+
+    /** GZIP header written, same as {@link java.util.zip.GZIPOutputStream}. */
+    private static final byte[] HEADER = new byte[] { (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+            0 };
+
+    /** The Constant TRAILER_SIZE. */
+    private static final int TRAILER_SIZE = 8;
+
+    /** header flag of header crc. */
+    private static final int FHCRC = 2;
+
+    /** header flag of extra field. */
+    private static final int FEXTRA = 4;
+
+    /** header flag of file name. */
+    private static final int FNAME = 8;
+
+    /** header flag of file comment. */
+    private static final int FCOMMENT = 16;
+
+    /** max compression ratio of deflate, used to check uncompressed size in trailer. */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /** max size of deflate buffer to cache per thread. */
+    private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024;
+
+    /** The Constant DEFLATER. */
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    /** The Constant INFLATER. */
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    /** deflate output buffer per thread. */
+    private static final ThreadLocal<byte[]> DEFLATE_BUFFER = new ThreadLocal<byte[]>();
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.baidu.jprotobuf.pbrpc.compress.Compress#compress(byte[])
      */
     public byte[] compress(byte[] array) throws IOException {
         return compress0(array);
     }
-    
+
     public byte[] compress0(byte[] array) throws IOException {
         if (array == null) {
             return null;
         }
 
-        byte[] ret = null;
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        GZIPOutputStream gzip;
-        try {
-            gzip = new GZIPOutputStream(out);
-            gzip.write(array);
-            gzip.close();
-            ret = out.toByteArray();
-        } catch (IOException e) {
-            throw e;
+        byte[] buffer = getDeflateBuffer(deflateBound(array.length));
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(array);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == buffer.length) {
+                byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, size);
+                buffer = newBuffer;
+            }
+            size += deflater.deflate(buffer, size, buffer.length - size);
         }
+
+        CRC32 crc = new CRC32();
+        crc.update(array, 0, array.length);
+
+        byte[] ret = new byte[HEADER.length + size + TRAILER_SIZE];
+        System.arraycopy(HEADER, 0, ret, 0, HEADER.length);
+        System.arraycopy(buffer, 0, ret, HEADER.length, size);
+        writeInt(ret, HEADER.length + size, (int) crc.getValue());
+        writeInt(ret, HEADER.length + size + 4, array.length);
         return ret;
     }
 
-    
+
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.baidu.jprotobuf.pbrpc.compress.Compress#unCompress(byte[])
      */
     public byte[] unCompress(byte[] array) throws IOException {
         return unCompress0(array);
     }
-    
+
     public byte[] unCompress0(byte[] array) throws IOException {
         if (array == null) {
             return null;
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ByteArrayInputStream in = new ByteArrayInputStream(array);
+        int offset = readHeader(array);
+        int trailer = array.length - TRAILER_SIZE;
+        if (trailer < offset) {
+            throw new ZipException("Unexpected end of GZIP input");
+        }
+        long crcValue = readUInt(array, trailer);
+        long size = readUInt(array, trailer + 4);
 
+        // uncompressed size in trailer is mod 2^32, only trust it in possible range
+        if (size > (long) (trailer - offset) * MAX_DEFLATE_RATIO || size > Integer.MAX_VALUE - 8) {
+            return unCompressByStream(array);
+        }
+
+        byte[] ret = new byte[(int) size];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(array, offset, trailer - offset);
+        try {
+            int n = 0;
+            while (n < ret.length) {
+                int len = inflater.inflate(ret, n, ret.length - n);
+                if (len == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += len;
+            }
+            if (!inflater.finished()) {
+                // maybe an empty final block remains
+                inflater.inflate(new byte[1]);
+            }
+            if (n != ret.length || !inflater.finished() || inflater.getRemaining() != 0) {
+                // size not matched or multiple members
+                return unCompressByStream(array);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(ret, 0, ret.length);
+        if (crc.getValue() != crcValue) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        return ret;
+    }
+
+    /**
+     * Un compress by {@link GZIPInputStream} for input not in common format.
+     *
+     * @param array the array
+     * @return the byte[]
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private byte[] unCompressByStream(byte[] array) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(array.length * 2);
+        GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(array), BUFFER_SIZE);
         try {
-            GZIPInputStream gunzip = new GZIPInputStream(in) {
-                
-            };
             byte[] buffer = new byte[BUFFER_SIZE];
             int n;
             while ((n = gunzip.read(buffer)) >= 0) {
                 out.write(buffer, 0, n);
             }
-        } catch (IOException e) {
-            throw e;
+        } finally {
+            gunzip.close();
         }
         return out.toByteArray();
     }
 
+    /**
+     * Read GZIP header.
+     *
+     * @param array the array
+     * @return the offset of compressed data
+     * @throws ZipException if header is invalid
+     */
+    private static int readHeader(byte[] array) throws ZipException {
+        if (array.length < HEADER.length || array[0] != HEADER[0] || array[1] != HEADER[1]) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (array[2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flag = array[3] & 0xff;
+        int offset = HEADER.length;
+        if ((flag & FEXTRA) != 0) {
+            offset += 2 + readUShort(array, offset);
+        }
+        if ((flag & FNAME) != 0) {
+            offset = skipZeroTerminated(array, offset);
+        }
+        if ((flag & FCOMMENT) != 0) {
+            offset = skipZeroTerminated(array, offset);
+        }
+        if ((flag & FHCRC) != 0) {
+            offset += 2;
+        }
+        if (offset > array.length) {
+            throw new ZipException("Unexpected end of GZIP header");
+        }
+        return offset;
+    }
+
+    /**
+     * Skip a zero terminated string.
+     *
+     * @param array the array
+     * @param offset the offset
+     * @return the offset after string
+     * @throws ZipException if no terminated zero found
+     */
+    private static int skipZeroTerminated(byte[] array, int offset) throws ZipException {
+        while (offset < array.length) {
+            if (array[offset++] == 0) {
+                return offset;
+            }
+        }
+        throw new ZipException("Unexpected end of GZIP header");
+    }
+
+    /**
+     * Read little endian unsigned short.
+     *
+     * @param array the array
+     * @param offset the offset
+     * @return the value
+     * @throws ZipException if out of range
+     */
+    private static int readUShort(byte[] array, int offset) throws ZipException {
+        if (offset + 2 > array.length) {
+            throw new ZipException("Unexpected end of GZIP header");
+        }
+        return (array[offset] & 0xff) | ((array[offset + 1] & 0xff) << 8);
+    }
+
+    /**
+     * Read little endian unsigned int.
+     *
+     * @param array the array
+     * @param offset the offset
+     * @return the value
+     */
+    private static long readUInt(byte[] array, int offset) {
+        return ((array[offset] & 0xffL) | ((array[offset + 1] & 0xffL) << 8) | ((array[offset + 2] & 0xffL) << 16)
+                | ((array[offset + 3] & 0xffL) << 24));
+    }
+
+    /**
+     * Write little endian int.
+     *
+     * @param array the array
+     * @param offset the offset
+     * @param value the value
+     */
+    private static void writeInt(byte[] array, int offset, int value) {
+        array[offset] = (byte) value;
+        array[offset + 1] = (byte) (value >> 8);
+        array[offset + 2] = (byte) (value >> 16);
+        array[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Upper bound of deflate output size, same as zlib deflateBound.
+     *
+     * @param size the input size
+     * @return the bound size
+     */
+    private static int deflateBound(int size) {
+        return size + (size >> 12) + (size >> 14) + (size >> 25) + 13;
+    }
+
+    /**
+     * Gets the deflate buffer of current thread.
+     *
+     * @param size the size needed
+     * @return the deflate buffer
+     */
+    private static byte[] getDeflateBuffer(int size) {
+        if (size > MAX_CACHED_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        byte[] buffer = DEFLATE_BUFFER.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[Math.max(size, BUFFER_SIZE)];
+            DEFLATE_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
 }
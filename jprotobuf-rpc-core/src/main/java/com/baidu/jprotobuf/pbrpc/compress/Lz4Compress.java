@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.IOException;
+
+import net.jpountz.lz4.LZ4CompressorWithLength;
+import net.jpountz.lz4.LZ4DecompressorWithLength;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compress supports by LZ4 block format by lz4-java. Compressed data is prefixed by a 4 bytes little endian
+ * uncompressed length, by LZ4CompressorWithLength and LZ4DecompressorWithLength of lz4-java. lz4-java is an optional
+ * dependency, this compress is only available if class net.jpountz.lz4.LZ4Factory is found from class path.<br>
+ * more information pls visit: https://github.com/lz4/lz4-java<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class Lz4Compress implements Compress {
+
+    /** The Constant LZ4_FACTORY_CLASS. */
+    private static final String LZ4_FACTORY_CLASS = "net.jpountz.lz4.LZ4Factory";
+
+    /** size of uncompressed length prefix. */
+    private static final int LENGTH_SIZE = 4;
+
+    /** max compression ratio of LZ4 block, each byte of input produces at most 255 bytes. */
+    private static final int MAX_COMPRESSION_RATIO = 255;
+
+    /** The Constant AVAILABLE. */
+    private static final boolean AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            Class.forName(LZ4_FACTORY_CLASS, false, Lz4Compress.class.getClassLoader());
+            available = true;
+        } catch (Throwable e) {
+            // lz4-java not found
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    /**
+     * Instantiates a new lz4 compress.
+     */
+    public Lz4Compress() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("LZ4 compress is not available, pls add lz4-java to class path.");
+        }
+    }
+
+    /**
+     * Checks if lz4-java is available.
+     *
+     * @return true, if is available
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.Compress#compress(byte[])
+     */
+    public byte[] compress(byte[] array) throws IOException {
+        if (array == null) {
+            return null;
+        }
+        try {
+            // lz4-java types are only used in method body, so this class can be scanned without lz4-java
+            return new LZ4CompressorWithLength(LZ4Factory.fastestInstance().fastCompressor()).compress(array);
+        } catch (RuntimeException e) {
+            throw new IOException("LZ4 compress failed, " + e.getMessage(), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.Compress#unCompress(byte[])
+     */
+    public byte[] unCompress(byte[] array) throws IOException {
+        if (array == null) {
+            return null;
+        }
+        if (array.length < LENGTH_SIZE) {
+            throw new IOException("Malformed LZ4 input, length prefix missing");
+        }
+        // check length prefix before it is allocated by decompressor
+        int length = (array[0] & 0xFF) | (array[1] & 0xFF) << 8 | (array[2] & 0xFF) << 16 | (array[3] & 0xFF) << 24;
+        if (length < 0 || (long) length > (long) (array.length - LENGTH_SIZE) * MAX_COMPRESSION_RATIO
+                + MAX_COMPRESSION_RATIO) {
+            throw new IOException("Malformed LZ4 input, invalid uncompressed length " + length);
+        }
+        try {
+            // decompressor of pure java safe instance is safe for malformed input
+            return new LZ4DecompressorWithLength(LZ4Factory.safeInstance().fastDecompressor()).decompress(array);
+        } catch (RuntimeException e) {
+            // LZ4Exception, or index out of bounds by safe decompressor. LZ4Exception is not caught directly, its
+            // catch clause is resolved when this class is verified, even if lz4-java is absent
+            throw new IOException("Malformed LZ4 input, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Max size of compressed block.
+     *
+     * @param length the uncompressed length
+     * @return the max compressed length
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / MAX_COMPRESSION_RATIO + 16;
+    }
+}
@@ -16,17 +16,31 @@
 package com.baidu.jprotobuf.pbrpc.compress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.xerial.snappy.Snappy;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
 /**
  * Compress support by Snappy by snappy-java client.
- * more information pls visit: https://github.com/xerial/snappy-java
+ * more information pls visit: https://github.com/xerial/snappy-java<br>
+ * This class is thread safe.
  *
  * @author xiemalin
  * @since 2.12
  */
-public class SnappyCompress implements Compress {
+public class SnappyCompress implements ByteBufCompress {
+
+    /** max size of compress buffer to cache per thread. */
+    private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024;
+
+    /** compress output buffer per thread. */
+    private static final ThreadLocal<byte[]> COMPRESS_BUFFER = new ThreadLocal<byte[]>();
 
     /* (non-Javadoc)
      * @see com.baidu.jprotobuf.pbrpc.compress.Compress#compress(byte[])
@@ -35,7 +49,9 @@ public class SnappyCompress implements Compress {
         if (array == null) {
             return null;
         }
-        return Snappy.compress(array);
+        byte[] buffer = getCompressBuffer(Snappy.maxCompressedLength(array.length));
+        int size = Snappy.compress(array, 0, array.length, buffer, 0);
+        return Arrays.copyOf(buffer, size);
     }
 
     /* (non-Javadoc)
@@ -48,5 +64,47 @@ public class SnappyCompress implements Compress {
         return Snappy.uncompress(array);
     }
 
-    
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.ByteBufCompress#unCompress(io.netty.buffer.ByteBuf, io.netty.buffer.ByteBufAllocator)
+     */
+    public ByteBuf unCompress(ByteBuf buf, ByteBufAllocator alloc) throws IOException {
+        if (buf == null) {
+            return null;
+        }
+        if (!buf.isDirect() || buf.nioBufferCount() != 1) {
+            return Unpooled.wrappedBuffer(unCompress(ByteBufUtil.getBytes(buf)));
+        }
+
+        // uncompress from direct buffer to direct buffer without heap copy
+        ByteBuffer compressed = buf.nioBuffer();
+        int size = Snappy.uncompressedLength(compressed);
+        ByteBuf ret = alloc.directBuffer(size);
+        try {
+            Snappy.uncompress(compressed, ret.nioBuffer(0, size));
+            ret.writerIndex(size);
+        } catch (IOException e) {
+            ret.release();
+            throw e;
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the compress buffer of current thread.
+     *
+     * @param size the size needed
+     * @return the compress buffer
+     */
+    private static byte[] getCompressBuffer(int size) {
+        if (size > MAX_CACHED_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        byte[] buffer = COMPRESS_BUFFER.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            COMPRESS_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Compress supports by Zstandard by zstd-jni client. zstd-jni is an optional dependency, this compress is only
+ * available if class com.github.luben.zstd.Zstd is found from class path.<br>
+ * more information pls visit: https://github.com/luben/zstd-jni<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ZstdCompress implements Compress {
+
+    /** The Constant ZSTD_CLASS. */
+    private static final String ZSTD_CLASS = "com.github.luben.zstd.Zstd";
+
+    /** The Constant DEFAULT_LEVEL. */
+    public static final int DEFAULT_LEVEL = 3;
+
+    /** max compression ratio of zstd frame, a 4 bytes RLE block holds at most 128KB. */
+    private static final long MAX_COMPRESSION_RATIO = 32 * 1024;
+
+    /** max size of byte array. */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** Zstd.compress(byte[], int) method. */
+    private static final Method COMPRESS_METHOD;
+
+    /** Zstd.decompress(byte[], int) method. */
+    private static final Method DECOMPRESS_METHOD;
+
+    /** Zstd.decompressedSize(byte[]) method. */
+    private static final Method DECOMPRESSED_SIZE_METHOD;
+
+    /** ZstdInputStream(InputStream) constructor, to decompress frame without content size. */
+    private static final Constructor<?> INPUT_STREAM_CONSTRUCTOR;
+
+    static {
+        Method compress = null;
+        Method decompress = null;
+        Method decompressedSize = null;
+        Constructor<?> inputStream = null;
+        try {
+            ClassLoader classLoader = ZstdCompress.class.getClassLoader();
+            Class<?> zstd = Class.forName(ZSTD_CLASS, true, classLoader);
+            compress = zstd.getMethod("compress", byte[].class, int.class);
+            decompress = zstd.getMethod("decompress", byte[].class, int.class);
+            decompressedSize = zstd.getMethod("decompressedSize", byte[].class);
+            inputStream = Class.forName("com.github.luben.zstd.ZstdInputStream", true, classLoader)
+                    .getConstructor(InputStream.class);
+        } catch (Throwable e) {
+            // zstd-jni not found or native library load failed
+            compress = null;
+        }
+        COMPRESS_METHOD = compress;
+        DECOMPRESS_METHOD = decompress;
+        DECOMPRESSED_SIZE_METHOD = decompressedSize;
+        INPUT_STREAM_CONSTRUCTOR = inputStream;
+    }
+
+    /** The level. */
+    private final int level;
+
+    /**
+     * Instantiates a new zstd compress with default level.
+     */
+    public ZstdCompress() {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * Instantiates a new zstd compress.
+     *
+     * @param level the compression level
+     */
+    public ZstdCompress(int level) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Zstd compress is not available, pls add zstd-jni to class path.");
+        }
+        this.level = level;
+    }
+
+    /**
+     * Checks if zstd-jni is available.
+     *
+     * @return true, if is available
+     */
+    public static boolean isAvailable() {
+        return COMPRESS_METHOD != null;
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.Compress#compress(byte[])
+     */
+    public byte[] compress(byte[] array) throws IOException {
+        if (array == null) {
+            return null;
+        }
+        return (byte[]) invoke(COMPRESS_METHOD, array, level);
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.Compress#unCompress(byte[])
+     */
+    public byte[] unCompress(byte[] array) throws IOException {
+        if (array == null) {
+            return null;
+        }
+        // bound size by compression ratio, so a small frame can not force a large allocation
+        long maxSize = Math.min(Math.max(array.length, 1) * MAX_COMPRESSION_RATIO, MAX_ARRAY_SIZE);
+        long size = (Long) invoke(DECOMPRESSED_SIZE_METHOD, array);
+        if (size < 0 || size > maxSize) {
+            throw new IOException("Invalid zstd frame content size " + size + ", max " + maxSize);
+        }
+        if (size == 0) {
+            // content size is unknown or empty
+            return unCompressStream(array, (int) maxSize);
+        }
+        return (byte[]) invoke(DECOMPRESS_METHOD, array, (int) size);
+    }
+
+    /**
+     * Decompress by stream with max size.
+     *
+     * @param array the array
+     * @param maxSize the max size
+     * @return the decompressed bytes
+     * @throws IOException if frame is malformed or decompressed size exceeds max size
+     */
+    private static byte[] unCompressStream(byte[] array, int maxSize) throws IOException {
+        InputStream in;
+        try {
+            in = (InputStream) INPUT_STREAM_CONSTRUCTOR.newInstance(new ByteArrayInputStream(array));
+        } catch (InvocationTargetException e) {
+            throw new IOException(e.getTargetException().getMessage(), e.getTargetException());
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxSize, array.length << 2));
+            byte[] buffer = new byte[Math.min(maxSize + 1, 8192)];
+            int total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                if (total > maxSize) {
+                    throw new IOException("Zstd decompressed size exceeds max " + maxSize);
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Invoke static method of zstd-jni.
+     *
+     * @param method the method
+     * @param args the args
+     * @return the result
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static Object invoke(Method method, Object... args) throws IOException {
+        try {
+            return method.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            throw new IOException(e.getTargetException().getMessage(), e.getTargetException());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the level.
+     *
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+}
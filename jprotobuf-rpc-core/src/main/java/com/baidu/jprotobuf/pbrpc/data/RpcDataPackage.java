@@ -21,8 +21,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +34,12 @@ import com.baidu.jprotobuf.pbrpc.client.RpcMethodInfo;
 import com.baidu.jprotobuf.pbrpc.utils.ArrayUtils;
 import com.baidu.jprotobuf.pbrpc.utils.LogIdThreadLocalHolder;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
 /**
  * RPC 包数据完整定义实现.
  * 
@@ -101,6 +108,9 @@ public class RpcDataPackage implements Readable, Writerable {
     /** The log. */
     private static Logger LOG = Logger.getLogger(RpcDataPackage.class.getName());
 
+    /** default stream id generator for chunk packages. */
+    private static final AtomicLong STREAM_ID_GENERATOR = new AtomicLong(1);
+
     /** The head. */
     private RpcHeadMeta head;
 
@@ -113,6 +123,12 @@ public class RpcDataPackage implements Readable, Writerable {
     /** The attachment. */
     private byte[] attachment;
 
+    /** The retained data buffer slice if decoded by {@link #read(ByteBuf)}. */
+    private ByteBuf dataBuf;
+
+    /** The retained attachment buffer slice if decoded by {@link #read(ByteBuf)}. */
+    private ByteBuf attachmentBuf;
+
     /** The time stamp. */
     private long timeStamp;
 
@@ -125,15 +141,16 @@ public class RpcDataPackage implements Readable, Writerable {
         if (data == null) {
             return;
         }
-        if (this.data == null) {
+        byte[] current = getData();
+        if (current == null) {
             this.data = data;
             return;
         }
 
-        int len = this.data.length + data.length;
+        int len = current.length + data.length;
         byte[] newData = new byte[len];
-        System.arraycopy(this.data, 0, newData, 0, this.data.length);
-        System.arraycopy(data, 0, newData, this.data.length, data.length);
+        System.arraycopy(current, 0, newData, 0, current.length);
+        System.arraycopy(data, 0, newData, current.length, data.length);
         this.data = newData;
     }
 
@@ -188,11 +205,12 @@ public class RpcDataPackage implements Readable, Writerable {
      * @return {@link List} of {@link RpcDataPackage} after split
      */
     public List<RpcDataPackage> chunk(long chunkSize) {
+        byte[] data = getData();
         if (chunkSize < 1 || data == null || chunkSize > data.length) {
             return Arrays.asList(this);
         }
 
-        long streamId = UUID.randomUUID().toString().hashCode();
+        long streamId = STREAM_ID_GENERATOR.getAndIncrement();
         int chunkId = 0;
         int startPos = 0;
 
@@ -218,6 +236,94 @@ public class RpcDataPackage implements Readable, Writerable {
         return ret;
     }
 
+    /**
+     * To split current {@link RpcDataPackage} by chunkSize into frame buffers ready to send. Data of each chunk is a
+     * slice of the original data and meta is serialized only once for all chunks, so no extra copy is made for
+     * payload.<br>
+     * if chunkSize great than data length will not do split.
+     *
+     * @param alloc the allocator
+     * @param chunkSize target size to split
+     * @param streamId the stream id of chunks, should be unique on the channel
+     * @return {@link List} of frame buffer
+     */
+    public List<ByteBuf> chunk(ByteBufAllocator alloc, long chunkSize, long streamId) {
+        byte[] data = getData();
+        if (chunkSize < 1 || data == null || chunkSize > data.length) {
+            return Collections.singletonList(write(alloc));
+        }
+        if (head == null) {
+            throw new RuntimeException("property 'head' is null.");
+        }
+        if (rpcMeta == null) {
+            throw new RuntimeException("property 'rpcMeta' is null.");
+        }
+
+        byte[] attachment = getAttachment();
+        int attachmentSize = attachment == null ? 0 : attachment.length;
+
+        // serialize meta without chunk info, chunk info field will be appended for each chunk
+        byte[] firstMetaPrefix;
+        byte[] metaPrefix;
+        ChunkInfo chunkInfo = rpcMeta.getChunkInfo();
+        try {
+            rpcMeta.setChunkInfo(null);
+            rpcMeta.setAttachmentSize(attachmentSize);
+            firstMetaPrefix = rpcMeta.write();
+            rpcMeta.setAttachmentSize(0);
+            metaPrefix = rpcMeta.write();
+        } finally {
+            rpcMeta.setChunkInfo(chunkInfo);
+            rpcMeta.setAttachmentSize(attachmentSize);
+        }
+
+        int cSize = Long.valueOf(chunkSize).intValue();
+        List<ByteBuf> ret = new ArrayList<ByteBuf>(data.length / cSize + 1);
+        ByteBuf dataBuf = Unpooled.wrappedBuffer(data);
+        try {
+            int chunkId = 0;
+            for (int startPos = 0; startPos < data.length; startPos += cSize) {
+                int length = Math.min(cSize, data.length - startPos);
+                boolean first = startPos == 0;
+
+                ChunkInfo info = new ChunkInfo();
+                info.setStreamId(streamId);
+                info.setChunkId(startPos + length >= data.length ? -1 : chunkId);
+                byte[] chunkInfoField = RpcMeta.writeChunkInfoField(info);
+
+                byte[] prefix = first ? firstMetaPrefix : metaPrefix;
+                int metaSize = prefix.length + chunkInfoField.length;
+
+                RpcHeadMeta chunkHead = head.copy();
+                chunkHead.setMetaSize(metaSize);
+                chunkHead.setMessageSize(metaSize + length + (first ? attachmentSize : 0));
+
+                ByteBuf headBuf = alloc.ioBuffer(RpcHeadMeta.SIZE + metaSize);
+                chunkHead.write(headBuf);
+                headBuf.writeBytes(prefix);
+                headBuf.writeBytes(chunkInfoField);
+
+                CompositeByteBuf frame = alloc.compositeBuffer(3);
+                frame.addComponent(true, headBuf);
+                frame.addComponent(true, dataBuf.retainedSlice(startPos, length));
+                if (first && attachmentSize > 0) {
+                    frame.addComponent(true, Unpooled.wrappedBuffer(attachment));
+                }
+                ret.add(frame);
+                chunkId++;
+            }
+        } catch (RuntimeException e) {
+            for (ByteBuf frame : ret) {
+                frame.release();
+            }
+            throw e;
+        } finally {
+            dataBuf.release();
+        }
+
+        return ret;
+    }
+
     /**
      * Copy.
      *
@@ -233,8 +339,8 @@ public class RpcDataPackage implements Readable, Writerable {
             rpcDataPackage.setRpcMeta(rpcMeta.copy());
         }
 
-        rpcDataPackage.setData(data);
-        rpcDataPackage.setAttachment(attachment);
+        rpcDataPackage.setData(getData());
+        rpcDataPackage.setAttachment(getAttachment());
 
         return rpcDataPackage;
     }
@@ -538,11 +644,15 @@ public class RpcDataPackage implements Readable, Writerable {
     }
 
     /**
-     * Gets the data.
+     * Gets the data. if data is held by a retained buffer, it will be copied to byte array and the buffer released.
      *
      * @return the data
      */
     public byte[] getData() {
+        if (data == null && dataBuf != null) {
+            data = ByteBufUtil.getBytes(dataBuf);
+            releaseDataBuf();
+        }
         return data;
     }
 
@@ -552,9 +662,84 @@ public class RpcDataPackage implements Readable, Writerable {
      * @param data the new data
      */
     public void setData(byte[] data) {
+        releaseDataBuf();
         this.data = data;
     }
 
+    /**
+     * Gets the retained data buffer. returns {@code null} if data is not held by buffer.
+     *
+     * @return the data buffer
+     */
+    public ByteBuf getDataBuf() {
+        return dataBuf;
+    }
+
+    /**
+     * Sets the data buffer. ownership of the buffer is moved to this package, it will be released after data
+     * materialized by {@link #getData()} or {@link #release()} called.
+     *
+     * @param dataBuf the new data buffer
+     */
+    public void setDataBuf(ByteBuf dataBuf) {
+        releaseDataBuf();
+        this.data = null;
+        this.dataBuf = dataBuf;
+    }
+
+    /**
+     * Detach data from this package as a buffer. ownership of the returned buffer is moved to caller and data of this
+     * package will be cleared.
+     *
+     * @return the data buffer, or {@code null} if no data
+     */
+    public ByteBuf detachDataBuf() {
+        ByteBuf ret = dataBuf;
+        if (ret == null && data != null) {
+            ret = Unpooled.wrappedBuffer(data);
+        }
+        dataBuf = null;
+        data = null;
+        return ret;
+    }
+
+    /**
+     * Gets the retained attachment buffer. returns {@code null} if attachment is not held by buffer.
+     *
+     * @return the attachment buffer
+     */
+    public ByteBuf getAttachmentBuf() {
+        return attachmentBuf;
+    }
+
+    /**
+     * Release all retained buffers held by this package. Safe to call more than once.
+     */
+    public void release() {
+        releaseDataBuf();
+        releaseAttachmentBuf();
+    }
+
+    /**
+     * Release data buffer.
+     */
+    private void releaseDataBuf() {
+        if (dataBuf != null) {
+            dataBuf.release();
+            dataBuf = null;
+        }
+    }
+
+    /**
+     * Release attachment buffer.
+     */
+    private void releaseAttachmentBuf() {
+        if (attachmentBuf != null) {
+            attachmentBuf.release();
+            attachmentBuf = null;
+        }
+    }
+
     /**
      * Gets the time stamp.
      *
@@ -574,11 +759,16 @@ public class RpcDataPackage implements Readable, Writerable {
     }
 
     /**
-     * Gets the attachment.
+     * Gets the attachment. if attachment is held by a retained buffer, it will be copied to byte array and the buffer
+     * released.
      *
      * @return the attachment
      */
     public byte[] getAttachment() {
+        if (attachment == null && attachmentBuf != null) {
+            attachment = ByteBufUtil.getBytes(attachmentBuf);
+            releaseAttachmentBuf();
+        }
         return attachment;
     }
 
@@ -588,6 +778,7 @@ public class RpcDataPackage implements Readable, Writerable {
      * @param attachment the new attachment
      */
     public void setAttachment(byte[] attachment) {
+        releaseAttachmentBuf();
         this.attachment = attachment;
     }
 
@@ -637,6 +828,9 @@ public class RpcDataPackage implements Readable, Writerable {
             throw new RuntimeException("property 'rpcMeta' is null.");
         }
 
+        byte[] data = getData();
+        byte[] attachment = getAttachment();
+
         int totolSize = 0;
 
         // set dataSize
@@ -689,6 +883,49 @@ public class RpcDataPackage implements Readable, Writerable {
 
     }
 
+    /**
+     * Write package into a buffer allocated by target {@link ByteBufAllocator}. Total frame size is computed first so
+     * head, meta, data and attachment are written to the buffer directly without intermediate byte array.
+     *
+     * @param alloc the allocator
+     * @return the buffer contains whole package
+     */
+    public ByteBuf write(ByteBufAllocator alloc) {
+        if (head == null) {
+            throw new RuntimeException("property 'head' is null.");
+        }
+        if (rpcMeta == null) {
+            throw new RuntimeException("property 'rpcMeta' is null.");
+        }
+
+        byte[] data = getData();
+        byte[] attachment = getAttachment();
+
+        int dataSize = data == null ? 0 : data.length;
+        int attachmentSize = attachment == null ? 0 : attachment.length;
+        rpcMeta.setAttachmentSize(attachmentSize);
+
+        int rpcMetaSize = rpcMeta.size();
+        head.setMetaSize(rpcMetaSize);
+        head.setMessageSize(rpcMetaSize + dataSize + attachmentSize);
+
+        ByteBuf buf = alloc.ioBuffer(RpcHeadMeta.SIZE + head.getMessageSize());
+        try {
+            head.write(buf);
+            rpcMeta.write(buf, rpcMetaSize);
+            if (data != null) {
+                buf.writeBytes(data);
+            }
+            if (attachment != null) {
+                buf.writeBytes(attachment);
+            }
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        return buf;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -745,6 +982,53 @@ public class RpcDataPackage implements Readable, Writerable {
         }
     }
 
+    /**
+     * Read a whole package from {@link ByteBuf} start at current reader index without copy. head and meta are parsed
+     * directly from buffer, data and attachment are held as retained slices which will be copied to byte array lazily
+     * by {@link #getData()} and {@link #getAttachment()}.<br>
+     * Caller should invoke {@link #release()} if data or attachment is not consumed.
+     *
+     * @param buf the buffer to read, reader index will be moved to the end of this package
+     */
+    public void read(ByteBuf buf) {
+        if (buf == null) {
+            throw new IllegalArgumentException("param 'buf' is null.");
+        }
+        int index = buf.readerIndex();
+
+        // parse RPC head
+        head = new RpcHeadMeta();
+        head.read(buf, index);
+        int endIndex = index + RpcHeadMeta.SIZE + head.getMessageSize();
+        index += RpcHeadMeta.SIZE;
+
+        // parse RPC meta
+        int metaSize = head.getMetaSize();
+        rpcMeta = new RpcMeta();
+        rpcMeta.read(buf, index, metaSize);
+        index += metaSize;
+
+        int attachmentSize = rpcMeta.getAttachmentSize();
+
+        // message data size = totalsize - metasize - attachmentSize
+        int totalSize = head.getMessageSize();
+        int dataSize = totalSize - metaSize - attachmentSize;
+
+        release();
+        data = null;
+        attachment = null;
+        if (dataSize > 0) {
+            dataBuf = buf.retainedSlice(index, dataSize);
+            index += dataSize;
+        }
+
+        if (attachmentSize > 0) {
+            attachmentBuf = buf.retainedSlice(index, attachmentSize);
+        }
+
+        buf.readerIndex(endIndex);
+    }
+
     /**
      * Builds the rpc data package.
      *
@@ -757,7 +1041,10 @@ public class RpcDataPackage implements Readable, Writerable {
         RpcDataPackage dataPackage = new RpcDataPackage();
         dataPackage.magicCode(ProtocolConstant.MAGIC_CODE);
         dataPackage.serviceName(methodInfo.getServiceName()).methodName(methodInfo.getMethodName());
-        dataPackage.compressType(methodInfo.getProtobufPRC().compressType().value());
+        dataPackage.compressType(methodInfo.getCompressType());
+        dataPackage.getRpcMeta().setTemplate(methodInfo.getRpcMetaTemplate());
+        dataPackage.getRpcMeta().getRequest().setPriority(methodInfo.getPriority());
+        dataPackage.getRpcMeta().getRequest().setTenant(methodInfo.getTenant());
         // set data
         if (args != null && args.length == 1) {
             byte[] data = methodInfo.inputEncode(args[0]);
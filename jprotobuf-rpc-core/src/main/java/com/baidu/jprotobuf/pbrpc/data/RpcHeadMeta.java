@@ -18,6 +18,8 @@ package com.baidu.jprotobuf.pbrpc.data;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+
 
 
 /**
@@ -134,6 +136,17 @@ public class RpcHeadMeta implements Writerable, Readable {
         return ret;
     }
 
+    /**
+     * Write head meta into {@link ByteBuf} at current writer index.
+     *
+     * @param buf the buffer
+     */
+    public void write(ByteBuf buf) {
+        buf.writeBytes(magicCode);
+        buf.writeInt(messageSize);
+        buf.writeInt(metaSize);
+    }
+
     /* (non-Javadoc)
      * @see com.baidu.jprotobuf.remoting.pbrpc.Writerable#write(byte[])
      */
@@ -150,6 +163,23 @@ public class RpcHeadMeta implements Writerable, Readable {
         
         allocate.clear();
     }
+
+    /**
+     * Read head meta from {@link ByteBuf} at target index. reader index of buffer will not be changed.
+     *
+     * @param buf the buffer
+     * @param index the start index of head
+     */
+    public void read(ByteBuf buf, int index) {
+        if (buf == null || buf.writerIndex() - index < SIZE) {
+            throw new IllegalArgumentException("invalid byte buffer. readable size must be " + SIZE);
+        }
+
+        magicCode = new byte[4]; // magic code size must be 4.
+        buf.getBytes(index, magicCode);
+        messageSize = buf.getInt(index + 4);
+        metaSize = buf.getInt(index + 8);
+    }
     
     /**
      * Copy.
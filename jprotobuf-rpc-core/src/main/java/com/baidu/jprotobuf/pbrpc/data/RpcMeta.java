@@ -22,6 +22,10 @@ import com.baidu.bjf.remoting.protobuf.Codec;
 import com.baidu.bjf.remoting.protobuf.FieldType;
 import com.baidu.bjf.remoting.protobuf.ProtobufProxy;
 import com.baidu.bjf.remoting.protobuf.annotation.Protobuf;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import io.netty.buffer.ByteBuf;
 
 /**
  * RPC meta data.
@@ -42,9 +46,18 @@ public class RpcMeta implements Readable, Writerable, Cloneable {
     /** The Constant COMPERESS_GZIP. */
     public static final int COMPERESS_GZIP = 2;
 
+    /** The Constant COMPRESS_LZ4. 3 is reserved for zlib as brpc does. */
+    public static final int COMPRESS_LZ4 = 4;
+
+    /** The Constant COMPRESS_ZSTD. */
+    public static final int COMPRESS_ZSTD = 5;
+
     /** Decode and encode handler. */
     private static final Codec<RpcMeta> CODEC = ProtobufProxy.create(RpcMeta.class, false);
 
+    /** field number of chunk info. */
+    private static final int CHUNK_INFO_FIELD = 6;
+
     /** 请求包元数据. */
     @Protobuf(fieldType = FieldType.OBJECT, order = 1)
     private RpcRequestMeta request;
@@ -80,6 +93,9 @@ public class RpcMeta implements Readable, Writerable, Cloneable {
     @Protobuf(fieldType = FieldType.BYTES, order = 7)
     private byte[] authenticationData;
 
+    /** pre-serialized template of request meta, not a protobuf field. */
+    private transient RpcMetaTemplate template;
+
     /**
      * Gets the 请求包元数据.
      *
@@ -212,12 +228,114 @@ public class RpcMeta implements Readable, Writerable, Cloneable {
      */
     public byte[] write() {
         try {
+            if (isTemplateMatched()) {
+                byte[] ret = new byte[template.size(this)];
+                CodedOutputStream output = CodedOutputStream.newInstance(ret);
+                template.writeTo(this, output);
+                output.checkNoSpaceLeft();
+                return ret;
+            }
             return CODEC.encode(this);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Gets the serialized size of meta data.
+     *
+     * @return the serialized size
+     */
+    public int size() {
+        try {
+            if (isTemplateMatched()) {
+                return template.size(this);
+            }
+            return CODEC.size(this);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write meta data into {@link ByteBuf} directly at current writer index.
+     *
+     * @param buf the buffer
+     * @param size the serialized size returned by {@link #size()}
+     */
+    public void write(ByteBuf buf, int size) {
+        if (buf == null) {
+            throw new IllegalArgumentException("param 'buf' is null.");
+        }
+        buf.ensureWritable(size);
+        if (buf.nioBufferCount() != 1) {
+            // composite buffer can not be written by nio buffer view
+            buf.writeBytes(write());
+            return;
+        }
+        int writerIndex = buf.writerIndex();
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(buf.nioBuffer(writerIndex, size));
+            if (isTemplateMatched()) {
+                template.writeTo(this, output);
+            } else {
+                CODEC.writeTo(this, output);
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        buf.writerIndex(writerIndex + size);
+    }
+
+    /**
+     * Checks if template is set and matches current request meta.
+     *
+     * @return true, if template can be used
+     */
+    private boolean isTemplateMatched() {
+        return template != null && template.matches(this);
+    }
+
+    /**
+     * Gets the pre-serialized template of request meta.
+     *
+     * @return the template
+     */
+    public RpcMetaTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Sets the pre-serialized template of request meta. template is used for serialization only if service name and
+     * method name are matched.
+     *
+     * @param template the new template
+     */
+    public void setTemplate(RpcMetaTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Encode chunk info as a single meta field. As protobuf merges fields in any order, it can be appended after
+     * serialized meta without chunk info, so the serialized meta prefix can be reused by all chunks of a stream.
+     *
+     * @param chunkInfo the chunk info
+     * @return the serialized chunk info field
+     */
+    public static byte[] writeChunkInfoField(ChunkInfo chunkInfo) {
+        byte[] bytes = chunkInfo.write();
+        byte[] ret = new byte[CodedOutputStream.computeByteArraySize(CHUNK_INFO_FIELD, bytes)];
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(ret);
+            output.writeByteArray(CHUNK_INFO_FIELD, bytes);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return ret;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -235,6 +353,27 @@ public class RpcMeta implements Readable, Writerable, Cloneable {
         }
     }
 
+    /**
+     * Read meta data from {@link ByteBuf} directly without copy to byte array. reader index of buffer will not be
+     * changed.
+     *
+     * @param buf the buffer
+     * @param index the start index of meta data
+     * @param length the meta data length
+     */
+    public void read(ByteBuf buf, int index, int length) {
+        if (buf == null) {
+            throw new IllegalArgumentException("param 'buf' is null.");
+        }
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(buf.nioBuffer(index, length));
+            RpcMeta meta = CODEC.readFrom(input);
+            copyReference(meta);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
     /**
      * copy {@link RpcMeta}.
      *
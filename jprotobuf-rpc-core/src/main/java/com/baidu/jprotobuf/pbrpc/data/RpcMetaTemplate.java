@@ -0,0 +1,386 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Pre-serialized request meta template of one RPC method. serviceName and methodName are serialized only once as
+ * prefix of request meta, per call fields are written directly by {@link CodedOutputStream} after the prefix without
+ * any copy of meta.<br>
+ * Fields are written in the same order and wire type as {@link RpcMeta} codec, so the result is same as serialized by
+ * codec. Field added to {@link RpcRequestMeta} or {@link RpcMeta} should be added here too.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcMetaTemplate {
+
+    /** field number of request meta in {@link RpcMeta}. */
+    private static final int REQUEST_FIELD = 1;
+
+    /** field number of compress type in {@link RpcMeta}. */
+    private static final int COMPRESS_TYPE_FIELD = 3;
+
+    /** field number of correlation id in {@link RpcMeta}. */
+    private static final int CORRELATION_ID_FIELD = 4;
+
+    /** field number of attachment size in {@link RpcMeta}. */
+    private static final int ATTACHMENT_SIZE_FIELD = 5;
+
+    /** field number of chunk info in {@link RpcMeta}. */
+    private static final int CHUNK_INFO_FIELD = 6;
+
+    /** field number of authentication data in {@link RpcMeta}. */
+    private static final int AUTHENTICATION_DATA_FIELD = 7;
+
+    /** field number of service name in {@link RpcRequestMeta}. */
+    private static final int SERVICE_NAME_FIELD = 1;
+
+    /** field number of method name in {@link RpcRequestMeta}. */
+    private static final int METHOD_NAME_FIELD = 2;
+
+    /** field number of log id in {@link RpcRequestMeta}. */
+    private static final int LOG_ID_FIELD = 3;
+
+    /** field number of trace id in {@link RpcRequestMeta}. */
+    private static final int TRACE_ID_FIELD = 4;
+
+    /** field number of span id in {@link RpcRequestMeta}. */
+    private static final int SPAN_ID_FIELD = 5;
+
+    /** field number of parent span id in {@link RpcRequestMeta}. */
+    private static final int PARENT_SPAN_ID_FIELD = 6;
+
+    /** field number of ext fields in {@link RpcRequestMeta}. */
+    private static final int EXT_FIELDS_FIELD = 7;
+
+    /** field number of extra param in {@link RpcRequestMeta}. */
+    private static final int EXTRA_PARAM_FIELD = 110;
+
+    /** field number of trace key in {@link RpcRequestMeta}. */
+    private static final int TRACE_KEY_FIELD = 111;
+
+    /** field number of timeout in {@link RpcRequestMeta}. */
+    private static final int TIMEOUT_FIELD = 112;
+
+    /** field number of cancel in {@link RpcRequestMeta}. */
+    private static final int CANCEL_FIELD = 113;
+
+    /** field number of priority in {@link RpcRequestMeta}. */
+    private static final int PRIORITY_FIELD = 114;
+
+    /** field number of tenant in {@link RpcRequestMeta}. */
+    private static final int TENANT_FIELD = 115;
+
+    /** field number of key and stream id in {@link RpcRequestMetaExtField} and {@link ChunkInfo}. */
+    private static final int FIRST_FIELD = 1;
+
+    /** field number of value and chunk id in {@link RpcRequestMetaExtField} and {@link ChunkInfo}. */
+    private static final int SECOND_FIELD = 2;
+
+    /** The service name. */
+    private final String serviceName;
+
+    /** The method name. */
+    private final String methodName;
+
+    /** serialized serviceName and methodName fields of request meta. */
+    private final byte[] requestPrefix;
+
+    /**
+     * Instantiates a new rpc meta template.
+     *
+     * @param serviceName the service name
+     * @param methodName the method name
+     */
+    public RpcMetaTemplate(String serviceName, String methodName) {
+        if (serviceName == null || methodName == null) {
+            throw new IllegalArgumentException("param 'serviceName' and 'methodName' should not be null.");
+        }
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        this.requestPrefix = writePrefix(serviceName, methodName);
+    }
+
+    /**
+     * Serialize serviceName and methodName fields of request meta.
+     *
+     * @param serviceName the service name
+     * @param methodName the method name
+     * @return the serialized fields
+     */
+    private static byte[] writePrefix(String serviceName, String methodName) {
+        byte[] ret = new byte[CodedOutputStream.computeStringSize(SERVICE_NAME_FIELD, serviceName)
+                + CodedOutputStream.computeStringSize(METHOD_NAME_FIELD, methodName)];
+        CodedOutputStream output = CodedOutputStream.newInstance(ret);
+        try {
+            output.writeString(SERVICE_NAME_FIELD, serviceName);
+            output.writeString(METHOD_NAME_FIELD, methodName);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if target meta can be written by this template.
+     *
+     * @param meta the meta
+     * @return true, if matched
+     */
+    public boolean matches(RpcMeta meta) {
+        RpcRequestMeta request = meta.getRequest();
+        return request != null && meta.getResponse() == null && serviceName.equals(request.getServiceName())
+                && methodName.equals(request.getMethodName());
+    }
+
+    /**
+     * Gets the serialized size of meta.
+     *
+     * @param meta the meta
+     * @return the serialized size
+     */
+    public int size(RpcMeta meta) {
+        int requestSize = requestSize(meta.getRequest());
+        return CodedOutputStream.computeTagSize(REQUEST_FIELD) + CodedOutputStream.computeUInt32SizeNoTag(requestSize)
+                + requestSize + metaFieldsSize(meta);
+    }
+
+    /**
+     * Write meta to output.
+     *
+     * @param meta the meta
+     * @param output the output
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeTo(RpcMeta meta, CodedOutputStream output) throws IOException {
+        RpcRequestMeta request = meta.getRequest();
+        output.writeTag(REQUEST_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(requestSize(request));
+        output.writeRawBytes(requestPrefix);
+        writeRequestFields(request, output);
+        writeMetaFields(meta, output);
+    }
+
+    /**
+     * Gets the serialized size of request meta.
+     *
+     * @param request the request
+     * @return the serialized size
+     */
+    private int requestSize(RpcRequestMeta request) {
+        int size = requestPrefix.length;
+        if (request.getLogId() != null) {
+            size += CodedOutputStream.computeInt64Size(LOG_ID_FIELD, request.getLogId());
+        }
+        if (request.getTraceId() != null) {
+            size += CodedOutputStream.computeInt64Size(TRACE_ID_FIELD, request.getTraceId());
+        }
+        if (request.getSpanId() != null) {
+            size += CodedOutputStream.computeInt64Size(SPAN_ID_FIELD, request.getSpanId());
+        }
+        if (request.getParentSpanId() != null) {
+            size += CodedOutputStream.computeInt64Size(PARENT_SPAN_ID_FIELD, request.getParentSpanId());
+        }
+        List<RpcRequestMetaExtField> extFields = request.getExtFields();
+        if (extFields != null) {
+            for (RpcRequestMetaExtField extField : extFields) {
+                int extFieldSize = extFieldSize(extField);
+                size += CodedOutputStream.computeTagSize(EXT_FIELDS_FIELD)
+                        + CodedOutputStream.computeUInt32SizeNoTag(extFieldSize) + extFieldSize;
+            }
+        }
+        if (request.getExtraParam() != null) {
+            size += CodedOutputStream.computeByteArraySize(EXTRA_PARAM_FIELD, request.getExtraParam());
+        }
+        if (request.getTraceKey() != null) {
+            size += CodedOutputStream.computeStringSize(TRACE_KEY_FIELD, request.getTraceKey());
+        }
+        if (request.getTimeout() != null) {
+            size += CodedOutputStream.computeInt64Size(TIMEOUT_FIELD, request.getTimeout());
+        }
+        if (request.getCancel() != null) {
+            size += CodedOutputStream.computeBoolSize(CANCEL_FIELD, request.getCancel());
+        }
+        if (request.getPriority() != null) {
+            size += CodedOutputStream.computeInt32Size(PRIORITY_FIELD, request.getPriority());
+        }
+        if (request.getTenant() != null) {
+            size += CodedOutputStream.computeStringSize(TENANT_FIELD, request.getTenant());
+        }
+        return size;
+    }
+
+    /**
+     * Write per call fields of request meta after prefix.
+     *
+     * @param request the request
+     * @param output the output
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void writeRequestFields(RpcRequestMeta request, CodedOutputStream output) throws IOException {
+        if (request.getLogId() != null) {
+            output.writeInt64(LOG_ID_FIELD, request.getLogId());
+        }
+        if (request.getTraceId() != null) {
+            output.writeInt64(TRACE_ID_FIELD, request.getTraceId());
+        }
+        if (request.getSpanId() != null) {
+            output.writeInt64(SPAN_ID_FIELD, request.getSpanId());
+        }
+        if (request.getParentSpanId() != null) {
+            output.writeInt64(PARENT_SPAN_ID_FIELD, request.getParentSpanId());
+        }
+        List<RpcRequestMetaExtField> extFields = request.getExtFields();
+        if (extFields != null) {
+            for (RpcRequestMetaExtField extField : extFields) {
+                output.writeTag(EXT_FIELDS_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(extFieldSize(extField));
+                output.writeString(FIRST_FIELD, extField.getKey());
+                output.writeString(SECOND_FIELD, extField.getValue());
+            }
+        }
+        if (request.getExtraParam() != null) {
+            output.writeByteArray(EXTRA_PARAM_FIELD, request.getExtraParam());
+        }
+        if (request.getTraceKey() != null) {
+            output.writeString(TRACE_KEY_FIELD, request.getTraceKey());
+        }
+        if (request.getTimeout() != null) {
+            output.writeInt64(TIMEOUT_FIELD, request.getTimeout());
+        }
+        if (request.getCancel() != null) {
+            output.writeBool(CANCEL_FIELD, request.getCancel());
+        }
+        if (request.getPriority() != null) {
+            output.writeInt32(PRIORITY_FIELD, request.getPriority());
+        }
+        if (request.getTenant() != null) {
+            output.writeString(TENANT_FIELD, request.getTenant());
+        }
+    }
+
+    /**
+     * Gets the serialized size of ext field, key and value are required as codec.
+     *
+     * @param extField the ext field
+     * @return the serialized size
+     */
+    private static int extFieldSize(RpcRequestMetaExtField extField) {
+        if (extField.getKey() == null || extField.getValue() == null) {
+            throw new UninitializedMessageException(Arrays.asList("key", "value"));
+        }
+        return CodedOutputStream.computeStringSize(FIRST_FIELD, extField.getKey())
+                + CodedOutputStream.computeStringSize(SECOND_FIELD, extField.getValue());
+    }
+
+    /**
+     * Gets the serialized size of meta fields except request and response.
+     *
+     * @param meta the meta
+     * @return the serialized size
+     */
+    private static int metaFieldsSize(RpcMeta meta) {
+        int size = 0;
+        if (meta.getCompressType() != null) {
+            size += CodedOutputStream.computeInt32Size(COMPRESS_TYPE_FIELD, meta.getCompressType());
+        }
+        if (meta.getCorrelationId() != null) {
+            size += CodedOutputStream.computeInt64Size(CORRELATION_ID_FIELD, meta.getCorrelationId());
+        }
+        if (meta.getAttachmentSize() != null) {
+            size += CodedOutputStream.computeInt32Size(ATTACHMENT_SIZE_FIELD, meta.getAttachmentSize());
+        }
+        if (meta.getChunkInfo() != null) {
+            int chunkInfoSize = chunkInfoSize(meta.getChunkInfo());
+            size += CodedOutputStream.computeTagSize(CHUNK_INFO_FIELD)
+                    + CodedOutputStream.computeUInt32SizeNoTag(chunkInfoSize) + chunkInfoSize;
+        }
+        if (meta.getAuthenticationData() != null) {
+            size += CodedOutputStream.computeByteArraySize(AUTHENTICATION_DATA_FIELD, meta.getAuthenticationData());
+        }
+        return size;
+    }
+
+    /**
+     * Write meta fields except request and response.
+     *
+     * @param meta the meta
+     * @param output the output
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void writeMetaFields(RpcMeta meta, CodedOutputStream output) throws IOException {
+        if (meta.getCompressType() != null) {
+            output.writeInt32(COMPRESS_TYPE_FIELD, meta.getCompressType());
+        }
+        if (meta.getCorrelationId() != null) {
+            output.writeInt64(CORRELATION_ID_FIELD, meta.getCorrelationId());
+        }
+        if (meta.getAttachmentSize() != null) {
+            output.writeInt32(ATTACHMENT_SIZE_FIELD, meta.getAttachmentSize());
+        }
+        ChunkInfo chunkInfo = meta.getChunkInfo();
+        if (chunkInfo != null) {
+            output.writeTag(CHUNK_INFO_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(chunkInfoSize(chunkInfo));
+            output.writeInt64(FIRST_FIELD, chunkInfo.getStreamId());
+            output.writeInt64(SECOND_FIELD, chunkInfo.getChunkId());
+        }
+        if (meta.getAuthenticationData() != null) {
+            output.writeByteArray(AUTHENTICATION_DATA_FIELD, meta.getAuthenticationData());
+        }
+    }
+
+    /**
+     * Gets the serialized size of chunk info, stream id is required as codec.
+     *
+     * @param chunkInfo the chunk info
+     * @return the serialized size
+     */
+    private static int chunkInfoSize(ChunkInfo chunkInfo) {
+        if (chunkInfo.getStreamId() == null) {
+            throw new UninitializedMessageException(Arrays.asList("streamId"));
+        }
+        return CodedOutputStream.computeInt64Size(FIRST_FIELD, chunkInfo.getStreamId())
+                + CodedOutputStream.computeInt64Size(SECOND_FIELD, chunkInfo.getChunkId());
+    }
+
+    /**
+     * Gets the service name.
+     *
+     * @return the service name
+     */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Gets the method name.
+     *
+     * @return the method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
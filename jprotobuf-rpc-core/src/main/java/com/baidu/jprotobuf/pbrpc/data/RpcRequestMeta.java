@@ -75,6 +75,22 @@ public class RpcRequestMeta implements Readable, Writerable {
     @Protobuf(order = 111)
     private String traceKey;
 
+    /** 非PbRpc规范，调用方剩余的超时时间(毫秒)，服务端据此丢弃已超时的请求. */
+    @Protobuf(order = 112)
+    private Long timeout;
+
+    /** 非PbRpc规范，为true时表示取消同一correlationId的请求，服务端不返回响应. */
+    @Protobuf(order = 113)
+    private Boolean cancel;
+
+    /** 非PbRpc规范，请求优先级，服务端据此对任务加权公平调度. */
+    @Protobuf(order = 114)
+    private Integer priority;
+
+    /** 非PbRpc规范，租户标识，同一优先级的租户公平分享服务端任务线程. */
+    @Protobuf(order = 115)
+    private String tenant;
+
     /**
      * Gets the service name.
      *
@@ -170,6 +186,10 @@ public class RpcRequestMeta implements Readable, Writerable {
         setParentSpanId(meta.getParentSpanId());
         setExtFields(meta.getExtFields());
         setTraceKey(meta.getTraceKey());
+        setTimeout(meta.getTimeout());
+        setCancel(meta.getCancel());
+        setPriority(meta.getPriority());
+        setTenant(meta.getTenant());
     }
 
     /**
@@ -326,4 +346,84 @@ public class RpcRequestMeta implements Readable, Writerable {
         this.traceKey = traceKey;
     }
 
+    /**
+     * Gets the remaining timeout in milliseconds of caller.
+     *
+     * @return the timeout
+     * @since 4.2.3
+     */
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the remaining timeout in milliseconds of caller.
+     *
+     * @param timeout the new timeout
+     * @since 4.2.3
+     */
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the cancel flag.
+     *
+     * @return true if this is a cancel request of the same correlation id
+     * @since 4.2.3
+     */
+    public Boolean getCancel() {
+        return cancel;
+    }
+
+    /**
+     * Sets the cancel flag.
+     *
+     * @param cancel true if this is a cancel request of the same correlation id
+     * @since 4.2.3
+     */
+    public void setCancel(Boolean cancel) {
+        this.cancel = cancel;
+    }
+
+    /**
+     * Gets the priority.
+     *
+     * @return the priority
+     * @since 4.2.3
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority.
+     *
+     * @param priority the new priority
+     * @since 4.2.3
+     */
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the tenant.
+     *
+     * @return the tenant
+     * @since 4.2.3
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Sets the tenant.
+     *
+     * @param tenant the new tenant
+     * @since 4.2.3
+     */
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
 }
@@ -23,6 +23,7 @@ import static com.baidu.jprotobuf.pbrpc.management.HttpConstants.LINE_BREAK;
 import static com.baidu.jprotobuf.pbrpc.management.HttpConstants.PRE_ENDS;
 import static com.baidu.jprotobuf.pbrpc.management.HttpConstants.PRE_STARTS;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -39,11 +40,19 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy.BucketStatus;
+import com.baidu.jprotobuf.pbrpc.compress.Lz4Compress;
+import com.baidu.jprotobuf.pbrpc.compress.ZstdCompress;
 import com.baidu.jprotobuf.pbrpc.meta.MetaExportHelper;
 import com.baidu.jprotobuf.pbrpc.meta.RpcServiceMeta;
 import com.baidu.jprotobuf.pbrpc.meta.RpcServiceMetaList;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter.LimitStatus;
+import com.baidu.jprotobuf.pbrpc.transport.Bulkhead;
 import com.baidu.jprotobuf.pbrpc.transport.RpcServer;
 import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+import com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue;
 
 /**
  * Server status.
@@ -172,7 +181,8 @@ public class ServerStatus {
         ret.append("RPC port:").append(port).append(LINE_BREAK);
         ret.append("Http management port:").append(httpPort).append(LINE_BREAK);
         ret.append("Chunk enabled").append(LINE_BREAK);
-        ret.append("Compress enabled(Gzip Snappy)").append(LINE_BREAK);
+        ret.append("Compress enabled(Gzip Snappy").append(Lz4Compress.isAvailable() ? " LZ4" : "")
+                .append(ZstdCompress.isAvailable() ? " Zstd)" : ")").append(LINE_BREAK);
         ret.append("Attachment enabled").append(LINE_BREAK);
 
         if (rpcServer.getEs() != null) {
@@ -180,6 +190,10 @@ public class ServerStatus {
             ret.append("Max task count:").append(rpcServer.getEs().getMaximumPoolSize()).append(LINE_BREAK);
             ret.append("Running task count:").append(rpcServer.getEs().getActiveCount()).append(LINE_BREAK);
             ret.append("Waiting task count:").append(rpcServer.getEs().getQueue().size()).append(LINE_BREAK);
+            if (rpcServer.getEs().getQueue() instanceof WeightedFairTaskQueue) {
+                int[] counts = ((WeightedFairTaskQueue) rpcServer.getEs().getQueue()).getQueuedCounts();
+                ret.append("Waiting task count by priority:").append(Arrays.toString(counts)).append(LINE_BREAK);
+            }
 
             ret.append(LINE_BREAK).append(LINE_BREAK);
         }
@@ -232,6 +246,69 @@ public class ServerStatus {
             ret.append("</tr>");
         }
         ret.append("</table>");
+
+        AdaptiveCompressPolicy adaptiveCompressPolicy = rpcServer.getAdaptiveCompressPolicy();
+        if (adaptiveCompressPolicy != null) {
+            ret.append(LINE_BREAK).append("--------------Adaptive Compress Info ----------------").append(LINE_BREAK);
+            ret.append("<table><tr><td>service</td><td>payload size</td><td>compress</td><td>ratio</td>"
+                    + "<td>speed(MB/s)</td><td>compressed count</td><td>checked count while off</td></tr>");
+            for (Entry<String, BucketStatus[]> entry : adaptiveCompressPolicy.getStatus().entrySet()) {
+                for (BucketStatus status : entry.getValue()) {
+                    if (status == null) {
+                        continue;
+                    }
+                    ret.append("<tr>");
+                    ret.append("<td>").append(entry.getKey()).append("</td>");
+                    ret.append("<td>").append(status.getBucketName()).append("</td>");
+                    ret.append("<td>").append(status.isEnabled() ? "on" : "off").append("</td>");
+                    ret.append("<td>").append(String.format("%.3f", status.getRatio())).append("</td>");
+                    ret.append("<td>").append(String.format("%.1f", status.getSpeed())).append("</td>");
+                    ret.append("<td>").append(status.getSamples()).append("</td>");
+                    ret.append("<td>").append(status.getSkipped()).append("</td>");
+                    ret.append("</tr>");
+                }
+            }
+            ret.append("</table>");
+        }
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter = rpcServer.getConcurrencyLimiter();
+        if (concurrencyLimiter != null) {
+            ret.append(LINE_BREAK).append("--------------Concurrency Limit Info ----------------").append(LINE_BREAK);
+            ret.append("<table><tr><td>service</td><td>limit</td><td>in flight</td><td>no-load latency(ms)</td>"
+                    + "<td>latency(ms)</td><td>sampled count</td><td>rejected count</td></tr>");
+            for (Entry<String, LimitStatus> entry : concurrencyLimiter.getStatus().entrySet()) {
+                LimitStatus status = entry.getValue();
+                ret.append("<tr>");
+                ret.append("<td>").append(entry.getKey()).append("</td>");
+                ret.append("<td>").append(status.getLimit()).append("</td>");
+                ret.append("<td>").append(status.getInFlight()).append("</td>");
+                ret.append("<td>").append(String.format("%.3f", status.getNoLoadRtt())).append("</td>");
+                ret.append("<td>").append(String.format("%.3f", status.getRtt())).append("</td>");
+                ret.append("<td>").append(status.getSamples()).append("</td>");
+                ret.append("<td>").append(status.getRejected()).append("</td>");
+                ret.append("</tr>");
+            }
+            ret.append("</table>");
+        }
+
+        Map<String, Bulkhead> bulkheads = rpcServer.getBulkheads();
+        if (!bulkheads.isEmpty()) {
+            ret.append(LINE_BREAK).append("--------------Bulkhead Info ----------------").append(LINE_BREAK);
+            ret.append("<table><tr><td>bulkhead</td><td>max task count</td><td>running task count</td>"
+                    + "<td>waiting task count</td><td>queue capacity</td><td>rejected count</td></tr>");
+            for (Bulkhead bulkhead : bulkheads.values()) {
+                ret.append("<tr>");
+                ret.append("<td>").append(bulkhead.getName()).append("</td>");
+                ret.append("<td>").append(bulkhead.getExecutor().getMaximumPoolSize()).append("</td>");
+                ret.append("<td>").append(bulkhead.getActiveCount()).append("</td>");
+                ret.append("<td>").append(bulkhead.getQueueDepth()).append("</td>");
+                ret.append("<td>").append(bulkhead.getQueueCapacity() > 0 ? bulkhead.getQueueCapacity() : "unbounded")
+                        .append("</td>");
+                ret.append("<td>").append(bulkhead.getRejectedCount()).append("</td>");
+                ret.append("</tr>");
+            }
+            ret.append("</table>");
+        }
         return ret.toString();
     }
 
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit in-flight requests of each method by gradient of observed latency, requests exceed the limit are rejected at
+ * once instead of queued.<br>
+ * Latency from request arrived to handle finished is sampled in windows of {@link #getWindowSize()} samples. At the end
+ * of each window the limit is multiplied by gradient of no-load latency to window latency, which is between 0.5 and 1,
+ * and then increased by square root of the limit as allowance for queueing. So the limit shrinks when latency climbs
+ * and grows slowly while latency is near no-load one. No-load latency is the min window latency, drifted slowly to
+ * window latency so it can follow a changed baseline.<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** The Constant NANOS_PER_MILLI. */
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    /** initial limit of each method. */
+    private int initialLimit = 20;
+
+    /** The min limit. */
+    private int minLimit = 4;
+
+    /** The max limit. */
+    private int maxLimit = 1000;
+
+    /** samples to collect before update limit. */
+    private int windowSize = 100;
+
+    /** window latency less than no-load latency multiplied by this value is not treated as queueing. */
+    private double rttTolerance = 1.5d;
+
+    /** weight of new limit calculated by each window. */
+    private double smoothing = 0.2d;
+
+    /** weight of window latency when no-load latency drifts up. */
+    private double rttDrift = 0.01d;
+
+    /** The limits by service signature. */
+    private final ConcurrentMap<String, MethodLimit> limits = new ConcurrentHashMap<String, MethodLimit>();
+
+    /**
+     * Try to acquire a permit for request, {@link #release(String, long)} should be called if acquired.
+     *
+     * @param serviceSignature the service signature
+     * @return true, if acquired. false if in-flight requests reach the limit
+     */
+    public boolean tryAcquire(String serviceSignature) {
+        MethodLimit limit = getLimit(serviceSignature);
+        int inFlight = limit.inFlight.incrementAndGet();
+        if (inFlight > (int) limit.limit) {
+            limit.inFlight.decrementAndGet();
+            limit.rejected.incrementAndGet();
+            return false;
+        }
+        int peak;
+        while (inFlight > (peak = limit.windowMaxInFlight.get())) {
+            if (limit.windowMaxInFlight.compareAndSet(peak, inFlight)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release the permit and record latency of the request.
+     *
+     * @param serviceSignature the service signature
+     * @param nanos latency in nanoseconds from request arrived to handle finished, negative if not handled
+     */
+    public void release(String serviceSignature, long nanos) {
+        MethodLimit limit = getLimit(serviceSignature);
+        limit.inFlight.decrementAndGet();
+        if (nanos < 0) {
+            return;
+        }
+        limit.windowNanos.addAndGet(nanos);
+        int samples = limit.windowSamples.incrementAndGet();
+        if (samples >= windowSize && limit.updating.compareAndSet(false, true)) {
+            try {
+                update(limit);
+            } finally {
+                limit.updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * Update limit by samples of the window.
+     *
+     * @param limit the limit
+     */
+    private void update(MethodLimit limit) {
+        int samples = limit.windowSamples.getAndSet(0);
+        long nanos = limit.windowNanos.getAndSet(0);
+        int peak = limit.windowMaxInFlight.getAndSet(0);
+        if (samples <= 0) {
+            return;
+        }
+        limit.totalSamples += samples;
+
+        double rtt = (double) nanos / samples;
+        double noLoadRtt = limit.noLoadRtt;
+        if (noLoadRtt <= 0 || rtt < noLoadRtt) {
+            noLoadRtt = rtt;
+        } else {
+            noLoadRtt = noLoadRtt * (1 - rttDrift) + rtt * rttDrift;
+        }
+        limit.noLoadRtt = noLoadRtt;
+        limit.rtt = rtt;
+
+        double current = limit.limit;
+        double gradient = rtt <= 0 ? 1d : Math.max(0.5d, Math.min(1d, rttTolerance * noLoadRtt / rtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        if (peak < current / 2) {
+            // not limited by the limit, no evidence to grow
+            newLimit = Math.min(newLimit, current);
+        }
+        newLimit = current * (1 - smoothing) + newLimit * smoothing;
+        limit.limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    /**
+     * Gets the limit.
+     *
+     * @param serviceSignature the service signature
+     * @return the limit
+     */
+    private MethodLimit getLimit(String serviceSignature) {
+        MethodLimit limit = limits.get(serviceSignature);
+        if (limit == null) {
+            limit = new MethodLimit(initialLimit);
+            MethodLimit old = limits.putIfAbsent(serviceSignature, limit);
+            if (old != null) {
+                limit = old;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Gets current limits by service signature.
+     *
+     * @return the status sorted by service signature
+     */
+    public Map<String, LimitStatus> getStatus() {
+        Map<String, LimitStatus> ret = new TreeMap<String, LimitStatus>();
+        for (Map.Entry<String, MethodLimit> entry : limits.entrySet()) {
+            MethodLimit limit = entry.getValue();
+            ret.put(entry.getKey(), new LimitStatus((int) limit.limit, limit.inFlight.get(),
+                    limit.noLoadRtt / NANOS_PER_MILLI, limit.rtt / NANOS_PER_MILLI, limit.totalSamples,
+                    limit.rejected.get()));
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the initial limit.
+     *
+     * @return the initial limit
+     */
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Sets the initial limit.
+     *
+     * @param initialLimit the new initial limit
+     */
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = Math.max(1, initialLimit);
+    }
+
+    /**
+     * Gets the min limit.
+     *
+     * @return the min limit
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Sets the min limit.
+     *
+     * @param minLimit the new min limit
+     */
+    public void setMinLimit(int minLimit) {
+        this.minLimit = Math.max(1, minLimit);
+    }
+
+    /**
+     * Gets the max limit.
+     *
+     * @return the max limit
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Sets the max limit.
+     *
+     * @param maxLimit the new max limit
+     */
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+    }
+
+    /**
+     * Gets the window size.
+     *
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the window size.
+     *
+     * @param windowSize the new window size
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * Gets the rtt tolerance.
+     *
+     * @return the rtt tolerance
+     */
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    /**
+     * Sets the rtt tolerance. window latency less than no-load latency multiplied by this value is not treated as
+     * queueing.
+     *
+     * @param rttTolerance the new rtt tolerance
+     */
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = Math.max(1d, rttTolerance);
+    }
+
+    /**
+     * Gets the smoothing.
+     *
+     * @return the smoothing
+     */
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    /**
+     * Sets the smoothing. weight of new limit calculated by each window, between 0 and 1.
+     *
+     * @param smoothing the new smoothing
+     */
+    public void setSmoothing(double smoothing) {
+        this.smoothing = Math.max(0d, Math.min(1d, smoothing));
+    }
+
+    /**
+     * Concurrency limit and window statistics of one method.
+     */
+    private static class MethodLimit {
+
+        /** The limit. */
+        private volatile double limit;
+
+        /** The in flight requests. */
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /** The rejected count. */
+        private final AtomicLong rejected = new AtomicLong();
+
+        /** true if limit is being updated. */
+        private final AtomicBoolean updating = new AtomicBoolean();
+
+        /** The window samples. */
+        private final AtomicInteger windowSamples = new AtomicInteger();
+
+        /** The window nanos. */
+        private final AtomicLong windowNanos = new AtomicLong();
+
+        /** max in flight requests of the window. */
+        private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+
+        /** no-load latency in nanoseconds. */
+        private volatile double noLoadRtt;
+
+        /** latency in nanoseconds of last window. */
+        private volatile double rtt;
+
+        /** samples of finished windows. */
+        private volatile long totalSamples;
+
+        /**
+         * Instantiates a new method limit.
+         *
+         * @param limit the initial limit
+         */
+        MethodLimit(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Snapshot of concurrency limit of one method.
+     */
+    public static class LimitStatus {
+
+        /** The limit. */
+        private final int limit;
+
+        /** The in flight. */
+        private final int inFlight;
+
+        /** The no load rtt. */
+        private final double noLoadRtt;
+
+        /** The rtt. */
+        private final double rtt;
+
+        /** The samples. */
+        private final long samples;
+
+        /** The rejected. */
+        private final long rejected;
+
+        /**
+         * Instantiates a new limit status.
+         *
+         * @param limit the limit
+         * @param inFlight the in flight
+         * @param noLoadRtt the no load rtt
+         * @param rtt the rtt
+         * @param samples the samples
+         * @param rejected the rejected
+         */
+        LimitStatus(int limit, int inFlight, double noLoadRtt, double rtt, long samples, long rejected) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.noLoadRtt = noLoadRtt;
+            this.rtt = rtt;
+            this.samples = samples;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Gets the current limit.
+         *
+         * @return the limit
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Gets the in flight requests.
+         *
+         * @return the in flight
+         */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Gets the no-load latency in milliseconds, 0 if no window finished.
+         *
+         * @return the no load rtt
+         */
+        public double getNoLoadRtt() {
+            return noLoadRtt;
+        }
+
+        /**
+         * Gets the latency in milliseconds of last window, 0 if no window finished.
+         *
+         * @return the rtt
+         */
+        public double getRtt() {
+            return rtt;
+        }
+
+        /**
+         * Gets the samples of finished windows.
+         *
+         * @return the samples
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * Gets the rejected count.
+         *
+         * @return the rejected
+         */
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -27,6 +27,9 @@ public class RpcServiceHandleContext {
 
     /** The Constant CHANNEL_CONTEXT. */
     private static final ThreadLocal<ChannelHandlerContext> CHANNEL_CONTEXT = new ThreadLocal<ChannelHandlerContext>();
+
+    /** The Constant DEADLINE. */
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
     
     
     /**
@@ -54,4 +57,49 @@ public class RpcServiceHandleContext {
     public static void clearChannelHandlerContext() {
         CHANNEL_CONTEXT.remove();
     }
+
+    /**
+     * Sets the deadline of current RPC service handle.
+     *
+     * @param deadline the deadline in milliseconds since epoch
+     * @since 4.2.3
+     */
+    public static void setDeadline(long deadline) {
+        DEADLINE.set(deadline);
+    }
+
+    /**
+     * Gets the deadline of current RPC service handle.
+     *
+     * @return the deadline in milliseconds since epoch, {@code null} if no deadline
+     * @since 4.2.3
+     */
+    public static Long getDeadline() {
+        return DEADLINE.get();
+    }
+
+    /**
+     * Gets the timeout limited by remaining time of current RPC service handle. Nested RPC calls inherit the deadline
+     * of current request by this way.
+     *
+     * @param timeout the timeout in milliseconds
+     * @return the timeout, not greater than remaining time of current RPC service handle if it has deadline
+     * @since 4.2.3
+     */
+    public static long getRemainingTimeout(long timeout) {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return timeout;
+        }
+        return Math.min(timeout, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Clear deadline.
+     *
+     * @since 4.2.3
+     */
+    public static void clearDeadline() {
+        DEADLINE.remove();
+    }
 }
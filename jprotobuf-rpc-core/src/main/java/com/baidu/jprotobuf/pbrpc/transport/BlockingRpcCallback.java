@@ -16,15 +16,20 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcResponseMeta;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
 import com.google.protobuf.RpcCallback;
 
 /**
- * A blocking RPC call back handler.
- * 
+ * A blocking RPC call back handler. Waiting threads are parked until {@link #run(RpcDataPackage)} is called, and each
+ * of them is unparked exactly once on completion.
  * 
  * @author xiemalin
  * @since 1.0
@@ -34,8 +39,15 @@ public class BlockingRpcCallback implements RpcCallback<RpcDataPackage> {
     /** The log. */
     private static Logger LOG = Logger.getLogger(BlockingRpcCallback.class.getName());
 
-    /** The done. */
-    private boolean done = false; // 会话完成标识
+    /** marks the callback is done, no more waiters can be added. */
+    private static final WaitNode DONE = new WaitNode(null);
+
+    /** The Constant WAITERS_UPDATER. */
+    private static final AtomicReferenceFieldUpdater<BlockingRpcCallback, WaitNode> WAITERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(BlockingRpcCallback.class, WaitNode.class, "waiters");
+
+    /** stack of waiting threads, or {@link #DONE} if completed. */
+    private volatile WaitNode waiters; // 会话完成标识
     
     /** The callback done. */
     private CallbackDone callbackDone;
@@ -77,11 +89,109 @@ public class BlockingRpcCallback implements RpcCallback<RpcDataPackage> {
                 }
             }
         }
-        synchronized (this) {
-            done = true;
-            this.notifyAll();
+        WaitNode node = WAITERS_UPDATER.getAndSet(this, DONE);
+        while (node != null && node != DONE) {
+            Thread thread = node.thread;
+            if (thread != null) {
+                // skip waiter already timed out
+                LockSupport.unpark(thread);
+            }
+            node = node.next;
+        }
+    }
+
+    /**
+     * Wait until done or time out. interrupt will not stop waiting but interrupt status will be kept.
+     *
+     * @param timeout the timeout, wait until done if timeout is not greater than 0
+     * @param unit the unit, wait until done if unit is {@code null}
+     * @return true, if done. false if time out
+     */
+    public boolean await(long timeout, TimeUnit unit) {
+        if (isDone()) {
+            return true;
+        }
+        long deadline = 0;
+        boolean timed = timeout > 0 && unit != null;
+        if (timed) {
+            deadline = System.nanoTime() + unit.toNanos(timeout);
+        }
+
+        WaitNode node = new WaitNode(Thread.currentThread());
+        WaitNode head;
+        do {
+            head = waiters;
+            if (head == DONE) {
+                return true;
+            }
+            node.next = head;
+        } while (!WAITERS_UPDATER.compareAndSet(this, head, node));
+
+        boolean interrupted = false;
+        try {
+            while (!isDone()) {
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        removeWaiter(node);
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
-        
+    }
+
+    /**
+     * Unlink timed out waiter from stack, so waiters are not accumulated by repeated timed wait.
+     *
+     * @param node the node
+     */
+    private void removeWaiter(WaitNode node) {
+        node.thread = null;
+        retry: for (;;) {
+            WaitNode pred = null;
+            WaitNode q = waiters;
+            while (q != null && q != DONE) {
+                WaitNode s = q.next;
+                if (q.thread != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    pred.next = s;
+                    if (pred.thread == null) {
+                        // pred is removed by other thread, check again
+                        continue retry;
+                    }
+                } else if (!WAITERS_UPDATER.compareAndSet(this, q, s)) {
+                    continue retry;
+                }
+                q = s;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Gets the count of nodes in waiter stack, for test only.
+     *
+     * @return the waiter count
+     */
+    int getWaiterCount() {
+        int count = 0;
+        for (WaitNode q = waiters; q != null && q != DONE; q = q.next) {
+            count++;
+        }
+        return count;
     }
 
     /**
@@ -99,7 +209,43 @@ public class BlockingRpcCallback implements RpcCallback<RpcDataPackage> {
      * @return true, if is done
      */
     public boolean isDone() {
-        return done;
+        return waiters == DONE;
+    }
+
+    /**
+     * Checks if is done by cancel.
+     *
+     * @return true, if is cancelled
+     * @since 4.2.3
+     */
+    public boolean isCancelled() {
+        if (!isDone() || message == null || message.getRpcMeta() == null) {
+            return false;
+        }
+        RpcResponseMeta response = message.getRpcMeta().getResponse();
+        return response != null && response.getErrorCode() != null
+                && response.getErrorCode() == ErrorCodes.ST_CANCELLED;
+    }
+
+    /**
+     * Node of waiting thread.
+     */
+    private static class WaitNode {
+
+        /** The thread, {@code null} if timed out. */
+        private volatile Thread thread;
+
+        /** The next. */
+        private volatile WaitNode next;
+
+        /**
+         * Instantiates a new wait node.
+         *
+         * @param thread the thread
+         */
+        WaitNode(Thread thread) {
+            this.thread = thread;
+        }
     }
 
     /**
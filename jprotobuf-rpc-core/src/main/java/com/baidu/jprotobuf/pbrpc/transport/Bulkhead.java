@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2017 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Isolated task executor of services or methods on server side. Tasks beyond the bounded waiting queue are rejected
+ * at once, so one slow method can not exhaust threads and heap shared by others.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class Bulkhead {
+
+    /** name of bulkhead shared by services without their own one. */
+    public static final String DEFAULT_NAME = "*";
+
+    /** The name. */
+    private final String name;
+
+    /** The executor. */
+    private final ThreadPoolExecutor executor;
+
+    /** The queue capacity, {@code 0} means unbounded. */
+    private final int queueCapacity;
+
+    /** The rejected count. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Instantiates a new bulkhead.
+     *
+     * @param name the name
+     * @param executor the executor
+     * @param queueCapacity the queue capacity, {@code 0} means unbounded
+     */
+    public Bulkhead(String name, ThreadPoolExecutor executor, int queueCapacity) {
+        this.name = name;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Creates bulkhead with fixed task threads.
+     *
+     * @param name the name
+     * @param threads the task threads
+     * @param queueSize the max waiting task count, {@code 0} means unbounded
+     * @return the bulkhead
+     */
+    public static Bulkhead create(String name, int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads of bulkhead '" + name + "' should be greater than 0.");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                newQueue(queueSize), new DefaultThreadFactory("jprotobuf-rpc-bulkhead-" + name));
+        return new Bulkhead(name, executor, Math.max(queueSize, 0));
+    }
+
+    /**
+     * New task waiting queue.
+     *
+     * @param queueSize the queue size, {@code 0} means unbounded
+     * @return the blocking queue
+     */
+    public static BlockingQueue<Runnable> newQueue(int queueSize) {
+        if (queueSize > 0) {
+            return new ArrayBlockingQueue<Runnable>(queueSize);
+        }
+        return new LinkedBlockingQueue<Runnable>();
+    }
+
+    /**
+     * Execute the task if there is free thread or queue slot.
+     *
+     * @param task the task
+     * @return true, if accepted. false if rejected for overloaded
+     */
+    public boolean tryExecute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Shutdown.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the executor.
+     *
+     * @return the executor
+     */
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the queue capacity.
+     *
+     * @return the queue capacity, {@code 0} means unbounded
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the waiting task count.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the running task count.
+     *
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Gets the rejected task count.
+     *
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+}
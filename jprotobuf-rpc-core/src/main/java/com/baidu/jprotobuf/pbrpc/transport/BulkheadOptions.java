@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2017 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+/**
+ * Options of one {@link Bulkhead}, isolated task threads and bounded waiting queue of a service or a method.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class BulkheadOptions {
+
+    /** The task threads. */
+    private int threads;
+
+    /** max waiting task count, request exceeds will be rejected. {@code 0} means unbounded. */
+    private int queueSize;
+
+    /**
+     * Instantiates a new bulkhead options.
+     */
+    public BulkheadOptions() {
+    }
+
+    /**
+     * Instantiates a new bulkhead options.
+     *
+     * @param threads the task threads
+     * @param queueSize the queue size
+     */
+    public BulkheadOptions(int threads, int queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Gets the task threads.
+     *
+     * @return the task threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the task threads.
+     *
+     * @param threads the new task threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the queue size.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets the queue size. max waiting task count, request exceeds will be rejected. {@code 0} means unbounded.
+     *
+     * @param queueSize the new queue size
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "[threads=" + threads + ", queueSize=" + queueSize + "]";
+    }
+
+}
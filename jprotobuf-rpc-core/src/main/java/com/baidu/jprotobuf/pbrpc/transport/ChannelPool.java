@@ -16,15 +16,34 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
+import java.net.ConnectException;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
 /**
- * Adapter for netty channel. Used by Mcpack Netty Client {@link NettyClient}.
+ * Adapter for netty channel. Used by Mcpack Netty Client {@link NettyClient}.<br>
+ * If {@link RpcClientOptions#isMultiplexConnection()} is true, requests are pipelined on a fixed count of long-lived
+ * connections selected by round robin or least in-flight requests instead of borrow and return from pool.
  * 
  * @author xuyuepeng, sunzhongyi, lijianbin
  * 
@@ -34,6 +53,12 @@ public class ChannelPool {
     /** The Constant LOGGER. */
     private static final Logger LOGGER = Logger.getLogger(ChannelPool.class.getName());
     
+    /** initial delay in milliseconds to retry with a new connection after connect failed. */
+    private static final long CONNECT_RETRY_INTERVAL = 10L;
+    
+    /** max delay in milliseconds to retry with a new connection after connect failed. */
+    private static final long MAX_CONNECT_RETRY_INTERVAL = 1000L;
+    
     /** The client config. */
     private final RpcClientOptions clientConfig;
     
@@ -43,6 +68,28 @@ public class ChannelPool {
     /** The pool. */
     private final GenericObjectPool<Connection> pool;
     
+    /** The rpc client. */
+    private final RpcClient rpcClient;
+    
+    /** acquires waiting for a returned connection while pool is exhausted. */
+    private final Queue<PendingAcquire> pendingAcquires = new ConcurrentLinkedQueue<PendingAcquire>();
+    
+    /** long-lived connections shared by all requests in multiplex mode, {@code null} if in pool mode. */
+    private final AtomicReferenceArray<Connection> multiplexConnections;
+    
+    /** round robin index of multiplexed connections. */
+    private final AtomicInteger multiplexIndex = new AtomicInteger();
+    
+    /** reconnect in progress of multiplexed connection by index, so only one caller creates the new one. */
+    private final AtomicReferenceArray<CompletableFuture<Connection>> multiplexReconnects;
+    
+    /** backoff of reconnect shared by all callers. */
+    private final ConnectBackoff connectBackoff = new ConnectBackoff(CONNECT_RETRY_INTERVAL,
+            MAX_CONNECT_RETRY_INTERVAL);
+    
+    /** cause of last connect failure, {@code null} if last connect succeeded. */
+    private volatile Throwable lastConnectFailure;
+    
     /**
      * Instantiates a new channel pool.
      *
@@ -51,8 +98,21 @@ public class ChannelPool {
      * @param port the port
      */
     public ChannelPool(RpcClient rpcClient, String host, int port) {
+        this.rpcClient = rpcClient;
         this.clientConfig = rpcClient.getRpcClientOptions();
-        objectFactory = new ChannelPoolObjectFactory(rpcClient, host, port);
+        objectFactory = new ChannelPoolObjectFactory(rpcClient, host, port) {
+            @Override
+            public PooledObject<Connection> wrap(Connection connection) {
+                PooledObject<Connection> ret = super.wrap(connection);
+                connection.getFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        onConnectComplete(future);
+                    }
+                });
+                return ret;
+            }
+        };
         
         GenericObjectPoolConfig config = new GenericObjectPoolConfig();
         config.setJmxEnabled(clientConfig.isJmxEnabled());
@@ -66,26 +126,467 @@ public class ChannelPool {
         pool.setTestOnReturn(clientConfig.isTestOnReturn());
         pool.setLifo(clientConfig.isLifo());
         
+        if (clientConfig.isMultiplexConnection()) {
+            multiplexConnections = new AtomicReferenceArray<Connection>(clientConfig.getMultiplexConnectionSize());
+            multiplexReconnects =
+                    new AtomicReferenceArray<CompletableFuture<Connection>>(clientConfig.getMultiplexConnectionSize());
+        } else {
+            multiplexConnections = null;
+            multiplexReconnects = null;
+        }
     }
     
     /**
-     * Gets the channel.
+     * Record result of connect.
+     *
+     * @param future the connect future
+     */
+    private void onConnectComplete(ChannelFuture future) {
+        if (future.isSuccess()) {
+            lastConnectFailure = null;
+            connectBackoff.onSuccess();
+        } else {
+            lastConnectFailure = future.cause();
+            connectBackoff.onFailure();
+        }
+    }
+    
+    /**
+     * Gets the channel. Connection failed to connect is discarded and replaced by a new one after backoff until max
+     * wait time passed, then the failed one is returned. Connection refused is returned at once without retry.
      *
      * @return the channel
      */
     public Connection getChannel() {
-        Connection channel = null;
+        long deadline = getConnectDeadline();
+        for (;;) {
+            Connection channel = null;
+            try {
+                if (multiplexConnections != null) {
+                    channel = awaitMultiplexConnection();
+                } else if (!clientConfig.isShortConnection()) {
+                    channel = pool.borrowObject();
+                } else {
+                    channel = objectFactory.makeObject().getObject();
+                }
+            } catch (NoSuchElementException e) {
+                // new created connection failed validation as connect failed already
+                if (multiplexConnections != null || isPoolExhausted()
+                        || !canRetryConnect(lastConnectFailure, deadline)) {
+                    LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                throw new RuntimeException(e.getMessage(), e);
+            }
+
+            if (channel != null) {
+                // Wait until the connection is made successfully.
+                ChannelFuture future = channel.getFuture();
+                if (!future.isDone()) {
+                    future.awaitUninterruptibly();
+                }
+                if (future.isSuccess() || !canRetryConnect(future.cause(), deadline)) {
+                    return channel;
+                }
+                discardChannel(channel);
+            }
+            try {
+                Thread.sleep(connectBackoff.getDelay());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while retry to connect", e);
+            }
+        }
+    }
+    
+    /**
+     * Gets the channel without blocking. If pool is exhausted, the returned future will be completed by the next
+     * returned connection or failed after max wait time. The future is completed once the connection is connected,
+     * connection failed to connect is discarded and replaced by a new one after backoff until max wait time passed,
+     * then the failed one is completed. Connection refused is completed at once without retry.
+     *
+     * @return the future of channel
+     * @since 4.2.3
+     */
+    public CompletableFuture<Connection> getChannelAsync() {
+        CompletableFuture<Connection> future = new CompletableFuture<Connection>();
+        acquireAsync(future, getConnectDeadline());
+        return future;
+    }
+    
+    /**
+     * Acquire a connection to complete the future once it is connected.
+     *
+     * @param future the future
+     * @param deadline the deadline to retry connect
+     */
+    private void acquireAsync(final CompletableFuture<Connection> future, final long deadline) {
+        if (multiplexConnections != null) {
+            try {
+                Connection channel = selectMultiplexConnection();
+                if (channel != null) {
+                    completeWhenConnected(future, channel, deadline);
+                    return;
+                }
+                CompletableFuture<Connection> reconnect = getMultiplexReconnect();
+                if (reconnect == null) {
+                    // reconnect is just done, select again
+                    acquireAsync(future, deadline);
+                    return;
+                }
+                reconnect.whenComplete(new BiConsumer<Connection, Throwable>() {
+                    @Override
+                    public void accept(Connection channel, Throwable e) {
+                        if (e != null) {
+                            future.completeExceptionally(e);
+                        } else {
+                            completeWhenConnected(future, channel, deadline);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        if (clientConfig.isShortConnection()) {
+            try {
+                completeWhenConnected(future, objectFactory.makeObject().getObject(), deadline);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+
         try {
-            if (!clientConfig.isShortConnection()) {
-                channel = pool.borrowObject();
-            } else {
-                channel = objectFactory.makeObject().getObject();
+            completeWhenConnected(future, pool.borrowObject(0), deadline);
+            return;
+        } catch (NoSuchElementException e) {
+            if (!isPoolExhausted()) {
+                // new created connection failed validation as connect failed already
+                if (canRetryConnect(lastConnectFailure, deadline)) {
+                    retryAcquireAsync(future, deadline);
+                } else {
+                    future.completeExceptionally(e);
+                }
+                return;
+            }
+            // pool exhausted, wait for connection returned
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            future.completeExceptionally(e);
+            return;
+        }
+
+        final PendingAcquire pending = new PendingAcquire(future, deadline);
+        pendingAcquires.add(pending);
+        long maxWait = clientConfig.getMaxWait();
+        if (maxWait >= 0) {
+            pending.timeout = rpcClient.getTimer().newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) throws Exception {
+                    if (pendingAcquires.remove(pending)) {
+                        pending.future.completeExceptionally(
+                                new NoSuchElementException("Timeout waiting for idle object"));
+                    }
+                }
+            }, Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+        // connection may be returned before pending acquire added
+        servePendingAcquires();
+    }
+    
+    /**
+     * Complete the future by connection once it is connected, or acquire a new one later if connect failed.
+     *
+     * @param future the future
+     * @param channel the channel
+     * @param deadline the deadline to retry connect
+     */
+    private void completeWhenConnected(final CompletableFuture<Connection> future, final Connection channel,
+            final long deadline) {
+        channel.getFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture connectFuture) throws Exception {
+                if (connectFuture.isSuccess() || !canRetryConnect(connectFuture.cause(), deadline)) {
+                    if (!future.complete(channel)) {
+                        // cancelled by caller
+                        returnChannel(channel);
+                    }
+                    return;
+                }
+                discardChannel(channel);
+                retryAcquireAsync(future, deadline);
             }
+        });
+    }
+
+    /**
+     * Acquire a connection again after backoff.
+     *
+     * @param future the future
+     * @param deadline the deadline to retry connect
+     */
+    private void retryAcquireAsync(final CompletableFuture<Connection> future, final long deadline) {
+        rpcClient.getTimer().newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                if (!future.isDone()) {
+                    acquireAsync(future, deadline);
+                }
+            }
+        }, connectBackoff.getDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks if all connections of pool are borrowed.
+     *
+     * @return true, if pool is exhausted
+     */
+    private boolean isPoolExhausted() {
+        int maxTotal = pool.getMaxTotal();
+        return maxTotal >= 0 && pool.getNumActive() >= maxTotal;
+    }
+    
+    /**
+     * Gets the deadline to retry connect.
+     *
+     * @return the deadline in milliseconds
+     */
+    private long getConnectDeadline() {
+        return System.currentTimeMillis() + Math.max(clientConfig.getMaxWait(), 0);
+    }
+    
+    /**
+     * Checks if can retry connect after backoff before deadline. Connection refused is never retried, as backend is
+     * down or not started yet and retry only hammers it.
+     *
+     * @param cause the cause of connect failure, may be {@code null}
+     * @param deadline the deadline
+     * @return true, if can retry
+     */
+    private boolean canRetryConnect(Throwable cause, long deadline) {
+        if (cause instanceof ConnectException && !(cause instanceof ConnectTimeoutException)) {
+            return false;
+        }
+        // connect listener may not be notified yet, failures in the same backoff window are counted once
+        connectBackoff.onFailure();
+        return System.currentTimeMillis() + connectBackoff.getDelay() <= deadline;
+    }
+    
+    /**
+     * Discard connection failed to connect.
+     *
+     * @param channel the channel
+     */
+    private void discardChannel(Connection channel) {
+        LOGGER.log(Level.FINE, "connect failed, retry by a new connection: " + channel.getFuture().cause());
+        if (multiplexConnections != null) {
+            // replaced by a new one on next select as it is not usable
+            return;
+        }
+        if (clientConfig.isShortConnection()) {
+            closeConnection(channel);
+            return;
+        }
+        try {
+            pool.invalidateObject(channel);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
-            throw new RuntimeException(e.getMessage(), e);
         }
-        return channel;
+        servePendingAcquires();
+    }
+    
+    /**
+     * Select a multiplexed connection, wait for reconnect by other caller if no connection could be selected.
+     *
+     * @return the connection
+     * @throws Exception if failed to create connection or all connections reach max in-flight requests
+     */
+    private Connection awaitMultiplexConnection() throws Exception {
+        for (;;) {
+            Connection channel = selectMultiplexConnection();
+            if (channel != null) {
+                return channel;
+            }
+            CompletableFuture<Connection> reconnect = getMultiplexReconnect();
+            if (reconnect != null) {
+                try {
+                    return reconnect.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+            // reconnect is just done, select again
+        }
+    }
+
+    /**
+     * Gets a reconnect in progress of multiplexed connections.
+     *
+     * @return the future of reconnect, {@code null} if none is in progress
+     */
+    private CompletableFuture<Connection> getMultiplexReconnect() {
+        for (int i = 0; i < multiplexReconnects.length(); i++) {
+            CompletableFuture<Connection> reconnect = multiplexReconnects.get(i);
+            if (reconnect != null) {
+                return reconnect;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Select a multiplexed connection by round robin or least in-flight requests. Connection closed will be replaced
+     * by a new one, connection failed to connect is skipped until reconnect backoff passed, and connection being
+     * reconnected by other caller is skipped without waiting. If no connection is usable, the failed one is returned
+     * so its connect failure is reported to caller.
+     *
+     * @return the connection, {@code null} if no connection could be selected but some are being reconnected by other
+     *         callers, see {@link #getMultiplexReconnect()}
+     * @throws Exception if failed to create connection or all connections reach max in-flight requests
+     */
+    Connection selectMultiplexConnection() throws Exception {
+        int size = multiplexConnections.length();
+        int maxInFlight = clientConfig.getMaxInFlightPerConnection();
+        Connection failed = null;
+        boolean anyUsable = false;
+        boolean reconnecting = false;
+        if (clientConfig.isMultiplexLeastInFlight()) {
+            Connection selected = null;
+            for (int i = 0; i < size; i++) {
+                Connection channel = getMultiplexConnection(i);
+                if (channel == null) {
+                    reconnecting = true;
+                    continue;
+                }
+                if (!channel.isUsable()) {
+                    failed = failed == null ? channel : failed;
+                    continue;
+                }
+                if (selected == null || channel.getInFlight() < selected.getInFlight()) {
+                    selected = channel;
+                }
+            }
+            anyUsable = selected != null;
+            if (selected != null && (maxInFlight <= 0 || selected.getInFlight() < maxInFlight)) {
+                return selected;
+            }
+        } else {
+            int start = (multiplexIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+            for (int i = 0; i < size; i++) {
+                Connection channel = getMultiplexConnection((start + i) % size);
+                if (channel == null) {
+                    reconnecting = true;
+                    continue;
+                }
+                if (!channel.isUsable()) {
+                    failed = failed == null ? channel : failed;
+                    continue;
+                }
+                anyUsable = true;
+                if (maxInFlight <= 0 || channel.getInFlight() < maxInFlight) {
+                    return channel;
+                }
+            }
+        }
+        if (reconnecting) {
+            return null;
+        }
+        if (!anyUsable && failed != null) {
+            return failed;
+        }
+        throw new NoSuchElementException(
+                "All " + size + " multiplexed connections reach max in-flight requests " + maxInFlight);
+    }
+    
+    /**
+     * Gets the multiplexed connection of target index, create a new one if absent or not usable. Only one caller
+     * creates the new one and publishes it by a future, others do not wait for it. Connection failed to connect is
+     * kept until reconnect backoff passed.
+     *
+     * @param index the index
+     * @return the multiplexed connection, {@code null} if it is being reconnected by other caller
+     * @throws Exception if failed to create connection
+     */
+    private Connection getMultiplexConnection(int index) throws Exception {
+        Connection channel = multiplexConnections.get(index);
+        if (channel != null && channel.isUsable()) {
+            return channel;
+        }
+        if (channel != null && !channel.getFuture().isSuccess() && connectBackoff.getDelay() > 0) {
+            // connect failed, wait backoff before reconnect
+            return channel;
+        }
+        CompletableFuture<Connection> reconnect = new CompletableFuture<Connection>();
+        if (!multiplexReconnects.compareAndSet(index, null, reconnect)) {
+            // being replaced by other caller
+            return null;
+        }
+        try {
+            Connection current = multiplexConnections.get(index);
+            if (current != channel) {
+                // replaced by other caller before reconnect published
+                reconnect.complete(current);
+                return current;
+            }
+            Connection created = objectFactory.makeObject().getObject();
+            multiplexConnections.set(index, created);
+            if (channel != null) {
+                closeConnection(channel);
+            }
+            reconnect.complete(created);
+            return created;
+        } catch (Exception e) {
+            reconnect.completeExceptionally(e);
+            throw e;
+        } finally {
+            multiplexReconnects.set(index, null);
+        }
+    }
+    
+    /**
+     * Close connection.
+     *
+     * @param channel the channel
+     */
+    private void closeConnection(Connection channel) {
+        if (channel.getFuture() != null && channel.getFuture().channel().isOpen()) {
+            channel.getFuture().channel().close();
+        }
+    }
+    
+    /**
+     * Borrow connections for pending acquires in order until pool is exhausted.
+     */
+    private void servePendingAcquires() {
+        PendingAcquire pending;
+        while ((pending = pendingAcquires.peek()) != null) {
+            Connection channel;
+            try {
+                channel = pool.borrowObject(0);
+            } catch (NoSuchElementException e) {
+                return;
+            } catch (Exception e) {
+                if (pendingAcquires.remove(pending)) {
+                    pending.cancelTimeout();
+                    pending.future.completeExceptionally(e);
+                }
+                continue;
+            }
+
+            if (pendingAcquires.remove(pending)) {
+                pending.cancelTimeout();
+                completeWhenConnected(pending.future, channel, pending.deadline);
+            } else {
+                // already time out or served by other thread
+                pool.returnObject(channel);
+            }
+        }
     }
     
     /**
@@ -94,9 +595,14 @@ public class ChannelPool {
      * @param channel the channel
      */
     public void returnChannel(Connection channel) {
+        if (multiplexConnections != null) {
+            // multiplexed connection is never borrowed
+            return;
+        }
         try {
             if (!clientConfig.isShortConnection()) {
                 pool.returnObject(channel);
+                servePendingAcquires();
             } else {
                 if (channel.getFuture().channel().isOpen()) {
                     channel.getFuture().channel().close();
@@ -111,6 +617,19 @@ public class ChannelPool {
      * Stop.
      */
     public void stop() {
+        PendingAcquire pending;
+        while ((pending = pendingAcquires.poll()) != null) {
+            pending.cancelTimeout();
+            pending.future.completeExceptionally(new IllegalStateException("channel pool is stopped"));
+        }
+        if (multiplexConnections != null) {
+            for (int i = 0; i < multiplexConnections.length(); i++) {
+                Connection channel = multiplexConnections.getAndSet(i, null);
+                if (channel != null) {
+                    closeConnection(channel);
+                }
+            }
+        }
         try {
             if (pool != null) {
                 pool.clear();
@@ -120,4 +639,40 @@ public class ChannelPool {
             LOGGER.log(Level.SEVERE, "stop channel failed!", e);
         }
     }
+
+    /**
+     * An acquire waiting for pool available.
+     */
+    private static class PendingAcquire {
+        
+        /** The future. */
+        private final CompletableFuture<Connection> future;
+        
+        /** The deadline to retry connect. */
+        private final long deadline;
+        
+        /** The timeout. */
+        private volatile Timeout timeout;
+
+        /**
+         * Instantiates a new pending acquire.
+         *
+         * @param future the future
+         * @param deadline the deadline to retry connect
+         */
+        PendingAcquire(CompletableFuture<Connection> future, long deadline) {
+            this.future = future;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Cancel timeout.
+         */
+        void cancelTimeout() {
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
 }
@@ -19,7 +19,6 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 
 import java.net.InetSocketAddress;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.pool2.BasePooledObjectFactory;
@@ -82,18 +81,10 @@ public class ChannelPoolObjectFactory extends BasePooledObjectFactory<Connection
         } else {
             address = new InetSocketAddress(host, port);
         }
+        // do not wait for connect here, so a connection can be created without blocking
         ChannelFuture future = this.rpcClient.connect(address);
-
-        // Wait until the connection is made successfully.
-        future.awaitUninterruptibly();
-        if (!future.isSuccess()) {
-            LOGGER.log(Level.SEVERE, "failed to get result from stp", future.cause());
-        } else {
-            connection.setIsConnected(true);
-        }
-
-        future.addListener(new RpcChannelFutureListener(connection));
         connection.setFuture(future);
+        future.addListener(new RpcChannelFutureListener(connection));
         
         return new DefaultPooledObject<Connection>(connection);
     }
@@ -113,7 +104,7 @@ public class ChannelPoolObjectFactory extends BasePooledObjectFactory<Connection
     public void destroyObject(PooledObject<Connection> p) throws Exception {
         Connection c = p.getObject();
         Channel channel = c.getFuture().channel();
-        if (channel.isOpen() && channel.isActive()) {
+        if (channel.isOpen()) {
             channel.close();
         }
     }
@@ -123,7 +114,12 @@ public class ChannelPoolObjectFactory extends BasePooledObjectFactory<Connection
      */
     public boolean validateObject(PooledObject<Connection> p) {
         Connection c = p.getObject();
-        Channel channel = c.getFuture().channel();
+        ChannelFuture future = c.getFuture();
+        if (!future.isDone()) {
+            // still in connecting
+            return true;
+        }
+        Channel channel = future.channel();
         return channel.isOpen() && channel.isActive();
 
     }
@@ -144,7 +140,6 @@ public class ChannelPoolObjectFactory extends BasePooledObjectFactory<Connection
      * @throws Exception the exception
      */
     public void passivateObject(PooledObject<Connection> p) throws Exception {
-        p.getObject().clearRequests();
     }
 
 }
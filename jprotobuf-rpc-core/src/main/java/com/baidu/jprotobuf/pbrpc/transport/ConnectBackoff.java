@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+/**
+ * Bounded exponential backoff of reconnect, shared by all callers of one endpoint so a down backend is not hammered
+ * by every caller. Failures observed within the same backoff window are counted only once.<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ConnectBackoff {
+
+    /** max shift of delay, to avoid overflow. */
+    private static final int MAX_SHIFT = 20;
+
+    /** The initial delay in milliseconds. */
+    private final long initialDelay;
+
+    /** The max delay in milliseconds. */
+    private final long maxDelay;
+
+    /** The consecutive failures. */
+    private int failures;
+
+    /** time in milliseconds before which reconnect should wait. */
+    private long retryTime;
+
+    /**
+     * Instantiates a new connect backoff.
+     *
+     * @param initialDelay the initial delay in milliseconds
+     * @param maxDelay the max delay in milliseconds
+     */
+    public ConnectBackoff(long initialDelay, long maxDelay) {
+        if (initialDelay <= 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("param 'initialDelay' should be greater than 0 and not greater than "
+                    + "'maxDelay'.");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Record a connect failure, the delay is doubled unless still in current backoff window.
+     */
+    public synchronized void onFailure() {
+        long now = System.currentTimeMillis();
+        if (now < retryTime) {
+            return;
+        }
+        retryTime = now + Math.min(maxDelay, initialDelay << Math.min(failures, MAX_SHIFT));
+        failures++;
+    }
+
+    /**
+     * Record a connect success, the backoff is reset.
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        retryTime = 0;
+    }
+
+    /**
+     * Gets the delay before next reconnect.
+     *
+     * @return the delay in milliseconds, 0 if can reconnect at once
+     */
+    public synchronized long getDelay() {
+        return Math.max(retryTime - System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Gets the consecutive failures.
+     *
+     * @return the failures
+     */
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
@@ -16,9 +16,8 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.netty.channel.ChannelFuture;
 
@@ -36,15 +35,12 @@ public class Connection {
     /** The is connected. */
     private AtomicBoolean isConnected = new AtomicBoolean();
     
-    /** The request queue. */
-    private BlockingQueue<RpcClientCallState> requestQueue;
-    
-    /** The Constant DEFAULT_SIZE. */
-    private static final int DEFAULT_SIZE = 1024;
-    
     /** The client. */
     private RpcClient client;
 
+    /** count of requests sent and waiting for response. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
     /**
      * Instantiates a new connection.
      *
@@ -53,7 +49,6 @@ public class Connection {
     public Connection(RpcClient client) {
         this.isConnected.set(false);
         this.future = null;
-        this.requestQueue = new LinkedBlockingQueue<RpcClientCallState>(DEFAULT_SIZE);
         this.client = client;
     }
 
@@ -94,37 +89,65 @@ public class Connection {
     }
 
     /**
-     * Produce request.
+     * Gets the rpc client.
      *
-     * @param state the state
-     * @return true, if successful
+     * @return the rpc client
      */
-    public boolean produceRequest(RpcClientCallState state) {
-        return requestQueue.add(state);
+    public RpcClient getRpcClient() {
+        return this.client;
     }
 
     /**
-     * Consume request.
+     * Increase in-flight request count if not reach the max.
      *
-     * @return the rpc client call state
+     * @param max the max in-flight requests, no limit if not greater than 0
+     * @return true, if increased
+     * @since 4.2.3
      */
-    public RpcClientCallState consumeRequest() {
-        return requestQueue.poll();
+    public boolean tryIncrementInFlight(int max) {
+        for (;;) {
+            int current = inFlight.get();
+            if (max > 0 && current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
     }
-    
+
     /**
-     * Clear requests.
+     * Decrease in-flight request count.
+     * 
+     * @since 4.2.3
      */
-    public void clearRequests() {
-        requestQueue.clear();
+    public void decrementInFlight() {
+        inFlight.decrementAndGet();
     }
 
     /**
-     * Gets the rpc client.
+     * Gets the count of requests sent and waiting for response.
      *
-     * @return the rpc client
+     * @return the in-flight request count
+     * @since 4.2.3
      */
-    public RpcClient getRpcClient() {
-        return this.client;
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Checks if connection is usable, connection still in connecting is also usable.
+     *
+     * @return true, if is usable
+     * @since 4.2.3
+     */
+    public boolean isUsable() {
+        if (future == null) {
+            return false;
+        }
+        if (!future.isDone()) {
+            return true;
+        }
+        return future.isSuccess() && future.channel().isActive();
     }
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+/**
+ * Pending request table keyed by primitive long correlation id. Keys are split into lock striped open addressing
+ * tables, so no boxing or entry object is allocated on put and remove. Table of stripe grows on burst of pending
+ * requests and shrinks back once most of them are removed, so probe of later requests does not walk a sparse table.<br>
+ * This class is thread safe.
+ *
+ * @author xiemalin
+ * @param <V> the value type
+ * @since 4.2.3
+ */
+public class PendingRequestTable<V> {
+
+    /** The Constant MAX_STRIPES. */
+    private static final int MAX_STRIPES = 64;
+
+    /** initial capacity of each stripe. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The stripes. */
+    private final Stripe<V>[] stripes;
+
+    /** The stripe mask. */
+    private final int stripeMask;
+
+    /**
+     * Instantiates a new pending request table with stripes by available processors.
+     */
+    public PendingRequestTable() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Instantiates a new pending request table.
+     *
+     * @param stripeCount the stripe count, will be rounded up to power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public PendingRequestTable(int stripeCount) {
+        int count = 1;
+        while (count < stripeCount && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<V>();
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * Hash of key.
+     *
+     * @param key the key
+     * @return the hash
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gets the stripe of key.
+     *
+     * @param hash the hash
+     * @return the stripe
+     */
+    private Stripe<V> stripe(int hash) {
+        return stripes[(hash >>> 24) & stripeMask];
+    }
+
+    /**
+     * Put value if key is absent.
+     *
+     * @param key the key
+     * @param value the value, should not be {@code null}
+     * @return true, if put. false if key already exists
+     */
+    public boolean putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("param 'value' is null.");
+        }
+        int hash = hash(key);
+        return stripe(hash).putIfAbsent(key, hash, value);
+    }
+
+    /**
+     * Gets the value of key.
+     *
+     * @param key the key
+     * @return the value, {@code null} if absent
+     */
+    public V get(long key) {
+        int hash = hash(key);
+        return stripe(hash).get(key, hash);
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @param key the key
+     * @return the value removed, {@code null} if absent
+     */
+    public V remove(long key) {
+        int hash = hash(key);
+        return stripe(hash).remove(key, hash);
+    }
+
+    /**
+     * Gets the count of keys.
+     *
+     * @return the size
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total capacity of stripes, for test only.
+     *
+     * @return the capacity
+     */
+    int capacity() {
+        int capacity = 0;
+        for (Stripe<V> stripe : stripes) {
+            capacity += stripe.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Gets the snapshot of all keys.
+     *
+     * @return the keys
+     */
+    public long[] keys() {
+        if (stripes.length == 1) {
+            return stripes[0].keys();
+        }
+        long[][] parts = new long[stripes.length][];
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            parts[i] = stripes[i].keys();
+            size += parts[i].length;
+        }
+        long[] ret = new long[size];
+        int pos = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, ret, pos, part.length);
+            pos += part.length;
+        }
+        return ret;
+    }
+
+    /**
+     * Open addressing table with linear probing, slot is empty if its value is {@code null}.
+     *
+     * @param <V> the value type
+     */
+    private static final class Stripe<V> {
+
+        /** The keys. */
+        private long[] keys = new long[INITIAL_CAPACITY];
+
+        /** The values. */
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        /** The size. */
+        private int size;
+
+        /**
+         * Index of key, or index of empty slot to put if absent.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the index
+         */
+        private int indexOf(long key, int hash) {
+            int mask = values.length - 1;
+            int i = hash & mask;
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Put if absent.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @param value the value
+         * @return true, if put
+         */
+        synchronized boolean putIfAbsent(long key, int hash, V value) {
+            int i = indexOf(key, hash);
+            if (values[i] != null) {
+                return false;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 4 >= values.length * 3) {
+                resize(values.length << 1);
+            }
+            return true;
+        }
+
+        /**
+         * Gets the value.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the value
+         */
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, int hash) {
+            return (V) values[indexOf(key, hash)];
+        }
+
+        /**
+         * Removes the key and shift following entries of same probe sequence back.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the value removed
+         */
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, int hash) {
+            int i = indexOf(key, hash);
+            Object ret = values[i];
+            if (ret == null) {
+                return null;
+            }
+            values[i] = null;
+            size--;
+
+            int mask = values.length - 1;
+            int j = i;
+            for (;;) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int k = hash(keys[j]) & mask;
+                // move entry at j to i if its home slot k is not cyclically in (i, j]
+                boolean inRange = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+                if (!inRange) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+            if (size * 8 < values.length && values.length > INITIAL_CAPACITY) {
+                resize(values.length >> 1);
+            }
+            return (V) ret;
+        }
+
+        /**
+         * Size.
+         *
+         * @return the int
+         */
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Capacity.
+         *
+         * @return the int
+         */
+        synchronized int capacity() {
+            return values.length;
+        }
+
+        /**
+         * Snapshot of keys.
+         *
+         * @return the keys
+         */
+        synchronized long[] keys() {
+            long[] ret = new long[size];
+            int pos = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    ret[pos++] = keys[i];
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Resize.
+         *
+         * @param capacity the new capacity
+         */
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = indexOf(oldKeys[i], hash(oldKeys[i]));
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -16,7 +16,8 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
-import java.util.concurrent.TimeUnit;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,7 +25,8 @@ import org.slf4j.LoggerFactory;
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
 
 import io.netty.channel.Channel;
-import io.netty.util.Timeout;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 
 /**
  * RPC request and response channel processor.
@@ -43,7 +45,8 @@ public class RpcChannel {
     /** The channel pool. */
     private ChannelPool channelPool;
     
-    private Connection connection;
+    /** The reused connection. */
+    private CompletableFuture<Connection> reusedConnection;
 
     /**
      * try to do connect.
@@ -81,11 +84,46 @@ public class RpcChannel {
      *
      * @return the reused connection
      */
-    public synchronized Connection getReusedConnection() {
-        if (connection == null) {
-            connection = getConnection();
+    public Connection getReusedConnection() {
+        Connection channel;
+        try {
+            channel = getReusedConnectionAsync().join();
+        } catch (Exception e) {
+            throw new RuntimeException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e);
         }
-        return connection;
+        ChannelFuture future = channel.getFuture();
+        if (!future.isDone()) {
+            future.awaitUninterruptibly();
+        }
+        return channel;
+    }
+
+    /**
+     * Gets the connection without blocking.
+     *
+     * @return the future of connection
+     * @see ChannelPool#getChannelAsync()
+     * @since 4.2.3
+     */
+    public CompletableFuture<Connection> getConnectionAsync() {
+        return channelPool.getChannelAsync();
+    }
+
+    /**
+     * Gets the reused connection without blocking.
+     *
+     * @return the future of reused connection
+     * @since 4.2.3
+     */
+    public synchronized CompletableFuture<Connection> getReusedConnectionAsync() {
+        if (rpcClient.getRpcClientOptions().isMultiplexConnection()) {
+            // multiplexed connections are already shared
+            return getConnectionAsync();
+        }
+        if (reusedConnection == null || reusedConnection.isCompletedExceptionally()) {
+            reusedConnection = getConnectionAsync();
+        }
+        return reusedConnection;
     }
 
     /**
@@ -98,7 +136,8 @@ public class RpcChannel {
     }
 
     /**
-     * Do transport.
+     * Do transport. In multiplex mode, another connection is selected if the connection reaches max in-flight
+     * requests.
      *
      * @param connection the connection
      * @param rpcDataPackage the rpc data package
@@ -113,32 +152,51 @@ public class RpcChannel {
 
         long callMethodStart = System.currentTimeMillis();
 
-        // register timer
-        Timeout timeout = rpcClient.getTimer()
-                .newTimeout(new RpcTimerTask(rpcDataPackage.getRpcMeta().getCorrelationId(), this.rpcClient,
-                        onceTalkTimeout, TimeUnit.MILLISECONDS), onceTalkTimeout, TimeUnit.MILLISECONDS);
+        final RpcClientCallState state = new RpcClientCallState(callback, rpcDataPackage, onceTalkTimeout);
 
-        RpcClientCallState state = new RpcClientCallState(callback, rpcDataPackage, timeout);
-
-        Long correlationId = state.getDataPackage().getRpcMeta().getCorrelationId();
-        rpcClient.registerPendingRequest(correlationId, state);
-        if (!connection.getFuture().isSuccess()) {
+        final Long correlationId = state.getDataPackage().getRpcMeta().getCorrelationId();
+        RpcClientOptions options = rpcClient.getRpcClientOptions();
+        int maxInFlight = options.isMultiplexConnection() ? options.getMaxInFlightPerConnection() : 0;
+        int reselects = options.getMultiplexConnectionSize();
+        while (!connection.tryIncrementInFlight(maxInFlight)) {
+            // lost the race of in-flight limit, select another multiplexed connection
             try {
-                connection.produceRequest(state);
-            } catch (IllegalStateException e) {
-                RpcClientCallState callState = rpcClient.removePendingRequest(correlationId);
-                if (callState != null) {
-                    callState.handleFailure(e.getMessage());
-                    LOG.debug("id:" + correlationId + " is put in the queue");
+                if (reselects-- <= 0) {
+                    throw new NoSuchElementException("in-flight requests of connection reach max " + maxInFlight);
                 }
+                Connection selected = channelPool.selectMultiplexConnection();
+                if (selected != null) {
+                    // null if others are being reconnected, try current one again without waiting
+                    connection = selected;
+                }
+            } catch (Exception e) {
+                state.handleFailure(e.getMessage());
+                return;
             }
+        }
+        state.setConnection(connection);
+        rpcClient.registerPendingRequest(correlationId, state);
+        // register timeout
+        rpcClient.getTimeoutWheel().add(correlationId, onceTalkTimeout);
+        ChannelFuture connectFuture = connection.getFuture();
+        if (connectFuture.isSuccess()) {
+            send(connectFuture.channel(), state);
         } else {
-            Channel channel = connection.getFuture().channel();
-            state.setChannel(channel);
-
-            LOG.debug("Do send request with service name '" + rpcDataPackage.serviceName() + "' method name '"
-                    + rpcDataPackage.methodName() + "' bound channel =>" + channel);
-            channel.writeAndFlush(state.getDataPackage());
+            // send after connected, listener is called at once if connect already done
+            connectFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (future.isSuccess()) {
+                        send(future.channel(), state);
+                        return;
+                    }
+                    RpcClientCallState callState = rpcClient.removePendingRequest(correlationId);
+                    if (callState != null) {
+                        callState.handleFailure("connect to " + future.channel().remoteAddress() + " failed: "
+                                + future.cause());
+                    }
+                }
+            });
         }
 
         long callMethodEnd = System.currentTimeMillis();
@@ -146,6 +204,21 @@ public class RpcChannel {
 
     }
 
+    /**
+     * Send request to channel.
+     *
+     * @param channel the channel
+     * @param state the state
+     */
+    private void send(Channel channel, RpcClientCallState state) {
+        RpcDataPackage rpcDataPackage = state.getDataPackage();
+        rpcClient.bindPendingRequest(rpcDataPackage.getRpcMeta().getCorrelationId(), state, channel);
+
+        LOG.debug("Do send request with service name '" + rpcDataPackage.serviceName() + "' method name '"
+                + rpcDataPackage.methodName() + "' bound channel =>" + channel);
+        channel.writeAndFlush(rpcDataPackage);
+    }
+
     /**
      * Close.
      */
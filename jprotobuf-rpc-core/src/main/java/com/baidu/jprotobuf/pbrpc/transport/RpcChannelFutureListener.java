@@ -16,7 +16,6 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
-import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 
@@ -54,23 +53,11 @@ public class RpcChannelFutureListener implements ChannelFutureListener {
     public void operationComplete(ChannelFuture future) throws Exception {
 
         if (!future.isSuccess()) {
-            LOG.log(Level.WARNING, "build channel:" + future.channel() + " failed");
+            LOG.log(Level.WARNING, "build channel:" + future.channel() + " failed", future.cause());
             conn.setIsConnected(false);
             return;
         }
-
-        RpcClientCallState requestState = null;
-        while (null != (requestState = conn.consumeRequest())) {
-            LOG.log(Level.FINEST, "[correlationId:" + requestState.getDataPackage().getRpcMeta().getCorrelationId()
-                    + "] send over from queue");
-
-            Channel channel = conn.getFuture().channel();
-            requestState.setChannel(channel);
-
-            LOG.log(Level.FINE, "Do send request with service name '" + requestState.getDataPackage().serviceName()
-                    + "' method name '" + requestState.getDataPackage().methodName() + "' bound channel =>" + channel);
-            channel.writeAndFlush(requestState.getDataPackage());
-        }
+        conn.setIsConnected(true);
     }
 
 }
@@ -4,15 +4,18 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Iterator;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
+import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcRequestMeta;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
+
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
@@ -21,9 +24,12 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 
 /**
  * RPC client handler class.
@@ -41,25 +47,38 @@ public class RpcClient extends Bootstrap {
     /** Tick duration for timer. */
     private static final int DEFAULT_TICK_DURATION = 100;
 
+    /** pending requests of each channel, used to fail requests of broken channel. */
+    private static final AttributeKey<PendingRequestTable<RpcClientCallState>> CHANNEL_PENDING_REQUESTS =
+            AttributeKey.valueOf("jprotobuf-rpc.pendingRequests");
+
     /** The request map. */
     // 会话状态存储
-    private final Map<Long, RpcClientCallState> requestMap = new ConcurrentHashMap<Long, RpcClientCallState>();
+    private final PendingRequestTable<RpcClientCallState> requestMap = new PendingRequestTable<RpcClientCallState>();
 
     /** The correlation id. */
     private AtomicLong correlationId = new AtomicLong(1); // session标识
 
+    /** stream id generator of chunk packages sent by this client. */
+    private final AtomicLong chunkStreamIdGenerator = new AtomicLong(1);
+
     /** The timer. */
     private static Timer timer = createTimer(); // 初始化定时器
 
     /** The rpc client options. */
     private RpcClientOptions rpcClientOptions;
 
+    /** The adaptive compress policy shared by all channels of this client. */
+    private AdaptiveCompressPolicy adaptiveCompressPolicy;
+
     /** The channel pool. */
     private ChannelPool channelPool;
 
     /** The worker group. */
     private EventLoopGroup workerGroup;
 
+    /** The timeout wheel of pending requests, ticked by event loops of worker group. */
+    private RpcTimeoutWheel timeoutWheel;
+
     /** The Constant INSTANCE_COUNT. */
     private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
 
@@ -118,8 +137,11 @@ public class RpcClient extends Bootstrap {
         }
         this.group(workerGroup);
         this.channel(clientChannelClass);
-        this.handler(new RpcClientPipelineinitializer(this));
         this.rpcClientOptions = rpcClientOptions;
+        if (rpcClientOptions.isAdaptiveCompress()) {
+            this.adaptiveCompressPolicy = new AdaptiveCompressPolicy();
+        }
+        this.handler(new RpcClientPipelineinitializer(this));
         this.option(ChannelOption.SO_REUSEADDR, rpcClientOptions.isReuseAddress());
         this.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, rpcClientOptions.getConnectTimeout());
         this.option(ChannelOption.SO_SNDBUF, rpcClientOptions.getSendBufferSize());
@@ -129,6 +151,14 @@ public class RpcClient extends Bootstrap {
         this.option(ChannelOption.MESSAGE_SIZE_ESTIMATOR,
                 new DefaultMessageSizeEstimator(rpcClientOptions.getReceiveBufferSize()));
 
+        // one timeout wheel shard for each event loop
+        int shardCount = 0;
+        for (Iterator<EventExecutor> it = workerGroup.iterator(); it.hasNext(); it.next()) {
+            shardCount++;
+        }
+        this.timeoutWheel = new RpcTimeoutWheel(this, rpcClientOptions.getTimeoutTickDuration(), shardCount);
+        this.timeoutWheel.start(workerGroup);
+
         // add count
         INSTANCE_COUNT.incrementAndGet();
     }
@@ -143,7 +173,20 @@ public class RpcClient extends Bootstrap {
      * @date 2013/03/07 10:34:30
      */
     public RpcClientCallState removePendingRequest(long seqId) {
-        return requestMap.remove(seqId);
+        RpcClientCallState state = requestMap.remove(seqId);
+        if (state != null) {
+            if (timeoutWheel != null) {
+                timeoutWheel.complete(seqId);
+            }
+            Channel channel = state.getChannel();
+            if (channel != null) {
+                PendingRequestTable<RpcClientCallState> channelRequests = channel.attr(CHANNEL_PENDING_REQUESTS).get();
+                if (channelRequests != null) {
+                    channelRequests.remove(seqId);
+                }
+            }
+        }
+        return state;
     }
 
     /**
@@ -158,27 +201,103 @@ public class RpcClient extends Bootstrap {
      * @date 2013/03/07 10:34:30
      */
     public void registerPendingRequest(long seqId, RpcClientCallState state) {
-        if (requestMap.containsKey(seqId)) {
+        if (!requestMap.putIfAbsent(seqId, state)) {
             throw new IllegalArgumentException("State already registered");
         }
-        requestMap.put(seqId, state);
     }
 
     /**
-     * Invalid broken channel.
+     * Bind pending request to the channel it is sent by. Should be called before request is written.
+     *
+     * @param seqId the seq id
+     * @param state the state
+     * @param channel the channel
+     * @since 4.2.3
+     */
+    public void bindPendingRequest(long seqId, RpcClientCallState state, Channel channel) {
+        state.setChannel(channel);
+        Attribute<PendingRequestTable<RpcClientCallState>> attr = channel.attr(CHANNEL_PENDING_REQUESTS);
+        PendingRequestTable<RpcClientCallState> channelRequests = attr.get();
+        if (channelRequests == null) {
+            PendingRequestTable<RpcClientCallState> created = new PendingRequestTable<RpcClientCallState>(1);
+            channelRequests = attr.setIfAbsent(created);
+            if (channelRequests == null) {
+                channelRequests = created;
+            }
+        }
+        channelRequests.putIfAbsent(seqId, state);
+        if (requestMap.get(seqId) != state) {
+            // already completed before bound
+            channelRequests.remove(seqId);
+        }
+    }
+
+    /**
+     * Checks if the request is still pending.
+     *
+     * @param seqId the seq id
+     * @return true, if pending
+     * @since 4.2.3
+     */
+    boolean isPendingRequest(long seqId) {
+        return requestMap.get(seqId) != null;
+    }
+
+    /**
+     * Gets the count of pending requests.
+     *
+     * @return the pending request count
+     * @since 4.2.3
+     */
+    public int getPendingRequestCount() {
+        return requestMap.size();
+    }
+
+    /**
+     * Cancel the pending request. The request is completed with {@link ErrorCodes#ST_CANCELLED}, so its timeout is
+     * cancelled and its connection is released by callback. A cancel request is sent to server if
+     * {@link RpcClientOptions#isSendCancelRequest()} is true.
+     *
+     * @param seqId the seq id
+     * @return true, if cancelled. false if the request is already completed
+     * @since 4.2.3
+     */
+    public boolean cancelPendingRequest(long seqId) {
+        RpcClientCallState state = removePendingRequest(seqId);
+        if (state == null) {
+            return false;
+        }
+        Channel channel = state.getChannel();
+        RpcDataPackage cancelRequest = null;
+        if (rpcClientOptions.isSendCancelRequest() && channel != null && channel.isActive()) {
+            RpcRequestMeta request = state.getDataPackage().getRpcMeta().getRequest();
+            cancelRequest = new RpcDataPackage().magicCode(ProtocolConstant.MAGIC_CODE)
+                    .serviceName(request.getServiceName()).methodName(request.getMethodName()).correlationId(seqId);
+            cancelRequest.getRpcMeta().getRequest().setCancel(true);
+            cancelRequest.getRpcMeta().setTemplate(state.getDataPackage().getRpcMeta().getTemplate());
+        }
+        state.handleFailure(ErrorCodes.ST_CANCELLED, ErrorCodes.MSG_CANCELLED);
+        if (cancelRequest != null) {
+            channel.writeAndFlush(cancelRequest);
+        }
+        return true;
+    }
+
+    /**
+     * Invalid broken channel. only pending requests bound to this channel are visited.
      *
      * @param channel the channel
      * @param e the e
      */
     public void invalidBrokenChannel(Channel channel, Throwable e) {
-        Collection<RpcClientCallState> values = new ArrayList<RpcClientCallState>(requestMap.values());
-        for (RpcClientCallState rpcClientCallState : values) {
-
-            boolean currentChannel = rpcClientCallState.isCurrentChannel(channel);
-            if (currentChannel) {
+        PendingRequestTable<RpcClientCallState> channelRequests = channel.attr(CHANNEL_PENDING_REQUESTS).get();
+        if (channelRequests == null) {
+            return;
+        }
+        for (long id : channelRequests.keys()) {
+            RpcClientCallState rpcClientCallState = removePendingRequest(id);
+            if (rpcClientCallState != null) {
                 rpcClientCallState.handleFailure(e.getMessage());
-                Long id = rpcClientCallState.getDataPackage().getRpcMeta().getCorrelationId();
-                requestMap.remove(id);
             }
         }
     }
@@ -192,6 +311,24 @@ public class RpcClient extends Bootstrap {
         return correlationId.getAndIncrement();
     }
 
+    /**
+     * Gets the adaptive compress policy.
+     *
+     * @return the adaptive compress policy, {@code null} if adaptive compress is disabled
+     */
+    public AdaptiveCompressPolicy getAdaptiveCompressPolicy() {
+        return adaptiveCompressPolicy;
+    }
+
+    /**
+     * Gets the stream id generator of chunk packages.
+     *
+     * @return the chunk stream id generator
+     */
+    public AtomicLong getChunkStreamIdGenerator() {
+        return chunkStreamIdGenerator;
+    }
+
     /**
      * Gets the timer.
      *
@@ -201,6 +338,16 @@ public class RpcClient extends Bootstrap {
         return timer;
     }
 
+    /**
+     * Gets the timeout wheel of pending requests.
+     *
+     * @return the timeout wheel
+     * @since 4.2.3
+     */
+    public RpcTimeoutWheel getTimeoutWheel() {
+        return timeoutWheel;
+    }
+
     /**
      * Gets the rpc client options.
      *
@@ -246,6 +393,9 @@ public class RpcClient extends Bootstrap {
      * @see org.jboss.netty.bootstrap.Bootstrap#shutdown()
      */
     public void shutdown() {
+        if (timeoutWheel != null) {
+            timeoutWheel.stop();
+        }
         if (this.workerGroup != null) {
             this.workerGroup.shutdownGracefully();
         }
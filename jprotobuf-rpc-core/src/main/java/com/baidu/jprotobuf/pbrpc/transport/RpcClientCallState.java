@@ -30,11 +30,27 @@ public class RpcClientCallState {
     /** The data package. */
     private RpcDataPackage dataPackage;
     
-    /** The timeout. */
+    /** The timeout, {@code null} if timeout is handled by {@link RpcTimeoutWheel}. */
     private Timeout timeout;
     
+    /** The timeout in milliseconds. */
+    private long timeoutMillis;
+    
     /** The channel. */
-    private Channel channel;
+    private volatile Channel channel;
+    
+    /** connection counted this request as in-flight. */
+    private Connection connection;
+    
+    /**
+     * Sets the connection counted this request as in-flight, its in-flight count will be decreased on completion.
+     *
+     * @param connection the new connection
+     * @since 4.2.3
+     */
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
     
     /**
      * Sets the channel.
@@ -84,6 +100,29 @@ public class RpcClientCallState {
         this.startTimestamp = System.currentTimeMillis();
     }
 
+    /**
+     * Instantiates a new rpc client call state which timeout is handled by {@link RpcTimeoutWheel}.
+     *
+     * @param callback the callback
+     * @param dataPackage the data package
+     * @param timeoutMillis the timeout in milliseconds
+     * @since 4.2.3
+     */
+    public RpcClientCallState(RpcCallback<RpcDataPackage> callback, RpcDataPackage dataPackage, long timeoutMillis) {
+        this(callback, dataPackage, (Timeout) null);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Gets the timeout in milliseconds.
+     *
+     * @return the timeout in milliseconds
+     * @since 4.2.3
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
     /**
      * Gets the callback.
      *
@@ -179,6 +218,11 @@ public class RpcClientCallState {
      * @param message the message
      */
     private void callback(RpcDataPackage message) {
+        Connection c = connection;
+        if (c != null) {
+            connection = null;
+            c.decrementInFlight();
+        }
         if (null != callback) {
             callback.run(message);
         }
@@ -193,7 +237,7 @@ public class RpcClientCallState {
     public void handleFailure(int erroCode, String message) {
         dataPackage.errorCode(erroCode);
         dataPackage.errorText(message);
-        this.timeout.cancel();
+        cancelTimeout();
         callback(dataPackage);
     }
 
@@ -206,13 +250,22 @@ public class RpcClientCallState {
         handleFailure(ErrorCodes.ST_ERROR, message);
     }
 
+    /**
+     * Cancel timeout.
+     */
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
     /**
      * Handle response.
      *
      * @param response the response
      */
     public void handleResponse(RpcDataPackage response) {
-        this.timeout.cancel();
+        cancelTimeout();
         callback(response);
     }
 }
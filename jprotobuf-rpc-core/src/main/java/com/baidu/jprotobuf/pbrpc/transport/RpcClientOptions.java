@@ -16,6 +16,11 @@
 
 package com.baidu.jprotobuf.pbrpc.transport;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import com.baidu.jprotobuf.pbrpc.utils.ServiceSignatureUtils;
+
 /**
  * RPC client properties.
  * 
@@ -113,6 +118,84 @@ public class RpcClientOptions {
     /** The error include remote server info. */
     private boolean includeRemoteServerInfoOnError = false;
 
+    /** max data size of one chunk stream in assembling, stream exceeds will be discarded. */
+    private int chunkPackageMaxSize = Integer.MAX_VALUE;
+
+    /** if true response data and attachment will be decoded as retained buffer slices without copy. */
+    private boolean zeroCopyDecode = false;
+
+    /** data size less than this will be sent without compress. */
+    private int compressThreshold = 0;
+
+    /** if true compress is turned on or off by observed compress ratio and speed of each method. */
+    private boolean adaptiveCompress = false;
+
+    /** compress type by service signature(serviceName!methodName) to override compress type of ProtobufRPC. */
+    private Map<String, Integer> compressTypes = new HashMap<String, Integer>();
+
+    /** request priority by service signature(serviceName!methodName), scheduled by server in weighted fair way. */
+    private Map<String, Integer> priorities = new HashMap<String, Integer>();
+
+    /** tenant of requests, tenants of the same priority share task threads of server fairly. */
+    private String tenant;
+
+    /** if greater than 0, requests are multiplexed on this count of long-lived connections instead of pool. */
+    private int multiplexConnectionSize = 0;
+
+    /** max in-flight requests of one multiplexed connection, no limit if not greater than 0. */
+    private int maxInFlightPerConnection = 0;
+
+    /** if true select multiplexed connection by least in-flight requests, else by round robin. */
+    private boolean multiplexLeastInFlight = false;
+
+    /** tick duration in milliseconds of request timeout wheel, which is the precision of request timeout. */
+    private long timeoutTickDuration = 10;
+
+    /** if greater than 0, flush of requests is delayed up to this microseconds to send small requests in one write. */
+    private long writeCoalescingDelay = 0;
+
+    /** flush coalesced requests at once if written bytes reach this size. */
+    private int writeCoalescingMaxBytes = 64 * 1024;
+
+    /** if true a cancel request is sent to server when a pending call is cancelled, server should support it. */
+    private boolean sendCancelRequest = false;
+
+    /**
+     * Sets the zero copy decode.
+     *
+     * @param zeroCopyDecode the new zero copy decode
+     */
+    public void setZeroCopyDecode(boolean zeroCopyDecode) {
+        this.zeroCopyDecode = zeroCopyDecode;
+    }
+
+    /**
+     * Checks if is zero copy decode.
+     *
+     * @return true, if is zero copy decode
+     */
+    public boolean isZeroCopyDecode() {
+        return zeroCopyDecode;
+    }
+
+    /**
+     * Gets the max data size of one chunk stream in assembling.
+     *
+     * @return the max data size of one chunk stream
+     */
+    public int getChunkPackageMaxSize() {
+        return chunkPackageMaxSize;
+    }
+
+    /**
+     * Sets the max data size of one chunk stream in assembling.
+     *
+     * @param chunkPackageMaxSize the new max data size of one chunk stream
+     */
+    public void setChunkPackageMaxSize(int chunkPackageMaxSize) {
+        this.chunkPackageMaxSize = chunkPackageMaxSize;
+    }
+
     /**
      * Sets the include remote server info on error.
      *
@@ -181,6 +264,20 @@ public class RpcClientOptions {
         this.maxSize = options.maxSize;
         this.ioEventGroupType = options.ioEventGroupType;
         this.workGroupThreadSize = options.workGroupThreadSize;
+        this.zeroCopyDecode = options.zeroCopyDecode;
+        this.chunkPackageMaxSize = options.chunkPackageMaxSize;
+        this.compressThreshold = options.compressThreshold;
+        this.adaptiveCompress = options.adaptiveCompress;
+        this.compressTypes = new HashMap<String, Integer>(options.compressTypes);
+        this.priorities = new HashMap<String, Integer>(options.priorities);
+        this.tenant = options.tenant;
+        this.multiplexConnectionSize = options.multiplexConnectionSize;
+        this.maxInFlightPerConnection = options.maxInFlightPerConnection;
+        this.multiplexLeastInFlight = options.multiplexLeastInFlight;
+        this.timeoutTickDuration = options.timeoutTickDuration;
+        this.writeCoalescingDelay = options.writeCoalescingDelay;
+        this.writeCoalescingMaxBytes = options.writeCoalescingMaxBytes;
+        this.sendCancelRequest = options.sendCancelRequest;
     }
 
     /**
@@ -671,4 +768,276 @@ public class RpcClientOptions {
         this.ioEventGroupType = ioEventGroupType;
     }
 
+    /**
+     * Gets the compress threshold.
+     *
+     * @return the compress threshold
+     */
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * Sets the compress threshold. data size less than this will be sent without compress.
+     *
+     * @param compressThreshold the new compress threshold
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * Checks if is adaptive compress.
+     *
+     * @return true, if is adaptive compress
+     */
+    public boolean isAdaptiveCompress() {
+        return adaptiveCompress;
+    }
+
+    /**
+     * Sets the adaptive compress. if true compress is turned on or off by observed compress ratio and speed of each
+     * method and payload size.
+     *
+     * @param adaptiveCompress the new adaptive compress
+     */
+    public void setAdaptiveCompress(boolean adaptiveCompress) {
+        this.adaptiveCompress = adaptiveCompress;
+    }
+
+    /**
+     * Gets the compress types by service signature.
+     *
+     * @return the compress types
+     */
+    public Map<String, Integer> getCompressTypes() {
+        return compressTypes;
+    }
+
+    /**
+     * Sets the compress types by service signature(serviceName!methodName) to override compress type of ProtobufRPC.
+     * There is no negotiation before call, see {@link #setCompressType(String, String, int)}.
+     *
+     * @param compressTypes the compress types
+     */
+    public void setCompressTypes(Map<String, Integer> compressTypes) {
+        this.compressTypes = compressTypes == null ? new HashMap<String, Integer>() : compressTypes;
+    }
+
+    /**
+     * Sets the compress type of target method to override compress type of ProtobufRPC.<br>
+     * The compress type should be registered by every server of the method. A server of 4.2.3 or later rejects
+     * unknown compress type with {@link com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes#ST_ERROR_COMPRESS},
+     * then the method falls back to {@link com.baidu.jprotobuf.pbrpc.data.RpcMeta#COMPRESS_NO} for later calls. An
+     * older server passes unknown compress type through without uncompress, which can not be detected by client.
+     *
+     * @param serviceName the service name
+     * @param methodName the method name
+     * @param compressType the compress type
+     */
+    public void setCompressType(String serviceName, String methodName, int compressType) {
+        compressTypes.put(ServiceSignatureUtils.makeSignature(serviceName, methodName), compressType);
+    }
+
+    /**
+     * Gets the request priorities by service signature.
+     *
+     * @return the priorities
+     * @since 4.2.3
+     */
+    public Map<String, Integer> getPriorities() {
+        return priorities;
+    }
+
+    /**
+     * Sets the request priorities by service signature(serviceName!methodName).
+     *
+     * @param priorities the priorities
+     * @since 4.2.3
+     */
+    public void setPriorities(Map<String, Integer> priorities) {
+        this.priorities = priorities == null ? new HashMap<String, Integer>() : priorities;
+    }
+
+    /**
+     * Sets the request priority of target method, such as
+     * {@link com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue#PRIORITY_HIGH}.
+     *
+     * @param serviceName the service name
+     * @param methodName the method name
+     * @param priority the priority
+     * @since 4.2.3
+     */
+    public void setPriority(String serviceName, String methodName, int priority) {
+        priorities.put(ServiceSignatureUtils.makeSignature(serviceName, methodName), priority);
+    }
+
+    /**
+     * Gets the tenant.
+     *
+     * @return the tenant
+     * @since 4.2.3
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Sets the tenant of requests. tenants of the same priority share task threads of server fairly, remote host is
+     * used by server if not set.
+     *
+     * @param tenant the new tenant
+     * @since 4.2.3
+     */
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * Gets the multiplex connection size.
+     *
+     * @return the multiplex connection size
+     */
+    public int getMultiplexConnectionSize() {
+        return multiplexConnectionSize;
+    }
+
+    /**
+     * Sets the multiplex connection size. if greater than 0, requests to one endpoint are pipelined on this count of
+     * long-lived connections by correlation id, no borrow and return from pool is needed.
+     *
+     * @param multiplexConnectionSize the new multiplex connection size
+     */
+    public void setMultiplexConnectionSize(int multiplexConnectionSize) {
+        this.multiplexConnectionSize = multiplexConnectionSize;
+    }
+
+    /**
+     * Checks if is multiplex connection mode.
+     *
+     * @return true, if is multiplex connection mode
+     */
+    public boolean isMultiplexConnection() {
+        return multiplexConnectionSize > 0 && !shortConnection;
+    }
+
+    /**
+     * Gets the max in-flight requests of one multiplexed connection.
+     *
+     * @return the max in-flight requests per connection
+     */
+    public int getMaxInFlightPerConnection() {
+        return maxInFlightPerConnection;
+    }
+
+    /**
+     * Sets the max in-flight requests of one multiplexed connection, no limit if not greater than 0.
+     *
+     * @param maxInFlightPerConnection the new max in-flight requests per connection
+     */
+    public void setMaxInFlightPerConnection(int maxInFlightPerConnection) {
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+    }
+
+    /**
+     * Checks if is multiplexed connection selected by least in-flight requests.
+     *
+     * @return true, if select by least in-flight requests
+     */
+    public boolean isMultiplexLeastInFlight() {
+        return multiplexLeastInFlight;
+    }
+
+    /**
+     * Sets the multiplexed connection select strategy. if true select by least in-flight requests, else by round
+     * robin.
+     *
+     * @param multiplexLeastInFlight the new multiplex least in-flight
+     */
+    public void setMultiplexLeastInFlight(boolean multiplexLeastInFlight) {
+        this.multiplexLeastInFlight = multiplexLeastInFlight;
+    }
+
+    /**
+     * Gets the tick duration in milliseconds of request timeout wheel.
+     *
+     * @return the timeout tick duration
+     * @since 4.2.3
+     */
+    public long getTimeoutTickDuration() {
+        return timeoutTickDuration;
+    }
+
+    /**
+     * Sets the tick duration in milliseconds of request timeout wheel. Request timeout is checked in this precision.
+     *
+     * @param timeoutTickDuration the new timeout tick duration
+     * @since 4.2.3
+     */
+    public void setTimeoutTickDuration(long timeoutTickDuration) {
+        this.timeoutTickDuration = timeoutTickDuration;
+    }
+
+    /**
+     * Gets the write coalescing delay in microseconds.
+     *
+     * @return the write coalescing delay
+     * @since 4.2.3
+     */
+    public long getWriteCoalescingDelay() {
+        return writeCoalescingDelay;
+    }
+
+    /**
+     * Sets the write coalescing delay in microseconds. If greater than 0, flush of requests is delayed up to this time
+     * so small requests to the same channel are sent in one write.
+     *
+     * @param writeCoalescingDelay the new write coalescing delay
+     * @since 4.2.3
+     */
+    public void setWriteCoalescingDelay(long writeCoalescingDelay) {
+        this.writeCoalescingDelay = writeCoalescingDelay;
+    }
+
+    /**
+     * Gets the write coalescing max bytes.
+     *
+     * @return the write coalescing max bytes
+     * @since 4.2.3
+     */
+    public int getWriteCoalescingMaxBytes() {
+        return writeCoalescingMaxBytes;
+    }
+
+    /**
+     * Sets the write coalescing max bytes. Coalesced requests are flushed at once if written bytes reach this size.
+     *
+     * @param writeCoalescingMaxBytes the new write coalescing max bytes
+     * @since 4.2.3
+     */
+    public void setWriteCoalescingMaxBytes(int writeCoalescingMaxBytes) {
+        this.writeCoalescingMaxBytes = writeCoalescingMaxBytes;
+    }
+
+    /**
+     * Checks if is send cancel request.
+     *
+     * @return true, if is send cancel request
+     * @since 4.2.3
+     */
+    public boolean isSendCancelRequest() {
+        return sendCancelRequest;
+    }
+
+    /**
+     * Sets the send cancel request. If true a cancel request is sent to server when a pending call is cancelled, so
+     * server could skip or interrupt the work. Only enable it if server supports cancel request, or the cancel request
+     * is handled as a normal call.
+     *
+     * @param sendCancelRequest the new send cancel request
+     * @since 4.2.3
+     */
+    public void setSendCancelRequest(boolean sendCancelRequest) {
+        this.sendCancelRequest = sendCancelRequest;
+    }
 }
@@ -18,7 +18,6 @@ package com.baidu.jprotobuf.pbrpc.transport;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.timeout.IdleStateHandler;
 
 import java.util.logging.Level;
@@ -30,6 +29,7 @@ import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageDecoder;
 import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageEncoder;
 import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageUnCompressHandler;
 import com.baidu.jprotobuf.pbrpc.transport.handler.RpcServerChannelIdleHandler;
+import com.baidu.jprotobuf.pbrpc.transport.handler.RpcWriteCoalescingHandler;
 
 /**
  * The Class RpcClientPipelineinitializer.
@@ -60,6 +60,9 @@ public class RpcClientPipelineinitializer extends ChannelInitializer<Channel> {
 	/** The Constant UNCOMPRESS. */
 	private static final String UNCOMPRESS = "uncompress";
 
+	/** The Constant WRITE_COALESCING. */
+	private static final String WRITE_COALESCING = "write_coalescing";
+
 	/** The rpc client. */
 	private RpcClient rpcClient;
 
@@ -92,22 +95,25 @@ public class RpcClientPipelineinitializer extends ChannelInitializer<Channel> {
 		channelPipe.addFirst(RPC_CHANNEL_IDLE_HANDLER, new RpcServerChannelIdleHandler(idleTimeout));
 
 		// check if need to compress for data and attachment
-		channelPipe.addFirst(COMPRESS, new RpcDataPackageCompressHandler());
+		channelPipe.addFirst(COMPRESS, new RpcDataPackageCompressHandler(rpcClient.getRpcClientOptions().getCompressThreshold(),
+				rpcClient.getAdaptiveCompressPolicy()));
 		// encode RpcDataPackage to byte array
-		channelPipe.addFirst(CLIENT_ENCODER, new RpcDataPackageEncoder(rpcClient.getRpcClientOptions().getChunkSize()));
-
-		// receive data from server
-		int messageLengthFieldStart = 4;
-		int messageLengthFieldWidth = 4;
-		// Head meta size is 12, so messageLengthFieldStart +
-		// messageLengthFieldWidth + adjustSize = 12;
-		int adjustSize = 4;
-		channelPipe.addLast("frameDecoder",
-				new LengthFieldBasedFrameDecoder(rpcClient.getRpcClientOptions().getMaxSize(), messageLengthFieldStart,
-						messageLengthFieldWidth, adjustSize, 0));
-
-		// receive byte array to encode to RpcDataPackage
-		channelPipe.addLast(CLIENT_DECODER, new RpcDataPackageDecoder(-1));
+		channelPipe.addFirst(CLIENT_ENCODER, new RpcDataPackageEncoder(rpcClient.getRpcClientOptions().getChunkSize(),
+				rpcClient.getChunkStreamIdGenerator()));
+		// coalesce flushes of encoded requests if enabled
+		long writeCoalescingDelay = rpcClient.getRpcClientOptions().getWriteCoalescingDelay();
+		if (writeCoalescingDelay > 0) {
+			channelPipe.addFirst(WRITE_COALESCING, new RpcWriteCoalescingHandler(writeCoalescingDelay,
+					rpcClient.getRpcClientOptions().getWriteCoalescingMaxBytes()));
+		}
+
+		// receive data from server and decode to RpcDataPackage, frame length is checked by decoder directly
+		RpcDataPackageDecoder rpcDataPackageDecoder =
+				new RpcDataPackageDecoder(rpcClient.getRpcClientOptions().getChunkPackageTimeout(),
+						rpcClient.getRpcClientOptions().isZeroCopyDecode(),
+						rpcClient.getRpcClientOptions().getChunkPackageMaxSize());
+		rpcDataPackageDecoder.setMaxSize(rpcClient.getRpcClientOptions().getMaxSize());
+		channelPipe.addLast(CLIENT_DECODER, rpcDataPackageDecoder);
 		// do uncompress handle
 		channelPipe.addLast(UNCOMPRESS, new RpcDataPackageUnCompressHandler());
 		// do client handler
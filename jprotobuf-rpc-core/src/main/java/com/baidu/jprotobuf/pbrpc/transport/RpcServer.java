@@ -18,8 +18,11 @@ package com.baidu.jprotobuf.pbrpc.transport;
 
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -28,10 +31,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baidu.jprotobuf.pbrpc.ServerAttachmentHandler;
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
 import com.baidu.jprotobuf.pbrpc.intercept.InvokerInterceptor;
 import com.baidu.jprotobuf.pbrpc.management.HttpServer;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter;
 import com.baidu.jprotobuf.pbrpc.server.IDLServiceExporter;
 import com.baidu.jprotobuf.pbrpc.server.RpcServiceRegistry;
+import com.baidu.jprotobuf.pbrpc.utils.VirtualThreadUtils;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
@@ -76,7 +82,7 @@ public class RpcServer extends ServerBootstrap {
     private EventLoopGroup workerGroup;
 
     /** The channel. */
-    private Channel channel;
+    private volatile Channel channel;
 
     /** The inet socket address. */
     private InetSocketAddress inetSocketAddress;
@@ -88,11 +94,17 @@ public class RpcServer extends ServerBootstrap {
     private HttpServer httpServer;
 
     /** The blockingqueue. */
-    private BlockingQueue<Runnable> blockingqueue = new LinkedBlockingQueue<Runnable>();
+    private BlockingQueue<Runnable> blockingqueue;
 
     /** The es. */
     private ThreadPoolExecutor es;
 
+    /** executor runs each request in a new virtual thread, {@code null} if not enabled. */
+    private ExecutorService virtualThreadExecutor;
+
+    /** task executors by service name or service signature, shared one is named {@link Bulkhead#DEFAULT_NAME}. */
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<String, Bulkhead>();
+
     /** The exception catcher. */
     private ExceptionCatcher exceptionCatcher;
 
@@ -143,6 +155,26 @@ public class RpcServer extends ServerBootstrap {
         return es;
     }
 
+    /**
+     * Gets the virtual thread executor.
+     *
+     * @return the virtual thread executor, {@code null} if virtual thread task is not enabled or not supported
+     * @since 4.2.3
+     */
+    public ExecutorService getVirtualThreadExecutor() {
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Gets the bulkheads.
+     *
+     * @return the bulkheads by service name or service signature, shared one is named {@link Bulkhead#DEFAULT_NAME}
+     * @since 4.2.3
+     */
+    public Map<String, Bulkhead> getBulkheads() {
+        return Collections.unmodifiableMap(bulkheads);
+    }
+
     /** rpcServiceRegistry. */
     private RpcServiceRegistry rpcServiceRegistry;
 
@@ -230,9 +262,28 @@ public class RpcServer extends ServerBootstrap {
             this.workerGroup = new EpollEventLoopGroup(serverOptions.getWorkThreads(), workerThreadFacotry);
         }
 
-        if (serverOptions.getTaskTheads() > 0) {
+        if (serverOptions.isVirtualThreadTask()) {
+            virtualThreadExecutor = VirtualThreadUtils.newVirtualThreadPerTaskExecutor("jprotobuf-rpc-virtualThread-");
+            if (virtualThreadExecutor == null) {
+                LOG.warn("Virtual thread is not supported by current JVM, use task threads instead.");
+            }
+        }
+        if (virtualThreadExecutor == null && serverOptions.getTaskTheads() > 0) {
+            if (serverOptions.isPriorityScheduling()) {
+                blockingqueue = new WeightedFairTaskQueue(serverOptions.getPriorityWeights(),
+                        serverOptions.getTaskQueueSize());
+            } else {
+                blockingqueue = Bulkhead.newQueue(serverOptions.getTaskQueueSize());
+            }
             es = new ThreadPoolExecutor(serverOptions.getTaskTheads(), serverOptions.getTaskTheads(), 60L,
                     TimeUnit.SECONDS, blockingqueue);
+            bulkheads.put(Bulkhead.DEFAULT_NAME,
+                    new Bulkhead(Bulkhead.DEFAULT_NAME, es, Math.max(serverOptions.getTaskQueueSize(), 0)));
+        }
+        for (Map.Entry<String, BulkheadOptions> entry : serverOptions.getBulkheads().entrySet()) {
+            BulkheadOptions options = entry.getValue();
+            bulkheads.put(entry.getKey(),
+                    Bulkhead.create(entry.getKey(), options.getThreads(), options.getQueueSize()));
         }
 
         this.group(this.bossGroup, this.workerGroup);
@@ -252,8 +303,9 @@ public class RpcServer extends ServerBootstrap {
         
         // do register meta service
         rpcServiceRegistry.doRegisterMetaService();
-        this.rpcServerPipelineInitializer =
-                new RpcServerPipelineInitializer(rpcServiceRegistry, rpcServerOptions, es, exceptionCatcher);
+        ExecutorService taskExecutor = virtualThreadExecutor != null ? virtualThreadExecutor : es;
+        this.rpcServerPipelineInitializer = new RpcServerPipelineInitializer(rpcServiceRegistry, rpcServerOptions,
+                taskExecutor, bulkheads, exceptionCatcher);
         this.childHandler(rpcServerPipelineInitializer);
     }
 
@@ -350,7 +402,8 @@ public class RpcServer extends ServerBootstrap {
         LOG.info("RPC starting at: " + sa);
 
         try {
-            this.bind(sa).sync();
+            // keep channel so shutdown closes the port at once
+            channel = this.bind(sa).sync().channel();
         } catch (Throwable e) {
             shutdown();
             throw new RuntimeException(e.getMessage(), e);
@@ -366,11 +419,13 @@ public class RpcServer extends ServerBootstrap {
     public void start(final InetSocketAddress sa) {
         LOG.info("RPC starting at: " + sa);
 
-        this.bind(sa).addListener(new ChannelFutureListener() {
+        ChannelFuture bindFuture = this.bind(sa);
+        // keep channel so shutdown closes the port at once even if bind is not completed yet
+        channel = bindFuture.channel();
+        bindFuture.addListener(new ChannelFutureListener() {
 
             public void operationComplete(ChannelFuture future) throws Exception {
                 if (future.isSuccess()) {
-                    channel = future.channel();
                     initAfterBindPort(sa);
                 } else {
                     shutdown();
@@ -441,7 +496,11 @@ public class RpcServer extends ServerBootstrap {
     public void shutdown() {
         stop();
         if (channel != null && channel.isOpen()) {
-            channel.close();
+            ChannelFuture closeFuture = channel.close();
+            if (!channel.eventLoop().inEventLoop()) {
+                // make sure port is released once shutdown returns
+                closeFuture.awaitUninterruptibly();
+            }
         }
 
         bossGroup.shutdownGracefully();
@@ -450,6 +509,12 @@ public class RpcServer extends ServerBootstrap {
         if (es != null) {
             es.shutdown();
         }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.shutdown();
+        }
 
         if (rpcServerPipelineInitializer != null) {
             rpcServerPipelineInitializer.close();
@@ -496,4 +561,29 @@ public class RpcServer extends ServerBootstrap {
     public long getStartTime() {
         return startTime;
     }
+
+    /**
+     * Gets the adaptive compress policy.
+     *
+     * @return the adaptive compress policy, {@code null} if adaptive compress is disabled or server not initialized
+     */
+    public AdaptiveCompressPolicy getAdaptiveCompressPolicy() {
+        if (rpcServerPipelineInitializer == null) {
+            return null;
+        }
+        return rpcServerPipelineInitializer.getAdaptiveCompressPolicy();
+    }
+
+    /**
+     * Gets the concurrency limiter.
+     *
+     * @return the concurrency limiter, {@code null} if adaptive concurrency limit is disabled or server not initialized
+     * @since 4.2.3
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        if (rpcServerPipelineInitializer == null) {
+            return null;
+        }
+        return rpcServerPipelineInitializer.getConcurrencyLimiter();
+    }
 }
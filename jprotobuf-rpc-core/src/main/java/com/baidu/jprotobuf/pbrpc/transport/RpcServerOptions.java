@@ -19,6 +19,11 @@ import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 
 import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The Class RpcServerOptions.
@@ -69,6 +74,34 @@ public class RpcServerOptions {
         builder.append(tcpNoDelay);
         builder.append(", ioEventGroupType=");
         builder.append(ioEventGroupType);
+        builder.append(", zeroCopyDecode=");
+        builder.append(zeroCopyDecode);
+        builder.append(", chunkPackageMaxSize=");
+        builder.append(chunkPackageMaxSize);
+        builder.append(", compressThreshold=");
+        builder.append(compressThreshold);
+        builder.append(", adaptiveCompress=");
+        builder.append(adaptiveCompress);
+        builder.append(", batchResponseFlush=");
+        builder.append(batchResponseFlush);
+        builder.append(", interruptOnCancel=");
+        builder.append(interruptOnCancel);
+        builder.append(", taskQueueSize=");
+        builder.append(taskQueueSize);
+        builder.append(", bulkheads=");
+        builder.append(bulkheads);
+        builder.append(", virtualThreadTask=");
+        builder.append(virtualThreadTask);
+        builder.append(", adaptiveConcurrencyLimit=");
+        builder.append(adaptiveConcurrencyLimit);
+        builder.append(", priorityScheduling=");
+        builder.append(priorityScheduling);
+        builder.append(", priorityWeights=");
+        builder.append(Arrays.toString(priorityWeights));
+        builder.append(", priorities=");
+        builder.append(priorities);
+        builder.append(", nonBlockingServices=");
+        builder.append(nonBlockingServices);
         builder.append("]");
         return builder.toString();
     }
@@ -154,6 +187,48 @@ public class RpcServerOptions {
     /** if http server port > 0 will start http server. */
     private int httpServerPort = -1;
 
+    /** max data size of one chunk stream in assembling, stream exceeds will be discarded. */
+    private int chunkPackageMaxSize = Integer.MAX_VALUE;
+
+    /** if true request data and attachment will be decoded as retained buffer slices without copy. */
+    private boolean zeroCopyDecode = false;
+
+    /** data size less than this will be sent without compress. */
+    private int compressThreshold = 0;
+
+    /** if true compress is turned on or off by observed compress ratio and speed of each method. */
+    private boolean adaptiveCompress = false;
+
+    /** if true responses of each channel are written in batch and flushed once per batch. */
+    private boolean batchResponseFlush = false;
+
+    /** if true the running service handle is interrupted on cancel request, else only waiting one is skipped. */
+    private boolean interruptOnCancel = false;
+
+    /** max waiting task count of shared task threads, request exceeds will be rejected. 0 means unbounded. */
+    private int taskQueueSize = 0;
+
+    /** isolated task threads of service or method, key is service name or service signature. */
+    private Map<String, BulkheadOptions> bulkheads = new LinkedHashMap<String, BulkheadOptions>();
+
+    /** if true each request runs in a new virtual thread if supported by JVM, instead of shared task threads. */
+    private boolean virtualThreadTask = false;
+
+    /** if true in-flight requests of each method are limited by observed latency, exceeds are rejected. */
+    private boolean adaptiveConcurrencyLimit = false;
+
+    /** if true shared task threads are scheduled by weighted fair queuing across priorities and tenants. */
+    private boolean priorityScheduling = false;
+
+    /** weights by priority of weighted fair queuing. */
+    private int[] priorityWeights = WeightedFairTaskQueue.DEFAULT_WEIGHTS.clone();
+
+    /** priority by service name or service signature, used if request has no priority. */
+    private Map<String, Integer> priorities = new LinkedHashMap<String, Integer>();
+
+    /** service names or service signatures run at io thread instead of task threads. */
+    private Set<String> nonBlockingServices = new LinkedHashSet<String>();
+
     /**
      * Copy from.
      *
@@ -178,6 +253,20 @@ public class RpcServerOptions {
         this.httpServerPort = options.httpServerPort;
         this.maxSize = options.maxSize;
         this.ioEventGroupType = options.ioEventGroupType;
+        this.zeroCopyDecode = options.zeroCopyDecode;
+        this.chunkPackageMaxSize = options.chunkPackageMaxSize;
+        this.compressThreshold = options.compressThreshold;
+        this.adaptiveCompress = options.adaptiveCompress;
+        this.batchResponseFlush = options.batchResponseFlush;
+        this.interruptOnCancel = options.interruptOnCancel;
+        this.taskQueueSize = options.taskQueueSize;
+        this.bulkheads = new LinkedHashMap<String, BulkheadOptions>(options.bulkheads);
+        this.virtualThreadTask = options.virtualThreadTask;
+        this.adaptiveConcurrencyLimit = options.adaptiveConcurrencyLimit;
+        this.priorityScheduling = options.priorityScheduling;
+        this.priorityWeights = options.priorityWeights.clone();
+        this.priorities = new LinkedHashMap<String, Integer>(options.priorities);
+        this.nonBlockingServices = new LinkedHashSet<String>(options.nonBlockingServices);
     }
 
     /**
@@ -533,4 +622,327 @@ public class RpcServerOptions {
         this.ioEventGroupType = ioEventGroupType;
     }
 
+    /**
+     * Checks if is zero copy decode.
+     *
+     * @return true, if is zero copy decode
+     */
+    public boolean isZeroCopyDecode() {
+        return zeroCopyDecode;
+    }
+
+    /**
+     * Sets the zero copy decode.
+     *
+     * @param zeroCopyDecode the new zero copy decode
+     */
+    public void setZeroCopyDecode(boolean zeroCopyDecode) {
+        this.zeroCopyDecode = zeroCopyDecode;
+    }
+
+    /**
+     * Gets the max data size of one chunk stream in assembling.
+     *
+     * @return the max data size of one chunk stream
+     */
+    public int getChunkPackageMaxSize() {
+        return chunkPackageMaxSize;
+    }
+
+    /**
+     * Sets the max data size of one chunk stream in assembling.
+     *
+     * @param chunkPackageMaxSize the new max data size of one chunk stream
+     */
+    public void setChunkPackageMaxSize(int chunkPackageMaxSize) {
+        this.chunkPackageMaxSize = chunkPackageMaxSize;
+    }
+
+    /**
+     * Gets the compress threshold.
+     *
+     * @return the compress threshold
+     */
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * Sets the compress threshold. data size less than this will be sent without compress.
+     *
+     * @param compressThreshold the new compress threshold
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * Checks if is adaptive compress.
+     *
+     * @return true, if is adaptive compress
+     */
+    public boolean isAdaptiveCompress() {
+        return adaptiveCompress;
+    }
+
+    /**
+     * Sets the adaptive compress. if true compress is turned on or off by observed compress ratio and speed of each
+     * method and payload size.
+     *
+     * @param adaptiveCompress the new adaptive compress
+     */
+    public void setAdaptiveCompress(boolean adaptiveCompress) {
+        this.adaptiveCompress = adaptiveCompress;
+    }
+
+    /**
+     * Checks if is batch response flush.
+     *
+     * @return true, if is batch response flush
+     * @since 4.2.3
+     */
+    public boolean isBatchResponseFlush() {
+        return batchResponseFlush;
+    }
+
+    /**
+     * Sets the batch response flush. if true responses of each channel are written in batch and flushed once per batch
+     * instead of flushed one by one.
+     *
+     * @param batchResponseFlush the new batch response flush
+     * @since 4.2.3
+     */
+    public void setBatchResponseFlush(boolean batchResponseFlush) {
+        this.batchResponseFlush = batchResponseFlush;
+    }
+
+    /**
+     * Checks if is interrupt on cancel.
+     *
+     * @return true, if is interrupt on cancel
+     * @since 4.2.3
+     */
+    public boolean isInterruptOnCancel() {
+        return interruptOnCancel;
+    }
+
+    /**
+     * Sets the interrupt on cancel. If true the thread running service handle is interrupted on cancel request of
+     * caller, else only the request not started is skipped.
+     *
+     * @param interruptOnCancel the new interrupt on cancel
+     * @since 4.2.3
+     */
+    public void setInterruptOnCancel(boolean interruptOnCancel) {
+        this.interruptOnCancel = interruptOnCancel;
+    }
+
+    /**
+     * Gets the task queue size.
+     *
+     * @return the task queue size
+     * @since 4.2.3
+     */
+    public int getTaskQueueSize() {
+        return taskQueueSize;
+    }
+
+    /**
+     * Sets the task queue size. max waiting task count of shared task threads, request exceeds will be rejected with
+     * error code {@link com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes#ST_OVERLOADED}. {@code 0} means
+     * unbounded.
+     *
+     * @param taskQueueSize the new task queue size
+     * @since 4.2.3
+     */
+    public void setTaskQueueSize(int taskQueueSize) {
+        this.taskQueueSize = taskQueueSize;
+    }
+
+    /**
+     * Gets the bulkheads.
+     *
+     * @return the bulkheads
+     * @since 4.2.3
+     */
+    public Map<String, BulkheadOptions> getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Sets the bulkheads. key is service name, or service signature made by
+     * {@link com.baidu.jprotobuf.pbrpc.utils.ServiceSignatureUtils#makeSignature(String, String)} for one method.
+     *
+     * @param bulkheads the bulkheads
+     * @since 4.2.3
+     */
+    public void setBulkheads(Map<String, BulkheadOptions> bulkheads) {
+        this.bulkheads = bulkheads == null ? new LinkedHashMap<String, BulkheadOptions>()
+                : new LinkedHashMap<String, BulkheadOptions>(bulkheads);
+    }
+
+    /**
+     * Adds isolated task threads for service or method.
+     *
+     * @param name service name, or service signature of method
+     * @param threads the task threads
+     * @param queueSize max waiting task count, {@code 0} means unbounded
+     * @since 4.2.3
+     */
+    public void addBulkhead(String name, int threads, int queueSize) {
+        bulkheads.put(name, new BulkheadOptions(threads, queueSize));
+    }
+
+    /**
+     * Checks if is virtual thread task.
+     *
+     * @return true, if is virtual thread task
+     * @since 4.2.3
+     */
+    public boolean isVirtualThreadTask() {
+        return virtualThreadTask;
+    }
+
+    /**
+     * Sets the virtual thread task. If true and virtual thread is supported by JVM(JDK 21 or above), each request runs
+     * in a new virtual thread instead of shared task threads, else {@link #getTaskTheads()} is used. Requests of
+     * {@link #getBulkheads()} still run in their own task threads.
+     *
+     * @param virtualThreadTask the new virtual thread task
+     * @since 4.2.3
+     */
+    public void setVirtualThreadTask(boolean virtualThreadTask) {
+        this.virtualThreadTask = virtualThreadTask;
+    }
+
+    /**
+     * Checks if is adaptive concurrency limit.
+     *
+     * @return true, if is adaptive concurrency limit
+     * @since 4.2.3
+     */
+    public boolean isAdaptiveConcurrencyLimit() {
+        return adaptiveConcurrencyLimit;
+    }
+
+    /**
+     * Sets the adaptive concurrency limit. If true in-flight requests of each method are limited by gradient of
+     * observed latency, requests exceed the limit are rejected at once with error code
+     * {@link com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes#ST_OVERLOADED}.
+     *
+     * @param adaptiveConcurrencyLimit the new adaptive concurrency limit
+     * @since 4.2.3
+     */
+    public void setAdaptiveConcurrencyLimit(boolean adaptiveConcurrencyLimit) {
+        this.adaptiveConcurrencyLimit = adaptiveConcurrencyLimit;
+    }
+
+    /**
+     * Checks if is priority scheduling.
+     *
+     * @return true, if is priority scheduling
+     * @since 4.2.3
+     */
+    public boolean isPriorityScheduling() {
+        return priorityScheduling;
+    }
+
+    /**
+     * Sets the priority scheduling. If true requests waiting for shared task threads are scheduled by weighted fair
+     * queuing across priorities and tenants instead of FIFO, see {@link WeightedFairTaskQueue}.
+     *
+     * @param priorityScheduling the new priority scheduling
+     * @since 4.2.3
+     */
+    public void setPriorityScheduling(boolean priorityScheduling) {
+        this.priorityScheduling = priorityScheduling;
+    }
+
+    /**
+     * Gets the priority weights.
+     *
+     * @return the priority weights
+     * @since 4.2.3
+     */
+    public int[] getPriorityWeights() {
+        return priorityWeights;
+    }
+
+    /**
+     * Sets the priority weights. index is priority, each flow of priority and tenant gets share of task threads in
+     * proportion to weight of its priority.
+     *
+     * @param priorityWeights the new priority weights
+     * @since 4.2.3
+     */
+    public void setPriorityWeights(int[] priorityWeights) {
+        this.priorityWeights = priorityWeights == null || priorityWeights.length == 0
+                ? WeightedFairTaskQueue.DEFAULT_WEIGHTS.clone() : priorityWeights;
+    }
+
+    /**
+     * Gets the priorities.
+     *
+     * @return the priorities
+     * @since 4.2.3
+     */
+    public Map<String, Integer> getPriorities() {
+        return priorities;
+    }
+
+    /**
+     * Sets the priorities by service name or service signature, used if request has no priority.
+     *
+     * @param priorities the priorities
+     * @since 4.2.3
+     */
+    public void setPriorities(Map<String, Integer> priorities) {
+        this.priorities = priorities == null ? new LinkedHashMap<String, Integer>()
+                : new LinkedHashMap<String, Integer>(priorities);
+    }
+
+    /**
+     * Sets priority of service or method, used if request has no priority.
+     *
+     * @param name service name, or service signature of method
+     * @param priority the priority
+     * @since 4.2.3
+     */
+    public void setPriority(String name, int priority) {
+        priorities.put(name, priority);
+    }
+
+    /**
+     * Gets the non blocking services.
+     *
+     * @return the non blocking services
+     * @since 4.2.3
+     */
+    public Set<String> getNonBlockingServices() {
+        return nonBlockingServices;
+    }
+
+    /**
+     * Sets the non blocking services. element is service name, or service signature made by
+     * {@link com.baidu.jprotobuf.pbrpc.utils.ServiceSignatureUtils#makeSignature(String, String)}. Requests of them
+     * run inline at io thread even if task threads are enabled, so they should never block.
+     *
+     * @param nonBlockingServices the non blocking services
+     * @since 4.2.3
+     */
+    public void setNonBlockingServices(Set<String> nonBlockingServices) {
+        this.nonBlockingServices = nonBlockingServices == null ? new LinkedHashSet<String>()
+                : new LinkedHashSet<String>(nonBlockingServices);
+    }
+
+    /**
+     * Adds the non blocking service or method, which runs inline at io thread.
+     *
+     * @param name service name, or service signature of method
+     * @since 4.2.3
+     */
+    public void addNonBlockingService(String name) {
+        nonBlockingServices.add(name);
+    }
+
 }
@@ -3,10 +3,14 @@
  */
 package com.baidu.jprotobuf.pbrpc.transport;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter;
 import com.baidu.jprotobuf.pbrpc.server.RpcServiceRegistry;
 import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageCompressHandler;
 import com.baidu.jprotobuf.pbrpc.transport.handler.RpcDataPackageDecoder;
@@ -18,7 +22,6 @@ import com.baidu.jprotobuf.pbrpc.transport.handler.RpcServiceHandler;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.timeout.IdleStateHandler;
 
 /**
@@ -62,9 +65,18 @@ public class RpcServerPipelineInitializer extends ChannelInitializer<Channel> {
     /** The es. */
     private ExecutorService es;
 
+    /** task executors by service name or service signature. */
+    private final Map<String, Bulkhead> bulkheads;
+
     /** The exception catcher. */
     private ExceptionCatcher exceptionCatcher;
 
+    /** The adaptive compress policy shared by all channels. */
+    private final AdaptiveCompressPolicy adaptiveCompressPolicy;
+
+    /** The concurrency limiter shared by all channels. */
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
     /**
      * Sets the exception catcher.
      *
@@ -84,11 +96,29 @@ public class RpcServerPipelineInitializer extends ChannelInitializer<Channel> {
      */
     public RpcServerPipelineInitializer(RpcServiceRegistry rpcServiceRegistry, RpcServerOptions rpcServerOptions,
             ExecutorService es, ExceptionCatcher exceptionCatcher) {
+        this(rpcServiceRegistry, rpcServerOptions, es, Collections.<String, Bulkhead> emptyMap(), exceptionCatcher);
+    }
+
+    /**
+     * Instantiates a new rpc server pipeline initializer.
+     *
+     * @param rpcServiceRegistry the rpc service registry
+     * @param rpcServerOptions the rpc server options
+     * @param es the es
+     * @param bulkheads task executors by service name or service signature
+     * @param exceptionCatcher the exception catcher
+     * @since 4.2.3
+     */
+    public RpcServerPipelineInitializer(RpcServiceRegistry rpcServiceRegistry, RpcServerOptions rpcServerOptions,
+            ExecutorService es, Map<String, Bulkhead> bulkheads, ExceptionCatcher exceptionCatcher) {
         this.rpcServiceRegistry = rpcServiceRegistry;
         this.rpcServerOptions = rpcServerOptions;
         this.es = es;
+        this.bulkheads = bulkheads;
         this.exceptionCatcher = exceptionCatcher;
-
+        this.adaptiveCompressPolicy = rpcServerOptions.isAdaptiveCompress() ? new AdaptiveCompressPolicy() : null;
+        this.concurrencyLimiter =
+                rpcServerOptions.isAdaptiveConcurrencyLimit() ? new AdaptiveConcurrencyLimiter() : null;
     }
 
     /*
@@ -108,18 +138,11 @@ public class RpcServerPipelineInitializer extends ChannelInitializer<Channel> {
         channelPipe.addLast(RPC_CHANNEL_IDLE_HANDLER,
                 new RpcServerChannelIdleHandler(this.rpcServerOptions.getKeepAliveTime()));
 
-        int messageLengthFieldStart = 4;
-        int messageLengthFieldWidth = 4;
-        // Head meta size is 12, so messageLengthFieldStart +
-        // messageLengthFieldWidth + adjustSize = 12;
-        int adjustSize = 4;
-        channelPipe.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(rpcServerOptions.getMaxSize(),
-                messageLengthFieldStart, messageLengthFieldWidth, adjustSize, 0));
-
-        // receive byte array to encode to RpcDataPackage
-
-        RpcDataPackageDecoder rpcDataPackageDecoder =
-                new RpcDataPackageDecoder(this.rpcServerOptions.getChunkPackageTimeout());
+        // receive byte array to encode to RpcDataPackage, frame length is checked by decoder directly
+        RpcDataPackageDecoder rpcDataPackageDecoder = new RpcDataPackageDecoder(
+                this.rpcServerOptions.getChunkPackageTimeout(), this.rpcServerOptions.isZeroCopyDecode(),
+                this.rpcServerOptions.getChunkPackageMaxSize());
+        rpcDataPackageDecoder.setMaxSize(rpcServerOptions.getMaxSize());
         channelPipe.addLast(DECODER, rpcDataPackageDecoder);
         // do uncompress handle
         channelPipe.addLast(UNCOMPRESS, new RpcDataPackageUnCompressHandler());
@@ -127,24 +150,47 @@ public class RpcServerPipelineInitializer extends ChannelInitializer<Channel> {
         // return new RpcDataPackage
         RpcServiceHandler rpcServiceHandler = new RpcServiceHandler(this.rpcServiceRegistry, exceptionCatcher);
         rpcServiceHandler.setEs(es);
+        rpcServiceHandler.setBulkheads(bulkheads);
+        rpcServiceHandler.setConcurrencyLimiter(concurrencyLimiter);
+        rpcServiceHandler.setPriorities(rpcServerOptions.getPriorities());
+        rpcServiceHandler.setNonBlockingServices(rpcServerOptions.getNonBlockingServices());
+        rpcServiceHandler.setBatchFlush(rpcServerOptions.isBatchResponseFlush());
+        rpcServiceHandler.setInterruptOnCancel(rpcServerOptions.isInterruptOnCancel());
         channelPipe.addLast(RPC_SERVER_HANDLER, rpcServiceHandler);
 
         // response back
         // check if need to compress for data and attachment
-        channelPipe.addFirst(COMPRESS, new RpcDataPackageCompressHandler());
+        channelPipe.addFirst(COMPRESS, new RpcDataPackageCompressHandler(rpcServerOptions.getCompressThreshold(),
+                adaptiveCompressPolicy));
         // encode RpcDataPackage to byte array
         channelPipe.addFirst(SERVER_DATA_PACK, new RpcDataPackageEncoder());
 
     }
 
+    /**
+     * Gets the adaptive compress policy.
+     *
+     * @return the adaptive compress policy, {@code null} if adaptive compress is disabled
+     */
+    public AdaptiveCompressPolicy getAdaptiveCompressPolicy() {
+        return adaptiveCompressPolicy;
+    }
+
+    /**
+     * Gets the concurrency limiter.
+     *
+     * @return the concurrency limiter, {@code null} if adaptive concurrency limit is disabled
+     * @since 4.2.3
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     /**
      * Close.
      */
     public void close() {
-        RpcDataPackageDecoder rpcDataPackageDecoder =
-                new RpcDataPackageDecoder(this.rpcServerOptions.getChunkPackageTimeout());
-        // to close the static thread pool
-        rpcDataPackageDecoder.close();
+        // chunk packages are assembled and cleaned up per channel, released on channel close
     }
 
 }
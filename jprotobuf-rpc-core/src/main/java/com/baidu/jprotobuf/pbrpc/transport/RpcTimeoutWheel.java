@@ -0,0 +1,533 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Timeout wheel of RPC requests. Each shard is a hashed wheel of correlation id arrays and is ticked by one event loop
+ * of the client, so no timer object is created per request. Expired buckets are scanned in batch, request already
+ * completed is skipped as it is not in pending request table any more.<br>
+ * Entry of completed request is not removed eagerly, so completion never contends on the shard lock, it is dropped when
+ * its bucket expires. Completion only counts dead entries of its shard, once they reach half of the shard the ticker
+ * compacts buckets to entries still pending, so memory is not held by completed requests of long timeouts. A shard only
+ * ticks while it has entries, so idle event loops are not woken up.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcTimeoutWheel {
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(RpcTimeoutWheel.class.getName());
+
+    /** The Constant DEFAULT_TICKS_PER_WHEEL. */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /** initial capacity of each bucket. */
+    private static final int INITIAL_BUCKET_SIZE = 8;
+
+    /** min dead entries of shard to compact, so small shard is not compacted frequently. */
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    /** The rpc client. */
+    private final RpcClient rpcClient;
+
+    /** The tick duration in nanoseconds. */
+    private final long tickNanos;
+
+    /** The ticks per wheel. */
+    private final int ticksPerWheel;
+
+    /** The start time. */
+    private final long startNanos;
+
+    /** The shards. */
+    private final Shard[] shards;
+
+    /**
+     * Instantiates a new rpc timeout wheel.
+     *
+     * @param rpcClient the rpc client
+     * @param tickDuration the tick duration in milliseconds
+     * @param shardCount the shard count
+     */
+    public RpcTimeoutWheel(RpcClient rpcClient, long tickDuration, int shardCount) {
+        this(rpcClient, tickDuration, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, shardCount);
+    }
+
+    /**
+     * Instantiates a new rpc timeout wheel.
+     *
+     * @param rpcClient the rpc client
+     * @param tickDuration the tick duration
+     * @param unit the unit of tick duration
+     * @param ticksPerWheel the ticks per wheel, will be rounded up to power of 2
+     * @param shardCount the shard count
+     */
+    public RpcTimeoutWheel(RpcClient rpcClient, long tickDuration, TimeUnit unit, int ticksPerWheel,
+            int shardCount) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("param 'tickDuration' should be greater than 0.");
+        }
+        this.rpcClient = rpcClient;
+        this.tickNanos = unit.toNanos(tickDuration);
+        int ticks = 1;
+        while (ticks < ticksPerWheel) {
+            ticks <<= 1;
+        }
+        this.ticksPerWheel = ticks;
+        this.startNanos = System.nanoTime();
+        this.shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Start ticking, each shard is ticked by one executor of the group.
+     *
+     * @param group the group
+     */
+    public void start(EventExecutorGroup group) {
+        for (Shard shard : shards) {
+            shard.start(group.next());
+        }
+    }
+
+    /**
+     * Stop ticking.
+     */
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    /**
+     * Adds the timeout of a pending request.
+     *
+     * @param correlationId the correlation id
+     * @param timeout the timeout in milliseconds
+     */
+    public void add(long correlationId, long timeout) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (deadline < 0) {
+            // overflow of huge timeout, never expire
+            deadline = Long.MAX_VALUE - tickNanos;
+        }
+        // round up, never expire early
+        long deadlineTick = (deadline + tickNanos - 1) / tickNanos;
+        getShard(correlationId).add(correlationId, deadlineTick);
+    }
+
+    /**
+     * Count entry of completed request as dead, it is dropped by compaction or on expire. This method is lock free.
+     *
+     * @param correlationId the correlation id
+     */
+    public void complete(long correlationId) {
+        getShard(correlationId).dead.increment();
+    }
+
+    /**
+     * Expire all ticks until now. Called by ticker, public for test only.
+     */
+    public void expire() {
+        for (Shard shard : shards) {
+            shard.expire();
+        }
+    }
+
+    /**
+     * Checks if any shard is ticking.
+     *
+     * @return true, if is ticking
+     */
+    public boolean isTicking() {
+        for (Shard shard : shards) {
+            if (shard.isTicking()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the count of timeouts not expired, including entries of completed requests not dropped yet, which are not
+     * more than about half of it after compaction.
+     *
+     * @return the size
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total capacity of buckets, for test only.
+     *
+     * @return the capacity
+     */
+    int capacity() {
+        int capacity = 0;
+        for (Shard shard : shards) {
+            capacity += shard.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Gets the tick duration in nanoseconds.
+     *
+     * @return the tick duration
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Gets the shard of correlation id.
+     *
+     * @param correlationId the correlation id
+     * @return the shard
+     */
+    private Shard getShard(long correlationId) {
+        return shards[(int) (correlationId & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /**
+     * Current tick.
+     *
+     * @return the current tick
+     */
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    /**
+     * Handle timeout of request if still pending.
+     *
+     * @param correlationId the correlation id
+     */
+    private void timeout(long correlationId) {
+        RpcClientCallState state = rpcClient.removePendingRequest(correlationId);
+        if (state == null) {
+            // already completed
+            return;
+        }
+        String msg = "correlationId:" + correlationId + " timeout with bound channel =>" + state.getChannel();
+        LOG.log(Level.WARNING, msg);
+        try {
+            state.handleTimeout(state.getTimeoutMillis(), TimeUnit.MILLISECONDS, msg);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One hashed wheel, bucket of tick is an array of correlation ids with their deadline ticks.
+     */
+    private class Shard implements Runnable {
+
+        /** correlation ids of each bucket. */
+        private final long[][] ids = new long[ticksPerWheel][];
+
+        /** deadline ticks of each bucket. */
+        private final long[][] deadlines = new long[ticksPerWheel][];
+
+        /** entry count of each bucket. */
+        private final int[] sizes = new int[ticksPerWheel];
+
+        /** The last processed tick. */
+        private long processedTick = -1;
+
+        /** The size, read without lock to check compaction. */
+        private volatile int size;
+
+        /** approximate count of entries of completed requests. */
+        private final LongAdder dead = new LongAdder();
+
+        /** expired ids of current tick, only accessed by ticker. */
+        private long[] expired = new long[INITIAL_BUCKET_SIZE];
+
+        /** lock to make sure only one ticker runs at the same time. */
+        private final Object tickLock = new Object();
+
+        /** The executor to tick this shard, {@code null} if not started. */
+        private EventExecutor executor;
+
+        /** The scheduled tick, {@code null} if not scheduled. */
+        private ScheduledFuture<?> ticker;
+
+        /** true if a tick is submitted to executor and not finished. */
+        private boolean ticking;
+
+        /**
+         * Start ticking by executor.
+         *
+         * @param executor the executor
+         */
+        synchronized void start(EventExecutor executor) {
+            this.executor = executor;
+            scheduleTick();
+        }
+
+        /**
+         * Stop ticking.
+         */
+        synchronized void stop() {
+            executor = null;
+            ticking = false;
+            if (ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+        }
+
+        /**
+         * Checks if is ticking.
+         *
+         * @return true, if is ticking
+         */
+        synchronized boolean isTicking() {
+            return ticking;
+        }
+
+        /**
+         * Schedule next tick if started, not ticking yet and there are entries. Must be called with lock held. Ticks
+         * are only scheduled by the executor itself, other threads submit a tick to run at once which wakes up the
+         * executor, as scheduling from other threads may not wake it up in time.
+         */
+        private void scheduleTick() {
+            if (executor == null || ticking || size == 0) {
+                return;
+            }
+            try {
+                if (executor.inEventLoop()) {
+                    ticker = executor.schedule(this, tickNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    executor.execute(this);
+                }
+                ticking = true;
+            } catch (RejectedExecutionException e) {
+                // executor is shutting down
+                LOG.log(Level.FINE, e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Adds the entry.
+         *
+         * @param correlationId the correlation id
+         * @param deadlineTick the deadline tick
+         */
+        synchronized void add(long correlationId, long deadlineTick) {
+            if (size == 0) {
+                // nothing to expire in ticks passed while idle
+                processedTick = Math.max(processedTick, currentTick() - 1);
+            }
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            int bucket = (int) (tick & (ticksPerWheel - 1));
+            int n = sizes[bucket];
+            if (ids[bucket] == null) {
+                ids[bucket] = new long[INITIAL_BUCKET_SIZE];
+                deadlines[bucket] = new long[INITIAL_BUCKET_SIZE];
+            } else if (n == ids[bucket].length) {
+                ids[bucket] = Arrays.copyOf(ids[bucket], n << 1);
+                deadlines[bucket] = Arrays.copyOf(deadlines[bucket], n << 1);
+            }
+            ids[bucket][n] = correlationId;
+            deadlines[bucket][n] = tick;
+            sizes[bucket] = n + 1;
+            size++;
+            scheduleTick();
+        }
+
+        /**
+         * Size.
+         *
+         * @return the size
+         */
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Capacity of buckets.
+         *
+         * @return the capacity
+         */
+        synchronized int capacity() {
+            int capacity = 0;
+            for (long[] bucketIds : ids) {
+                if (bucketIds != null) {
+                    capacity += bucketIds.length;
+                }
+            }
+            return capacity;
+        }
+
+        /**
+         * Shrink bucket if remaining entries are less than 1/4 of its capacity, must be called with lock held.
+         *
+         * @param bucket the bucket
+         * @param remain the remaining entry count
+         */
+        private void trim(int bucket, int remain) {
+            int capacity = ids[bucket].length;
+            if (capacity <= INITIAL_BUCKET_SIZE || remain * 4 >= capacity) {
+                return;
+            }
+            int newCapacity = INITIAL_BUCKET_SIZE;
+            while (newCapacity < remain * 2) {
+                newCapacity <<= 1;
+            }
+            ids[bucket] = Arrays.copyOf(ids[bucket], newCapacity);
+            deadlines[bucket] = Arrays.copyOf(deadlines[bucket], newCapacity);
+        }
+
+        /**
+         * Remove entries of completed requests if they reach half of the shard. Called by ticker, so completion is not
+         * blocked and the cost is shared by completions counted.
+         */
+        private void compactIfNeeded() {
+            long deadCount = dead.sum();
+            if (deadCount < MIN_COMPACT_SIZE || deadCount * 2 < size) {
+                return;
+            }
+            synchronized (this) {
+                // completions during compaction may be lost or counted twice, it only delays or hastens next one
+                dead.reset();
+                int removed = 0;
+                for (int bucket = 0; bucket < ticksPerWheel; bucket++) {
+                    int n = sizes[bucket];
+                    if (n == 0) {
+                        continue;
+                    }
+                    long[] bucketIds = ids[bucket];
+                    long[] bucketDeadlines = deadlines[bucket];
+                    int remain = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (rpcClient.isPendingRequest(bucketIds[i])) {
+                            bucketIds[remain] = bucketIds[i];
+                            bucketDeadlines[remain] = bucketDeadlines[i];
+                            remain++;
+                        }
+                    }
+                    sizes[bucket] = remain;
+                    removed += n - remain;
+                    trim(bucket, remain);
+                }
+                size -= removed;
+            }
+        }
+
+        /**
+         * Move expired entries of the tick to {@link #expired}, entries of later rounds are kept.
+         *
+         * @param tick the tick
+         * @return count of expired entries
+         */
+        private int collect(long tick) {
+            int bucket = (int) (tick & (ticksPerWheel - 1));
+            int n = sizes[bucket];
+            if (n == 0) {
+                return 0;
+            }
+            long[] bucketIds = ids[bucket];
+            long[] bucketDeadlines = deadlines[bucket];
+            if (expired.length < n) {
+                expired = new long[Math.max(n, expired.length << 1)];
+            }
+            int count = 0;
+            int remain = 0;
+            for (int i = 0; i < n; i++) {
+                if (bucketDeadlines[i] <= tick) {
+                    expired[count++] = bucketIds[i];
+                } else {
+                    bucketIds[remain] = bucketIds[i];
+                    bucketDeadlines[remain] = bucketDeadlines[i];
+                    remain++;
+                }
+            }
+            sizes[bucket] = remain;
+            size -= count;
+            // expired entries are either completed already or removed by timeout, which counts them as dead
+            dead.add(-count);
+            trim(bucket, remain);
+            return count;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                expire();
+            } finally {
+                // always schedule next tick, or entries added later never expire
+                synchronized (this) {
+                    ticker = null;
+                    ticking = false;
+                    scheduleTick();
+                }
+            }
+        }
+
+        /**
+         * Expire all ticks until now.
+         */
+        void expire() {
+            synchronized (tickLock) {
+                long now = currentTick();
+                for (;;) {
+                    int count;
+                    synchronized (this) {
+                        if (size == 0) {
+                            processedTick = Math.max(processedTick, now);
+                            break;
+                        }
+                        if (processedTick >= now) {
+                            break;
+                        }
+                        processedTick++;
+                        count = collect(processedTick);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        timeout(expired[i]);
+                    }
+                }
+                compactIfNeeded();
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/**
+ * Copyright (C) 2017 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Task queue of server executor which schedules tasks by weighted fair queuing across priorities and tenants.<br>
+ * Tasks with same priority and tenant are one flow, each flow gets share of task threads in proportion to weight of
+ * its priority, and tasks of one flow are in FIFO order. So tenants of the same priority share threads equally, and
+ * interactive requests of high priority are not queued behind bulk requests of low priority. Start-time fair queuing
+ * is used: each task is tagged by virtual start time on enqueue and the task with least tag is taken first.<br>
+ * Tasks do not implement {@link Task} are treated as {@link #PRIORITY_NORMAL} of empty tenant. Flow is removed once
+ * its tasks are drained, so only flows with queued tasks are kept.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class WeightedFairTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /** priority of bulk requests. */
+    public static final int PRIORITY_LOW = 0;
+
+    /** default priority. */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /** priority of interactive requests. */
+    public static final int PRIORITY_HIGH = 2;
+
+    /** default weights of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} and {@link #PRIORITY_HIGH}. */
+    public static final int[] DEFAULT_WEIGHTS = new int[] { 1, 4, 16 };
+
+    /**
+     * Task scheduled by priority and tenant.
+     */
+    public interface Task extends Runnable {
+
+        /**
+         * Gets the priority, index of weights.
+         *
+         * @return the priority
+         */
+        int getPriority();
+
+        /**
+         * Gets the tenant.
+         *
+         * @return the tenant
+         */
+        String getTenant();
+    }
+
+    /** weights by priority. */
+    private final int[] weights;
+
+    /** The capacity. */
+    private final int capacity;
+
+    /** The lock. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The not empty. */
+    private final Condition notEmpty = lock.newCondition();
+
+    /** The not full. */
+    private final Condition notFull = lock.newCondition();
+
+    /** queued tasks ordered by virtual start time. */
+    private final PriorityQueue<Entry> entries = new PriorityQueue<Entry>();
+
+    /** The flows by tenant, index is priority. */
+    private final List<Map<String, Flow>> flows;
+
+    /** count of flows of all priorities. */
+    private int flowCount;
+
+    /** virtual start time of last taken task. */
+    private double virtualTime;
+
+    /** enqueue sequence to keep FIFO order of same start time. */
+    private long sequence;
+
+    /**
+     * Instantiates a new weighted fair task queue.
+     *
+     * @param weights weights by priority, {@link #DEFAULT_WEIGHTS} is used if empty
+     * @param capacity max queued tasks, {@code 0} means unbounded
+     */
+    public WeightedFairTaskQueue(int[] weights, int capacity) {
+        if (weights == null || weights.length == 0) {
+            weights = DEFAULT_WEIGHTS;
+        }
+        this.weights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) {
+                throw new IllegalArgumentException("weight of priority " + i + " should be greater than 0.");
+            }
+            this.weights[i] = weights[i];
+        }
+        this.flows = new ArrayList<Map<String, Flow>>(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            flows.add(new HashMap<String, Flow>());
+        }
+        this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Queue#offer(java.lang.Object)
+     */
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        int priority = PRIORITY_NORMAL;
+        String tenant = "";
+        if (task instanceof Task) {
+            priority = ((Task) task).getPriority();
+            tenant = ((Task) task).getTenant();
+        }
+        priority = Math.max(0, Math.min(weights.length - 1, priority));
+        if (tenant == null) {
+            tenant = "";
+        }
+
+        lock.lock();
+        try {
+            if (entries.size() >= capacity) {
+                return false;
+            }
+            Map<String, Flow> tenantFlows = flows.get(priority);
+            Flow flow = tenantFlows.get(tenant);
+            if (flow == null) {
+                flow = new Flow(tenant, priority);
+                tenantFlows.put(tenant, flow);
+                flowCount++;
+            }
+            double start = Math.max(virtualTime, flow.finish);
+            flow.finish = start + 1d / weights[priority];
+            flow.pending++;
+            entries.add(new Entry(task, flow, start, sequence++));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the task of least virtual start time, lock should be held.
+     *
+     * @return the runnable
+     */
+    private Runnable dequeue() {
+        Entry entry = entries.poll();
+        virtualTime = entry.start;
+        Flow flow = entry.flow;
+        flow.pending--;
+        if (flow.pending == 0) {
+            // drained flow starts from current virtual time again, at most one slot earlier than its finish time
+            removeFlow(flow);
+        }
+        notFull.signal();
+        return entry.task;
+    }
+
+    /**
+     * Remove the flow, lock should be held.
+     *
+     * @param flow the flow
+     */
+    private void removeFlow(Flow flow) {
+        if (flows.get(flow.priority).remove(flow.tenant) != null) {
+            flowCount--;
+        }
+    }
+
+    /**
+     * Remove the entry, lock should be held.
+     *
+     * @param entry the entry
+     */
+    private void removeEntry(Entry entry) {
+        entries.remove(entry);
+        Flow flow = entry.flow;
+        flow.pending--;
+        if (flow.pending == 0) {
+            removeFlow(flow);
+        }
+        notFull.signal();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Queue#poll()
+     */
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return entries.isEmpty() ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#take()
+     */
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (entries.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+     */
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!offer(task)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!offer(task)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Queue#peek()
+     */
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Entry entry = entries.peek();
+            return entry == null ? null : entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (Entry entry : entries) {
+                if (o.equals(entry.task)) {
+                    removeEntry(entry);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+     */
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+     */
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+     */
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && !entries.isEmpty()) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of queued tasks in no particular order. Removal by iterator removes the task
+     * from this queue.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        lock.lock();
+        try {
+            for (Entry entry : entries) {
+                snapshot.add(entry.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        final Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<Runnable>() {
+
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                WeightedFairTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Gets the queued task count by priority.
+     *
+     * @return the queued task count, index is priority
+     */
+    public int[] getQueuedCounts() {
+        int[] ret = new int[weights.length];
+        lock.lock();
+        try {
+            for (int i = 0; i < ret.length; i++) {
+                for (Flow flow : flows.get(i).values()) {
+                    ret[i] += flow.pending;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the count of flows, for test only.
+     *
+     * @return the flow count
+     */
+    int getFlowCount() {
+        lock.lock();
+        try {
+            return flowCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tasks with same priority and tenant.
+     */
+    private static class Flow {
+
+        /** The tenant. */
+        private final String tenant;
+
+        /** The priority. */
+        private final int priority;
+
+        /** virtual finish time of last enqueued task. */
+        private double finish;
+
+        /** The pending task count. */
+        private int pending;
+
+        /**
+         * Instantiates a new flow.
+         *
+         * @param tenant the tenant
+         * @param priority the priority
+         */
+        Flow(String tenant, int priority) {
+            this.tenant = tenant;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Queued task.
+     */
+    private static class Entry implements Comparable<Entry> {
+
+        /** The task. */
+        private final Runnable task;
+
+        /** The flow. */
+        private final Flow flow;
+
+        /** The virtual start time. */
+        private final double start;
+
+        /** The sequence. */
+        private final long sequence;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param task the task
+         * @param flow the flow
+         * @param start the start
+         * @param sequence the sequence
+         */
+        Entry(Runnable task, Flow flow, double start, long sequence) {
+            this.task = task;
+            this.flow = flow;
+            this.start = start;
+            this.sequence = sequence;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(Entry o) {
+            int ret = Double.compare(start, o.start);
+            if (ret != 0) {
+                return ret;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+}
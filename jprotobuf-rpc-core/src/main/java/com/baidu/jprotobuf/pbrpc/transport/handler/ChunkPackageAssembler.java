@@ -0,0 +1,270 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * Assemble chunk packages of one channel by stream id. Chunk data is collected into a {@link CompositeByteBuf} without
+ * copy, so memory used is linear to total received size.<br>
+ * This class is not thread safe, it should only be accessed from the event loop of its channel.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ChunkPackageAssembler {
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(ChunkPackageAssembler.class.getName());
+
+    /** total bytes held by all assemblers. */
+    private static final AtomicLong TOTAL_HELD_BYTES = new AtomicLong();
+
+    /** max data size of one chunk stream. */
+    private final int maxStreamSize;
+
+    /** The streams. */
+    private final Map<Long, ChunkStream> streams = new HashMap<Long, ChunkStream>();
+
+    /**
+     * time of last dropped chunk by stream id discarded, remain chunks will be dropped until final chunk arrived or
+     * stream is silent longer than timeout.
+     */
+    private final Map<Long, Long> discardedStreams = new HashMap<Long, Long>();
+
+    /** bytes held by this assembler. */
+    private volatile long heldBytes;
+
+    /**
+     * Instantiates a new chunk package assembler.
+     *
+     * @param maxStreamSize max data size of one chunk stream
+     */
+    public ChunkPackageAssembler(int maxStreamSize) {
+        this.maxStreamSize = maxStreamSize <= 0 ? Integer.MAX_VALUE : maxStreamSize;
+    }
+
+    /**
+     * Add a chunk package. Data of the package will be moved to the stream buffer.
+     *
+     * @param alloc the allocator
+     * @param dataPackage the chunk package
+     * @return assembled package if final chunk arrived, else return {@code null}
+     * @throws TooLongFrameException if stream data size exceed max stream size
+     */
+    public RpcDataPackage assemble(ByteBufAllocator alloc, RpcDataPackage dataPackage) throws TooLongFrameException {
+        Long streamId = dataPackage.getChunkStreamId();
+        boolean finalPackage = dataPackage.isFinalPackage();
+
+        if (discardedStreams.containsKey(streamId)) {
+            dataPackage.release();
+            if (finalPackage) {
+                discardedStreams.remove(streamId);
+            } else {
+                discardedStreams.put(streamId, System.currentTimeMillis());
+            }
+            return null;
+        }
+
+        ChunkStream stream = streams.get(streamId);
+        if (stream == null) {
+            stream = new ChunkStream(dataPackage, alloc.compositeBuffer(Integer.MAX_VALUE));
+            streams.put(streamId, stream);
+        }
+
+        ByteBuf chunk = dataPackage.detachDataBuf();
+        if (stream.first != dataPackage) {
+            // only data is used for following chunks
+            dataPackage.release();
+        }
+
+        if (chunk != null) {
+            int size = chunk.readableBytes();
+            if ((long) stream.data.readableBytes() + size > maxStreamSize) {
+                chunk.release();
+                remove(streamId);
+                if (!finalPackage) {
+                    discardedStreams.put(streamId, System.currentTimeMillis());
+                }
+                throw new TooLongFrameException("chunk stream size exceeds " + maxStreamSize + " streamId:" + streamId);
+            }
+            stream.data.addComponent(true, chunk);
+            addHeldBytes(size);
+        }
+
+        if (!finalPackage) {
+            return null;
+        }
+
+        streams.remove(streamId);
+        addHeldBytes(-stream.data.readableBytes());
+
+        RpcDataPackage ret = stream.first;
+        ret.chunkInfo(streamId, -1);
+        ret.setDataBuf(stream.data);
+        return ret;
+    }
+
+    /**
+     * Clean up streams which wait longer than timeout, and discarded stream ids of which no chunk arrived in timeout.
+     *
+     * @param timeout the timeout in ms
+     * @return count of streams cleaned
+     */
+    public int expire(long timeout) {
+        if (streams.isEmpty() && discardedStreams.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Long> discardedIter = discardedStreams.values().iterator();
+        while (discardedIter.hasNext()) {
+            if (discardedIter.next() + timeout < now) {
+                discardedIter.remove();
+            }
+        }
+
+        int count = 0;
+        Iterator<Entry<Long, ChunkStream>> iter = streams.entrySet().iterator();
+        while (iter.hasNext()) {
+            Entry<Long, ChunkStream> entry = iter.next();
+            ChunkStream stream = entry.getValue();
+            if (stream.first.getTimeStamp() + timeout < now) {
+                iter.remove();
+                stream.release();
+                discardedStreams.put(entry.getKey(), now);
+                count++;
+                LOG.log(Level.SEVERE, "Found chunk package time out long than " + timeout
+                        + "(ms) will clean up correlationId:" + stream.first.getRpcMeta().getCorrelationId());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Release all streams held.
+     */
+    public void release() {
+        Iterator<ChunkStream> iter = streams.values().iterator();
+        while (iter.hasNext()) {
+            iter.next().release();
+            iter.remove();
+        }
+        discardedStreams.clear();
+    }
+
+    /**
+     * Removes and releases target stream.
+     *
+     * @param streamId the stream id
+     */
+    private void remove(Long streamId) {
+        ChunkStream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.release();
+        }
+    }
+
+    /**
+     * Adds the held bytes.
+     *
+     * @param size the size
+     */
+    private void addHeldBytes(long size) {
+        heldBytes += size;
+        TOTAL_HELD_BYTES.addAndGet(size);
+    }
+
+    /**
+     * Gets the bytes held by this assembler.
+     *
+     * @return the held bytes
+     */
+    public long getHeldBytes() {
+        return heldBytes;
+    }
+
+    /**
+     * Gets the count of streams in assembling.
+     *
+     * @return the stream count
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * Gets the count of discarded stream ids waiting for final chunk.
+     *
+     * @return the discarded stream count
+     */
+    public int getDiscardedStreamCount() {
+        return discardedStreams.size();
+    }
+
+    /**
+     * Gets the bytes held by all assemblers.
+     *
+     * @return the total held bytes
+     */
+    public static long getTotalHeldBytes() {
+        return TOTAL_HELD_BYTES.get();
+    }
+
+    /**
+     * The Class ChunkStream.
+     */
+    private class ChunkStream {
+
+        /** the first chunk package, meta and attachment is taken from it. */
+        private final RpcDataPackage first;
+
+        /** The data. */
+        private final CompositeByteBuf data;
+
+        /**
+         * Instantiates a new chunk stream.
+         *
+         * @param first the first
+         * @param data the data
+         */
+        ChunkStream(RpcDataPackage first, CompositeByteBuf data) {
+            this.first = first;
+            this.data = data;
+        }
+
+        /**
+         * Release.
+         */
+        void release() {
+            addHeldBytes(-data.readableBytes());
+            data.release();
+            first.release();
+        }
+    }
+}
@@ -40,6 +40,32 @@ public class ErrorCodes {
     public static final String MSG_READ_TIMEOUT =
             "method request time out, please check 'onceTalkTimeout' property. current value is:";
 
+    /** request cancelled by caller. */
+    public static final int ST_CANCELLED = 125;
+
+    /** cancelled message. */
+    public static final String MSG_CANCELLED = "request cancelled by caller";
+
+    /** request rejected for task threads and waiting queue of server are full. */
+    public static final int ST_OVERLOADED = 2004;
+
+    /** overloaded message. */
+    public static final String MSG_OVERLOADED = "server overloaded, request rejected by bulkhead:";
+
+    /** concurrency limited message. */
+    public static final String MSG_CONCURRENCY_LIMITED = "server overloaded, request rejected by concurrency limit of:";
+
+    /**
+     * check if the request is rejected before handled by server, so it is safe to retry on other server.
+     *
+     * @param errorCode the error code
+     * @return true, if is retryable
+     * @since 4.2.3
+     */
+    public static boolean isRetryable(Integer errorCode) {
+        return errorCode != null && errorCode == ST_OVERLOADED;
+    }
+
     /**
      * check is error code is equals to ST_SUCCESS.
      *
@@ -65,6 +65,8 @@ public class RpcClientServiceHandler extends SimpleChannelInboundHandler<RpcData
         }
 
         if (!ErrorCodes.isSuccess(errorCode)) {
+            // response data is not used on error
+            dataPackage.release();
             if (state != null) {
                 String error = response.getErrorText();
                 if (includeRemoteServerInfoOnError) {
@@ -80,6 +82,8 @@ public class RpcClientServiceHandler extends SimpleChannelInboundHandler<RpcData
             if (state != null) {
                 state.setDataPackage(dataPackage);
                 state.handleResponse(state.getDataPackage());
+            } else {
+                dataPackage.release();
             }
         }
         ctx.fireChannelReadComplete();
@@ -18,18 +18,23 @@ package com.baidu.jprotobuf.pbrpc.transport.handler;
 
 import java.util.List;
 
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
 import com.baidu.jprotobuf.pbrpc.compress.Compress;
-import com.baidu.jprotobuf.pbrpc.compress.GZipCompress;
-import com.baidu.jprotobuf.pbrpc.compress.SnappyCompress;
+import com.baidu.jprotobuf.pbrpc.compress.CompressRegistry;
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
 import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.baidu.jprotobuf.pbrpc.data.RpcRequestMeta;
+import com.baidu.jprotobuf.pbrpc.utils.ServiceSignatureUtils;
 
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 
 /**
- * Do data compress handler.
+ * Do data compress handler. Data smaller than compress threshold or compress type not supported by local will be
+ * sent without compress, and compress type of meta is changed to {@link RpcMeta#COMPRESS_NO}.<br>
+ * If {@link AdaptiveCompressPolicy} is set, compress is also turned on or off by observed compress result of each method
+ * and payload size.
  *
  * @author xiemalin
  * @since 1.4
@@ -38,6 +43,39 @@ import io.netty.handler.codec.MessageToMessageEncoder;
 public class RpcDataPackageCompressHandler extends
 		MessageToMessageEncoder<RpcDataPackage> {
 
+	/** data size less than this will not be compressed. */
+	private final int compressThreshold;
+
+	/** The adaptive compress policy. */
+	private final AdaptiveCompressPolicy adaptiveCompressPolicy;
+
+	/**
+	 * Instantiates a new rpc data package compress handler.
+	 */
+	public RpcDataPackageCompressHandler() {
+		this(0);
+	}
+
+	/**
+	 * Instantiates a new rpc data package compress handler.
+	 *
+	 * @param compressThreshold data size less than this will not be compressed
+	 */
+	public RpcDataPackageCompressHandler(int compressThreshold) {
+		this(compressThreshold, null);
+	}
+
+	/**
+	 * Instantiates a new rpc data package compress handler.
+	 *
+	 * @param compressThreshold data size less than this will not be compressed
+	 * @param adaptiveCompressPolicy the adaptive compress policy, {@code null} to always compress
+	 */
+	public RpcDataPackageCompressHandler(int compressThreshold, AdaptiveCompressPolicy adaptiveCompressPolicy) {
+		this.compressThreshold = compressThreshold;
+		this.adaptiveCompressPolicy = adaptiveCompressPolicy;
+	}
+
 	/* (non-Javadoc)
 	 * @see io.netty.handler.codec.MessageToMessageEncoder#encode(io.netty.channel.ChannelHandlerContext, java.lang.Object, java.util.List)
 	 */
@@ -47,20 +85,61 @@ public class RpcDataPackageCompressHandler extends
 		RpcDataPackage dataPackage = msg;
 
 		// check if do compress
-		Integer compressType = dataPackage.getRpcMeta().getCompressType();
-		Compress compress = null;
-		if (compressType == RpcMeta.COMPERESS_GZIP) {
-			compress = new GZipCompress();
-		} else if (compressType == RpcMeta.COMPRESS_SNAPPY) {
-		    compress = new SnappyCompress();
-		}
-
-		if (compress != null) {
+		RpcMeta rpcMeta = dataPackage.getRpcMeta();
+		Integer compressType = rpcMeta.getCompressType();
+		if (compressType != RpcMeta.COMPRESS_NO) {
+			Compress compress = CompressRegistry.getCompress(compressType);
 			byte[] data = dataPackage.getData();
-			data = compress.compress(data);
-			dataPackage.data(data);
+			if (compress == null || data == null || data.length < compressThreshold) {
+				rpcMeta.setCompressType(RpcMeta.COMPRESS_NO);
+			} else if (adaptiveCompressPolicy == null) {
+				dataPackage.data(compress.compress(data));
+			} else {
+				String serviceSignature = getServiceSignature(rpcMeta);
+				if (adaptiveCompressPolicy.shouldCompress(serviceSignature, data.length)) {
+					long start = System.nanoTime();
+					byte[] compressed = compress.compress(data);
+					adaptiveCompressPolicy.record(serviceSignature, data.length, compressed.length,
+							System.nanoTime() - start);
+					dataPackage.data(compressed);
+				} else {
+					rpcMeta.setCompressType(RpcMeta.COMPRESS_NO);
+				}
+			}
 		}
 		out.add(dataPackage);
 	}
 
+	/**
+	 * Gets the service signature of request meta.
+	 *
+	 * @param rpcMeta the rpc meta
+	 * @return the service signature
+	 */
+	private static String getServiceSignature(RpcMeta rpcMeta) {
+		RpcRequestMeta request = rpcMeta.getRequest();
+		if (request == null) {
+			return ServiceSignatureUtils.makeSignature(null, null);
+		}
+		return ServiceSignatureUtils.makeSignature(request.getServiceName(), request.getMethodName());
+	}
+
+	/**
+	 * Gets the compress threshold.
+	 *
+	 * @return the compress threshold
+	 */
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	/**
+	 * Gets the adaptive compress policy.
+	 *
+	 * @return the adaptive compress policy
+	 */
+	public AdaptiveCompressPolicy getAdaptiveCompressPolicy() {
+		return adaptiveCompressPolicy;
+	}
+
 }
@@ -16,16 +16,9 @@
 
 package com.baidu.jprotobuf.pbrpc.transport.handler;
 
-import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,9 +29,12 @@ import com.baidu.jprotobuf.pbrpc.data.RpcHeadMeta;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 /**
- * Decode RpcDataPackage from received bytes.
+ * Decode RpcDataPackage from received bytes. Frame length and magic code are checked by peeking head in place, so no
+ * frame decoder is needed before this.
  *
  * @author xiemalin
  * @see RpcDataPackage
@@ -49,21 +45,55 @@ public class RpcDataPackageDecoder extends ByteToMessageDecoder {
     /** Default chunk package wait time out check interval. */
     private static final int DEFAULT_CLEANUP_INTERVAL = 1000;
 
+    /** offset of message size field in head. */
+    private static final int MESSAGE_SIZE_OFFSET = 4;
+
     /** The log. */
     private static Logger LOG = Logger.getLogger(RpcDataPackageDecoder.class.getName());
     
-    /** The Constant tempTrunkPackages. */
-    private static final Map<Long, RpcDataPackage> tempTrunkPackages = new ConcurrentHashMap<Long, RpcDataPackage>();
+    /** chunk package assembler of current channel. */
+    private final ChunkPackageAssembler chunkPackageAssembler;
+    
+    /** The chunk package timeout. */
+    private final int chunkPackageTimeout;
+    
+    /** The chunk package clean up future. */
+    private ScheduledFuture<?> cleanUpFuture;
     
-    /** The Constant startChunkPackageCleanUp. */
-    private static final AtomicBoolean startChunkPackageCleanUp = new AtomicBoolean(false);
+    /** if true data and attachment will be held as retained buffer slices instead of byte array copy. */
+    private boolean zeroCopy = false;
     
-    /** The es. */
-    private static ExecutorService es;
+    /** max frame size include head. */
+    private int maxSize = Integer.MAX_VALUE;
     
-    /** The stop chunk package timeout clean. */
-    private static boolean stopChunkPackageTimeoutClean = false;
+    /** bytes remain to discard of a bad frame. */
+    private long bytesToDiscard;
+    
+    /** The magic code. */
+    private final byte[] magicCode = ProtocolConstant.MAGIC_CODE.getBytes(ProtocolConstant.CHARSET);
+    
+    /**
+     * Instantiates a new rpc data package decoder.
+     *
+     * @param chunkPackageTimeout the chunk package timeout
+     * @param zeroCopy if true decode data and attachment as retained buffer slices
+     * @param chunkPackageMaxSize max data size of a chunk stream
+     */
+    public RpcDataPackageDecoder(int chunkPackageTimeout, boolean zeroCopy, int chunkPackageMaxSize) {
+        this.chunkPackageTimeout = chunkPackageTimeout;
+        this.zeroCopy = zeroCopy;
+        this.chunkPackageAssembler = new ChunkPackageAssembler(chunkPackageMaxSize);
+    }
     
+    /**
+     * Instantiates a new rpc data package decoder.
+     *
+     * @param chunkPackageTimeout the chunk package timeout
+     * @param zeroCopy if true decode data and attachment as retained buffer slices
+     */
+    public RpcDataPackageDecoder(final int chunkPackageTimeout, boolean zeroCopy) {
+        this(chunkPackageTimeout, zeroCopy, Integer.MAX_VALUE);
+    }
     
     /**
      * Instantiates a new rpc data package decoder.
@@ -71,49 +101,38 @@ public class RpcDataPackageDecoder extends ByteToMessageDecoder {
      * @param chunkPackageTimeout the chunk package timeout
      */
     public RpcDataPackageDecoder(final int chunkPackageTimeout) {
+        this(chunkPackageTimeout, false);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.netty.channel.ChannelHandlerAdapter#handlerAdded(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        super.handlerAdded(ctx);
         if (chunkPackageTimeout <= 0) {
             return;
         }
         
-        // only start once OK
-        if (startChunkPackageCleanUp.compareAndSet(false, true)) {
-            es = Executors.newSingleThreadExecutor();
-            es.execute(new Runnable() {
-                
-                public void run() {
-                    while (!stopChunkPackageTimeoutClean) {
-                        
-                        if (!tempTrunkPackages.isEmpty()) {
-                            
-                            Map<Long, RpcDataPackage> currentCheckPackage;
-                            currentCheckPackage = new HashMap<Long, RpcDataPackage>(tempTrunkPackages);
-                            
-                            Iterator<Entry<Long, RpcDataPackage>> iter = currentCheckPackage.entrySet().iterator();
-                            while (iter.hasNext()) {
-                                Entry<Long, RpcDataPackage> entry = iter.next();
-                                
-                                if (entry.getValue().getTimeStamp() + chunkPackageTimeout > System.currentTimeMillis()) {
-                                    // get time out chunk package, do clean action
-                                    tempTrunkPackages.remove(entry.getValue());
-                                    LOG.log(Level.SEVERE, "Found chunk package time out long than " + chunkPackageTimeout
-                                            + "(ms) will clean up correlationId:"
-                                            + entry.getValue().getRpcMeta().getCorrelationId());
-                                }
-                            }
-                        }
-                        
-                        try {
-                            Thread.sleep(DEFAULT_CLEANUP_INTERVAL);
-                        } catch (Exception e) {
-                            LOG.log(Level.SEVERE, e.getMessage(), e);
-                        }
-                        
-                    }
-                    
-                }
-            });
-        }
-        
+        // check time out chunk package in channel's event loop, so assembler need no lock
+        cleanUpFuture = ctx.executor().scheduleWithFixedDelay(new Runnable() {
+            
+            public void run() {
+                chunkPackageAssembler.expire(chunkPackageTimeout);
+            }
+        }, DEFAULT_CLEANUP_INTERVAL, DEFAULT_CLEANUP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.netty.handler.codec.ByteToMessageDecoder#handlerRemoved0(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        close();
     }
     
 	/* (non-Javadoc)
@@ -146,6 +165,11 @@ public class RpcDataPackageDecoder extends ByteToMessageDecoder {
      */
     protected Object decode(ChannelHandlerContext ctx, ByteBuf buf) throws Exception {
 
+        if (bytesToDiscard > 0) {
+            discard(buf);
+            return null;
+        }
+
         // Make sure if the length field was received.
         if (buf.readableBytes() < RpcHeadMeta.SIZE) {
             // The length field was not received yet - return null.
@@ -154,94 +178,125 @@ public class RpcDataPackageDecoder extends ByteToMessageDecoder {
             return null;
         }
 
-        // The length field is in the buffer.
-
-        // Mark the current buffer position before reading the length field
-        // because the whole frame might not be in the buffer yet.
-        // We will reset the buffer position to the marked position if
-        // there's not enough bytes in the buffer.
-        buf.markReaderIndex();
-
-        // Read the RPC head
+        // The length field is in the buffer. peek it without moving reader index
         long rpcMessageDecoderStart = System.nanoTime();
-        ByteBuffer buffer = buf.nioBuffer(buf.readerIndex(), RpcHeadMeta.SIZE);
-
-        byte[] bytes = new byte[RpcHeadMeta.SIZE];
-        buffer.get(bytes);
-
-        RpcHeadMeta headMeta = new RpcHeadMeta();
-        headMeta.read(bytes);
+        int readerIndex = buf.readerIndex();
+        long frameSize = (long) buf.getInt(readerIndex + MESSAGE_SIZE_OFFSET) + RpcHeadMeta.SIZE;
+        if (frameSize < RpcHeadMeta.SIZE) {
+            throw new CorruptedFrameException("negative message size:" + (frameSize - RpcHeadMeta.SIZE));
+        }
+        if (frameSize > maxSize) {
+            bytesToDiscard = frameSize;
+            discard(buf);
+            throw new TooLongFrameException("frame size exceeds " + maxSize + ": " + frameSize + " - discarded");
+        }
 
-        // get total message size
-        int messageSize = headMeta.getMessageSize() + RpcHeadMeta.SIZE;
+        // check magic code
+        if (!isMagicCode(buf, readerIndex)) {
+            byte[] bytes = new byte[magicCode.length];
+            buf.getBytes(readerIndex, bytes);
+            bytesToDiscard = frameSize;
+            discard(buf);
+            throw new Exception("Error magic code:" + new String(bytes, ProtocolConstant.CHARSET));
+        }
 
         // Make sure if there's enough bytes in the buffer.
-        if (buf.readableBytes() < messageSize) {
+        if (buf.readableBytes() < frameSize) {
             // The whole bytes were not received yet - return null.
             // This method will be invoked again when more packets are
             // received and appended to the buffer.
-
-            // Reset to the marked position to read the length field again
-            // next time.
-            buf.resetReaderIndex();
-
             return null;
         }
+        int messageSize = (int) frameSize;
 
-        // check magic code
-        String magicCode = headMeta.getMagicCodeAsString();
-        if (!ProtocolConstant.MAGIC_CODE.equals(magicCode)) {
-            throw new Exception("Error magic code:" + magicCode);
-        }
         // There's enough bytes in the buffer. Read it.
-        byte[] totalBytes = new byte[messageSize];
-        buf.readBytes(totalBytes, 0, messageSize);
-
         RpcDataPackage rpcDataPackage = new RpcDataPackage();
         rpcDataPackage.setTimeStamp(System.currentTimeMillis());
-        rpcDataPackage.read(totalBytes);
+        if (zeroCopy) {
+            rpcDataPackage.read(buf);
+        } else {
+            byte[] totalBytes = new byte[messageSize];
+            buf.readBytes(totalBytes, 0, messageSize);
+            rpcDataPackage.read(totalBytes);
+        }
         
         // check if a chunk package
         if (rpcDataPackage.isChunkPackage()) {
-            
-            Long chunkStreamId = rpcDataPackage.getChunkStreamId();
-            
-            RpcDataPackage chunkDataPackage = tempTrunkPackages.get(chunkStreamId);
-            if (chunkDataPackage == null) {
-                chunkDataPackage = rpcDataPackage;
-                tempTrunkPackages.put(chunkStreamId, rpcDataPackage);
-            } else {
-                chunkDataPackage.mergeData(rpcDataPackage.getData());
-            }
-            
-            if (rpcDataPackage.isFinalPackage()) {
-                chunkDataPackage.chunkInfo(chunkStreamId, -1);
-                tempTrunkPackages.remove(chunkStreamId);
-                
-                return chunkDataPackage;
-            }
-            
-            return null;
+            return chunkPackageAssembler.assemble(ctx.alloc(), rpcDataPackage);
         }
 
-        long rpcMessageDecoderEnd = System.nanoTime();
-        LOG.log(Level.FINE, "[profiling] nshead decode cost : " + (rpcMessageDecoderEnd - rpcMessageDecoderStart)
-                / 1000);
+        if (LOG.isLoggable(Level.FINE)) {
+            long rpcMessageDecoderEnd = System.nanoTime();
+            LOG.log(Level.FINE, "[profiling] nshead decode cost : "
+                    + (rpcMessageDecoderEnd - rpcMessageDecoderStart) / 1000);
+        }
 
         return rpcDataPackage;
     }
 
     /**
-     * Close.
+     * Checks if frame at index starts with magic code.
+     *
+     * @param buf the buf
+     * @param index the index
+     * @return true, if is magic code
      */
-    public void close() {
-        stopChunkPackageTimeoutClean = true;
-        if (es != null) {
-            es.shutdown();
+    private boolean isMagicCode(ByteBuf buf, int index) {
+        for (int i = 0; i < magicCode.length; i++) {
+            if (buf.getByte(index + i) != magicCode[i]) {
+                return false;
+            }
         }
-        
+        return true;
+    }
+
+    /**
+     * Discard bytes of a bad frame.
+     *
+     * @param buf the buf
+     */
+    private void discard(ByteBuf buf) {
+        int size = (int) Math.min(bytesToDiscard, buf.readableBytes());
+        buf.skipBytes(size);
+        bytesToDiscard -= size;
+    }
+
+    /**
+     * Gets the max frame size.
+     *
+     * @return the max frame size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the max frame size. frame exceeds will be discarded and {@link TooLongFrameException} thrown.
+     *
+     * @param maxSize the new max frame size
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
     }
 
+    /**
+     * Gets the chunk package assembler.
+     *
+     * @return the chunk package assembler
+     */
+    public ChunkPackageAssembler getChunkPackageAssembler() {
+        return chunkPackageAssembler;
+    }
 
+    /**
+     * Close and release all chunk packages in assembling.
+     */
+    public void close() {
+        if (cleanUpFuture != null) {
+            cleanUpFuture.cancel(false);
+            cleanUpFuture = null;
+        }
+        chunkPackageAssembler.release();
+    }
 
 }
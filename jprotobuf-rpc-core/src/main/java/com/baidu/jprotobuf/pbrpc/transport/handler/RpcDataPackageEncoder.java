@@ -17,11 +17,11 @@
 package com.baidu.jprotobuf.pbrpc.transport.handler;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +43,9 @@ public class RpcDataPackageEncoder extends
 	/** The chunk size. */
 	private long chunkSize = -1;
 
+	/** stream id generator of chunk packages. */
+	private AtomicLong chunkStreamIdGenerator = new AtomicLong(1);
+
 	/**
 	 * Gets the chunk size.
 	 *
@@ -76,6 +79,17 @@ public class RpcDataPackageEncoder extends
 		this.chunkSize = chunkSize;
 	}
 
+	/**
+	 * Instantiates a new rpc data package encoder.
+	 *
+	 * @param chunkSize the chunk size
+	 * @param chunkStreamIdGenerator stream id generator of chunk packages
+	 */
+	public RpcDataPackageEncoder(long chunkSize, AtomicLong chunkStreamIdGenerator) {
+		this.chunkSize = chunkSize;
+		this.chunkStreamIdGenerator = chunkStreamIdGenerator;
+	}
+
 	/* (non-Javadoc)
 	 * @see io.netty.handler.codec.MessageToMessageEncoder#encode(io.netty.channel.ChannelHandlerContext, java.lang.Object, java.util.List)
 	 */
@@ -85,27 +99,30 @@ public class RpcDataPackageEncoder extends
 
 		RpcDataPackage dataPackage = msg;
 
-		byte[] encodeBytes = dataPackage.write();
-		if (encodeBytes != null) {
-			LOG.log(Level.FINE, "Client send content byte size:"
-					+ encodeBytes.length);
-		} else {
-			throw new Exception("byte is null from dataPackage");
-		}
-
-		ByteBuf encodedMessage = Unpooled.copiedBuffer(encodeBytes);
-
 		if (chunkSize < 0) {
-			out.add(encodedMessage);
+			out.add(encode(ctx, dataPackage));
 			return ;
 		}
 
-		List<RpcDataPackage> list = dataPackage.chunk(chunkSize);
-		for (RpcDataPackage rpcDataPackage : list) {
-			encodeBytes = rpcDataPackage.write();
-			encodedMessage = Unpooled.copiedBuffer(encodeBytes);
-			out.add(encodedMessage);
+		List<ByteBuf> list = dataPackage.chunk(ctx.alloc(), chunkSize,
+				chunkStreamIdGenerator.getAndIncrement());
+		out.addAll(list);
+	}
+
+	/**
+	 * Encode package into a pooled buffer from channel allocator.
+	 *
+	 * @param ctx the ctx
+	 * @param dataPackage the data package
+	 * @return the byte buf
+	 */
+	private ByteBuf encode(ChannelHandlerContext ctx, RpcDataPackage dataPackage) {
+		ByteBuf encodedMessage = dataPackage.write(ctx.alloc());
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.log(Level.FINE, "Client send content byte size:"
+					+ encodedMessage.readableBytes());
 		}
+		return encodedMessage;
 	}
 
 }
@@ -16,14 +16,15 @@
 
 package com.baidu.jprotobuf.pbrpc.transport.handler;
 
+import java.io.IOException;
 import java.util.List;
 
+import com.baidu.jprotobuf.pbrpc.compress.ByteBufCompress;
 import com.baidu.jprotobuf.pbrpc.compress.Compress;
-import com.baidu.jprotobuf.pbrpc.compress.GZipCompress;
-import com.baidu.jprotobuf.pbrpc.compress.SnappyCompress;
+import com.baidu.jprotobuf.pbrpc.compress.CompressRegistry;
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
-import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageDecoder;
@@ -52,14 +53,16 @@ public class RpcDataPackageUnCompressHandler extends MessageToMessageDecoder<Rpc
         try {
             // check if do compress
             Integer compressType = dataPackage.getRpcMeta().getCompressType();
-            Compress compress = null;
-            if (compressType == RpcMeta.COMPERESS_GZIP) {
-                compress = new GZipCompress();
-            } else if (compressType == RpcMeta.COMPRESS_SNAPPY) {
-                compress = new SnappyCompress();
+            Compress compress = CompressRegistry.getCompress(compressType);
+            if (compress == null && !CompressRegistry.isSupported(compressType)) {
+                throw new IOException("unsupported compress type " + compressType);
             }
 
-            if (compress != null) {
+            if (compress instanceof ByteBufCompress && dataPackage.getDataBuf() != null) {
+                // uncompress from buffer directly to avoid heap copy
+                ByteBuf data = dataPackage.getDataBuf();
+                dataPackage.setDataBuf(((ByteBufCompress) compress).unCompress(data, ctx.alloc()));
+            } else if (compress != null) {
                 byte[] data = dataPackage.getData();
                 data = compress.unCompress(data);
                 dataPackage.data(data);
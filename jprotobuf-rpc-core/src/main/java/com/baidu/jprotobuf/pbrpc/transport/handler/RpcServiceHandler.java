@@ -17,7 +17,18 @@
 package com.baidu.jprotobuf.pbrpc.transport.handler;
 
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,14 +37,19 @@ import com.baidu.jprotobuf.pbrpc.RpcHandler;
 import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
 import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
 import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.baidu.jprotobuf.pbrpc.data.RpcRequestMeta;
 import com.baidu.jprotobuf.pbrpc.data.Trace;
 import com.baidu.jprotobuf.pbrpc.data.TraceContext;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter;
 import com.baidu.jprotobuf.pbrpc.server.RpcData;
 import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
 import com.baidu.jprotobuf.pbrpc.server.RpcServiceRegistry;
+import com.baidu.jprotobuf.pbrpc.transport.Bulkhead;
 import com.baidu.jprotobuf.pbrpc.transport.ExceptionCatcher;
 import com.baidu.jprotobuf.pbrpc.transport.RpcErrorMessage;
+import com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue;
 import com.baidu.jprotobuf.pbrpc.utils.LogIdThreadLocalHolder;
+import com.baidu.jprotobuf.pbrpc.utils.ServiceSignatureUtils;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -61,12 +77,132 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
         this.es = es;
     }
 
+    /** task executors by service name or service signature, shared one is named {@link Bulkhead#DEFAULT_NAME}. */
+    private Map<String, Bulkhead> bulkheads = Collections.emptyMap();
+
+    /**
+     * Sets the bulkheads. Request is executed by bulkhead of its service signature, or service name, or the shared one
+     * named {@link Bulkhead#DEFAULT_NAME}, and rejected with {@link ErrorCodes#ST_OVERLOADED} if the bulkhead is full.
+     *
+     * @param bulkheads the bulkheads
+     * @since 4.2.3
+     */
+    public void setBulkheads(Map<String, Bulkhead> bulkheads) {
+        this.bulkheads = bulkheads == null ? Collections.<String, Bulkhead> emptyMap() : bulkheads;
+    }
+
+    /** limits in-flight requests of each method, {@code null} if disabled. */
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Sets the concurrency limiter. Request exceeds in-flight limit of its method is rejected at once with
+     * {@link ErrorCodes#ST_OVERLOADED}. Only methods registered in {@link RpcServiceRegistry} are limited, request of
+     * unknown method is answered with {@link ErrorCodes#ST_SERVICE_NOTFOUND} without touching the limiter.
+     *
+     * @param concurrencyLimiter the new concurrency limiter
+     * @since 4.2.3
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /** priority by service name or service signature, used if request has no priority. */
+    private Map<String, Integer> priorities = Collections.emptyMap();
+
+    /**
+     * Sets the priorities by service name or service signature. It is used to schedule request without priority if task
+     * executor is queued by {@link WeightedFairTaskQueue}.
+     *
+     * @param priorities the priorities
+     * @since 4.2.3
+     */
+    public void setPriorities(Map<String, Integer> priorities) {
+        this.priorities = priorities == null ? Collections.<String, Integer> emptyMap() : priorities;
+    }
+
+    /** service names or service signatures run inline at io thread. */
+    private Set<String> nonBlockingServices = Collections.emptySet();
+
+    /**
+     * Sets the non blocking services by service name or service signature. Their requests run inline at current io
+     * thread without thread hop and queueing of task executor.
+     *
+     * @param nonBlockingServices the non blocking services
+     * @since 4.2.3
+     */
+    public void setNonBlockingServices(Set<String> nonBlockingServices) {
+        this.nonBlockingServices = nonBlockingServices == null ? Collections.<String> emptySet()
+                : nonBlockingServices;
+    }
+
     /** {@link RpcServiceRegistry}. */
     private final RpcServiceRegistry rpcServiceRegistry;
 
     /** The exception catcher. */
     private ExceptionCatcher exceptionCatcher;
-    
+
+    /** if true responses are written in batch and flushed once per batch. */
+    private boolean batchFlush;
+
+    /** true if channel read is in progress, responses written inline will be flushed on read complete. */
+    private boolean reading;
+
+    /** true if responses are written inline but not flushed. */
+    private boolean flushPending;
+
+    /** responses written outside of event loop, drained by one event loop task. */
+    private final Queue<RpcDataPackage> responses = new ConcurrentLinkedQueue<RpcDataPackage>();
+
+    /** true if drain task of {@link #responses} is scheduled. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /** The ctx. */
+    private volatile ChannelHandlerContext ctx;
+
+    /** if true the running task is interrupted on cancel request. */
+    private boolean interruptOnCancel;
+
+    /** tasks submitted to executor and not finished, key is correlation id. */
+    private final ConcurrentMap<Long, BackgroundTask> tasks = new ConcurrentHashMap<Long, BackgroundTask>();
+
+    /** The drain task. */
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduled.set(false);
+            RpcDataPackage response;
+            int count = 0;
+            while ((response = responses.poll()) != null) {
+                ctx.write(response);
+                count++;
+            }
+            if (count > 0) {
+                ctx.flush();
+            }
+        }
+    };
+
+    /**
+     * Sets the batch flush. if true responses are written in batch and flushed once per batch.
+     *
+     * @param batchFlush the new batch flush
+     * @since 4.2.3
+     */
+    public void setBatchFlush(boolean batchFlush) {
+        this.batchFlush = batchFlush;
+    }
+
+    /**
+     * Sets the interrupt on cancel. if true the running task is interrupted on cancel request, else only the task not
+     * started is skipped.
+     *
+     * @param interruptOnCancel the new interrupt on cancel
+     * @since 4.2.3
+     */
+    public void setInterruptOnCancel(boolean interruptOnCancel) {
+        this.interruptOnCancel = interruptOnCancel;
+    }
+
     /**
      * Instantiates a new rpc service handler.
      *
@@ -78,6 +214,16 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
         this.exceptionCatcher = exceptionCatcher;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.netty.channel.ChannelHandlerAdapter#handlerAdded(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -86,16 +232,185 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
      */
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, RpcDataPackage dataPackage) throws Exception {
-        BackgroundTask task = new BackgroundTask(ctx, dataPackage, rpcServiceRegistry, exceptionCatcher);
+        reading = true;
+        RpcMeta rpcMeta = dataPackage.getRpcMeta();
+        if (rpcMeta != null && rpcMeta.getRequest() != null
+                && Boolean.TRUE.equals(rpcMeta.getRequest().getCancel())) {
+            cancelTask(rpcMeta.getCorrelationId());
+            dataPackage.release();
+            return;
+        }
+
+        // expired request is dropped when task runs, after it waited in queue
+        BackgroundTask task = new BackgroundTask(this, ctx, dataPackage, rpcServiceRegistry, exceptionCatcher);
+
+        if (concurrencyLimiter != null && rpcMeta != null && rpcMeta.getRequest() != null) {
+            RpcRequestMeta request = rpcMeta.getRequest();
+            if (rpcServiceRegistry.lookupService(request.getServiceName(), request.getMethodName()) == null) {
+                // unknown method, no limit is created for names sent by client
+                task.run();
+                return;
+            }
+            String signature = ServiceSignatureUtils.makeSignature(request.getServiceName(), request.getMethodName());
+            if (!concurrencyLimiter.tryAcquire(signature)) {
+                rejectTask(ctx, dataPackage, ErrorCodes.MSG_CONCURRENCY_LIMITED + signature);
+                return;
+            }
+            task.limitSignature = signature;
+            task.arrivedNanos = System.nanoTime();
+        }
+
+        if (isNonBlocking(rpcMeta)) {
+            task.run(); // declared non blocking, run at current thread
+            return;
+        }
 
-        if (es != null) {
+        Bulkhead bulkhead = lookupBulkhead(rpcMeta);
+        if (bulkhead != null || es != null) {
             // run by async way
-            es.submit(task);
+            Long correlationId = rpcMeta == null ? null : rpcMeta.getCorrelationId();
+            if (correlationId != null) {
+                task.correlationId = correlationId;
+                tasks.put(correlationId, task);
+            }
+            boolean accepted = true;
+            try {
+                if (bulkhead != null) {
+                    accepted = bulkhead.tryExecute(task);
+                } else {
+                    es.submit(task);
+                }
+            } catch (RuntimeException e) {
+                if (correlationId != null) {
+                    tasks.remove(correlationId, task);
+                }
+                task.releasePermit(false);
+                throw e;
+            }
+            if (!accepted) {
+                if (correlationId != null) {
+                    tasks.remove(correlationId, task);
+                }
+                task.releasePermit(false);
+                rejectTask(ctx, dataPackage, ErrorCodes.MSG_OVERLOADED + bulkhead.getName());
+            }
         } else {
             task.run(); // run at current thread
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.netty.channel.ChannelInboundHandlerAdapter#channelReadComplete(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        reading = false;
+        if (flushPending) {
+            flushPending = false;
+            ctx.flush();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * Checks if request is of non blocking service or method.
+     *
+     * @param rpcMeta the rpc meta
+     * @return true, if is non blocking
+     */
+    private boolean isNonBlocking(RpcMeta rpcMeta) {
+        if (nonBlockingServices.isEmpty()) {
+            return false;
+        }
+        RpcRequestMeta request = rpcMeta == null ? null : rpcMeta.getRequest();
+        if (request == null) {
+            return false;
+        }
+        return nonBlockingServices.contains(request.getServiceName()) || nonBlockingServices
+                .contains(ServiceSignatureUtils.makeSignature(request.getServiceName(), request.getMethodName()));
+    }
+
+    /**
+     * Lookup bulkhead by service signature, service name and then the shared one.
+     *
+     * @param rpcMeta the rpc meta
+     * @return the bulkhead, {@code null} if not found
+     */
+    private Bulkhead lookupBulkhead(RpcMeta rpcMeta) {
+        if (bulkheads.isEmpty()) {
+            return null;
+        }
+        RpcRequestMeta request = rpcMeta == null ? null : rpcMeta.getRequest();
+        if (request != null) {
+            Bulkhead bulkhead = bulkheads
+                    .get(ServiceSignatureUtils.makeSignature(request.getServiceName(), request.getMethodName()));
+            if (bulkhead == null) {
+                bulkhead = bulkheads.get(request.getServiceName());
+            }
+            if (bulkhead != null) {
+                return bulkhead;
+            }
+        }
+        return bulkheads.get(Bulkhead.DEFAULT_NAME);
+    }
+
+    /**
+     * Reject the request at once with {@link ErrorCodes#ST_OVERLOADED}.
+     *
+     * @param ctx the ctx
+     * @param dataPackage the data package
+     * @param errorText the error text
+     */
+    private void rejectTask(ChannelHandlerContext ctx, RpcDataPackage dataPackage, String errorText) {
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Reject request, " + errorText);
+        }
+        dataPackage.release();
+        RpcDataPackage response = dataPackage.getErrorResponseRpcDataPackage(ErrorCodes.ST_OVERLOADED, errorText);
+        writeResponse(ctx, response);
+    }
+
+    /**
+     * Cancel the task of the correlation id if it is not finished. The task not started is skipped, and the running
+     * one is interrupted if {@link #interruptOnCancel} is true. Request run in event loop can not be cancelled.
+     *
+     * @param correlationId the correlation id
+     */
+    private void cancelTask(Long correlationId) {
+        if (correlationId == null) {
+            return;
+        }
+        BackgroundTask task = tasks.remove(correlationId);
+        if (task != null) {
+            task.cancel(interruptOnCancel);
+        }
+    }
+
+    /**
+     * Write response. If batch flush is enabled, response written inline by channel read is flushed on read complete,
+     * and responses written by other threads are queued and flushed in batch by one event loop task.
+     *
+     * @param ctx the ctx
+     * @param response the response
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcDataPackage response) {
+        if (!batchFlush) {
+            ctx.writeAndFlush(response);
+            return;
+        }
+        if (ctx.executor().inEventLoop() && reading) {
+            ctx.write(response);
+            flushPending = true;
+            return;
+        }
+        responses.offer(response);
+        if (drainScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(drainTask);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -134,7 +449,10 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
     /**
      * The Class BackgroundTask.
      */
-    private static class BackgroundTask implements Runnable {
+    private static class BackgroundTask implements WeightedFairTaskQueue.Task {
+
+        /** The service handler to write response. */
+        private RpcServiceHandler serviceHandler;
 
         /** The ctx. */
         private ChannelHandlerContext ctx;
@@ -147,20 +465,153 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
 
         private ExceptionCatcher exceptionCatcher;
 
+        /** deadline by remaining timeout of caller, 0 if no deadline. */
+        private long deadline;
+
+        /** correlation id if the task is tracked for cancel, else {@code null}. */
+        private Long correlationId;
+
+        /** true if cancelled by caller. */
+        private volatile boolean cancelled;
+
+        /** the thread running the task. */
+        private Thread runner;
+
+        /** guards {@link #runner}, not monitor to avoid pinning of virtual thread. */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** service signature if permit of concurrency limiter is acquired, else {@code null}. */
+        private String limitSignature;
+
+        /** nano time when request arrived, to record latency to concurrency limiter. */
+        private long arrivedNanos;
+
         /**
          * Instantiates a new background task.
          *
+         * @param serviceHandler the service handler to write response
          * @param ctx the ctx
          * @param dataPackage the data package
          * @param rpcServiceRegistry the rpc service registry
          */
-        public BackgroundTask(ChannelHandlerContext ctx, RpcDataPackage dataPackage,
+        public BackgroundTask(RpcServiceHandler serviceHandler, ChannelHandlerContext ctx, RpcDataPackage dataPackage,
                 RpcServiceRegistry rpcServiceRegistry, ExceptionCatcher exceptionCatcher) {
             super();
+            this.serviceHandler = serviceHandler;
             this.ctx = ctx;
             this.dataPackage = dataPackage;
             this.rpcServiceRegistry = rpcServiceRegistry;
             this.exceptionCatcher = exceptionCatcher;
+
+            RpcMeta rpcMeta = dataPackage.getRpcMeta();
+            if (rpcMeta != null && rpcMeta.getRequest() != null && rpcMeta.getRequest().getTimeout() != null) {
+                this.deadline = System.currentTimeMillis() + rpcMeta.getRequest().getTimeout();
+            }
+        }
+
+        /**
+         * Drop request if caller has already given up waiting.
+         *
+         * @return true, if dropped
+         */
+        private boolean dropIfExpired() {
+            if (deadline <= 0 || System.currentTimeMillis() < deadline) {
+                return false;
+            }
+            if (dataPackage.getRpcMeta().getResponse() != null) {
+                Integer errorCode = dataPackage.getRpcMeta().getResponse().getErrorCode();
+                if (errorCode != null && errorCode > 0) {
+                    // error response should be sent
+                    return false;
+                }
+            }
+            if (LOG.isLoggable(Level.FINE)) {
+                RpcRequestMeta request = dataPackage.getRpcMeta().getRequest();
+                LOG.fine("Drop expired request of service name '" + request.getServiceName() + "' and methodName '"
+                        + request.getMethodName() + "'");
+            }
+            dataPackage.release();
+            return true;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue.Task#getPriority()
+         */
+        @Override
+        public int getPriority() {
+            RpcMeta rpcMeta = dataPackage.getRpcMeta();
+            RpcRequestMeta request = rpcMeta == null ? null : rpcMeta.getRequest();
+            if (request == null) {
+                return WeightedFairTaskQueue.PRIORITY_NORMAL;
+            }
+            if (request.getPriority() != null) {
+                return request.getPriority();
+            }
+            Map<String, Integer> priorities = serviceHandler.priorities;
+            if (!priorities.isEmpty()) {
+                Integer priority = priorities
+                        .get(ServiceSignatureUtils.makeSignature(request.getServiceName(), request.getMethodName()));
+                if (priority == null) {
+                    priority = priorities.get(request.getServiceName());
+                }
+                if (priority != null) {
+                    return priority;
+                }
+            }
+            return WeightedFairTaskQueue.PRIORITY_NORMAL;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue.Task#getTenant()
+         */
+        @Override
+        public String getTenant() {
+            RpcMeta rpcMeta = dataPackage.getRpcMeta();
+            RpcRequestMeta request = rpcMeta == null ? null : rpcMeta.getRequest();
+            if (request != null && request.getTenant() != null) {
+                return request.getTenant();
+            }
+            // requests without tenant are shared by client host
+            SocketAddress address = ctx.channel().remoteAddress();
+            if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+                return ((InetSocketAddress) address).getAddress().getHostAddress();
+            }
+            return String.valueOf(address);
+        }
+
+        /**
+         * Release permit of concurrency limiter if acquired.
+         *
+         * @param handled true if request is handled, so latency is recorded
+         */
+        private void releasePermit(boolean handled) {
+            if (limitSignature == null) {
+                return;
+            }
+            serviceHandler.concurrencyLimiter.release(limitSignature,
+                    handled ? System.nanoTime() - arrivedNanos : -1L);
+            limitSignature = null;
+        }
+
+        /**
+         * Cancel the task.
+         *
+         * @param interrupt if true interrupt the running thread
+         */
+        private void cancel(boolean interrupt) {
+            lock.lock();
+            try {
+                cancelled = true;
+                if (interrupt && runner != null) {
+                    runner.interrupt();
+                }
+            } finally {
+                lock.unlock();
+            }
         }
 
         /*
@@ -170,14 +621,53 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
          */
         @Override
         public void run() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.fine("Skip request cancelled by caller, correlationId:" + correlationId);
+                    }
+                    dataPackage.release();
+                    releasePermit(false);
+                    return;
+                }
+                runner = Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                handle();
+            } finally {
+                releasePermit(true);
+                lock.lock();
+                try {
+                    runner = null;
+                } finally {
+                    lock.unlock();
+                }
+                if (correlationId != null) {
+                    // clear interrupt status by cancel before the thread is reused
+                    Thread.interrupted();
+                    serviceHandler.tasks.remove(correlationId, this);
+                }
+            }
+        }
+
+        /**
+         * Handle the request and write response.
+         */
+        private void handle() {
             long time = System.currentTimeMillis();
+            if (dropIfExpired()) {
+                return;
+            }
 
             if (dataPackage.getRpcMeta().getResponse() != null) {
                 Integer errorCode = dataPackage.getRpcMeta().getResponse().getErrorCode();
                 if (errorCode != null && errorCode > 0) {
                     dataPackage.data(null);
                     dataPackage.attachment(null);
-                    ctx.writeAndFlush(dataPackage);
+                    serviceHandler.writeResponse(ctx, dataPackage);
                     return;
                 }
             }
@@ -196,7 +686,8 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
                 copy.errorCode(ErrorCodes.ST_SUCCESS);
                 copy.data(null);
                 copy.attachment(null);
-                ctx.writeAndFlush(copy);
+                dataPackage.release();
+                serviceHandler.writeResponse(ctx, copy);
                 
                 return;
             }
@@ -205,6 +696,9 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
             // set log id to holder
             LogIdThreadLocalHolder.setLogId(logId);
             RpcServiceHandleContext.setChannelHandlerContext(ctx);
+            if (deadline > 0) {
+                RpcServiceHandleContext.setDeadline(deadline);
+            }
             try {
                 RpcHandler handler = rpcServiceRegistry.lookupService(serviceName, methodName);
                 if (handler == null) {
@@ -262,10 +756,14 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
                 // We know the encoder inserted at TelnetPipelineFactory will do
                 // the
                 // conversion.
-                if (!asyncMode) {
-                    ctx.writeAndFlush(dataPackage);
+                if (cancelled) {
+                    // caller has given up, no response
+                    dataPackage.release();
+                } else if (!asyncMode) {
+                    serviceHandler.writeResponse(ctx, dataPackage);
                 }
             } catch (Exception t) {
+                dataPackage.release();
                 ErrorDataException exception = new ErrorDataException(t.getMessage(), t);
                 exception.setErrorCode(ErrorCodes.ST_ERROR);
                 exception.setRpcDataPackage(dataPackage);
@@ -276,6 +774,8 @@ public class RpcServiceHandler extends SimpleChannelInboundHandler<RpcDataPackag
 
                 LogIdThreadLocalHolder.clearLogId();
                 RpcServiceHandleContext.clearChannelHandlerContext();
+                RpcServiceHandleContext.clearDeadline();
+                TraceContext.clearTrace();
             }
         }
 
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Coalesce flushes of encoded packages. Flush is delayed until the coalescing delay passed or pending bytes reach the
+ * max bytes, so small packages written in the delay are sent in one write. Bytes on the wire are not changed.<br>
+ * This handler should be placed between head and encoder, and can not be shared between channels.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcWriteCoalescingHandler extends ChannelDuplexHandler {
+
+    /** The delay in microseconds. */
+    private final long delay;
+
+    /** The max bytes, no limit if not greater than 0. */
+    private final int maxBytes;
+
+    /** The bytes written but not flushed. */
+    private long pendingBytes;
+
+    /** true if flush is requested but not done. */
+    private boolean flushPending;
+
+    /** The scheduled flush. */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /** The ctx. */
+    private ChannelHandlerContext ctx;
+
+    /** The flush task. */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduledFlush = null;
+            if (flushPending) {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    /**
+     * Instantiates a new rpc write coalescing handler.
+     *
+     * @param delay the max delay in microseconds of flush
+     * @param maxBytes flush at once if pending bytes reach this size, no limit if not greater than 0
+     */
+    public RpcWriteCoalescingHandler(long delay, int maxBytes) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("param 'delay' should be greater than 0.");
+        }
+        this.delay = delay;
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelHandlerAdapter#handlerAdded(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelDuplexHandler#write(io.netty.channel.ChannelHandlerContext, java.lang.Object,
+     * io.netty.channel.ChannelPromise)
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufHolder) {
+            pendingBytes += ((ByteBufHolder) msg).content().readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelDuplexHandler#flush(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushPending = true;
+        if (maxBytes > 0 && pendingBytes >= maxBytes) {
+            flushNow(ctx);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = ctx.executor().schedule(flushTask, delay, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelInboundHandlerAdapter#channelWritabilityChanged(io.netty.channel.
+     * ChannelHandlerContext)
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable() && flushPending) {
+            // outbound buffer is full, no more data to wait for
+            flushNow(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelDuplexHandler#disconnect(io.netty.channel.ChannelHandlerContext,
+     * io.netty.channel.ChannelPromise)
+     */
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfPending(ctx);
+        ctx.disconnect(promise);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelDuplexHandler#close(io.netty.channel.ChannelHandlerContext,
+     * io.netty.channel.ChannelPromise)
+     */
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfPending(ctx);
+        ctx.close(promise);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.netty.channel.ChannelHandlerAdapter#handlerRemoved(io.netty.channel.ChannelHandlerContext)
+     */
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfPending(ctx);
+    }
+
+    /**
+     * Flush if there is pending flush.
+     *
+     * @param ctx the ctx
+     */
+    private void flushIfPending(ChannelHandlerContext ctx) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+
+    /**
+     * Flush now and cancel scheduled flush.
+     *
+     * @param ctx the ctx
+     */
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pendingBytes = 0;
+        flushPending = false;
+        ctx.flush();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Utility class for virtual thread, which is looked up by reflection as it is only supported since JDK 21.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class VirtualThreadUtils {
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(VirtualThreadUtils.class.getName());
+
+    /** method Thread.ofVirtual(), {@code null} if not supported. */
+    private static final Method OF_VIRTUAL;
+
+    /** method Thread.Builder.name(String, long). */
+    private static final Method BUILDER_NAME;
+
+    /** method Thread.Builder.factory(). */
+    private static final Method BUILDER_FACTORY;
+
+    /** method Executors.newThreadPerTaskExecutor(ThreadFactory). */
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    /** method Thread.isVirtual(). */
+    private static final Method IS_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        Method isVirtual = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            isVirtual = Thread.class.getMethod("isVirtual");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            // preview API of JDK 19 and 20 throws exception here if preview is not enabled
+            ofVirtual.invoke(null);
+        } catch (Throwable e) {
+            LOG.log(Level.FINE, "Virtual thread is not supported by current JVM", e);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    /**
+     * Checks if virtual thread is supported by current JVM.
+     *
+     * @return true, if is supported
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Checks if the thread is a virtual thread.
+     *
+     * @param thread the thread
+     * @return true, if is virtual
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (!isSupported()) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @param namePrefix the name prefix of virtual threads
+     * @return the executor service, {@code null} if virtual thread is not supported
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to create virtual thread executor", e);
+            return null;
+        }
+    }
+
+}
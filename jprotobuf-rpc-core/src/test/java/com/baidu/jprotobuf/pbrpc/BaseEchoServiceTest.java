@@ -117,7 +117,7 @@ public abstract class BaseEchoServiceTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(port);
+        rpcServer.startSync(port);
         
         return rpcServer;
     }
@@ -131,7 +131,7 @@ public abstract class BaseEchoServiceTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
     }
     
     protected void stopServer() {
@@ -58,7 +58,7 @@ public class BusinessExceptionTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
         
         RpcClientOptions options = getRpcClientOptions();
         if (options == null) {
@@ -100,7 +100,7 @@ public class BusinessExceptionTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
     }
     
     /**
@@ -50,7 +50,7 @@ public class DynamiceEchoServiceTest {
         Method sMethod = EchoServiceImpl.class.getDeclaredMethod("doEchoDynamic", new Class[] { EchoInfo.class });
 
         rpcServer.registerDynamicService(serviceSignature, sMethod, echoImpl, DummyServerAttachmentHandler.class);
-        rpcServer.start(port);
+        rpcServer.startSync(port);
 
         RpcClient rpcClient = new RpcClient();
 
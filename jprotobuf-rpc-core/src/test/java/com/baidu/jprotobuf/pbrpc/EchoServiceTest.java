@@ -16,6 +16,8 @@
 
 package com.baidu.jprotobuf.pbrpc;
 
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -24,7 +26,9 @@ import org.junit.Test;
 
 import com.baidu.jprotobuf.pbrpc.data.Trace;
 import com.baidu.jprotobuf.pbrpc.data.TraceContext;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
 import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
 import com.baidu.jprotobuf.pbrpc.utils.SleepUtils;
 import com.baidu.jprotobuf.pbrpc.utils.TalkTimeoutController;
 
@@ -194,6 +198,41 @@ public class EchoServiceTest extends BaseEchoServiceTest {
 
     }
 
+    @Test
+    public void testAyncCallCancel() throws Exception {
+        EchoInfo echoInfo = getEchoInfo();
+        rpcClient.getRpcClientOptions().setSendCancelRequest(true);
+
+        Future<EchoInfo> echoAsync = echoService.echoAsync(echoInfo);
+        if (echoAsync.cancel(true)) {
+            Assert.assertTrue(echoAsync.isCancelled());
+            Assert.assertTrue(echoAsync.isDone());
+            try {
+                echoAsync.get();
+                Assert.fail("Should throw cancellation exception here");
+            } catch (CancellationException e) {
+                Assert.assertNotNull(e);
+            }
+        } else {
+            // response arrived before cancel
+            Assert.assertFalse(echoAsync.isCancelled());
+            Assert.assertNotNull(echoAsync.get());
+        }
+        // cancel during transport is done by connection callback
+        for (int i = 0; i < 100 && rpcClient.getPendingRequestCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+
+        CompletableFuture<EchoInfo> echo3Async = echoService.echo3Async(echoInfo);
+        echo3Async.cancel(true);
+        try {
+            echo3Async.get();
+        } catch (CancellationException e) {
+            Assert.assertTrue(echo3Async.isCancelled());
+        }
+    }
+
     @Test
     public void testDynamiceTalkTimeout() {
         EchoInfo echoInfo = getEchoInfo();
@@ -209,6 +248,34 @@ public class EchoServiceTest extends BaseEchoServiceTest {
 
     }
 
+    @Test
+    public void testDeadlineExceeded() throws Exception {
+        EchoInfo echoInfo = getEchoInfo();
+        RpcServiceHandleContext.setDeadline(System.currentTimeMillis() - 1);
+        try {
+            try {
+                echoService.echo(echoInfo);
+                Assert.fail("Should fail by deadline exceeded");
+            } catch (UndeclaredThrowableException e) {
+                ErrorDataException cause = (ErrorDataException) e.getUndeclaredThrowable();
+                Assert.assertEquals(ErrorCodes.ST_READ_TIMEOUT, cause.getErrorCode());
+            }
+
+            // async call fails by future instead of throw
+            Future<EchoInfo> echoAsync = echoService.echoAsync(echoInfo);
+            Assert.assertTrue(echoAsync.isDone());
+            try {
+                echoAsync.get();
+                Assert.fail("Should fail by deadline exceeded");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof ErrorDataException);
+            }
+            Assert.assertTrue(echoService.echo3Async(echoInfo).isCompletedExceptionally());
+        } finally {
+            RpcServiceHandleContext.clearDeadline();
+        }
+    }
+
     @Test
     public void testByteArrayInputParam() {
         EchoInfo echoInfo = getEchoInfo();
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.client.ProtobufRpcProxy;
+import com.baidu.jprotobuf.pbrpc.compress.Compress;
+import com.baidu.jprotobuf.pbrpc.compress.CompressRegistry;
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClient;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClientOptions;
+import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
+
+/**
+ * Test case for LZ4 compress type override by client options and adaptive compress.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class Lz4EchoServiceTest extends EchoServiceTest {
+
+    /** compress type can be sent but can not be uncompressed by peer. */
+    private static final int BROKEN_COMPRESS_TYPE = 99;
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.BaseEchoServiceTest#getRpcClientOptions()
+     */
+    @Override
+    protected RpcClientOptions getRpcClientOptions() {
+        RpcClientOptions rpcClientOptions = new RpcClientOptions();
+        rpcClientOptions.setCompressType("echoService", "echoGzip", RpcMeta.COMPRESS_LZ4);
+        rpcClientOptions.setCompressType("echoService", "echoSnappy", RpcMeta.COMPRESS_LZ4);
+        rpcClientOptions.setCompressThreshold(16);
+        rpcClientOptions.setAdaptiveCompress(true);
+        return rpcClientOptions;
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.BaseEchoServiceTest#getRpcServerOptions()
+     */
+    @Override
+    protected RpcServerOptions getRpcServerOptions() {
+        RpcServerOptions rpcServerOptions = new RpcServerOptions();
+        rpcServerOptions.setAdaptiveCompress(true);
+        return rpcServerOptions;
+    }
+
+    @Test
+    public void testFallbackCompressType() {
+        CompressRegistry.register(BROKEN_COMPRESS_TYPE, new Compress() {
+            public byte[] compress(byte[] array) throws IOException {
+                return array;
+            }
+
+            public byte[] unCompress(byte[] array) throws IOException {
+                throw new IOException("unsupported compress type");
+            }
+        });
+        RpcClientOptions rpcClientOptions = new RpcClientOptions();
+        rpcClientOptions.setCompressType("echoService", "echo2", BROKEN_COMPRESS_TYPE);
+        RpcClient client = new RpcClient(rpcClientOptions);
+        ProtobufRpcProxy<EchoService> proxy = new ProtobufRpcProxy<EchoService>(client, EchoService.class);
+        proxy.setPort(PORT);
+        try {
+            EchoService service = proxy.proxy();
+            EchoInfo echoInfo = new EchoInfo();
+            echoInfo.setMessage("xiemalin");
+            try {
+                service.echo(echoInfo);
+                Assert.fail("should fail by compress error");
+            } catch (Exception e) {
+                Throwable cause = e instanceof ErrorDataException ? e : e.getCause();
+                Assert.assertTrue(cause instanceof ErrorDataException);
+                Assert.assertEquals(ErrorCodes.ST_ERROR_COMPRESS, ((ErrorDataException) cause).getErrorCode());
+            }
+
+            // falls back to no compress
+            Assert.assertEquals(new EchoServiceImpl().doEcho(echoInfo).getMessage(), service.echo(echoInfo).getMessage());
+        } finally {
+            proxy.close();
+            client.stop();
+            CompressRegistry.unregister(BROKEN_COMPRESS_TYPE);
+        }
+    }
+}
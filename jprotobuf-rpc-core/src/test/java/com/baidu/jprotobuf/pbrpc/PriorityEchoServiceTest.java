@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.transport.RpcClientOptions;
+import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+import com.baidu.jprotobuf.pbrpc.transport.WeightedFairTaskQueue;
+
+/**
+ * Test case for requests scheduled by priority and tenant.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class PriorityEchoServiceTest extends BaseEchoServiceTest {
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.BaseEchoServiceTest#getRpcServerOptions()
+     */
+    @Override
+    protected RpcServerOptions getRpcServerOptions() {
+        RpcServerOptions rpcServerOptions = new RpcServerOptions();
+        rpcServerOptions.setPriorityScheduling(true);
+        rpcServerOptions.setPriority("echoService", WeightedFairTaskQueue.PRIORITY_LOW);
+        return rpcServerOptions;
+    }
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.BaseEchoServiceTest#getRpcClientOptions()
+     */
+    @Override
+    protected RpcClientOptions getRpcClientOptions() {
+        RpcClientOptions rpcClientOptions = new RpcClientOptions();
+        rpcClientOptions.setPriority("echoService", "echo2", WeightedFairTaskQueue.PRIORITY_HIGH);
+        rpcClientOptions.setTenant("test");
+        return rpcClientOptions;
+    }
+
+    @Test
+    public void testEcho() {
+        Assert.assertTrue(rpcServer.getEs().getQueue() instanceof WeightedFairTaskQueue);
+
+        EchoInfo echoInfo = new EchoInfo();
+        echoInfo.setMessage("xiemalin");
+        EchoInfo response = echoService.echo(echoInfo);
+        Assert.assertEquals(new EchoServiceImpl().doEcho(echoInfo).getMessage(), response.getMessage());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.transport.RpcServerOptions;
+import com.baidu.jprotobuf.pbrpc.utils.VirtualThreadUtils;
+
+/**
+ * Test case for requests run in virtual threads, or task threads if virtual thread is not supported by JVM.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class VirtualThreadEchoServiceTest extends EchoServiceTest {
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.EchoServiceTest#getRpcServerOptions()
+     */
+    @Override
+    protected RpcServerOptions getRpcServerOptions() {
+        RpcServerOptions rpcServerOptions = super.getRpcServerOptions();
+        rpcServerOptions.setVirtualThreadTask(true);
+        rpcServerOptions.setTaskTheads(4);
+        return rpcServerOptions;
+    }
+
+    @Test
+    public void testTaskExecutor() {
+        if (VirtualThreadUtils.isSupported()) {
+            Assert.assertNotNull(rpcServer.getVirtualThreadExecutor());
+            Assert.assertNull(rpcServer.getEs());
+        } else {
+            // fall back to task threads
+            Assert.assertNull(rpcServer.getVirtualThreadExecutor());
+            Assert.assertNotNull(rpcServer.getEs());
+            Assert.assertNull(VirtualThreadUtils.newVirtualThreadPerTaskExecutor("test-"));
+            Assert.assertFalse(VirtualThreadUtils.isVirtual(Thread.currentThread()));
+        }
+    }
+}
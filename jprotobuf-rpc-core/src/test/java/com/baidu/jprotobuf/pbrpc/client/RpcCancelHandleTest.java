@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+import com.baidu.jprotobuf.pbrpc.transport.BlockingRpcCallback;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClient;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClientCallState;
+import com.baidu.jprotobuf.pbrpc.transport.RpcClientOptions;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
+
+/**
+ * Test class for {@link RpcCancelHandle}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcCancelHandleTest {
+
+    /** The rpc client. */
+    private RpcClient rpcClient;
+
+    @Before
+    public void setUp() {
+        rpcClient = new RpcClient(new RpcClientOptions());
+    }
+
+    @After
+    public void tearDown() {
+        RpcCancelHandle.setCurrent(null);
+        rpcClient.stop();
+    }
+
+    /**
+     * Register a pending request.
+     *
+     * @param id the correlation id
+     * @return the callback
+     */
+    private BlockingRpcCallback register(long id) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.getRpcMeta().setCorrelationId(id);
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        rpcClient.registerPendingRequest(id, new RpcClientCallState(callback, dataPackage, 10000L));
+        return callback;
+    }
+
+    @Test
+    public void testCancelRegistered() throws Exception {
+        final BlockingRpcCallback callback = register(1L);
+        final RpcCancelHandle handle = new RpcCancelHandle();
+        handle.register(rpcClient, 1L);
+
+        // cancelled by other thread
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                handle.cancel();
+            }
+        });
+        thread.start();
+        Assert.assertTrue(callback.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(ErrorCodes.ST_CANCELLED,
+                callback.getMessage().getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertTrue(handle.isCancelled());
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+        thread.join();
+    }
+
+    @Test
+    public void testRegisterAfterCancel() {
+        RpcCancelHandle handle = new RpcCancelHandle();
+        Assert.assertFalse(handle.cancel());
+
+        BlockingRpcCallback callback = register(2L);
+        handle.register(rpcClient, 2L);
+        Assert.assertTrue(callback.isDone());
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+    }
+
+    @Test
+    public void testCurrent() {
+        Assert.assertNull(RpcCancelHandle.getCurrent());
+        RpcCancelHandle handle = new RpcCancelHandle();
+        RpcCancelHandle.setCurrent(handle);
+        Assert.assertSame(handle, RpcCancelHandle.getCurrent());
+        RpcCancelHandle.setCurrent(null);
+        Assert.assertNull(RpcCancelHandle.getCurrent());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy.BucketStatus;
+
+/**
+ * Test class for {@link AdaptiveCompressPolicy}
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class AdaptiveCompressPolicyTest {
+
+    @Test
+    public void testBucketIndex() {
+        Assert.assertEquals(0, AdaptiveCompressPolicy.getBucketIndex(0));
+        Assert.assertEquals(0, AdaptiveCompressPolicy.getBucketIndex(1023));
+        Assert.assertEquals(1, AdaptiveCompressPolicy.getBucketIndex(1024));
+        Assert.assertEquals(AdaptiveCompressPolicy.BUCKET_COUNT - 1,
+                AdaptiveCompressPolicy.getBucketIndex(Integer.MAX_VALUE));
+        Assert.assertEquals("<1K", AdaptiveCompressPolicy.getBucketName(0));
+        Assert.assertEquals(">=256K", AdaptiveCompressPolicy.getBucketName(AdaptiveCompressPolicy.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void testTurnOffAndProbe() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy();
+        policy.setWindowSize(4);
+        policy.setProbeInterval(8);
+        policy.setMinCompressSpeed(0);
+
+        // incompressible small payloads
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(policy.shouldCompress("s!m", 100));
+            policy.record("s!m", 100, 110, 1000);
+        }
+        int compressed = 0;
+        for (int i = 0; i < 80; i++) {
+            if (policy.shouldCompress("s!m", 100)) {
+                compressed++;
+            }
+        }
+        Assert.assertEquals(10, compressed);
+
+        // other bucket of same method is not affected
+        Assert.assertTrue(policy.shouldCompress("s!m", 100000));
+
+        // payloads become compressible
+        for (int i = 0; i < 4; i++) {
+            policy.record("s!m", 100, 50, 1000);
+        }
+        Assert.assertTrue(policy.shouldCompress("s!m", 100));
+
+        Map<String, BucketStatus[]> status = policy.getStatus();
+        BucketStatus bucketStatus = status.get("s!m")[0];
+        Assert.assertTrue(bucketStatus.isEnabled());
+        Assert.assertEquals(0.5d, bucketStatus.getRatio(), 0.0001d);
+        Assert.assertEquals(8, bucketStatus.getSamples());
+        Assert.assertNull(status.get("s!m")[1]);
+    }
+
+    @Test
+    public void testTurnOffBySpeed() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy();
+        policy.setWindowSize(1);
+        policy.setMinCompressSpeed(10);
+
+        // 1MB compressed in 1 second
+        policy.record("s!m", 1024 * 1024, 1024, 1000000000L);
+        Assert.assertFalse(policy.getStatus().get("s!m")[AdaptiveCompressPolicy.BUCKET_COUNT - 1].isEnabled());
+    }
+
+    @Test
+    public void testMaxSignatures() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy();
+        policy.setMaxSignatures(2);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(policy.shouldCompress("s!m" + i, 100));
+            policy.record("s!m" + i, 100, 110, 1000);
+        }
+        Map<String, BucketStatus[]> status = policy.getStatus();
+        Assert.assertEquals(2, status.size());
+        Assert.assertTrue(status.containsKey("s!m0"));
+        Assert.assertTrue(status.containsKey("s!m1"));
+    }
+}
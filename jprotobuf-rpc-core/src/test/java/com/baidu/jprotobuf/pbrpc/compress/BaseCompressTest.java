@@ -17,6 +17,13 @@ package com.baidu.jprotobuf.pbrpc.compress;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -68,4 +75,36 @@ public abstract class BaseCompressTest {
         
         assertResult(longText.toString());
     }
+    
+    @Test
+    public void testSharedInstanceConcurrent() throws Exception {
+        final Compress compress = createCompress();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 4; i++) {
+                final int n = i;
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        for (int j = 0; j < 200; j++) {
+                            StringBuilder text = new StringBuilder();
+                            for (int k = 0; k < (n + 1) * j; k++) {
+                                text.append("中国欢迎你！ hello ").append(k);
+                            }
+                            byte[] bytes = text.toString().getBytes("utf-8");
+                            if (!Arrays.equals(bytes, compress.unCompress(compress.compress(bytes)))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+
+/**
+ * Test class for {@link CompressRegistry}
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class CompressRegistryTest {
+
+    @Test
+    public void testGetCompress() {
+        Assert.assertNull(CompressRegistry.getCompress(RpcMeta.COMPRESS_NO));
+        Assert.assertNull(CompressRegistry.getCompress(null));
+        Assert.assertTrue(CompressRegistry.getCompress(RpcMeta.COMPRESS_SNAPPY) instanceof SnappyCompress);
+        Assert.assertTrue(CompressRegistry.getCompress(RpcMeta.COMPERESS_GZIP) instanceof GZipCompress);
+        Assert.assertTrue(CompressRegistry.getCompress(RpcMeta.COMPRESS_LZ4) instanceof Lz4Compress);
+        Assert.assertEquals(ZstdCompress.isAvailable(), CompressRegistry.isSupported(RpcMeta.COMPRESS_ZSTD));
+        Assert.assertTrue(CompressRegistry.isSupported(RpcMeta.COMPRESS_NO));
+        Assert.assertFalse(CompressRegistry.isSupported(100));
+    }
+
+    @Test
+    public void testRegister() {
+        Compress compress = new Compress() {
+            public byte[] unCompress(byte[] array) throws IOException {
+                return array;
+            }
+
+            public byte[] compress(byte[] array) throws IOException {
+                return array;
+            }
+        };
+        CompressRegistry.register(101, compress);
+        Assert.assertSame(compress, CompressRegistry.getCompress(101));
+        Assert.assertTrue(CompressRegistry.isSupported(101));
+
+        Assert.assertSame(compress, CompressRegistry.unregister(101));
+        Assert.assertFalse(CompressRegistry.isSupported(101));
+        Assert.assertNull(CompressRegistry.unregister(101));
+    }
+}
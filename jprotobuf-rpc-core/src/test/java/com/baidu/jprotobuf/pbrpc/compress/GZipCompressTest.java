@@ -15,6 +15,15 @@
  */
 package com.baidu.jprotobuf.pbrpc.compress;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
 /**
  * Test class for {@link GZipCompress}
  *
@@ -31,4 +40,66 @@ public class GZipCompressTest extends BaseCompressTest {
         return new GZipCompress();
     }
 
+    @Test
+    public void testUnCompressFromGZIPOutputStream() throws IOException {
+        byte[] bytes = "hello world to china 中国. hello world to china 中国.".getBytes("utf-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+
+        Assert.assertArrayEquals(bytes, createCompress().unCompress(out.toByteArray()));
+    }
+
+    @Test
+    public void testCompressToGZIPInputStream() throws IOException {
+        byte[] bytes = "hello world to china 中国. hello world to china 中国.".getBytes("utf-8");
+        byte[] compressed = createCompress().compress(bytes);
+
+        GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int n;
+        while ((n = gunzip.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        gunzip.close();
+        Assert.assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    @Test
+    public void testUnCompressWithFileName() throws IOException {
+        byte[] bytes = "hello world".getBytes("utf-8");
+        byte[] compressed = createCompress().compress(bytes);
+
+        // set FNAME flag and insert file name after header
+        byte[] name = "a.txt\0".getBytes("utf-8");
+        byte[] withName = new byte[compressed.length + name.length];
+        System.arraycopy(compressed, 0, withName, 0, 10);
+        System.arraycopy(name, 0, withName, 10, name.length);
+        System.arraycopy(compressed, 10, withName, 10 + name.length, compressed.length - 10);
+        withName[3] = 8;
+
+        Assert.assertArrayEquals(bytes, createCompress().unCompress(withName));
+    }
+
+    @Test
+    public void testUnCompressMultipleMembers() throws IOException {
+        Compress compress = createCompress();
+        byte[] first = compress.compress("hello ".getBytes("utf-8"));
+        byte[] second = compress.compress("world".getBytes("utf-8"));
+        byte[] joined = new byte[first.length + second.length];
+        System.arraycopy(first, 0, joined, 0, first.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+
+        Assert.assertEquals("hello world", new String(compress.unCompress(joined), "utf-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnCompressCorrupted() throws IOException {
+        byte[] compressed = createCompress().compress("hello world".getBytes("utf-8"));
+        compressed[compressed.length - 8] ^= 1;
+        createCompress().unCompress(compressed);
+    }
+
 }
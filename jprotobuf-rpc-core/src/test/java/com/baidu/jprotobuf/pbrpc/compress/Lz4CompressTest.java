@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.jpountz.lz4.LZ4CompressorWithLength;
+import net.jpountz.lz4.LZ4DecompressorWithLength;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Test class for {@link Lz4Compress}
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class Lz4CompressTest extends BaseCompressTest {
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.BaseCompressTest#createCompress()
+     */
+    @Override
+    protected Compress createCompress() {
+        return new Lz4Compress();
+    }
+
+    @Test
+    public void testAvailable() {
+        Assert.assertTrue(Lz4Compress.isAvailable());
+    }
+
+    @Test
+    public void testUnCompressBlock() throws IOException {
+        // 20 bytes 'a': literal 'a', match(offset 1, length 14), last literals 'aaaaa'
+        byte[] block = new byte[] { 20, 0, 0, 0, 0x1A, 'a', 1, 0, 0x50, 'a', 'a', 'a', 'a', 'a' };
+        Assert.assertEquals("aaaaaaaaaaaaaaaaaaaa", new String(createCompress().unCompress(block), "utf-8"));
+    }
+
+    @Test
+    public void testEmptyAndRandom() throws IOException {
+        Compress compress = createCompress();
+        Assert.assertArrayEquals(new byte[0], compress.unCompress(compress.compress(new byte[0])));
+
+        Random random = new Random(1);
+        for (int size : new int[] { 1, 12, 13, 100, 65536, 200000 }) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            byte[] compressed = compress.compress(bytes);
+            Assert.assertTrue(compressed.length <= 4 + Lz4Compress.maxCompressedLength(size));
+            Assert.assertArrayEquals(bytes, compress.unCompress(compressed));
+        }
+    }
+
+    @Test
+    public void testRepetitive() throws IOException {
+        byte[] bytes = new byte[100000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 7);
+        }
+        Compress compress = createCompress();
+        byte[] compressed = compress.compress(bytes);
+        Assert.assertTrue(compressed.length < bytes.length / 100);
+        Assert.assertArrayEquals(bytes, compress.unCompress(compressed));
+    }
+
+    /**
+     * Parses the hex string.
+     *
+     * @param hex the hex
+     * @return the bytes
+     */
+    private static byte[] parseHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testUnCompressGoldenVectors() throws IOException {
+        // produced by LZ4CompressorWithLength of lz4-java 1.7.1
+        byte[] text = "jprotobuf-rpc lz4 golden vector, jprotobuf-rpc lz4 golden vector, jprotobuf-rpc!".getBytes("utf-8");
+        byte[] block = parseHex("50000000ff126a70726f746f6275662d727063206c7a3420676f6c64656e20766563746f722c2021"
+                + "0017502d72706321");
+        Assert.assertArrayEquals(text, createCompress().unCompress(block));
+
+        byte[] repetitive = new byte[300];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte) (i % 3);
+        }
+        block = parseHex("2c0100003f0001020300ff12500102000102");
+        Assert.assertArrayEquals(repetitive, createCompress().unCompress(block));
+    }
+
+    @Test
+    public void testCompatibleWithLz4Java() throws IOException {
+        LZ4Factory factory = LZ4Factory.safeInstance();
+        LZ4CompressorWithLength fastCompressor = new LZ4CompressorWithLength(factory.fastCompressor());
+        LZ4CompressorWithLength highCompressor = new LZ4CompressorWithLength(factory.highCompressor());
+        LZ4DecompressorWithLength decompressor = new LZ4DecompressorWithLength(factory.fastDecompressor());
+        Compress compress = createCompress();
+
+        Random random = new Random(1);
+        for (int size : new int[] { 0, 1, 12, 13, 100, 65536, 200000 }) {
+            byte[] randomBytes = new byte[size];
+            random.nextBytes(randomBytes);
+            byte[] repetitive = new byte[size];
+            for (int i = 0; i < size; i++) {
+                repetitive[i] = (byte) (i % 7 + i / 1000);
+            }
+            for (byte[] bytes : Arrays.asList(randomBytes, repetitive)) {
+                Assert.assertArrayEquals(bytes, decompressor.decompress(compress.compress(bytes)));
+                Assert.assertArrayEquals(bytes, compress.unCompress(fastCompressor.compress(bytes)));
+                Assert.assertArrayEquals(bytes, compress.unCompress(highCompressor.compress(bytes)));
+            }
+        }
+    }
+
+    @Test
+    public void testUnCompressLengthOverflow() {
+        // literal length of 0xFF run overflows int
+        byte[] block = new byte[9 * 1024 * 1024];
+        Arrays.fill(block, (byte) 0xFF);
+        block[block.length - 1] = 0;
+        block[0] = 100;
+        block[1] = 0;
+        block[2] = 0;
+        block[3] = 0;
+        block[4] = (byte) 0xF0;
+        try {
+            createCompress().unCompress(block);
+            Assert.fail("should throw IOException");
+        } catch (IOException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // match length of 0xFF run overflows int, after literal 'a' and offset 1
+        block[4] = 0x1F;
+        block[5] = 'a';
+        block[6] = 1;
+        block[7] = 0;
+        try {
+            createCompress().unCompress(block);
+            Assert.fail("should throw IOException");
+        } catch (IOException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnCompressMalformed() throws IOException {
+        // match offset out of range
+        byte[] block = new byte[] { 20, 0, 0, 0, 0x1A, 'a', 9, 0, 0x50, 'a', 'a', 'a', 'a', 'a' };
+        createCompress().unCompress(block);
+    }
+
+}
@@ -15,6 +15,16 @@
  */
 package com.baidu.jprotobuf.pbrpc.compress;
 
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
 /**
  * Test class for {@link SnappyCompress}
  *
@@ -31,4 +41,31 @@ public class SnappyCompressTest extends BaseCompressTest {
         return new SnappyCompress();
     }
 
+    @Test
+    public void testUnCompressDirectByteBuf() throws IOException {
+        byte[] bytes = "中国欢迎你！ hello world to china 中国. 123 !@#$%^&*()".getBytes("utf-8");
+        SnappyCompress compress = new SnappyCompress();
+        byte[] compressed = compress.compress(bytes);
+
+        ByteBuf in = PooledByteBufAllocator.DEFAULT.directBuffer(compressed.length);
+        in.writeBytes(compressed);
+        ByteBuf out = compress.unCompress(in, PooledByteBufAllocator.DEFAULT);
+        try {
+            Assert.assertTrue(out.isDirect());
+            Assert.assertArrayEquals(bytes, ByteBufUtil.getBytes(out));
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testUnCompressHeapByteBuf() throws IOException {
+        byte[] bytes = "hello world to china".getBytes("utf-8");
+        SnappyCompress compress = new SnappyCompress();
+        ByteBuf out = compress.unCompress(Unpooled.wrappedBuffer(compress.compress(bytes)), PooledByteBufAllocator.DEFAULT);
+        Assert.assertArrayEquals(bytes, ByteBufUtil.getBytes(out));
+        out.release();
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Test class for {@link ZstdCompress}, zstd-jni is a test dependency.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ZstdCompressTest extends BaseCompressTest {
+
+    /* (non-Javadoc)
+     * @see com.baidu.jprotobuf.pbrpc.compress.BaseCompressTest#createCompress()
+     */
+    @Override
+    protected Compress createCompress() {
+        return new ZstdCompress();
+    }
+
+    @Test
+    public void testAvailable() {
+        Assert.assertTrue(ZstdCompress.isAvailable());
+        Assert.assertTrue(CompressRegistry.getCompress(RpcMeta.COMPRESS_ZSTD) instanceof ZstdCompress);
+    }
+
+    @Test
+    public void testCompatibleWithZstd() throws IOException {
+        Compress compress = createCompress();
+        Random random = new Random(1);
+        for (int size : new int[] { 0, 1, 100, 65536 }) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            Assert.assertArrayEquals(bytes, Zstd.decompress(compress.compress(bytes), size));
+            Assert.assertArrayEquals(bytes, compress.unCompress(Zstd.compress(bytes, 1)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnCompressDeclaredSizeTooLarge() throws IOException {
+        // frame header only, single segment with 8 bytes content size of 1GB
+        byte[] frame = new byte[] { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, (byte) 0xE0, 0, 0, 0, 0x40, 0, 0, 0, 0 };
+        Assert.assertEquals(1L << 30, Zstd.decompressedSize(frame));
+        createCompress().unCompress(frame);
+    }
+
+    @Test
+    public void testUnCompressUnknownSize() throws IOException {
+        byte[] bytes = new byte[100000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 7);
+        }
+        // streaming compress does not write content size
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZstdOutputStream zstdOut = new ZstdOutputStream(out);
+        zstdOut.write(bytes);
+        zstdOut.close();
+        byte[] frame = out.toByteArray();
+        Assert.assertEquals(0, Zstd.decompressedSize(frame));
+
+        Assert.assertArrayEquals(bytes, createCompress().unCompress(frame));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnCompressMalformed() throws IOException {
+        createCompress().unCompress(new byte[] { 1, 2, 3, 4, 5 });
+    }
+}
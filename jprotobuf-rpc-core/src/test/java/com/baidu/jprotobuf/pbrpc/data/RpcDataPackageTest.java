@@ -22,6 +22,11 @@ import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
 /**
  * Test class for RpcDataPackage
  *
@@ -71,6 +76,21 @@ public class RpcDataPackageTest {
         
     }
     
+    @Test
+    public void testWriteToByteBuf() {
+        RpcDataPackage rpcDataPackage = getDataPackage();
+        rpcDataPackage.attachment(new byte[] {1, 4});
+
+        byte[] bytes = rpcDataPackage.write();
+        ByteBuf buf = rpcDataPackage.write(PooledByteBufAllocator.DEFAULT);
+        try {
+            Assert.assertEquals(bytes.length, buf.readableBytes());
+            Assert.assertArrayEquals(bytes, ByteBufUtil.getBytes(buf));
+        } finally {
+            buf.release();
+        }
+    }
+
     @Test
     public void testChunk2() {
         
@@ -90,6 +110,41 @@ public class RpcDataPackageTest {
         Assert.assertArrayEquals(dataPackage.getData(), mergedPackage.getData());
     }
     
+    @Test
+    public void testChunkToByteBuf() {
+        RpcDataPackage dataPackage = getDataPackage();
+        dataPackage.serviceName("hello").methodName("testMethod");
+        byte[] attachment = new byte[] {1, 4};
+        dataPackage.attachment(attachment);
+        ChunkInfo chunkInfo = dataPackage.getRpcMeta().getChunkInfo();
+
+        List<ByteBuf> frames = dataPackage.chunk(PooledByteBufAllocator.DEFAULT, 3, 100L);
+        Assert.assertEquals(2, frames.size());
+
+        RpcDataPackage mergedPackage = new RpcDataPackage();
+        for (int i = 0; i < frames.size(); i++) {
+            ByteBuf frame = frames.get(i);
+            RpcDataPackage data = new RpcDataPackage();
+            data.read(ByteBufUtil.getBytes(frame));
+            frame.release();
+
+            Assert.assertEquals("hello", data.getRpcMeta().getRequest().getServiceName());
+            Assert.assertEquals(100L, data.getRpcMeta().getChunkInfo().getStreamId().longValue());
+            if (i == 0) {
+                Assert.assertEquals(0, data.getRpcMeta().getChunkInfo().getChunkId());
+                Assert.assertArrayEquals(attachment, data.getAttachment());
+            } else {
+                Assert.assertEquals(-1, data.getRpcMeta().getChunkInfo().getChunkId());
+                Assert.assertNull(data.getAttachment());
+            }
+            mergedPackage.mergeData(data.getData());
+        }
+        Assert.assertArrayEquals(dataPackage.getData(), mergedPackage.getData());
+        // original package should not be changed
+        Assert.assertSame(chunkInfo, dataPackage.getRpcMeta().getChunkInfo());
+        Assert.assertEquals(attachment.length, dataPackage.getRpcMeta().getAttachmentSize().intValue());
+    }
+
     @Test
     public void testChunk() {
         RpcDataPackage dataPackage = getDataPackage();
@@ -140,4 +195,46 @@ public class RpcDataPackageTest {
         Assert.assertArrayEquals(dataPackage.getData(), mergedPackage.getData());
     }
     
+    @Test
+    public void testReadFromByteBuf() {
+        RpcDataPackage rpcDataPackage = getDataPackage();
+        byte[] attachment = new byte[] {1, 4};
+        rpcDataPackage.attachment(attachment);
+        byte[] bytes = rpcDataPackage.write();
+
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeBytes(bytes);
+        buf.writeByte(0); // trailing byte of next frame
+
+        RpcDataPackage rpcDataPackage2 = new RpcDataPackage();
+        rpcDataPackage2.read(buf);
+        Assert.assertEquals(bytes.length, buf.readerIndex());
+        Assert.assertEquals(3, buf.refCnt());
+
+        new RpcMetaTest().assertEquals(rpcDataPackage.getRpcMeta(), rpcDataPackage2.getRpcMeta());
+        Assert.assertEquals("HULU", rpcDataPackage2.getHead().getMagicCodeAsString());
+        Assert.assertArrayEquals(rpcDataPackage.getData(), rpcDataPackage2.getData());
+        Assert.assertEquals(2, buf.refCnt());
+        Assert.assertArrayEquals(attachment, rpcDataPackage2.getAttachment());
+        Assert.assertEquals(1, buf.refCnt());
+
+        rpcDataPackage2.release();
+        Assert.assertEquals(1, buf.refCnt());
+        buf.release();
+    }
+
+    @Test
+    public void testReleaseFromByteBuf() {
+        RpcDataPackage rpcDataPackage = getDataPackage();
+        ByteBuf buf = Unpooled.wrappedBuffer(rpcDataPackage.write());
+
+        RpcDataPackage rpcDataPackage2 = new RpcDataPackage();
+        rpcDataPackage2.read(buf);
+        Assert.assertEquals(2, buf.refCnt());
+
+        rpcDataPackage2.release();
+        Assert.assertEquals(1, buf.refCnt());
+        buf.release();
+    }
+
 }
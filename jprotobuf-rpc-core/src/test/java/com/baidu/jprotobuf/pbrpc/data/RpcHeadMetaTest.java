@@ -20,6 +20,9 @@ package com.baidu.jprotobuf.pbrpc.data;
 import org.junit.Assert;
 import org.junit.Test;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 
 /**
  * Test class for RpcHeadMeta
@@ -46,4 +49,25 @@ public class RpcHeadMetaTest {
         Assert.assertEquals(meta.getMetaSize(), meta2.getMetaSize());
         Assert.assertEquals(meta.getMessageSize(), meta2.getMessageSize());
     }
+
+    @Test
+    public void testReadFromByteBuf() {
+        RpcHeadMeta meta = new RpcHeadMeta();
+        meta.setMagicCode("HULU");
+        meta.setMetaSize(3);
+        meta.setMessageSize(12);
+
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(0);
+        buf.writeBytes(meta.write());
+
+        RpcHeadMeta meta2 = new RpcHeadMeta();
+        meta2.read(buf, 1);
+
+        Assert.assertArrayEquals(meta.getMagicCode(), meta2.getMagicCode());
+        Assert.assertEquals(meta.getMetaSize(), meta2.getMetaSize());
+        Assert.assertEquals(meta.getMessageSize(), meta2.getMessageSize());
+        Assert.assertEquals(0, buf.readerIndex());
+        buf.release();
+    }
 }
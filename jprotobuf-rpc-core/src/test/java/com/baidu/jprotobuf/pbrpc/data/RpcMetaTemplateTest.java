@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.data;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.bjf.remoting.protobuf.annotation.Protobuf;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Test class for {@link RpcMetaTemplate}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcMetaTemplateTest {
+
+    /**
+     * Gets the request meta.
+     *
+     * @return the request meta
+     */
+    private RpcMeta getRequestMeta() {
+        RpcMeta meta = new RpcMeta();
+        RpcRequestMeta request = new RpcRequestMeta();
+        request.setServiceName("testServiceName");
+        request.setMethodName("testMethodName");
+        meta.setRequest(request);
+        meta.setCompressType(RpcMeta.COMPRESS_SNAPPY);
+        meta.setCorrelationId(101L);
+        meta.setAttachmentSize(0);
+        return meta;
+    }
+
+    /**
+     * Assert template serialized bytes are same as codec.
+     *
+     * @param meta the meta
+     */
+    private void assertSameAsCodec(RpcMeta meta) {
+        meta.setTemplate(null);
+        byte[] expected = meta.write();
+        int expectedSize = meta.size();
+
+        meta.setTemplate(new RpcMetaTemplate("testServiceName", "testMethodName"));
+        Assert.assertEquals(expectedSize, meta.size());
+        Assert.assertArrayEquals(expected, meta.write());
+
+        ByteBuf buf = Unpooled.buffer();
+        meta.write(buf, meta.size());
+        Assert.assertArrayEquals(expected, ByteBufUtil.getBytes(buf));
+        buf.release();
+    }
+
+    @Test
+    public void testWrite() {
+        RpcMeta meta = getRequestMeta();
+        assertSameAsCodec(meta);
+
+        meta.getRequest().setLogId(11L);
+        meta.getRequest().setTraceId(12L);
+        meta.getRequest().setSpanId(13L);
+        meta.getRequest().setParentSpanId(-1L);
+        meta.getRequest().setTraceKey("traceKey");
+        meta.getRequest().setExtraParam(new byte[] {1, 2});
+        meta.getRequest().setExtFields(Arrays.asList(new RpcRequestMetaExtField("k1", "v1"),
+                new RpcRequestMetaExtField("k2", "v2")));
+        meta.setAttachmentSize(10);
+        meta.setAuthenticationData(new byte[] {1, 3, 5, 7});
+        ChunkInfo info = new ChunkInfo();
+        info.setStreamId(100L);
+        info.setChunkId(2);
+        meta.setChunkInfo(info);
+        assertSameAsCodec(meta);
+
+        meta.getRequest().setTimeout(1000L);
+        meta.getRequest().setCancel(true);
+        assertSameAsCodec(meta);
+
+        meta.getRequest().setPriority(2);
+        meta.getRequest().setTenant("tenant");
+        assertSameAsCodec(meta);
+    }
+
+    @Test
+    public void testReadWrite() {
+        RpcMeta meta = getRequestMeta();
+        meta.getRequest().setLogId(11L);
+        meta.getRequest().setTimeout(1000L);
+        meta.setTemplate(new RpcMetaTemplate("testServiceName", "testMethodName"));
+
+        RpcMeta meta2 = new RpcMeta();
+        meta2.read(meta.write());
+        Assert.assertEquals("testServiceName", meta2.getRequest().getServiceName());
+        Assert.assertEquals("testMethodName", meta2.getRequest().getMethodName());
+        Assert.assertEquals(11L, meta2.getRequest().getLogId().longValue());
+        Assert.assertEquals(1000L, meta2.getRequest().getTimeout().longValue());
+        Assert.assertEquals(RpcMeta.COMPRESS_SNAPPY, meta2.getCompressType().intValue());
+        Assert.assertEquals(101L, meta2.getCorrelationId().longValue());
+    }
+
+    @Test
+    public void testWriteCancelRequest() {
+        // cancel request is built like RpcClient#cancelPendingRequest
+        RpcDataPackage cancelRequest = new RpcDataPackage().magicCode(ProtocolConstant.MAGIC_CODE)
+                .serviceName("testServiceName").methodName("testMethodName").correlationId(101L);
+        cancelRequest.getRpcMeta().getRequest().setCancel(true);
+        cancelRequest.getRpcMeta().setTemplate(new RpcMetaTemplate("testServiceName", "testMethodName"));
+
+        RpcDataPackage dataPackage = new RpcDataPackage();
+        dataPackage.read(cancelRequest.write());
+        RpcRequestMeta request = dataPackage.getRpcMeta().getRequest();
+        Assert.assertEquals("testMethodName", request.getMethodName());
+        Assert.assertEquals(Boolean.TRUE, request.getCancel());
+        Assert.assertEquals(101L, dataPackage.getRpcMeta().getCorrelationId().longValue());
+    }
+
+    @Test
+    public void testNotMatched() {
+        RpcMeta meta = getRequestMeta();
+        RpcMetaTemplate template = new RpcMetaTemplate("testServiceName", "testMethodName");
+        Assert.assertTrue(template.matches(meta));
+
+        meta.getRequest().setMethodName("otherMethodName");
+        Assert.assertFalse(template.matches(meta));
+
+        // codec is used if not matched
+        meta.setTemplate(template);
+        RpcMeta meta2 = new RpcMeta();
+        meta2.read(meta.write());
+        Assert.assertEquals("otherMethodName", meta2.getRequest().getMethodName());
+    }
+
+    /**
+     * Guard that every field of {@link RpcRequestMeta} is written by template.
+     */
+    @Test
+    public void testWriteAllRequestFields() throws Exception {
+        RpcMeta meta = getRequestMeta();
+        for (Field field : RpcRequestMeta.class.getDeclaredFields()) {
+            if (field.getAnnotation(Protobuf.class) == null) {
+                continue;
+            }
+            field.setAccessible(true);
+            if (field.get(meta.getRequest()) != null) {
+                continue;
+            }
+            Object value = getSampleValue(field.getType());
+            Assert.assertNotNull("no sample value of field '" + field.getName() + "'", value);
+            field.set(meta.getRequest(), value);
+            assertSameAsCodec(meta);
+        }
+    }
+
+    /**
+     * Guard that every field of {@link RpcMeta} except response is written by template.
+     */
+    @Test
+    public void testWriteAllMetaFields() throws Exception {
+        RpcMeta meta = getRequestMeta();
+        meta.setCompressType(null);
+        meta.setCorrelationId(null);
+        meta.setAttachmentSize(null);
+        for (Field field : RpcMeta.class.getDeclaredFields()) {
+            if (field.getAnnotation(Protobuf.class) == null || field.getType() == RpcResponseMeta.class) {
+                continue;
+            }
+            field.setAccessible(true);
+            if (field.get(meta) != null) {
+                continue;
+            }
+            Object value = getSampleValue(field.getType());
+            Assert.assertNotNull("no sample value of field '" + field.getName() + "'", value);
+            field.set(meta, value);
+            assertSameAsCodec(meta);
+        }
+    }
+
+    /**
+     * Gets the non default sample value of field type.
+     *
+     * @param type the field type
+     * @return the sample value, {@code null} if type not supported
+     */
+    private Object getSampleValue(Class<?> type) {
+        if (type == String.class) {
+            return "sample";
+        } else if (type == Long.class) {
+            return 300L;
+        } else if (type == Integer.class) {
+            return 3;
+        } else if (type == Boolean.class) {
+            return Boolean.TRUE;
+        } else if (type == byte[].class) {
+            return new byte[] { 1, 2 };
+        } else if (type == List.class) {
+            return Arrays.asList(new RpcRequestMetaExtField("k1", "v1"));
+        } else if (type == ChunkInfo.class) {
+            ChunkInfo info = new ChunkInfo();
+            info.setStreamId(100L);
+            info.setChunkId(2);
+            return info;
+        }
+        return null;
+    }
+}
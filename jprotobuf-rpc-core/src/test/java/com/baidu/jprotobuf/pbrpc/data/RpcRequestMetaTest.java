@@ -70,6 +70,7 @@ public class RpcRequestMetaTest {
         rpcRequestMeta.setSpanId(456L);
         rpcRequestMeta.setParentSpanId(789L);
         rpcRequestMeta.setTraceKey("hello this is a trace key.");
+        rpcRequestMeta.setTimeout(3000L);
 
         RpcRequestMetaExtField rpcRequestMetaExtField = new RpcRequestMetaExtField("k", "v");
         List<RpcRequestMetaExtField> list = Arrays.asList(rpcRequestMetaExtField);
@@ -86,6 +87,7 @@ public class RpcRequestMetaTest {
         Assert.assertEquals(rpcRequestMeta.getSpanId(), rpcRequestMeta2.getSpanId());
         Assert.assertEquals(rpcRequestMeta.getParentSpanId(), rpcRequestMeta2.getParentSpanId());
         Assert.assertEquals(rpcRequestMeta.getTraceKey(), rpcRequestMeta2.getTraceKey());
+        Assert.assertEquals(rpcRequestMeta.getTimeout(), rpcRequestMeta2.getTimeout());
         
         Assert.assertEquals(rpcRequestMeta.getExtFieldsAsMap(), rpcRequestMeta2.getExtFieldsAsMap());
 
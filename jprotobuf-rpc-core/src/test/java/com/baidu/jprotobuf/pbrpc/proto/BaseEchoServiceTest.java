@@ -53,7 +53,7 @@ public abstract class BaseEchoServiceTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
         
         RpcClientOptions options = getRpcClientOptions();
         if (options == null) {
@@ -71,7 +71,7 @@ public abstract class BaseEchoServiceTest extends BaseTest {
         
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
     }
     
     protected void stopServer() {
@@ -74,7 +74,7 @@ public class EchoServicePerformanceTest extends BasePerformaceTest {
         rpcServer = new RpcServer();
         EchoServiceImpl echoServiceImpl = new EchoServiceImpl();
         rpcServer.registerService(echoServiceImpl);
-        rpcServer.start(PORT);
+        rpcServer.startSync(PORT);
 
         RpcClientOptions options = new RpcClientOptions();
         options.setThreadPoolSize(threadSize);
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter.LimitStatus;
+
+/**
+ * Test class for {@link AdaptiveConcurrencyLimiter}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /** The Constant SIGNATURE. */
+    private static final String SIGNATURE = "echoService!echo";
+
+    /** The Constant NANOS_PER_MILLI. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Run one window of concurrent requests with same latency.
+     *
+     * @param limiter the limiter
+     * @param concurrency the concurrency
+     * @param millis the latency in milliseconds
+     */
+    private void runWindow(AdaptiveConcurrencyLimiter limiter, int concurrency, long millis) {
+        for (int i = 0; i < concurrency; i++) {
+            Assert.assertTrue(limiter.tryAcquire(SIGNATURE));
+        }
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(SIGNATURE, millis * NANOS_PER_MILLI);
+        }
+    }
+
+    @Test
+    public void testRejectOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(2);
+        Assert.assertTrue(limiter.tryAcquire(SIGNATURE));
+        Assert.assertTrue(limiter.tryAcquire(SIGNATURE));
+        Assert.assertFalse(limiter.tryAcquire(SIGNATURE));
+
+        limiter.release(SIGNATURE, -1L);
+        Assert.assertTrue(limiter.tryAcquire(SIGNATURE));
+
+        LimitStatus status = limiter.getStatus().get(SIGNATURE);
+        Assert.assertEquals(2, status.getLimit());
+        Assert.assertEquals(2, status.getInFlight());
+        Assert.assertEquals(1L, status.getRejected());
+    }
+
+    @Test
+    public void testLimitByLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(100);
+        limiter.setWindowSize(100);
+        limiter.setSmoothing(1d);
+
+        // latency near no-load one, limit grows
+        runWindow(limiter, 100, 1);
+        LimitStatus status = limiter.getStatus().get(SIGNATURE);
+        Assert.assertEquals(110, status.getLimit());
+        Assert.assertEquals(1d, status.getNoLoadRtt(), 0.001d);
+
+        // latency climbs, limit shrinks
+        runWindow(limiter, 100, 10);
+        status = limiter.getStatus().get(SIGNATURE);
+        Assert.assertEquals(65, status.getLimit());
+        Assert.assertEquals(10d, status.getRtt(), 0.001d);
+        Assert.assertEquals(200L, status.getSamples());
+        Assert.assertEquals(0, status.getInFlight());
+    }
+
+    @Test
+    public void testNoGrowthWhenNotLimited() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(100);
+        limiter.setWindowSize(10);
+        limiter.setSmoothing(1d);
+
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, 1, 1);
+        }
+        Assert.assertEquals(100, limiter.getStatus().get(SIGNATURE).getLimit());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+
+/**
+ * Test class for {@link BlockingRpcCallback}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class BlockingRpcCallbackTest {
+
+    @Test
+    public void testRunBeforeAwait() {
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        RpcDataPackage message = new RpcDataPackage();
+        callback.run(message);
+
+        Assert.assertTrue(callback.isDone());
+        Assert.assertTrue(callback.await(1, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(callback.await(0, null));
+        Assert.assertSame(message, callback.getMessage());
+    }
+
+    @Test
+    public void testTimeout() {
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        long time = System.nanoTime();
+        Assert.assertFalse(callback.await(50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertFalse(callback.isDone());
+    }
+
+    @Test
+    public void testTimeoutWaiterRemoved() throws Exception {
+        final BlockingRpcCallback callback = new BlockingRpcCallback();
+        final CountDownLatch finished = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                callback.await(0, null);
+                finished.countDown();
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (callback.getWaiterCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(callback.await(1, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertEquals(1, callback.getWaiterCount());
+
+        callback.run(new RpcDataPackage());
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, callback.getWaiterCount());
+    }
+
+    @Test
+    public void testWakeUpWaiters() throws Exception {
+        final BlockingRpcCallback callback = new BlockingRpcCallback();
+        int count = 4;
+        final CountDownLatch started = new CountDownLatch(count);
+        final CountDownLatch finished = new CountDownLatch(count);
+        final AtomicInteger doneCount = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final boolean timed = i % 2 == 0;
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    boolean done = timed ? callback.await(10, TimeUnit.SECONDS) : callback.await(0, null);
+                    if (done && callback.getMessage() != null) {
+                        doneCount.incrementAndGet();
+                    }
+                    finished.countDown();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+
+        started.await();
+        Thread.sleep(50);
+        callback.run(new RpcDataPackage());
+
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(count, doneCount.get());
+    }
+
+    @Test
+    public void testInterruptKept() throws Exception {
+        final BlockingRpcCallback callback = new BlockingRpcCallback();
+        final AtomicInteger result = new AtomicInteger();
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                if (callback.await(10, TimeUnit.SECONDS) && Thread.currentThread().isInterrupted()) {
+                    result.set(1);
+                }
+            }
+        });
+        t.start();
+        t.interrupt();
+        Thread.sleep(50);
+        Assert.assertTrue(t.isAlive());
+
+        callback.run(new RpcDataPackage());
+        t.join(5000);
+        Assert.assertEquals(1, result.get());
+    }
+}
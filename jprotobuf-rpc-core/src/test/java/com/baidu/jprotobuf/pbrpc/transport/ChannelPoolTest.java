@@ -0,0 +1,410 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.BaseTest;
+import com.baidu.jprotobuf.pbrpc.EchoServiceImpl;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+
+/**
+ * Test class for {@link ChannelPool}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ChannelPoolTest extends BaseTest {
+
+    /** The rpc server. */
+    private RpcServer rpcServer;
+
+    /** The rpc client. */
+    private RpcClient rpcClient;
+
+    @Before
+    public void setUp() {
+        rpcServer = new RpcServer();
+        rpcServer.registerService(new EchoServiceImpl());
+        rpcServer.startSync(PORT);
+    }
+
+    @After
+    public void tearDown() {
+        if (rpcClient != null) {
+            rpcClient.stop();
+        }
+        rpcServer.shutdown();
+    }
+
+    /**
+     * Creates the channel pool.
+     *
+     * @param maxTotal the max total
+     * @param maxWait the max wait
+     * @return the channel pool
+     */
+    private ChannelPool createChannelPool(int maxTotal, long maxWait) {
+        RpcClientOptions options = new RpcClientOptions();
+        options.setThreadPoolSize(maxTotal);
+        options.setMaxWait(maxWait);
+        rpcClient = new RpcClient(options);
+        return new ChannelPool(rpcClient, "localhost", PORT);
+    }
+
+    @Test
+    public void testGetChannelAsync() throws Exception {
+        ChannelPool pool = createChannelPool(2, 2000);
+        CompletableFuture<Connection> future = pool.getChannelAsync();
+
+        // completed once connected
+        Connection connection = future.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(connection.getFuture().isDone());
+        Assert.assertTrue(String.valueOf(connection.getFuture().cause()), connection.getFuture().isSuccess());
+        pool.returnChannel(connection);
+        pool.stop();
+    }
+
+    @Test
+    public void testPendingAcquireServedByReturn() throws Exception {
+        ChannelPool pool = createChannelPool(1, -1);
+        Connection first = pool.getChannelAsync().get();
+
+        CompletableFuture<Connection> second = pool.getChannelAsync();
+        Assert.assertFalse(second.isDone());
+
+        pool.returnChannel(first);
+        Assert.assertSame(first, second.get(5, TimeUnit.SECONDS));
+        pool.returnChannel(second.get());
+        pool.stop();
+    }
+
+    @Test
+    public void testPendingAcquireTimeout() throws Exception {
+        ChannelPool pool = createChannelPool(1, 200);
+        Connection first = pool.getChannelAsync().get();
+
+        CompletableFuture<Connection> second = pool.getChannelAsync();
+        Assert.assertFalse(second.isDone());
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            Assert.fail("should time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchElementException);
+        }
+
+        pool.returnChannel(first);
+        pool.stop();
+    }
+
+    @Test
+    public void testConnectFailed() throws Exception {
+        RpcClientOptions options = new RpcClientOptions();
+        options.setMaxWait(100);
+        rpcClient = new RpcClient(options);
+        ChannelPool pool = new ChannelPool(rpcClient, "localhost", PORT + 1);
+        RpcChannel rpcChannel = new RpcChannel(rpcClient, "localhost", PORT + 1);
+
+        Connection connection = pool.getChannelAsync().get();
+        Assert.assertTrue(connection.getFuture().await(5000));
+        Assert.assertFalse(connection.getFuture().isSuccess());
+
+        // request on failed connection should be failed at once instead of waiting for timeout
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        rpcChannel.doTransport(connection, new RpcDataPackageTest().getDataPackage(), callback, 10000);
+        Assert.assertTrue(callback.await(1, TimeUnit.SECONDS));
+        Assert.assertNotEquals(Integer.valueOf(0), callback.getMessage().getRpcMeta().getResponse().getErrorCode());
+
+        pool.returnChannel(connection);
+        pool.stop();
+        rpcChannel.close();
+    }
+
+    /**
+     * Start server at a later time.
+     *
+     * @param delay the delay in milliseconds
+     * @return the thread to start server
+     */
+    private Thread startServerLater(final long delay) {
+        rpcServer.shutdown();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                RpcServer server = new RpcServer();
+                server.registerService(new EchoServiceImpl());
+                server.startSync(PORT);
+                rpcServer = server;
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testConnectRefusedFailFast() throws Exception {
+        ChannelPool pool = createChannelPool(2, 5000);
+        Thread thread = startServerLater(500);
+
+        // connection refused before server bound, failed at once without retry until max wait
+        long time = System.currentTimeMillis();
+        Connection connection = pool.getChannel();
+        Assert.assertFalse(connection.getFuture().isSuccess());
+        Assert.assertTrue(System.currentTimeMillis() - time < 500);
+        pool.returnChannel(connection);
+
+        thread.join();
+        connection = pool.getChannel();
+        Assert.assertTrue(String.valueOf(connection.getFuture().cause()), connection.getFuture().isSuccess());
+        pool.returnChannel(connection);
+        pool.stop();
+    }
+
+    @Test
+    public void testConnectRefusedFailFastAsync() throws Exception {
+        ChannelPool pool = createChannelPool(2, 5000);
+        Thread thread = startServerLater(500);
+
+        long time = System.currentTimeMillis();
+        Connection connection = pool.getChannelAsync().get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(connection.getFuture().isSuccess());
+        Assert.assertTrue(System.currentTimeMillis() - time < 500);
+        pool.returnChannel(connection);
+
+        thread.join();
+        connection = pool.getChannelAsync().get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(String.valueOf(connection.getFuture().cause()), connection.getFuture().isSuccess());
+        pool.returnChannel(connection);
+        pool.stop();
+    }
+
+    /**
+     * Creates the multiplexed channel pool.
+     *
+     * @param size the multiplex connection size
+     * @param maxInFlight the max in-flight per connection
+     * @param leastInFlight select by least in-flight
+     * @return the channel pool
+     */
+    private ChannelPool createMultiplexChannelPool(int size, int maxInFlight, boolean leastInFlight) {
+        return createMultiplexChannelPool(size, maxInFlight, leastInFlight, PORT);
+    }
+
+    /**
+     * Creates the multiplexed channel pool.
+     *
+     * @param size the multiplex connection size
+     * @param maxInFlight the max in-flight per connection
+     * @param leastInFlight select by least in-flight
+     * @param port the port
+     * @return the channel pool
+     */
+    private ChannelPool createMultiplexChannelPool(int size, int maxInFlight, boolean leastInFlight, int port) {
+        RpcClientOptions options = new RpcClientOptions();
+        options.setMultiplexConnectionSize(size);
+        options.setMaxInFlightPerConnection(maxInFlight);
+        options.setMultiplexLeastInFlight(leastInFlight);
+        rpcClient = new RpcClient(options);
+        return new ChannelPool(rpcClient, "localhost", port);
+    }
+
+    @Test
+    public void testMultiplexRoundRobin() throws Exception {
+        ChannelPool pool = createMultiplexChannelPool(2, 0, false);
+        Connection first = pool.getChannel();
+        Connection second = pool.getChannel();
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(first.getFuture().isSuccess());
+
+        // returned connection is still shared
+        pool.returnChannel(first);
+        Assert.assertSame(first, pool.getChannel());
+        Assert.assertSame(second, pool.getChannelAsync().get());
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexLeastInFlight() throws Exception {
+        ChannelPool pool = createMultiplexChannelPool(2, 0, true);
+        Connection first = pool.getChannel();
+        Assert.assertTrue(first.tryIncrementInFlight(0));
+
+        Connection second = pool.getChannel();
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(second, pool.getChannel());
+
+        first.decrementInFlight();
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexMaxInFlight() throws Exception {
+        ChannelPool pool = createMultiplexChannelPool(1, 1, false);
+        Connection connection = pool.getChannel();
+        Assert.assertTrue(connection.tryIncrementInFlight(1));
+        Assert.assertFalse(connection.tryIncrementInFlight(1));
+
+        try {
+            pool.getChannel();
+            Assert.fail("should reach max in-flight");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchElementException);
+        }
+        Assert.assertTrue(pool.getChannelAsync().isCompletedExceptionally());
+
+        connection.decrementInFlight();
+        Assert.assertSame(connection, pool.getChannel());
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexReconnect() throws Exception {
+        ChannelPool pool = createMultiplexChannelPool(1, 0, false);
+        Connection connection = pool.getChannel();
+        connection.getFuture().channel().close().await(5000);
+
+        Connection reconnected = pool.getChannel();
+        Assert.assertNotSame(connection, reconnected);
+        Assert.assertTrue(reconnected.getFuture().isSuccess());
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexReconnectBackoff() throws Exception {
+        ChannelPool pool = createMultiplexChannelPool(2, 0, true, PORT + 1);
+        Set<Connection> connections = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+        for (int i = 0; i < 20; i++) {
+            Connection connection = pool.getChannel();
+            Assert.assertFalse(connection.getFuture().isSuccess());
+            connections.add(connection);
+        }
+        // without backoff every call reconnects all failed slots
+        Assert.assertTrue("connections " + connections.size(), connections.size() < 10);
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexReconnectByOneCaller() throws Exception {
+        final ChannelPool pool = createMultiplexChannelPool(1, 0, true);
+        Connection connection = pool.getChannel();
+        connection.getFuture().channel().close().await(5000);
+
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final Set<Connection> reconnected =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>()));
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        reconnected.add(pool.getChannel());
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, reconnected.size());
+        Assert.assertNotSame(connection, reconnected.iterator().next());
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexReconnectByOneCallerAsync() throws Exception {
+        final ChannelPool pool = createMultiplexChannelPool(1, 0, true);
+        Connection connection = pool.getChannelAsync().get(5, TimeUnit.SECONDS);
+        connection.getFuture().channel().close().await(5000);
+
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final Set<CompletableFuture<Connection>> futures = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<CompletableFuture<Connection>, Boolean>()));
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        futures.add(pool.getChannelAsync());
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Set<Connection> reconnected = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+        for (CompletableFuture<Connection> future : futures) {
+            reconnected.add(future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, reconnected.size());
+        Assert.assertNotSame(connection, reconnected.iterator().next());
+        pool.stop();
+    }
+
+    @Test
+    public void testMultiplexReselectOnMaxInFlight() throws Exception {
+        RpcClientOptions options = new RpcClientOptions();
+        options.setMultiplexConnectionSize(2);
+        options.setMaxInFlightPerConnection(1);
+        rpcClient = new RpcClient(options);
+        RpcChannel rpcChannel = new RpcChannel(rpcClient, "localhost", PORT);
+        Connection connection = rpcChannel.getConnection();
+        // in-flight limit taken by other request after selected
+        Assert.assertTrue(connection.tryIncrementInFlight(1));
+
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        rpcChannel.doTransport(connection, dataPackage, callback, 5000);
+        // sent by the other connection instead of failed at once
+        Assert.assertFalse(callback.isDone());
+        Assert.assertEquals(1, rpcClient.getPendingRequestCount());
+        Assert.assertEquals(1, connection.getInFlight());
+
+        rpcClient.cancelPendingRequest(dataPackage.getRpcMeta().getCorrelationId());
+        connection.decrementInFlight();
+        rpcChannel.close();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link ConnectBackoff}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ConnectBackoffTest {
+
+    @Test
+    public void testExponentialAndBounded() throws Exception {
+        ConnectBackoff backoff = new ConnectBackoff(10, 40);
+        Assert.assertEquals(0, backoff.getDelay());
+
+        long last = 0;
+        for (int i = 0; i < 4; i++) {
+            backoff.onFailure();
+            long delay = backoff.getDelay();
+            Assert.assertTrue("delay " + delay, delay <= 40);
+            Assert.assertTrue("delay " + delay + " last " + last, delay >= Math.min(last, 30));
+            last = delay;
+            Thread.sleep(delay + 1);
+        }
+        Assert.assertEquals(4, backoff.getFailures());
+
+        backoff.onSuccess();
+        Assert.assertEquals(0, backoff.getDelay());
+        Assert.assertEquals(0, backoff.getFailures());
+    }
+
+    @Test
+    public void testFailuresInWindowCountedOnce() {
+        ConnectBackoff backoff = new ConnectBackoff(1000, 10000);
+        for (int i = 0; i < 10; i++) {
+            backoff.onFailure();
+        }
+        Assert.assertEquals(1, backoff.getFailures());
+        Assert.assertTrue(backoff.getDelay() <= 1000);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.RpcChannelErrorException;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+
+/**
+ * Test class for {@link PendingRequestTable}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class PendingRequestTableTest {
+
+    @Test
+    public void testPutGetRemove() {
+        PendingRequestTable<String> table = new PendingRequestTable<String>(4);
+        Assert.assertTrue(table.putIfAbsent(1L, "a"));
+        Assert.assertFalse(table.putIfAbsent(1L, "b"));
+        Assert.assertTrue(table.putIfAbsent(0L, "zero"));
+        Assert.assertTrue(table.putIfAbsent(-1L, "minus"));
+
+        Assert.assertEquals("a", table.get(1L));
+        Assert.assertEquals("zero", table.get(0L));
+        Assert.assertEquals(3, table.size());
+
+        Assert.assertEquals("a", table.remove(1L));
+        Assert.assertNull(table.remove(1L));
+        Assert.assertNull(table.get(1L));
+        Assert.assertEquals(2, table.size());
+
+        long[] keys = table.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new long[] { -1L, 0L }, keys);
+    }
+
+    @Test
+    public void testRandomOperations() {
+        PendingRequestTable<Long> table = new PendingRequestTable<Long>(1);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(31);
+        for (int i = 0; i < 200000; i++) {
+            // small key range to get many collisions and removals
+            long key = random.nextInt(2048);
+            if (random.nextBoolean()) {
+                boolean put = table.putIfAbsent(key, i + 0L);
+                Assert.assertEquals(!expected.containsKey(key), put);
+                if (put) {
+                    expected.put(key, i + 0L);
+                }
+            } else {
+                Assert.assertEquals(expected.remove(key), table.remove(key));
+            }
+        }
+        Assert.assertEquals(expected.size(), table.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+        Assert.assertEquals(expected.size(), table.keys().length);
+    }
+
+    @Test
+    public void testShrinkAfterBurst() {
+        PendingRequestTable<Long> table = new PendingRequestTable<Long>(1);
+        int capacity = table.capacity();
+        for (long i = 0; i < 10000; i++) {
+            Assert.assertTrue(table.putIfAbsent(i, i));
+        }
+        Assert.assertTrue(table.capacity() > 10000);
+        for (long i = 0; i < 10000; i++) {
+            if (i % 1000 != 0) {
+                Assert.assertEquals(Long.valueOf(i), table.remove(i));
+            }
+        }
+        // shrinks to keep load not less than 1/8
+        Assert.assertTrue(table.capacity() <= 10 * 8);
+        for (long i = 0; i < 10000; i += 1000) {
+            Assert.assertEquals(Long.valueOf(i), table.remove(i));
+        }
+        Assert.assertEquals(capacity, table.capacity());
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final PendingRequestTable<Long> table = new PendingRequestTable<Long>();
+        final AtomicLong idGenerator = new AtomicLong();
+        final AtomicInteger errors = new AtomicInteger();
+        int threads = 8;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        long id = idGenerator.incrementAndGet();
+                        if (!table.putIfAbsent(id, id) || table.remove(id) != id) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testInvalidBrokenChannel() {
+        RpcClient rpcClient = new RpcClient();
+        HashedWheelTimer timer = new HashedWheelTimer();
+        try {
+            EmbeddedChannel broken = new EmbeddedChannel();
+            EmbeddedChannel alive = new EmbeddedChannel();
+
+            BlockingRpcCallback brokenCallback = registerAndBind(rpcClient, timer, 1L, broken);
+            BlockingRpcCallback aliveCallback = registerAndBind(rpcClient, timer, 2L, alive);
+            Assert.assertEquals(2, rpcClient.getPendingRequestCount());
+
+            rpcClient.invalidBrokenChannel(broken, new RpcChannelErrorException("broken"));
+            Assert.assertTrue(brokenCallback.isDone());
+            Assert.assertFalse(aliveCallback.isDone());
+            Assert.assertEquals(1, rpcClient.getPendingRequestCount());
+
+            Assert.assertNotNull(rpcClient.removePendingRequest(2L));
+            Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+        } finally {
+            timer.stop();
+            rpcClient.stop();
+        }
+    }
+
+    /**
+     * Register and bind a pending request.
+     *
+     * @param rpcClient the rpc client
+     * @param timer the timer
+     * @param id the correlation id
+     * @param channel the channel
+     * @return the callback
+     */
+    private BlockingRpcCallback registerAndBind(RpcClient rpcClient, HashedWheelTimer timer, long id,
+            EmbeddedChannel channel) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.getRpcMeta().setCorrelationId(id);
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        RpcClientCallState state = new RpcClientCallState(callback, dataPackage,
+                timer.newTimeout(new RpcTimerTask(id, rpcClient, 10, TimeUnit.SECONDS), 10, TimeUnit.SECONDS));
+        rpcClient.registerPendingRequest(id, state);
+        rpcClient.bindPendingRequest(id, state, channel);
+        return callback;
+    }
+}
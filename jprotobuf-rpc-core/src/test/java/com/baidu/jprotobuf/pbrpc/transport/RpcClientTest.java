@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
+
+/**
+ * Test class for {@link RpcClient}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcClientTest {
+
+    /** The rpc client. */
+    private RpcClient rpcClient;
+
+    @Before
+    public void setUp() {
+        rpcClient = new RpcClient();
+    }
+
+    @After
+    public void tearDown() {
+        rpcClient.stop();
+    }
+
+    @Test
+    public void testCancelPendingRequest() {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.getRpcMeta().setCorrelationId(1L);
+        final int[] released = new int[1];
+        BlockingRpcCallback callback = new BlockingRpcCallback(new BlockingRpcCallback.CallbackDone() {
+            @Override
+            public void done(RpcDataPackage message) {
+                released[0]++;
+            }
+        });
+        rpcClient.registerPendingRequest(1L, new RpcClientCallState(callback, dataPackage, 1000L));
+        rpcClient.getTimeoutWheel().add(1L, 1000L);
+
+        Assert.assertTrue(rpcClient.cancelPendingRequest(1L));
+        Assert.assertTrue(callback.isDone());
+        Assert.assertTrue(callback.isCancelled());
+        Assert.assertEquals(ErrorCodes.ST_CANCELLED,
+                callback.getMessage().getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertEquals(1, released[0]);
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+
+        // already completed
+        Assert.assertFalse(rpcClient.cancelPendingRequest(1L));
+        Assert.assertEquals(1, released[0]);
+    }
+}
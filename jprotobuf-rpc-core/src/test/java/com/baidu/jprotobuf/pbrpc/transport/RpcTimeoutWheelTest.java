@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+import com.baidu.jprotobuf.pbrpc.transport.handler.ErrorCodes;
+
+/**
+ * Test class for {@link RpcTimeoutWheel}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcTimeoutWheelTest {
+
+    /** The rpc client. */
+    private RpcClient rpcClient;
+
+    @Before
+    public void setUp() {
+        RpcClientOptions options = new RpcClientOptions();
+        options.setTimeoutTickDuration(5);
+        rpcClient = new RpcClient(options);
+    }
+
+    @After
+    public void tearDown() {
+        rpcClient.stop();
+    }
+
+    /**
+     * Register a pending request.
+     *
+     * @param id the correlation id
+     * @param timeout the timeout in milliseconds
+     * @return the callback
+     */
+    private BlockingRpcCallback register(long id, long timeout) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.getRpcMeta().setCorrelationId(id);
+        BlockingRpcCallback callback = new BlockingRpcCallback();
+        rpcClient.registerPendingRequest(id, new RpcClientCallState(callback, dataPackage, timeout));
+        return callback;
+    }
+
+    @Test
+    public void testTimeoutByEventLoop() {
+        BlockingRpcCallback callback = register(1L, 50);
+        long time = System.nanoTime();
+        rpcClient.getTimeoutWheel().add(1L, 50);
+
+        Assert.assertTrue(callback.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time);
+        Assert.assertTrue("elapsed " + elapsed, elapsed >= 50);
+        Assert.assertEquals(ErrorCodes.ST_READ_TIMEOUT,
+                callback.getMessage().getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+    }
+
+    @Test
+    public void testCompletedSkipped() throws Exception {
+        RpcTimeoutWheel wheel = new RpcTimeoutWheel(rpcClient, 1, 1);
+        BlockingRpcCallback callback = register(2L, 10);
+        wheel.add(2L, 10);
+        Assert.assertEquals(1, wheel.size());
+
+        // completed before timeout
+        rpcClient.removePendingRequest(2L);
+        Thread.sleep(30);
+        wheel.expire();
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertFalse(callback.isDone());
+    }
+
+    @Test
+    public void testNotExpireInEarlierRound() throws Exception {
+        // one round of the wheel is 4 ms
+        RpcTimeoutWheel wheel = new RpcTimeoutWheel(rpcClient, 1, TimeUnit.MILLISECONDS, 4, 2);
+        BlockingRpcCallback shortCallback = register(3L, 5);
+        BlockingRpcCallback longCallback = register(4L, 1000);
+        wheel.add(3L, 5);
+        wheel.add(4L, 1000);
+
+        Thread.sleep(50);
+        wheel.expire();
+        Assert.assertTrue(shortCallback.isDone());
+        Assert.assertFalse(longCallback.isDone());
+        Assert.assertEquals(1, wheel.size());
+
+        rpcClient.removePendingRequest(4L);
+    }
+
+    @Test
+    public void testDropCompletedOnExpire() throws Exception {
+        RpcTimeoutWheel wheel = rpcClient.getTimeoutWheel();
+        Assert.assertFalse(wheel.isTicking());
+
+        BlockingRpcCallback callback = register(5L, 50);
+        wheel.add(5L, 50);
+        Assert.assertEquals(1, wheel.size());
+        Assert.assertTrue(wheel.isTicking());
+
+        // completed, entry is kept until expired and ticking stops once wheel is empty
+        Assert.assertNotNull(rpcClient.removePendingRequest(5L));
+        Assert.assertEquals(1, wheel.size());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (wheel.isTicking() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(wheel.isTicking());
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertFalse(callback.isDone());
+    }
+
+    @Test
+    public void testCompactCompleted() throws Exception {
+        RpcTimeoutWheel wheel = rpcClient.getTimeoutWheel();
+        int count = 10000;
+        for (long id = 100; id < 100 + count; id++) {
+            register(id, 100000);
+            wheel.add(id, 100000);
+        }
+        int capacity = wheel.capacity();
+        Assert.assertTrue(capacity >= count);
+
+        // completed long before timeout, entries are compacted by ticker
+        for (long id = 100; id < 100 + count - 10; id++) {
+            Assert.assertNotNull(rpcClient.removePendingRequest(id));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (wheel.size() > 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(10, wheel.size());
+        Assert.assertTrue(wheel.capacity() < capacity / 8);
+
+        for (long id = 100 + count - 10; id < 100 + count; id++) {
+            rpcClient.removePendingRequest(id);
+        }
+    }
+
+    @Test
+    public void testHugeTimeout() throws Exception {
+        RpcTimeoutWheel wheel = new RpcTimeoutWheel(rpcClient, 1, 1);
+        BlockingRpcCallback callback = register(7L, Long.MAX_VALUE);
+        wheel.add(7L, Long.MAX_VALUE);
+
+        Thread.sleep(30);
+        wheel.expire();
+        Assert.assertFalse(callback.isDone());
+        Assert.assertEquals(1, wheel.size());
+        rpcClient.removePendingRequest(7L);
+    }
+
+    @Test
+    public void testExpiredRemovedFromPending() throws Exception {
+        RpcTimeoutWheel wheel = new RpcTimeoutWheel(rpcClient, 1, 1);
+        register(6L, 5);
+        wheel.add(6L, 5);
+        Thread.sleep(30);
+        wheel.expire();
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertEquals(0, rpcClient.getPendingRequestCount());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link WeightedFairTaskQueue}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class WeightedFairTaskQueueTest {
+
+    /**
+     * Task for test.
+     */
+    private static class TestTask implements WeightedFairTaskQueue.Task {
+
+        private final int priority;
+
+        private final String tenant;
+
+        private TestTask(int priority, String tenant) {
+            this.priority = priority;
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public String getTenant() {
+            return tenant;
+        }
+    }
+
+    @Test
+    public void testWeightedByPriority() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(new int[] { 1, 4 }, 0);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(queue.offer(new TestTask(0, "t")));
+            Assert.assertTrue(queue.offer(new TestTask(1, "t")));
+        }
+        Assert.assertEquals(20, queue.size());
+        Assert.assertArrayEquals(new int[] { 10, 10 }, queue.getQueuedCounts());
+
+        // high priority gets 4 of each 5 tasks
+        int high = 0;
+        for (int i = 0; i < 10; i++) {
+            if (((TestTask) queue.poll()).getPriority() == 1) {
+                high++;
+            }
+        }
+        Assert.assertEquals(8, high);
+
+        // low priority is not starved
+        int low = 0;
+        while (!queue.isEmpty()) {
+            if (((TestTask) queue.poll()).getPriority() == 0) {
+                low++;
+            }
+        }
+        Assert.assertEquals(8, low);
+    }
+
+    @Test
+    public void testFairByTenant() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(null, 0);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_NORMAL, "batch"));
+        }
+        queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_NORMAL, "user"));
+        queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_NORMAL, "user"));
+
+        // tenant of later tasks takes turns instead of waiting for the backfill
+        Assert.assertEquals("batch", ((TestTask) queue.poll()).getTenant());
+        Assert.assertEquals("user", ((TestTask) queue.poll()).getTenant());
+        Assert.assertEquals("batch", ((TestTask) queue.poll()).getTenant());
+        Assert.assertEquals("user", ((TestTask) queue.poll()).getTenant());
+        Assert.assertEquals("batch", ((TestTask) queue.poll()).getTenant());
+    }
+
+    @Test
+    public void testCapacityAndRemove() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(null, 2);
+        Runnable plain = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        TestTask task = new TestTask(WeightedFairTaskQueue.PRIORITY_HIGH, "t");
+        Assert.assertTrue(queue.offer(plain));
+        Assert.assertTrue(queue.offer(task));
+        Assert.assertFalse(queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_LOW, "t")));
+        Assert.assertEquals(0, queue.remainingCapacity());
+
+        Assert.assertTrue(queue.remove(task));
+        Assert.assertFalse(queue.remove(task));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertSame(plain, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDrainedFlowRemoved() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(null, 0);
+        for (int i = 0; i < 100; i++) {
+            TestTask task = new TestTask(i % 3, "tenant" + i);
+            queue.offer(task);
+            Assert.assertTrue(queue.remove(task));
+        }
+        Assert.assertEquals(0, queue.getFlowCount());
+
+        queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_NORMAL, null));
+        queue.offer(new TestTask(WeightedFairTaskQueue.PRIORITY_NORMAL, ""));
+        Assert.assertEquals(1, queue.getFlowCount());
+        queue.poll();
+        queue.poll();
+        Assert.assertEquals(0, queue.getFlowCount());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * Test class for {@link ChunkPackageAssembler}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class ChunkPackageAssemblerTest {
+
+    /**
+     * Gets the chunk packages.
+     *
+     * @param chunkSize the chunk size
+     * @return the chunk packages
+     */
+    private List<RpcDataPackage> getChunkPackages(long chunkSize) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.setData(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        dataPackage.attachment(new byte[] {1, 4});
+        return dataPackage.chunk(chunkSize);
+    }
+
+    @Test
+    public void testAssemble() throws Exception {
+        ChunkPackageAssembler assembler = new ChunkPackageAssembler(Integer.MAX_VALUE);
+        List<RpcDataPackage> chunkList = getChunkPackages(3);
+        Assert.assertEquals(4, chunkList.size());
+
+        RpcDataPackage assembled = null;
+        for (int i = 0; i < chunkList.size(); i++) {
+            assembled = assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(i));
+            if (i < chunkList.size() - 1) {
+                Assert.assertNull(assembled);
+                Assert.assertEquals(3 * (i + 1), assembler.getHeldBytes());
+                Assert.assertEquals(1, assembler.getStreamCount());
+            }
+        }
+
+        Assert.assertNotNull(assembled);
+        Assert.assertEquals(0, assembler.getHeldBytes());
+        Assert.assertEquals(0, assembler.getStreamCount());
+        Assert.assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, assembled.getData());
+        Assert.assertArrayEquals(new byte[] {1, 4}, assembled.getAttachment());
+        Assert.assertTrue(assembled.isFinalPackage());
+    }
+
+    @Test
+    public void testMaxStreamSize() throws Exception {
+        ChunkPackageAssembler assembler = new ChunkPackageAssembler(5);
+        List<RpcDataPackage> chunkList = getChunkPackages(3);
+
+        Assert.assertNull(assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(0)));
+        try {
+            assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(1));
+            Assert.fail("should throw TooLongFrameException");
+        } catch (TooLongFrameException e) {
+            Assert.assertNotNull(e);
+        }
+        Assert.assertEquals(0, assembler.getHeldBytes());
+
+        // remain chunks of discarded stream should be dropped
+        Assert.assertNull(assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(2)));
+        Assert.assertNull(assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(3)));
+        Assert.assertEquals(0, assembler.getStreamCount());
+        Assert.assertEquals(0, assembler.getDiscardedStreamCount());
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        ChunkPackageAssembler assembler = new ChunkPackageAssembler(Integer.MAX_VALUE);
+        List<RpcDataPackage> chunkList = getChunkPackages(3);
+        RpcDataPackage first = chunkList.get(0);
+        first.setTimeStamp(System.currentTimeMillis() - 1000);
+
+        Assert.assertNull(assembler.assemble(PooledByteBufAllocator.DEFAULT, first));
+        Assert.assertEquals(0, assembler.expire(5000));
+        Assert.assertEquals(1, assembler.expire(500));
+        Assert.assertEquals(0, assembler.getHeldBytes());
+        Assert.assertEquals(0, assembler.getStreamCount());
+        Assert.assertEquals(1, assembler.getDiscardedStreamCount());
+    }
+
+    @Test
+    public void testExpireDiscardedStream() throws Exception {
+        ChunkPackageAssembler assembler = new ChunkPackageAssembler(5);
+        List<RpcDataPackage> chunkList = getChunkPackages(3);
+
+        Assert.assertNull(assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(0)));
+        try {
+            assembler.assemble(PooledByteBufAllocator.DEFAULT, chunkList.get(1));
+            Assert.fail("should throw TooLongFrameException");
+        } catch (TooLongFrameException e) {
+            Assert.assertNotNull(e);
+        }
+        Assert.assertEquals(1, assembler.getDiscardedStreamCount());
+        Assert.assertEquals(0, assembler.expire(5000));
+        Assert.assertEquals(1, assembler.getDiscardedStreamCount());
+
+        // final chunk never arrives
+        Thread.sleep(20);
+        assembler.expire(10);
+        Assert.assertEquals(0, assembler.getDiscardedStreamCount());
+        chunkList.get(2).release();
+        chunkList.get(3).release();
+    }
+}
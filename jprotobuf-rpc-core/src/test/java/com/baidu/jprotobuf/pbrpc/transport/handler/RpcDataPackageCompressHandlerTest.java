@@ -0,0 +1,139 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.compress.AdaptiveCompressPolicy;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+import com.baidu.jprotobuf.pbrpc.data.RpcMeta;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Test class for {@link RpcDataPackageCompressHandler} and {@link RpcDataPackageUnCompressHandler}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcDataPackageCompressHandlerTest {
+
+    /**
+     * Gets the data package.
+     *
+     * @param compressType the compress type
+     * @param size the data size
+     * @return the data package
+     */
+    private RpcDataPackage getDataPackage(int compressType, int size) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.getRpcMeta().setChunkInfo(null);
+        dataPackage.compressType(compressType);
+        dataPackage.setData(new byte[size]);
+        return dataPackage;
+    }
+
+    /**
+     * Compress and uncompress by handlers.
+     *
+     * @param threshold the compress threshold
+     * @param dataPackage the data package
+     * @return the compressed size
+     */
+    private int roundTrip(int threshold, RpcDataPackage dataPackage) {
+        return roundTrip(new RpcDataPackageCompressHandler(threshold), dataPackage);
+    }
+
+    /**
+     * Compress and uncompress by handlers.
+     *
+     * @param handler the compress handler
+     * @param dataPackage the data package
+     * @return the compressed size
+     */
+    private int roundTrip(RpcDataPackageCompressHandler handler, RpcDataPackage dataPackage) {
+        EmbeddedChannel out = new EmbeddedChannel(handler);
+        Assert.assertTrue(out.writeOutbound(dataPackage));
+        RpcDataPackage compressed = out.readOutbound();
+        int size = compressed.getData().length;
+
+        EmbeddedChannel in = new EmbeddedChannel(new RpcDataPackageUnCompressHandler());
+        Assert.assertTrue(in.writeInbound(compressed));
+        RpcDataPackage uncompressed = in.readInbound();
+        Assert.assertSame(dataPackage, uncompressed);
+        return size;
+    }
+
+    @Test
+    public void testCompressThreshold() {
+        RpcDataPackage small = getDataPackage(RpcMeta.COMPRESS_LZ4, 100);
+        Assert.assertEquals(100, roundTrip(1024, small));
+        Assert.assertEquals(RpcMeta.COMPRESS_NO, small.getRpcMeta().getCompressType().intValue());
+        Assert.assertArrayEquals(new byte[100], small.getData());
+
+        RpcDataPackage large = getDataPackage(RpcMeta.COMPRESS_LZ4, 4096);
+        Assert.assertTrue(roundTrip(1024, large) < 4096);
+        Assert.assertEquals(RpcMeta.COMPRESS_LZ4, large.getRpcMeta().getCompressType().intValue());
+        Assert.assertArrayEquals(new byte[4096], large.getData());
+    }
+
+    @Test
+    public void testUnsupportedCompressType() {
+        RpcDataPackage dataPackage = getDataPackage(99, 100);
+        Assert.assertEquals(100, roundTrip(0, dataPackage));
+        Assert.assertEquals(RpcMeta.COMPRESS_NO, dataPackage.getRpcMeta().getCompressType().intValue());
+
+        // peer send with unsupported compress type
+        dataPackage = getDataPackage(99, 100);
+        EmbeddedChannel in = new EmbeddedChannel(new RpcDataPackageUnCompressHandler());
+        Assert.assertTrue(in.writeInbound(dataPackage));
+        RpcDataPackage received = in.readInbound();
+        Assert.assertEquals(ErrorCodes.ST_ERROR_COMPRESS, received.getRpcMeta().getResponse().getErrorCode().intValue());
+    }
+
+    @Test
+    public void testAdaptiveCompress() {
+        AdaptiveCompressPolicy policy = new AdaptiveCompressPolicy();
+        policy.setWindowSize(2);
+        policy.setMinCompressSpeed(0);
+        policy.setProbeInterval(Integer.MAX_VALUE);
+        RpcDataPackageCompressHandler handler = new RpcDataPackageCompressHandler(0, policy);
+
+        byte[] random = new byte[2048];
+        new Random(1).nextBytes(random);
+        for (int i = 0; i < 2; i++) {
+            RpcDataPackage dataPackage = getDataPackage(RpcMeta.COMPERESS_GZIP, 0);
+            dataPackage.setData(random);
+            roundTrip(handler, dataPackage);
+            Assert.assertEquals(RpcMeta.COMPERESS_GZIP, dataPackage.getRpcMeta().getCompressType().intValue());
+        }
+
+        // incompressible payloads are sent without compress
+        RpcDataPackage dataPackage = getDataPackage(RpcMeta.COMPERESS_GZIP, 0);
+        dataPackage.setData(random);
+        Assert.assertEquals(2048, roundTrip(handler, dataPackage));
+        Assert.assertEquals(RpcMeta.COMPRESS_NO, dataPackage.getRpcMeta().getCompressType().intValue());
+        Assert.assertArrayEquals(random, dataPackage.getData());
+
+        // compressible payloads of other size bucket are still compressed
+        dataPackage = getDataPackage(RpcMeta.COMPERESS_GZIP, 8192);
+        Assert.assertTrue(roundTrip(handler, dataPackage) < 8192);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackageTest;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * Test class for {@link RpcDataPackageDecoder}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcDataPackageDecoderTest {
+
+    /**
+     * Gets the frame bytes.
+     *
+     * @param data the data
+     * @return the frame
+     */
+    private static byte[] getFrame(byte[] data) {
+        RpcDataPackage dataPackage = new RpcDataPackageTest().getDataPackage();
+        dataPackage.setMagicCode(ProtocolConstant.MAGIC_CODE);
+        dataPackage.setData(data);
+        dataPackage.getRpcMeta().setChunkInfo(null);
+        return dataPackage.write();
+    }
+
+    @Test
+    public void testDecodeFragmented() {
+        byte[] frame = getFrame(new byte[] {1, 2, 4, 8});
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcDataPackageDecoder(-1));
+
+        // write frame byte by byte
+        for (int i = 0; i < frame.length - 1; i++) {
+            Assert.assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(frame, i, 1)));
+        }
+        Assert.assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(frame, frame.length - 1, 1)));
+
+        RpcDataPackage dataPackage = channel.readInbound();
+        Assert.assertArrayEquals(new byte[] {1, 2, 4, 8}, dataPackage.getData());
+        Assert.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testTooLongFrame() {
+        byte[] tooLong = getFrame(new byte[100]);
+        byte[] frame = getFrame(new byte[] {1, 2, 4, 8});
+
+        RpcDataPackageDecoder decoder = new RpcDataPackageDecoder(-1);
+        decoder.setMaxSize(frame.length);
+        EmbeddedChannel channel = new EmbeddedChannel(decoder);
+
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(tooLong, 0, 20));
+            Assert.fail("should throw TooLongFrameException");
+        } catch (DecoderException e) {
+            Assert.assertTrue(e instanceof TooLongFrameException);
+        }
+        // remain bytes of too long frame should be discarded
+        Assert.assertFalse(channel.writeInbound(Unpooled.wrappedBuffer(tooLong, 20, tooLong.length - 20)));
+
+        Assert.assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(frame)));
+        RpcDataPackage dataPackage = channel.readInbound();
+        Assert.assertArrayEquals(new byte[] {1, 2, 4, 8}, dataPackage.getData());
+        Assert.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testErrorMagicCode() {
+        byte[] badFrame = getFrame(new byte[] {1});
+        badFrame[0] = 'H';
+        byte[] frame = getFrame(new byte[] {1, 2, 4, 8});
+
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcDataPackageDecoder(-1));
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(badFrame));
+            Assert.fail("should throw exception on error magic code");
+        } catch (DecoderException e) {
+            Assert.assertTrue(e.getMessage().contains("Error magic code"));
+        }
+
+        Assert.assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(frame)));
+        RpcDataPackage dataPackage = channel.readInbound();
+        Assert.assertArrayEquals(new byte[] {1, 2, 4, 8}, dataPackage.getData());
+        Assert.assertFalse(channel.finish());
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.jprotobuf.pbrpc.EchoServiceImpl;
+import com.baidu.jprotobuf.pbrpc.data.ProtocolConstant;
+import com.baidu.jprotobuf.pbrpc.data.RpcDataPackage;
+import com.baidu.jprotobuf.pbrpc.server.AdaptiveConcurrencyLimiter;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceHandleContext;
+import com.baidu.jprotobuf.pbrpc.server.RpcServiceRegistry;
+import com.baidu.jprotobuf.pbrpc.transport.Bulkhead;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Test class for {@link RpcServiceHandler}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcServiceHandlerTest {
+
+    /**
+     * Gets the request data package.
+     *
+     * @param timeout the remaining timeout of caller
+     * @return the data package
+     */
+    private RpcDataPackage getRequest(Long timeout) {
+        return getRequest("notExistService", "notExistMethod", timeout);
+    }
+
+    /**
+     * Gets the request data package.
+     *
+     * @param serviceName the service name
+     * @param methodName the method name
+     * @param timeout the remaining timeout of caller
+     * @return the data package
+     */
+    private RpcDataPackage getRequest(String serviceName, String methodName, Long timeout) {
+        RpcDataPackage dataPackage = new RpcDataPackage().magicCode(ProtocolConstant.MAGIC_CODE)
+                .serviceName(serviceName).methodName(methodName).correlationId(1L);
+        dataPackage.getRpcMeta().getRequest().setTimeout(timeout);
+        return dataPackage;
+    }
+
+    @Test
+    public void testDropExpiredRequest() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcServiceHandler(new RpcServiceRegistry(), null));
+        Assert.assertFalse(channel.writeInbound(getRequest(0L)));
+        Assert.assertNull(channel.readOutbound());
+        channel.finish();
+    }
+
+    @Test
+    public void testDropRequestExpiredInQueue() throws Exception {
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // block the executor so request waits in queue until expired
+        es.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        RpcServiceHandler handler = new RpcServiceHandler(new RpcServiceRegistry(), null);
+        handler.setEs(es);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        channel.writeInbound(getRequest(20L));
+        Thread.sleep(50);
+
+        latch.countDown();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(5, TimeUnit.SECONDS));
+        channel.runPendingTasks();
+        Assert.assertNull(channel.readOutbound());
+        channel.finish();
+    }
+
+    @Test
+    public void testHandleRequestInTime() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcServiceHandler(new RpcServiceRegistry(), null));
+        channel.writeInbound(getRequest(10000L));
+        RpcDataPackage response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_SERVICE_NOTFOUND,
+                response.getRpcMeta().getResponse().getErrorCode().intValue());
+
+        // no timeout of caller
+        channel.writeInbound(getRequest(null));
+        Assert.assertNotNull(channel.readOutbound());
+        Assert.assertNull(RpcServiceHandleContext.getDeadline());
+        channel.finish();
+    }
+
+    /**
+     * Creates the channel with batch flush enabled.
+     *
+     * @param es the executor service
+     * @param flushCount the counter of flushes
+     * @return the channel
+     */
+    private EmbeddedChannel createBatchFlushChannel(ExecutorService es, final AtomicInteger flushCount) {
+        RpcServiceHandler handler = new RpcServiceHandler(new RpcServiceRegistry(), null);
+        handler.setEs(es);
+        handler.setBatchFlush(true);
+        return new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushCount.incrementAndGet();
+                super.flush(ctx);
+            }
+        }, handler);
+    }
+
+    @Test
+    public void testFlushOnReadComplete() {
+        AtomicInteger flushCount = new AtomicInteger();
+        EmbeddedChannel channel = createBatchFlushChannel(null, flushCount);
+        channel.writeInbound(getRequest(null), getRequest(null), getRequest(null));
+        Assert.assertEquals(1, flushCount.get());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNotNull(channel.readOutbound());
+        }
+        Assert.assertNull(channel.readOutbound());
+        channel.finish();
+    }
+
+    @Test
+    public void testBatchFlushFromExecutor() throws Exception {
+        AtomicInteger flushCount = new AtomicInteger();
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // hold requests until channel read completes, embedded event loop treats every thread as in event loop
+        es.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        EmbeddedChannel channel = createBatchFlushChannel(es, flushCount);
+        channel.writeInbound(getRequest(null), getRequest(null), getRequest(null));
+        latch.countDown();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertNull(channel.readOutbound());
+
+        // responses written by executor are flushed by one event loop task
+        channel.runPendingTasks();
+        Assert.assertEquals(1, flushCount.get());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNotNull(channel.readOutbound());
+        }
+        channel.finish();
+    }
+
+    @Test
+    public void testSkipCancelledRequest() throws Exception {
+        AtomicInteger flushCount = new AtomicInteger();
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // block the executor so request is queued
+        es.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        EmbeddedChannel channel = createBatchFlushChannel(es, flushCount);
+        channel.writeInbound(getRequest(null));
+        RpcDataPackage cancel = getRequest(null);
+        cancel.getRpcMeta().getRequest().setCancel(true);
+        channel.writeInbound(cancel);
+
+        latch.countDown();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(5, TimeUnit.SECONDS));
+        channel.runPendingTasks();
+        Assert.assertNull(channel.readOutbound());
+        channel.finish();
+    }
+
+    @Test
+    public void testRejectByFullBulkhead() throws Exception {
+        Bulkhead bulkhead = Bulkhead.create("notExistService", 1, 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        // block the only thread so request is queued
+        bulkhead.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        RpcServiceHandler handler = new RpcServiceHandler(new RpcServiceRegistry(), null);
+        handler.setBulkheads(Collections.singletonMap("notExistService", bulkhead));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(getRequest(null));
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertEquals(1, bulkhead.getQueueDepth());
+
+        // queue is full, rejected at once
+        channel.writeInbound(getRequest(null));
+        RpcDataPackage response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_OVERLOADED, response.getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertEquals(1L, bulkhead.getRejectedCount());
+
+        latch.countDown();
+        bulkhead.shutdown();
+        Assert.assertTrue(bulkhead.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        channel.runPendingTasks();
+        response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_SERVICE_NOTFOUND,
+                response.getRpcMeta().getResponse().getErrorCode().intValue());
+        channel.finish();
+    }
+
+    @Test
+    public void testRejectByConcurrencyLimit() throws Exception {
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // block the executor so request is in flight
+        es.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setInitialLimit(1);
+        RpcServiceRegistry registry = new RpcServiceRegistry();
+        registry.registerService(new EchoServiceImpl());
+        RpcServiceHandler handler = new RpcServiceHandler(registry, null);
+        handler.setEs(es);
+        handler.setConcurrencyLimiter(limiter);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(getRequest("echoService", "echo", null));
+        Assert.assertNull(channel.readOutbound());
+
+        // unknown method is not limited and no limit is created for it
+        channel.writeInbound(getRequest(null));
+        RpcDataPackage response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_SERVICE_NOTFOUND,
+                response.getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertFalse(limiter.getStatus().containsKey("notExistService!notExistMethod"));
+
+        // in-flight requests reach the limit, rejected at once
+        channel.writeInbound(getRequest("echoService", "echo", null));
+        response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_OVERLOADED, response.getRpcMeta().getResponse().getErrorCode().intValue());
+        Assert.assertTrue(ErrorCodes.isRetryable(response.getRpcMeta().getResponse().getErrorCode()));
+
+        latch.countDown();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(5, TimeUnit.SECONDS));
+        channel.runPendingTasks();
+        Assert.assertNotNull(channel.readOutbound());
+        AdaptiveConcurrencyLimiter.LimitStatus status = limiter.getStatus().get("echoService!echo");
+        Assert.assertEquals(0, status.getInFlight());
+        Assert.assertEquals(1L, status.getRejected());
+        channel.finish();
+    }
+
+    @Test
+    public void testRunNonBlockingInline() throws Exception {
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        // block the executor, non blocking request should not wait for it
+        es.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        RpcServiceHandler handler = new RpcServiceHandler(new RpcServiceRegistry(), null);
+        handler.setEs(es);
+        handler.setNonBlockingServices(Collections.singleton("notExistService"));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(getRequest(null));
+        RpcDataPackage response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        Assert.assertEquals(ErrorCodes.ST_SERVICE_NOTFOUND,
+                response.getRpcMeta().getResponse().getErrorCode().intValue());
+
+        latch.countDown();
+        es.shutdown();
+        channel.finish();
+    }
+
+    @Test
+    public void testRemainingTimeout() {
+        Assert.assertEquals(1000L, RpcServiceHandleContext.getRemainingTimeout(1000L));
+        RpcServiceHandleContext.setDeadline(System.currentTimeMillis() + 100);
+        try {
+            long timeout = RpcServiceHandleContext.getRemainingTimeout(1000L);
+            Assert.assertTrue(timeout > 0 && timeout <= 100);
+            Assert.assertEquals(10L, RpcServiceHandleContext.getRemainingTimeout(10L));
+        } finally {
+            RpcServiceHandleContext.clearDeadline();
+        }
+        Assert.assertEquals(1000L, RpcServiceHandleContext.getRemainingTimeout(1000L));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.jprotobuf.pbrpc.transport.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * Test class for {@link RpcWriteCoalescingHandler}.
+ *
+ * @author xiemalin
+ * @since 4.2.3
+ */
+public class RpcWriteCoalescingHandlerTest {
+
+    /**
+     * Read and release all outbound messages.
+     *
+     * @param channel the channel
+     * @return count of messages
+     */
+    private int readOutbound(EmbeddedChannel channel) {
+        int count = 0;
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            buf.release();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testFlushAfterDelay() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcWriteCoalescingHandler(1000, 1024));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        Assert.assertEquals(0, readOutbound(channel));
+
+        Thread.sleep(10);
+        channel.runScheduledPendingTasks();
+        Assert.assertEquals(2, readOutbound(channel));
+        Assert.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlushOnMaxBytes() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcWriteCoalescingHandler(1000000, 16));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        Assert.assertEquals(0, readOutbound(channel));
+
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        Assert.assertEquals(2, readOutbound(channel));
+        Assert.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcWriteCoalescingHandler(1000000, 0));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        Assert.assertEquals(0, readOutbound(channel));
+
+        channel.close();
+        Assert.assertEquals(1, readOutbound(channel));
+    }
+}